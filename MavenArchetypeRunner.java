@@ -1,11 +1,27 @@
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.io.IOException;
 import java.util.stream.Stream;
 import java.util.regex.Pattern;
@@ -88,6 +104,42 @@ public class MavenArchetypeRunner {
             </plugin>
             """;
 
+    static final String ARCHETYPE_DIR = "target/generated-sources/archetype";
+    // Both are under target, so "mvn clean" removes them with the archetype they describe.
+    static final String MANIFEST_FILE = "target/archetype-manifest.properties";
+    static final String REWRITE_CACHE_DIR = "target/archetype-rewrite-cache";
+
+    static final Pattern ARCHETYPE_ARTIFACT_ID = Pattern.compile("<artifactId>([^<]+)-archetype</artifactId>");
+
+    /**
+     * Rewrites a generated file from in to out.
+     */
+    @FunctionalInterface
+    interface Rewriter {
+        void rewrite(BufferedReader in, Writer out) throws IOException;
+    }
+
+    /** Durations of the steps of this run in milliseconds, in order. */
+    static final Map<String, Long> stepTimes = new LinkedHashMap<>();
+    /** The steps of this run that did all of their work, i.e. were not skipped or served from the cache. */
+    static final Set<String> fullSteps = new HashSet<>();
+    /** The cache entries used by this run; the others are removed at the end. */
+    static final Set<String> usedCacheEntries = ConcurrentHashMap.newKeySet();
+    static final AtomicInteger cachedRewrites = new AtomicInteger();
+
+    static Path rewriteCacheDir;
+    /** Distinguishes the outputs of different rewrite rules or options in the cache. */
+    static String rulesHash;
+
+    /*
+     * With -Dincremental=true, the archetype is regenerated only when the files
+     * under project/, archetype.properties, archetype-post-generate.groovy,
+     * this runner or the gpg option have changed since the last run recorded in
+     * project/target/archetype-manifest.properties. "mvn clean" is replaced by
+     * deleting the generated archetype, and generated files whose content was
+     * already rewritten by an earlier run are restored from
+     * project/target/archetype-rewrite-cache instead of being rewritten again.
+     */
     public static void main(String[] args) {
         File projectDir = new File(System.getProperty("user.dir"), "project");
         if (!projectDir.exists() || !projectDir.isDirectory()) {
@@ -97,35 +149,54 @@ public class MavenArchetypeRunner {
 
         String os = System.getProperty("os.name").toLowerCase();
         boolean isWindows = os.contains("win");
+        boolean incremental = "true".equals(System.getProperty("incremental"));
+        Path archetypeDir = projectDir.toPath().resolve(ARCHETYPE_DIR);
+        Path manifestFile = projectDir.toPath().resolve(MANIFEST_FILE);
+        rewriteCacheDir = projectDir.toPath().resolve(REWRITE_CACHE_DIR);
 
-        // Run "mvn clean" first.
-        List<String> cleanCommand = new ArrayList<>();
-        cleanCommand.add(isWindows ? "mvn.cmd" : "mvn");
-        cleanCommand.add("clean");
-
-        ProcessBuilder cleanPb = new ProcessBuilder(cleanCommand);
-        cleanPb.directory(projectDir);
-        cleanPb.redirectErrorStream(true);
-
+        Properties previous = loadManifest(manifestFile);
+        Properties manifest = new Properties();
         try {
-            Process cleanProcess = cleanPb.start();
-            BufferedReader cleanReader = new BufferedReader(new InputStreamReader(cleanProcess.getInputStream()));
-            String line;
-            while ((line = cleanReader.readLine()) != null) {
-                System.out.println(line);
+            long start = System.nanoTime();
+            rulesHash = sha256(hashFile(new File(System.getProperty("user.dir"), "MavenArchetypeRunner.java").toPath())
+                    + "\ngpg=" + System.getProperty("gpg"));
+            String sourcesHash = hashSources(projectDir.toPath());
+            manifest.setProperty("sources", sourcesHash);
+            stepDone("hash sources", start, true);
+
+            if (incremental && sourcesHash.equals(previous.getProperty("sources"))
+                    && outputsMatch(archetypeDir, previous)) {
+                System.out.println("The archetype is up to date. Nothing to regenerate.");
+                reportTimes(previous, true);
+                return;
             }
+        } catch (IOException e) {
+            System.err.println("Failed to hash the sources: " + e.getMessage());
+            System.exit(1);
+        }
 
-            int cleanExitCode = cleanProcess.waitFor();
-            System.out.println(cleanCommand.toString() + " has been done. Exit code: " + cleanExitCode);
+        long cleanStart = System.nanoTime();
+        if (incremental) {
+            // Only the generated archetype needs to go; this avoids starting Maven.
+            try {
+                deleteRecursively(archetypeDir);
+                stepDone("clean", cleanStart, false);
+            } catch (IOException e) {
+                System.err.println("Failed to delete " + archetypeDir + ": " + e.getMessage());
+                System.exit(1);
+            }
+        } else {
+            // Run "mvn clean" first.
+            List<String> cleanCommand = new ArrayList<>();
+            cleanCommand.add(isWindows ? "mvn.cmd" : "mvn");
+            cleanCommand.add("clean");
 
+            int cleanExitCode = run(cleanCommand, projectDir);
             if (cleanExitCode != 0) {
                 System.err.println("mvn clean failed with exit code: " + cleanExitCode);
                 System.exit(1);
             }
-        } catch (Exception e) {
-            System.err.println("mvn clean failed: " + e.getMessage());
-            e.printStackTrace();
-            System.exit(1);
+            stepDone("clean", cleanStart, true);
         }
 
         // Prepare the command for archetype generation.
@@ -134,58 +205,28 @@ public class MavenArchetypeRunner {
         command.add("archetype:create-from-project");
         command.add("-Darchetype.properties=../archetype.properties");
 
-        // Create the ProcessBuilder and set the working directory to the project
-        // folder.
-        ProcessBuilder pb = new ProcessBuilder(command);
-        pb.directory(projectDir);
-        pb.redirectErrorStream(true); // Merge standard output and standard error.
-
+        boolean succeeded = false;
         try {
-            Process process = pb.start();
-            // Read the output of the process.
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                System.out.println(line);
-            }
-
-            // Wait for the process to finish.
-            int exitCode = process.waitFor();
-            System.out.println(command.toString() + " has been done. Exit code: " + exitCode);
+            long start = System.nanoTime();
+            int exitCode = run(command, projectDir);
+            stepDone("create-from-project", start, true);
 
+            start = System.nanoTime();
             // Modify the result of archetype project generation.
             // project/target/generated-sources/archetype/pom.xml
             // Remove "-archetype" from the end of the archetype name.
             File archetypePomFile = new File(projectDir,
                     "target/generated-sources/archetype/pom.xml");
             String artifactId = null;
+            List<Runnable> rewrites = new ArrayList<>();
             if (archetypePomFile.exists()) {
-                String content = Files.readString(archetypePomFile.toPath());
-                Pattern pattern = Pattern.compile("<artifactId>([^<]+)-archetype</artifactId>");
-                Matcher matcher = pattern.matcher(content);
+                Matcher matcher = ARCHETYPE_ARTIFACT_ID.matcher(Files.readString(archetypePomFile.toPath()));
                 if (matcher.find()) {
                     artifactId = matcher.group(1);
-                    content = content.replaceAll("<artifactId>([^<]+)-archetype</artifactId>",
-                            "<artifactId>" + artifactId + "</artifactId>");
-                }
-                content = content.replaceAll("<name>([^<]+)-archetype</name>",
-                        "<name>$1</name>");
-                // (?s) means DOTALL mode
-                content = content.replaceAll("(?s)<licenses>.+?</licenses>", LICENSES);
-                content = content.replaceAll("(?s)<developers>.+?</developers>", DEVELOPERS);
-                content = content.replaceAll("<scm />",
-                        "<scm>\n<connection>scm:git:git://github.com/" + GITHUB_ACCOUNT + "/" + artifactId
-                                + ".git</connection>\n<developerConnection>scm:git:ssh://github.com:" + GITHUB_ACCOUNT
-                                + "/" + artifactId + ".git</developerConnection>\n<url>https://github.com/"
-                                + GITHUB_ACCOUNT + "/" + artifactId + "/tree/main</url>\n</scm>");
-                String gpgPlugin = "";
-                if (System.getProperty("gpg") == null || !System.getProperty("gpg").equals("false")) {
-                    gpgPlugin = GPG_PLUGIN;
                 }
-                String publishPluginContent = String.format(PUBLISH_PLUGIN, gpgPlugin);
-                content = content.replaceAll("</pluginManagement>", "</pluginManagement>\n" + publishPluginContent);
-                Files.writeString(archetypePomFile.toPath(), content);
-                System.out.println("Replaced archetype pom.xml");
+                String name = artifactId;
+                rewrites.add(() -> rewrite(archetypePomFile.toPath(), "artifactId=" + name,
+                        wholeFile(content -> rewriteArchetypePom(content, name)), "archetype pom.xml"));
             }
 
             // Replace the content in
@@ -193,27 +234,22 @@ public class MavenArchetypeRunner {
             File pomFile = new File(projectDir,
                     "target/generated-sources/archetype/src/main/resources/archetype-resources/pom.xml");
             if (pomFile.exists()) {
-                String content = Files.readString(pomFile.toPath());
-                if (artifactId != null) {
-                    content = content.replaceAll("<description>.+</description>",
-                            "<description>Generated from " + artifactId + " archetype</description>");
-                }
-                content = content.replaceAll("<javafx\\.version>.+</javafx\\.version>",
-                        "<javafx.version>\\${javaFxVersion}</javafx.version>");
-                content = content.replaceAll("<maven\\.compiler\\.release>.+</maven\\.compiler\\.release>",
-                        "<maven.compiler.release>\\${javaVersion}</maven.compiler.release>");
-                content = content.replaceAll("<main\\.class>.+\\.Launcher</main\\.class>",
-                        "<main.class>\\${package}.Launcher</main.class>");
-                content = content.replaceAll("(?s)\s+?<url>.+?</url>\r\n", "");
-                content = content.replaceAll("(?s)\s+?<licenses>.+?</licenses>\r\n", "");
-                content = content.replaceAll("(?s)\s+?<developers>.+?</developers>\r\n", "");
-                content = content.replaceAll("(?s)\s+?<scm />\r\n", "");
-
-                Files.writeString(pomFile.toPath(), content);
-                System.out.println("Replaced pom.xml");
+                String name = artifactId;
+                rewrites.add(() -> rewrite(pomFile.toPath(), "artifactId=" + name,
+                        wholeFile(content -> rewriteProjectPom(content, name)), "pom.xml"));
             } else {
                 System.out.println("pom.xml not found: " + pomFile.getAbsolutePath());
             }
+
+            // Replace the content in
+            // project\target\generated-sources\archetype\src\main\resources\META-INF\maven\archetype-metadata.xml
+            File archetypeMetadataFile = new File(projectDir,
+                    "target/generated-sources/archetype/src/main/resources/META-INF/maven/archetype-metadata.xml");
+            if (archetypeMetadataFile.exists()) {
+                rewrites.add(() -> rewrite(archetypeMetadataFile.toPath(), "",
+                        wholeFile(MavenArchetypeRunner::rewriteArchetypeMetadata), "archetype-metadata.xml"));
+            }
+
             /*
              * Replace the content in all fxml files under
              * project/target/generated-sources/archetype/src/main/resources/archetype-
@@ -222,24 +258,39 @@ public class MavenArchetypeRunner {
             Path fxmlStartDir = projectDir.toPath()
                     .resolve(
                             "target/generated-sources/archetype/src/main/resources/archetype-resources/src/main/resources");
-            processResourceFiles(fxmlStartDir);
+            try (Stream<Path> paths = Files.walk(fxmlStartDir)) {
+                paths.filter(path -> path.toString().endsWith(".fxml"))
+                        .forEach(path -> rewrites.add(() -> rewrite(path, "",
+                                lineByLine(MavenArchetypeRunner::rewriteFxmlLine), path.getFileName().toString())));
+            }
 
-            // Replace the content in
-            // project\target\generated-sources\archetype\src\main\resources\META-INF\maven\archetype-metadata.xml
-            File archetypeMetadataFile = new File(projectDir,
-                    "target/generated-sources/archetype/src/main/resources/META-INF/maven/archetype-metadata.xml");
-            if (archetypeMetadataFile.exists()) {
-                String content = Files.readString(archetypeMetadataFile.toPath());
-                content = content.replaceAll(
-                        "<fileSet encoding=\"UTF-8\">\\s*<directory>src/main/resources</directory>",
-                        "<fileSet filtered=\"true\" packaged=\"true\" encoding=\"UTF-8\"><directory>src/main/resources</directory>");
-                content = content.replaceAll(
-                        "<fileSet encoding=\"UTF-8\">\\s*<directory>.vscode</directory>",
-                        "<fileSet filtered=\"true\" encoding=\"UTF-8\"><directory>.vscode</directory>");
-                Files.writeString(archetypeMetadataFile.toPath(), content);
-                System.out.println("Replaced archetype-metadata.xml");
+            /*
+             * The fxml files of the tests name controllers of the tests, so they
+             * need the same replacements. They are already under
+             * __packageInPathFormat__, so they are not moved.
+             * project/target/generated-sources/archetype/src/main/resources/archetype-
+             * resources/src/test/resources/
+             */
+            Path testFxmlStartDir = projectDir.toPath()
+                    .resolve(
+                            "target/generated-sources/archetype/src/main/resources/archetype-resources/src/test/resources");
+            if (Files.exists(testFxmlStartDir)) {
+                try (Stream<Path> paths = Files.walk(testFxmlStartDir)) {
+                    paths.filter(path -> path.toString().endsWith(".fxml"))
+                            .forEach(path -> rewrites.add(() -> rewrite(path, "",
+                                    lineByLine(MavenArchetypeRunner::rewriteFxmlLine),
+                                    "test " + path.getFileName())));
+                }
             }
 
+            // The files are independent of each other, so rewrite them in parallel.
+            Files.createDirectories(rewriteCacheDir);
+            rewrites.parallelStream().forEach(Runnable::run);
+            stepDone("rewrite", start, cachedRewrites.get() == 0);
+
+            start = System.nanoTime();
+            moveResourceFiles(fxmlStartDir);
+
             // There are still .fxml files in this location, so delete them recursively.
             // project\target\generated-sources\archetype\target\classes\archetype-resources\src\main\resources
             Path targetClassesDir = projectDir.toPath()
@@ -258,7 +309,8 @@ public class MavenArchetypeRunner {
                             });
                 }
             }
-
+            stepDone("move resources", start, true);
+            succeeded = exitCode == 0;
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -273,29 +325,192 @@ public class MavenArchetypeRunner {
             System.out.println("Copied archetype-post-generate.groovy to " + groovyDestination);
         } catch (IOException e) {
             System.err.println("Failed to copy archetype-post-generate.groovy: " + e.getMessage());
+            succeeded = false;
         }
+
+        if (succeeded) {
+            // Only a complete archetype may be skipped by the next incremental run.
+            try {
+                pruneRewriteCache();
+                saveManifest(manifestFile, manifest, previous, archetypeDir);
+            } catch (IOException e) {
+                System.err.println("Failed to save " + manifestFile + ": " + e.getMessage());
+            }
+        }
+        reportTimes(previous, false);
     }
 
-    static private void processResourceFiles(Path directory) throws IOException {
-        try (Stream<Path> paths = Files.walk(directory)) {
-            paths.filter(path -> path.toString().endsWith(".fxml"))
-                    .forEach(path -> {
-                        try {
-                            String content = Files.readString(path);
-                            content = content.replaceAll("xmlns=\"http://javafx.com/javafx/[^\"]+\"",
-                                    "xmlns=\"http://javafx.com/javafx/\\${javaFxVersion}\"");
-                            content = content.replaceAll("fx:controller=\"[^\"]+\\.([^\"]+)\"",
-                                    "fx:controller=\"\\${package}.$1\"");
-
-                            // Write back to the same location.
-                            Files.writeString(path, content);
-                            System.out.println("Replaced " + path.getFileName());
-                        } catch (IOException e) {
-                            throw new RuntimeException("Failed to process FXML file: " + path, e);
-                        }
-                    });
+    static int run(List<String> command, File directory) {
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.directory(directory);
+        pb.redirectErrorStream(true); // Merge standard output and standard error.
+
+        try {
+            Process process = pb.start();
+            // Read the output of the process.
+            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                System.out.println(line);
+            }
+
+            // Wait for the process to finish.
+            int exitCode = process.waitFor();
+            System.out.println(command.toString() + " has been done. Exit code: " + exitCode);
+            return exitCode;
+        } catch (Exception e) {
+            System.err.println(command + " failed: " + e.getMessage());
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    static String rewriteArchetypePom(String content, String artifactId) {
+        if (artifactId != null) {
+            content = content.replaceAll("<artifactId>([^<]+)-archetype</artifactId>",
+                    "<artifactId>" + artifactId + "</artifactId>");
+        }
+        content = content.replaceAll("<name>([^<]+)-archetype</name>",
+                "<name>$1</name>");
+        // (?s) means DOTALL mode
+        content = content.replaceAll("(?s)<licenses>.+?</licenses>", LICENSES);
+        content = content.replaceAll("(?s)<developers>.+?</developers>", DEVELOPERS);
+        content = content.replaceAll("<scm />",
+                "<scm>\n<connection>scm:git:git://github.com/" + GITHUB_ACCOUNT + "/" + artifactId
+                        + ".git</connection>\n<developerConnection>scm:git:ssh://github.com:" + GITHUB_ACCOUNT
+                        + "/" + artifactId + ".git</developerConnection>\n<url>https://github.com/"
+                        + GITHUB_ACCOUNT + "/" + artifactId + "/tree/main</url>\n</scm>");
+        String gpgPlugin = "";
+        if (System.getProperty("gpg") == null || !System.getProperty("gpg").equals("false")) {
+            gpgPlugin = GPG_PLUGIN;
         }
+        String publishPluginContent = String.format(PUBLISH_PLUGIN, gpgPlugin);
+        return content.replaceAll("</pluginManagement>", "</pluginManagement>\n" + publishPluginContent);
+    }
+
+    static String rewriteProjectPom(String content, String artifactId) {
+        if (artifactId != null) {
+            content = content.replaceAll("<description>.+</description>",
+                    "<description>Generated from " + artifactId + " archetype</description>");
+        }
+        content = content.replaceAll("<javafx\\.version>.+</javafx\\.version>",
+                "<javafx.version>\\${javaFxVersion}</javafx.version>");
+        content = content.replaceAll("<maven\\.compiler\\.release>.+</maven\\.compiler\\.release>",
+                "<maven.compiler.release>\\${javaVersion}</maven.compiler.release>");
+        content = content.replaceAll("<main\\.class>.+\\.Launcher</main\\.class>",
+                "<main.class>\\${package}.Launcher</main.class>");
+        content = content.replaceAll(
+                "<fxml\\.compiler\\.class>.+\\.FxmlViewGenerator</fxml\\.compiler\\.class>",
+                "<fxml.compiler.class>\\${package}.FxmlViewGenerator</fxml.compiler.class>");
+        content = content.replaceAll(
+                "<css\\.compiler\\.class>.+\\.StylesheetCompiler</css\\.compiler\\.class>",
+                "<css.compiler.class>\\${package}.StylesheetCompiler</css.compiler.class>");
+        content = content.replaceAll(
+                "<native\\.config\\.class>.+\\.NativeImageConfig</native\\.config\\.class>",
+                "<native.config.class>\\${package}.NativeImageConfig</native.config.class>");
+        content = content.replaceAll(
+                "<perf\\.harness\\.class>.+\\.PerfHarness</perf\\.harness\\.class>",
+                "<perf.harness.class>\\${package}.PerfHarness</perf.harness.class>");
+        content = content.replaceAll("(?s)\s+?<url>.+?</url>\r\n", "");
+        content = content.replaceAll("(?s)\s+?<licenses>.+?</licenses>\r\n", "");
+        content = content.replaceAll("(?s)\s+?<developers>.+?</developers>\r\n", "");
+        return content.replaceAll("(?s)\s+?<scm />\r\n", "");
+    }
+
+    static String rewriteArchetypeMetadata(String content) {
+        content = content.replaceAll(
+                "<fileSet encoding=\"UTF-8\">\\s*<directory>src/main/resources</directory>",
+                "<fileSet filtered=\"true\" packaged=\"true\" encoding=\"UTF-8\"><directory>src/main/resources</directory>");
+        // The ${package} of the controllers in the fxml files of the tests.
+        content = content.replaceAll(
+                "<fileSet encoding=\"UTF-8\">(\\s*<directory>src/test/resources</directory>\\s*<includes>\\s*<include>\\*\\*/\\*\\.fxml</include>)",
+                "<fileSet filtered=\"true\" encoding=\"UTF-8\">$1");
+        return content.replaceAll(
+                "<fileSet encoding=\"UTF-8\">\\s*<directory>.vscode</directory>",
+                "<fileSet filtered=\"true\" encoding=\"UTF-8\"><directory>.vscode</directory>");
+    }
+
+    /**
+     * Rewrites a line of an FXML file. The replaced attributes never span lines.
+     */
+    static String rewriteFxmlLine(String line) {
+        line = line.replaceAll("xmlns=\"http://javafx.com/javafx/[^\"]+\"",
+                "xmlns=\"http://javafx.com/javafx/\\${javaFxVersion}\"");
+        return line.replaceAll("fx:controller=\"[^\"]+\\.([^\"]+)\"",
+                "fx:controller=\"\\${package}.$1\"");
+    }
+
+    /**
+     * For the POM files and the metadata, whose patterns span lines. They are small.
+     */
+    static Rewriter wholeFile(UnaryOperator<String> replace) {
+        return (in, out) -> {
+            StringBuilder content = new StringBuilder();
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                content.append(buffer, 0, n);
+            }
+            out.write(replace.apply(content.toString()));
+        };
+    }
+
+    /**
+     * Streams the file line by line, keeping the line separators, so that a
+     * large file is never held in memory.
+     */
+    static Rewriter lineByLine(UnaryOperator<String> replace) {
+        return (in, out) -> {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1) {
+                line.append((char) c);
+                if (c == '\n') {
+                    out.write(replace.apply(line.toString()));
+                    line.setLength(0);
+                }
+            }
+            if (!line.isEmpty()) {
+                out.write(replace.apply(line.toString()));
+            }
+        };
+    }
 
+    /**
+     * Rewrites the file in place, or restores the result of an earlier run if
+     * the same content was already rewritten with the same rules.
+     *
+     * @param salt what else the result depends on besides the content, e.g. the artifactId
+     */
+    static void rewrite(Path path, String salt, Rewriter rewriter, String label) {
+        try {
+            String key = sha256(rulesHash + "\n" + salt + "\n" + label + "\n" + hashFile(path));
+            usedCacheEntries.add(key);
+            Path cached = rewriteCacheDir.resolve(key);
+            if (Files.exists(cached)) {
+                Files.copy(cached, path, StandardCopyOption.REPLACE_EXISTING);
+                cachedRewrites.incrementAndGet();
+                System.out.println("Unchanged " + label);
+                return;
+            }
+            Path temp = Files.createTempFile(rewriteCacheDir, key, ".tmp");
+            try {
+                try (BufferedReader in = Files.newBufferedReader(path);
+                        Writer out = Files.newBufferedWriter(temp)) {
+                    rewriter.rewrite(in, out);
+                }
+                Files.copy(temp, path, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            System.out.println("Replaced " + label);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to process " + path, e);
+        }
+    }
+
+    static void moveResourceFiles(Path directory) throws IOException {
         // After all replacements, move the files.
         try (Stream<Path> paths = Files.walk(directory)) {
             paths.filter(path -> !Files.isDirectory(path))
@@ -324,8 +539,8 @@ public class MavenArchetypeRunner {
         try (Stream<Path> paths = Files.walk(directory, Integer.MAX_VALUE)) {
             paths.sorted((a, b) -> b.compareTo(a))
                     .filter(path -> {
-                        try {
-                            return Files.isDirectory(path) && Files.list(path).count() == 0;
+                        try (Stream<Path> children = Files.list(path)) {
+                            return Files.isDirectory(path) && children.findAny().isEmpty();
                         } catch (IOException e) {
                             return false;
                         }
@@ -340,4 +555,175 @@ public class MavenArchetypeRunner {
                     });
         }
     }
+
+    /**
+     * Hashes everything the archetype is generated from: the files under
+     * project/ except target/, the files next to this runner, and the options.
+     */
+    static String hashSources(Path projectDir) throws IOException {
+        List<Path> files;
+        Path target = projectDir.resolve("target");
+        try (Stream<Path> paths = Files.walk(projectDir)) {
+            files = paths.filter(path -> !path.startsWith(target) && Files.isRegularFile(path)).sorted().toList();
+        }
+        // Hash the files in parallel, then combine them in a stable order.
+        List<String> hashes = files.parallelStream().map(path -> {
+            try {
+                return projectDir.relativize(path).toString().replace('\\', '/') + "=" + hashFile(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).toList();
+        StringBuilder all = new StringBuilder(rulesHash).append('\n');
+        hashes.forEach(hash -> all.append(hash).append('\n'));
+        for (String name : List.of("archetype.properties", "archetype-post-generate.groovy")) {
+            all.append(name).append('=').append(hashFile(new File(System.getProperty("user.dir"), name).toPath()))
+                    .append('\n');
+        }
+        return sha256(all.toString());
+    }
+
+    /**
+     * Returns whether the outputs recorded in the manifest are still there and unchanged.
+     */
+    static boolean outputsMatch(Path archetypeDir, Properties manifest) throws IOException {
+        boolean any = false;
+        for (String key : manifest.stringPropertyNames()) {
+            if (!key.startsWith("output.")) {
+                continue;
+            }
+            any = true;
+            Path path = archetypeDir.resolve(key.substring("output.".length()));
+            if (!Files.isRegularFile(path) || !hashFile(path).equals(manifest.getProperty(key))) {
+                System.out.println("Changed output: " + path);
+                return false;
+            }
+        }
+        return any;
+    }
+
+    static void saveManifest(Path manifestFile, Properties manifest, Properties previous, Path archetypeDir)
+            throws IOException {
+        try (Stream<Path> paths = Files.walk(archetypeDir)) {
+            // Skip the build output of the archetype itself, e.g. after "mvn install".
+            Path target = archetypeDir.resolve("target");
+            for (Path path : paths.filter(path -> !path.startsWith(target) && Files.isRegularFile(path)).toList()) {
+                manifest.setProperty("output." + archetypeDir.relativize(path).toString().replace('\\', '/'),
+                        hashFile(path));
+            }
+        }
+        // Keep the duration of each step when it did all its work, to report the time saved later.
+        for (String key : previous.stringPropertyNames()) {
+            if (key.startsWith("time.")) {
+                manifest.setProperty(key, previous.getProperty(key));
+            }
+        }
+        for (String step : fullSteps) {
+            manifest.setProperty("time." + step, stepTimes.get(step).toString());
+        }
+        Files.createDirectories(manifestFile.getParent());
+        try (Writer out = Files.newBufferedWriter(manifestFile)) {
+            manifest.store(out, "Generated by MavenArchetypeRunner");
+        }
+    }
+
+    static Properties loadManifest(Path manifestFile) {
+        Properties manifest = new Properties();
+        if (Files.exists(manifestFile)) {
+            try (BufferedReader in = Files.newBufferedReader(manifestFile)) {
+                manifest.load(in);
+            } catch (IOException e) {
+                System.err.println("Ignored unreadable " + manifestFile + ": " + e.getMessage());
+            }
+        }
+        return manifest;
+    }
+
+    static void pruneRewriteCache() throws IOException {
+        try (Stream<Path> paths = Files.list(rewriteCacheDir)) {
+            for (Path path : paths.toList()) {
+                if (!usedCacheEntries.contains(path.getFileName().toString())) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted((a, b) -> b.compareTo(a)).toList()) {
+                Files.delete(path);
+            }
+        }
+        System.out.println("Deleted " + directory);
+    }
+
+    /**
+     * Records the duration of a step.
+     *
+     * @param full whether the step did all its work, so that its duration is the baseline of later runs
+     */
+    static void stepDone(String step, long startNanos, boolean full) {
+        stepTimes.put(step, (System.nanoTime() - startNanos) / 1_000_000);
+        if (full) {
+            fullSteps.add(step);
+        }
+    }
+
+    /**
+     * Prints the duration of each step, and the time saved compared to the
+     * last run where the step did all its work.
+     *
+     * @param skipped whether the regeneration was skipped, so that every step not run was saved
+     */
+    static void reportTimes(Properties previous, boolean skipped) {
+        System.out.println("Step times:");
+        long savedTotal = 0;
+        Set<String> steps = new LinkedHashSet<>(stepTimes.keySet());
+        if (skipped) {
+            previous.stringPropertyNames().stream().filter(key -> key.startsWith("time.")).sorted()
+                    .forEach(key -> steps.add(key.substring("time.".length())));
+        }
+        for (String step : steps) {
+            Long time = stepTimes.get(step);
+            String baseline = previous.getProperty("time." + step);
+            long saved = baseline != null && !fullSteps.contains(step)
+                    ? Math.max(0, Long.parseLong(baseline) - (time != null ? time : 0))
+                    : 0;
+            savedTotal += saved;
+            System.out.printf("  %-20s %8s%s%n", step, time != null ? time + " ms" : "skipped",
+                    saved > 0 ? " (saved " + saved + " ms)" : "");
+        }
+        if (cachedRewrites.get() > 0) {
+            System.out.println("  " + cachedRewrites.get() + " file(s) restored from the rewrite cache");
+        }
+        System.out.println("  Total saved: " + savedTotal + " ms");
+    }
+
+    static String hashFile(Path path) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static String sha256(String text) {
+        return HexFormat.of().formatHex(newDigest().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -0,0 +1,212 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Class data sharing for the jpackage app image, run by the cds profile.
+ * <p>
+ * train: Starts the app image once with --exit-after-startup, so that it goes
+ * through Launcher, App and main.fxml, and dumps the loaded classes at exit:
+ * into a dynamic AppCDS archive, or into an AOT cache on JDK 25 and later.
+ * The archive is written into the app directory of the image, and the
+ * matching java-options line is added to the launcher's .cfg file.
+ * <p>
+ * compare: Starts the app image several times with and without the archive
+ * and prints the median time to first pixel and time to interactive.
+ * <p>
+ * Usage:
+ * java ClassDataSharing.java train &lt;launcher&gt; &lt;app dir&gt; &lt;archive base name&gt;
+ * java ClassDataSharing.java compare &lt;launcher&gt; &lt;app dir&gt; [runs]
+ */
+public class ClassDataSharing {
+    static final String EXIT_AFTER_STARTUP = "--exit-after-startup";
+    static final String JAVA_OPTIONS_SECTION = "[JavaOptions]";
+    static final String JAVA_OPTIONS_KEY = "java-options=";
+    static final Pattern ARCHIVE_OPTION = Pattern.compile("java-options=(-XX:(SharedArchiveFile|AOTCache)=.*)");
+    static final Pattern MILESTONE = Pattern.compile("\\s*(\\S+) at (\\d+) ms");
+    /** The AOT cache (JEP 483, JEP 514) can be created in a single training run since JDK 25. */
+    static final int AOT_CACHE_FEATURE_VERSION = 25;
+
+    record Timings(long firstPixel, long interactive) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: ClassDataSharing train <launcher> <app dir> <archive base name>");
+            System.err.println("       ClassDataSharing compare <launcher> <app dir> [runs]");
+            System.exit(1);
+        }
+        var launcher = Path.of(args[1]);
+        var appDir = Path.of(args[2]);
+        switch (args[0]) {
+            case "train" -> train(launcher, appDir, args[3]);
+            case "compare" -> compare(launcher, appDir, args.length > 3 ? Integer.parseInt(args[3]) : 5);
+            default -> throw new IllegalArgumentException("Unknown command: " + args[0]);
+        }
+    }
+
+    static void train(Path launcher, Path appDir, String baseName) throws IOException, InterruptedException {
+        // The app image runs on a runtime linked from the JDK that runs this build.
+        boolean aot = Runtime.version().feature() >= AOT_CACHE_FEATURE_VERSION;
+        var archiveName = baseName + (aot ? ".aot" : ".jsa");
+        var archive = appDir.resolve(archiveName);
+        var cfg = findCfg(appDir);
+
+        // Train without any archive option, so that the run records from scratch.
+        writeArchiveOption(cfg, null);
+        Files.deleteIfExists(archive);
+
+        var dumpOption = aot
+                ? "-XX:AOTCacheOutput=" + archive
+                : "-XX:ArchiveClassesAtExit=" + archive;
+        System.out.println("Training run: " + launcher + " with " + dumpOption);
+        run(launcher, dumpOption, false);
+        if (!Files.isRegularFile(archive)) {
+            throw new IllegalStateException("The training run did not create " + archive);
+        }
+
+        var runtimeOption = aot
+                ? "-XX:AOTCache=$APPDIR/" + archiveName
+                : "-XX:SharedArchiveFile=$APPDIR/" + archiveName;
+        writeArchiveOption(cfg, runtimeOption);
+        System.out.println("Created " + archive + " (" + Files.size(archive) / 1024 + " KiB)");
+        System.out.println("Added java-options=" + runtimeOption + " to " + cfg);
+    }
+
+    static void compare(Path launcher, Path appDir, int runs) throws IOException, InterruptedException {
+        var cfg = findCfg(appDir);
+        var archiveOption = readArchiveOption(cfg);
+        if (archiveOption == null) {
+            throw new IllegalStateException("No archive in " + cfg + "; run the training first.");
+        }
+        // The first start warms up the OS file cache for both variants.
+        run(launcher, null, true);
+
+        var with = new ArrayList<Timings>();
+        var without = new ArrayList<Timings>();
+        try {
+            for (int i = 0; i < runs; i++) {
+                // Alternate to spread any drift of the machine evenly.
+                writeArchiveOption(cfg, archiveOption);
+                with.add(run(launcher, null, true));
+                writeArchiveOption(cfg, null);
+                without.add(run(launcher, null, true));
+            }
+        } finally {
+            writeArchiveOption(cfg, archiveOption);
+        }
+
+        System.out.printf("%-56s %16s %16s%n", "Median of " + runs + " runs", "first pixel", "interactive");
+        print("without archive", without);
+        print(archiveOption, with);
+        long before = median(without.stream().map(Timings::interactive).toList());
+        long after = median(with.stream().map(Timings::interactive).toList());
+        System.out.printf("Time to interactive: %d ms -> %d ms (%+.1f%%)%n",
+                before, after, (after - before) * 100.0 / before);
+    }
+
+    static void print(String label, List<Timings> timings) {
+        System.out.printf("%-56s %13d ms %13d ms%n", label,
+                median(timings.stream().map(Timings::firstPixel).toList()),
+                median(timings.stream().map(Timings::interactive).toList()));
+    }
+
+    static long median(List<Long> values) {
+        var sorted = values.stream().sorted().toList();
+        return sorted.get(sorted.size() / 2);
+    }
+
+    /**
+     * Starts the app image until its main window is interactive and returns
+     * the startup timings it prints. A launcher without a console, like the
+     * default Windows launcher, prints nothing; then the timings are -1.
+     */
+    static Timings run(Path launcher, String extraJavaOption, boolean requireTimings)
+            throws IOException, InterruptedException {
+        var builder = new ProcessBuilder(launcher.toString(), EXIT_AFTER_STARTUP).redirectErrorStream(true);
+        if (extraJavaOption != null) {
+            // The launcher does not take JVM options; the JVM reads them from this variable.
+            var inherited = System.getenv("JAVA_TOOL_OPTIONS");
+            builder.environment().put("JAVA_TOOL_OPTIONS",
+                    inherited != null ? inherited + " " + extraJavaOption : extraJavaOption);
+        }
+        var process = builder.start();
+        long firstPixel = -1;
+        long interactive = -1;
+        var output = new ArrayList<String>();
+        try (var reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.add(line);
+                var matcher = MILESTONE.matcher(line);
+                if (matcher.matches()) {
+                    switch (matcher.group(1)) {
+                        case "first-pixel" -> firstPixel = Long.parseLong(matcher.group(2));
+                        case "interactive" -> interactive = Long.parseLong(matcher.group(2));
+                        default -> {
+                        }
+                    }
+                }
+            }
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0 || (requireTimings && interactive < 0)) {
+            throw new IllegalStateException(launcher + " exited with " + exitCode
+                    + (interactive < 0 ? " without printing its startup timings" : "") + ":\n"
+                    + String.join("\n", output));
+        }
+        return new Timings(firstPixel, interactive);
+    }
+
+    static Path findCfg(Path appDir) throws IOException {
+        try (var files = Files.list(appDir)) {
+            var cfgs = files.filter(p -> p.toString().endsWith(".cfg")).toList();
+            if (cfgs.size() != 1) {
+                throw new IllegalStateException("Expected one launcher .cfg in " + appDir + " but found " + cfgs);
+            }
+            return cfgs.get(0);
+        }
+    }
+
+    /**
+     * Returns the archive JVM option of the .cfg file, or null if there is none.
+     */
+    static String readArchiveOption(Path cfg) throws IOException {
+        for (var line : Files.readAllLines(cfg)) {
+            var matcher = ARCHIVE_OPTION.matcher(line);
+            if (matcher.matches()) {
+                return matcher.group(1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the archive JVM option of the .cfg file.
+     *
+     * @param option the new JVM option, or null to remove it
+     */
+    static void writeArchiveOption(Path cfg, String option) throws IOException {
+        var result = new ArrayList<String>();
+        for (var line : Files.readAllLines(cfg)) {
+            if (ARCHIVE_OPTION.matcher(line).matches()) {
+                continue;
+            }
+            result.add(line);
+            if (line.equals(JAVA_OPTIONS_SECTION) && option != null) {
+                result.add(JAVA_OPTIONS_KEY + option);
+            }
+        }
+        if (option != null && !result.contains(JAVA_OPTIONS_SECTION)) {
+            result.add(JAVA_OPTIONS_SECTION);
+            result.add(JAVA_OPTIONS_KEY + option);
+        }
+        Files.write(cfg, result);
+    }
+}
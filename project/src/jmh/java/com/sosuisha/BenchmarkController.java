@@ -0,0 +1,23 @@
+package com.sosuisha;
+
+import javafx.fxml.FXML;
+import javafx.scene.control.Label;
+
+/**
+ * Controller of the synthetic FXML, taking the Model like MainController.
+ */
+public class BenchmarkController {
+    private final Model model;
+
+    @FXML
+    private Label label0;
+
+    public BenchmarkController(Model model) {
+        this.model = model;
+    }
+
+    @FXML
+    private void initialize() {
+        label0.setText(model.getMessage());
+    }
+}
@@ -0,0 +1,20 @@
+package com.sosuisha;
+
+import java.util.ListResourceBundle;
+
+/**
+ * ResourceBundle with the item.N keys used by the synthetic FXML.
+ */
+public class BenchmarkMessages extends ListResourceBundle {
+    /** The number of keys. */
+    static final int SIZE = 1000;
+
+    @Override
+    protected Object[][] getContents() {
+        var contents = new Object[SIZE][];
+        for (int i = 0; i < SIZE; i++) {
+            contents[i] = new Object[] { "item." + i, "Item " + i };
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,36 @@
+package com.sosuisha;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares controller instantiation through the cached MethodHandle factory
+ * with the per-load reflection path that SceneBuilder used before.
+ * <p>
+ * Run with: mvn -Pjmh compile exec:exec -Djmh.args="ControllerFactoryBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ControllerFactoryBenchmark {
+    private final Object[] args = { new Model() };
+
+    @Benchmark
+    public Object reflection() throws Exception {
+        var paramTypes = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            paramTypes[i] = args[i] != null ? args[i].getClass() : Object.class;
+        }
+        return MainController.class.getDeclaredConstructor(paramTypes).newInstance(args);
+    }
+
+    @Benchmark
+    public Object cachedMethodHandle() throws Throwable {
+        return ControllerFactory.newInstance(MainController.class, args);
+    }
+}
@@ -0,0 +1,130 @@
+package com.sosuisha;
+
+import javafx.application.Platform;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Headless JavaFX startup and synthetic FXML/CSS files for the benchmarks.
+ * <p>
+ * The FX toolkit runs on Monocle's headless platform with the software
+ * pipeline, so the benchmarks need no display. The synthetic files are
+ * written to a temporary directory, so they are never compiled into view
+ * classes; they are loaded by the template cache or FXMLLoader.
+ */
+final class FxBenchmarkSupport {
+    private static boolean started;
+    private static Path directory;
+
+    private FxBenchmarkSupport() {
+    }
+
+    /**
+     * Starts the FX toolkit once per JVM.
+     */
+    static synchronized void startFx() {
+        if (started) {
+            return;
+        }
+        setIfAbsent("glass.platform", "Monocle");
+        setIfAbsent("monocle.platform", "Headless");
+        setIfAbsent("prism.order", "sw");
+        var latch = new CountDownLatch(1);
+        Platform.startup(latch::countDown);
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Platform.setImplicitExit(false);
+        started = true;
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    /**
+     * Writes a synthetic FXML file: a VBox of rows, each an HBox with a
+     * Label and a Button, i.e. three nodes per row.
+     *
+     * @param rows       the number of rows
+     * @param controller whether to set fx:controller to {@link BenchmarkController}
+     * @param i18n       whether the labels use %item.N keys of {@link BenchmarkMessages}
+     * @return the URL of the file
+     */
+    static URL syntheticFxml(int rows, boolean controller, boolean i18n) {
+        var fxml = new StringBuilder();
+        fxml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<?import javafx.scene.control.Button?>\n")
+                .append("<?import javafx.scene.control.Label?>\n")
+                .append("<?import javafx.scene.layout.HBox?>\n")
+                .append("<?import javafx.scene.layout.VBox?>\n")
+                .append("<VBox xmlns=\"http://javafx.com/javafx/23\" xmlns:fx=\"http://javafx.com/fxml/1\"")
+                .append(" styleClass=\"bench-root\"");
+        if (controller) {
+            fxml.append(" fx:controller=\"").append(BenchmarkController.class.getName()).append('"');
+        }
+        fxml.append(">\n  <children>\n");
+        for (int i = 0; i < rows; i++) {
+            fxml.append("    <HBox styleClass=\"row\" spacing=\"4.0\">\n      <children>\n")
+                    .append("        <Label fx:id=\"label").append(i).append("\" text=\"")
+                    .append(i18n ? "%item." + i % BenchmarkMessages.SIZE : "Item " + i).append("\" />\n")
+                    .append("        <Button text=\"Open\" />\n")
+                    .append("      </children>\n    </HBox>\n");
+        }
+        fxml.append("  </children>\n</VBox>\n");
+        return write("bench-" + rows + (controller ? "-ctrl" : "") + (i18n ? "-i18n" : "") + ".fxml",
+                fxml.toString());
+    }
+
+    /**
+     * Writes synthetic stylesheets with class, pseudo-class, descendant and id selectors.
+     *
+     * @param count the number of stylesheets
+     * @return their URLs
+     */
+    static List<URL> syntheticStylesheets(int count) {
+        var result = new ArrayList<URL>();
+        for (int i = 0; i < count; i++) {
+            var css = new StringBuilder()
+                    .append(".bench-root { -fx-background-color: #f").append(i % 10).append("f; }\n")
+                    .append(".row { -fx-padding: ").append(i + 1).append("; -fx-alignment: center-left; }\n")
+                    .append(".row:hover { -fx-background-color: #eee; }\n")
+                    .append(".bench-root .row .label { -fx-text-fill: #33").append(i % 10).append("; }\n")
+                    .append(".button { -fx-font-size: ").append(11 + i).append("px; }\n")
+                    .append(".button:pressed { -fx-background-color: #ccc; }\n");
+            for (int id = 0; id < 20; id++) {
+                css.append("#label").append(id * 5 + i).append(" { -fx-font-weight: bold; }\n");
+            }
+            result.add(write("bench-" + i + ".css", css.toString()));
+        }
+        return result;
+    }
+
+    private static URL write(String name, String content) {
+        try {
+            var file = directory().resolve(name);
+            Files.writeString(file, content);
+            return file.toUri().toURL();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static synchronized Path directory() throws IOException {
+        if (directory == null) {
+            directory = Files.createTempDirectory("fxml-bench");
+            directory.toFile().deleteOnExit();
+        }
+        return directory;
+    }
+}
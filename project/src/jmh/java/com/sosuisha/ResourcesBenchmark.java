@@ -0,0 +1,57 @@
+package com.sosuisha;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+import javafx.scene.Scene;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures building synthetic FXML whose labels are %item.N resource keys,
+ * with the bundle looked up by resources(baseName, locale) on every build
+ * or passed in already loaded.
+ * <p>
+ * Run with: mvn -Pjmh compile exec:exec -Djmh.args="ResourcesBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResourcesBenchmark {
+    private static final String BASE_NAME = BenchmarkMessages.class.getName();
+
+    @Param({ "10", "100", "1000" })
+    public int rows;
+
+    private URL fxml;
+    private ResourceBundle bundle;
+
+    @Setup
+    public void setup() {
+        FxBenchmarkSupport.startFx();
+        fxml = FxBenchmarkSupport.syntheticFxml(rows, false, true);
+        bundle = ResourceBundle.getBundle(BASE_NAME, Locale.ROOT);
+    }
+
+    @Benchmark
+    public Scene baseName() throws IOException {
+        return SceneBuilder.fromFxml(fxml)
+                .resources(BASE_NAME, Locale.ROOT)
+                .build();
+    }
+
+    @Benchmark
+    public Scene bundle() throws IOException {
+        return SceneBuilder.fromFxml(fxml)
+                .resources(bundle)
+                .build();
+    }
+}
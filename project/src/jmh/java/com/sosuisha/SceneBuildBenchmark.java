@@ -0,0 +1,65 @@
+package com.sosuisha;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import javafx.scene.Scene;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures SceneBuilder.build() on synthetic FXML of increasing size,
+ * with and without a controller created through newController.
+ * <p>
+ * "template" builds from the cached template; "FXMLLoader" disables the
+ * template cache so that every build parses the FXML.
+ * <p>
+ * Run with: mvn -Pjmh compile exec:exec -Djmh.args="SceneBuildBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SceneBuildBenchmark {
+    @Param({ "10", "100", "1000" })
+    public int rows;
+
+    @Param({ "template", "FXMLLoader" })
+    public String loader;
+
+    private final Model model = new Model();
+    private final FxmlTemplateCache cache = new FxmlTemplateCache(4);
+    private URL plain;
+    private URL withController;
+
+    @Setup
+    public void setup() {
+        FxBenchmarkSupport.startFx();
+        plain = FxBenchmarkSupport.syntheticFxml(rows, false, false);
+        withController = FxBenchmarkSupport.syntheticFxml(rows, true, false);
+    }
+
+    private FxmlTemplateCache cache() {
+        return loader.equals("template") ? cache : null;
+    }
+
+    @Benchmark
+    public Scene build() throws IOException {
+        return SceneBuilder.fromFxml(plain)
+                .templateCache(cache())
+                .build();
+    }
+
+    @Benchmark
+    public Scene buildWithController() throws IOException {
+        return SceneBuilder.fromFxml(withController)
+                .templateCache(cache())
+                .newController(model)
+                .build();
+    }
+}
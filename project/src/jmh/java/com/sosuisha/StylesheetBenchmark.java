@@ -0,0 +1,55 @@
+package com.sosuisha;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javafx.scene.Scene;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the first CSS pass over a Scene built with several css(...) stylesheets.
+ * A fresh Scene is built before each invocation, because CSS is only fully
+ * applied once per node.
+ * <p>
+ * Run with: mvn -Pjmh compile exec:exec -Djmh.args="StylesheetBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StylesheetBenchmark {
+    @Param({ "100" })
+    public int rows;
+
+    @Param({ "1", "4", "8" })
+    public int stylesheets;
+
+    private SceneBuilder builder;
+    private Scene scene;
+
+    @Setup
+    public void setup() {
+        FxBenchmarkSupport.startFx();
+        builder = SceneBuilder.fromFxml(FxBenchmarkSupport.syntheticFxml(rows, false, false));
+        for (var sheet : FxBenchmarkSupport.syntheticStylesheets(stylesheets)) {
+            builder.css(sheet);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void buildScene() throws IOException {
+        scene = builder.build();
+    }
+
+    @Benchmark
+    public Scene applyCss() {
+        scene.getRoot().applyCss();
+        return scene;
+    }
+}
@@ -2,55 +2,203 @@ package com.sosuisha;
 
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Label;
+import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * JavaFX MVC(Model-View-Controller) application
  */
 public class App extends Application {
 
+    private static final System.Logger LOGGER = System.getLogger(App.class.getName());
+
+    /**
+     * Program argument that makes the application print its startup timings and
+     * exit as soon as the main window is interactive. Used by the class data
+     * sharing training run and startup comparison of the cds profile.
+     */
+    static final String EXIT_AFTER_STARTUP = "--exit-after-startup";
+
+    /**
+     * Program argument that installs the {@link FrameMonitor} and registers
+     * it with JMX. Without it, windows are not monitored at all.
+     */
+    static final String MONITOR = "--monitor";
+
+    /**
+     * Program argument that installs the {@link FrameMonitor} like
+     * {@link #MONITOR} and also shows its on-screen overlay.
+     */
+    static final String MONITOR_OVERLAY = "--monitor-overlay";
+
+    /**
+     * System property with the path of the {@link ModelStore} file, e.g.
+     * {@code -Dmodel.store=/tmp/myapp/model.snapshot}. Without it, the Model
+     * starts empty and is not saved, so that the applications generated from
+     * this template do not share a file in the user's home directory.
+     */
+    static final String MODEL_STORE_PROPERTY = "model.store";
+
+    /** Runs the warm-up stages in parallel. */
+    private final ExecutorService startupExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /** Saves the Model; null until the Model is restored, or if it cannot be. */
+    private volatile ModelStore modelStore;
+
     /**
      * Called when the application is started.
+     * <p>
+     * Startup is staged so that something appears on screen as early as possible:
+     * <ol>
+     * <li>A splash window is shown within the first frames.</li>
+     * <li>The Model, the FXML and CSS of the main window, and the classes they
+     * reference are warmed up in parallel off the FX Application Thread.</li>
+     * <li>The main window replaces the splash window when everything is ready.</li>
+     * </ol>
+     * The timings of each stage are recorded in {@link StartupTimings}.
      * @param stage the primary stage for this application
      */
     @Override
     public void start(Stage stage) {
+        var timings = StartupTimings.getDefault();
+        timings.milestone("fx-start");
+
+        var args = getParameters().getRaw();
+        if (args.contains(MONITOR) || args.contains(MONITOR_OVERLAY)) {
+            // Installed before the first window so that every window is monitored.
+            var monitor = FrameMonitor.install();
+            monitor.setOverlayVisible(args.contains(MONITOR_OVERLAY));
+            startupExecutor.execute(monitor::registerMBean);
+        }
+
+        var splash = showSplash(timings);
+        // Expose the load-time metrics of the views to JMX clients.
+        startupExecutor.execute(SceneMetrics.getDefault()::registerMBean);
+
+        // Warm-up
+        var mainView = SceneBuilder.fromFxml("main.fxml")
+                .css("style.css");
         // Model
-        var model = new Model();
+        var model = CompletableFuture.supplyAsync(timings.timed("model", this::restoreModel), startupExecutor);
+        var preload = CompletableFuture.supplyAsync(timings.timed("preload", () -> {
+            try {
+                return mainView.preload();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }), startupExecutor);
 
         // View
-        showMainWindow(stage, model);
+        model.thenCombine(preload, (m, view) -> m)
+                .thenCompose(m -> showMainWindow(stage, mainView, m))
+                .whenCompleteAsync((scene, e) -> {
+                    splash.close();
+                    startupExecutor.shutdown();
+                    if (e != null) {
+                        showStartupErrorAndExit(e instanceof CompletionException && e.getCause() != null
+                                ? e.getCause() : e);
+                    }
+                }, SceneBuilder.fxThread());
     }
 
     /**
-     * Shows the main window of the application.
-     * @param stage the primary stage
-     * @param model the application model
+     * Saves the changes of the Model that are not saved yet.
      */
-    private void showMainWindow(Stage stage, Model model) {
+    @Override
+    public void stop() {
+        if (modelStore != null) {
+            modelStore.close();
+        }
+    }
+
+    /**
+     * Creates the Model from the state saved by the previous run, if the
+     * {@link #MODEL_STORE_PROPERTY} system property specifies a store.
+     * Only the index of the store is read here; values are decoded when used.
+     * @return the model, which is not persisted if no store is specified or it cannot be opened
+     */
+    private Model restoreModel() {
+        var configured = System.getProperty(MODEL_STORE_PROPERTY);
+        if (configured == null || configured.isBlank()) {
+            return new Model();
+        }
+        var file = Path.of(configured);
         try {
-            // A controller class must be specified in fx:controller of main.fxml.
-            var scene = SceneBuilder.fromFxml("main.fxml")
-                    .css("style.css")
-                    // The parameters of newController must match
-                    // the constructor parameters of the controller class.
-                    .newController(model)
-                    .build();
-            stage.setScene(scene);
-            stage.setTitle("MyApp");
-            stage.show();
-        } catch (Exception e) {
-            showStartupErrorAndExit(e);
+            modelStore = ModelStore.open(file);
+            return new Model(modelStore);
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.WARNING, "Cannot open " + file + "; the model will not be saved", e);
+            return new Model();
         }
     }
 
+    /**
+     * Shows a minimal undecorated window while the application starts.
+     * @param timings the startup timings
+     * @return the splash window
+     */
+    private Stage showSplash(StartupTimings timings) {
+        var splash = new Stage(StageStyle.UNDECORATED);
+        var scene = new Scene(new StackPane(new Label("Loading MyApp...")), 240, 80);
+        timings.milestoneOnFirstPulse(StartupTimings.FIRST_PIXEL, scene, () -> { });
+        splash.setScene(scene);
+        splash.show();
+        return splash;
+    }
+
+    /**
+     * Shows the main window of the application.
+     * The FXML and the controller are loaded off the FX Application Thread.
+     * @param stage    the primary stage
+     * @param mainView the builder of the main view
+     * @param model    the application model
+     * @return a future that completes when the main window is shown
+     */
+    private CompletableFuture<Scene> showMainWindow(Stage stage, SceneBuilder mainView, Model model) {
+        var timings = StartupTimings.getDefault();
+        long buildStart = System.nanoTime();
+        // A controller class must be specified in fx:controller of main.fxml.
+        return mainView
+                // The parameters of newController must match
+                // the constructor parameters of the controller class.
+                .newController(model)
+                .buildAsync()
+                .thenApply(scene -> {
+                    timings.record("build", Duration.ofNanos(System.nanoTime() - buildStart));
+                    return scene;
+                })
+                .thenApplyAsync(scene -> {
+                    timings.milestoneOnFirstPulse(StartupTimings.INTERACTIVE, scene, () -> {
+                        LOGGER.log(System.Logger.Level.DEBUG, timings::toString);
+                        if (getParameters().getRaw().contains(EXIT_AFTER_STARTUP)) {
+                            System.out.println(timings);
+                            Platform.runLater(Platform::exit);
+                        }
+                    });
+                    stage.setScene(scene);
+                    stage.setTitle("MyApp");
+                    stage.show();
+                    return scene;
+                }, SceneBuilder.fxThread());
+    }
+
     /**
      * Displays an error dialog and exits the application if startup fails.
      * @param e the exception that occurred during startup
      */
-    private void showStartupErrorAndExit(Exception e) {
+    private void showStartupErrorAndExit(Throwable e) {
         e.printStackTrace();
 
         var alert = new Alert(Alert.AlertType.ERROR);
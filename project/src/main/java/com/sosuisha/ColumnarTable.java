@@ -0,0 +1,515 @@
+package com.sosuisha;
+
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+import javafx.scene.control.TableColumn;
+import javafx.util.Callback;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Tabular data of the application, stored column by column in primitive arrays.
+ * <p>
+ * A million rows of an int, a long and a double column take about 20 MB,
+ * without a boxed object per row or per value, so large datasets neither fill
+ * the heap nor lengthen GC pauses. {@link #rows()} is an {@link ObservableList}
+ * for TableView and ListView: it creates a small {@link Row} only when a row
+ * is read, and a TableView only reads the rows of its visible cells.
+ * <p>
+ * Columns are added before the first row. Rows are appended or replaced in
+ * bulk, and each bulk operation fires a single change event. Like the nodes
+ * of a Scene, the table must be modified on the FX Application Thread once
+ * it is shown; load data in the background and apply it with
+ * {@link #appendRows(int, RowWriter)} on the FX thread.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * var table = new ColumnarTable();
+ * var id = table.longColumn("id");
+ * var price = table.doubleColumn("price");
+ * table.appendRows(ticks.length, row -&gt; {
+ *     id.set(row, ticks[row].id());
+ *     price.set(row, ticks[row].price());
+ * });
+ * tableView.setItems(table.rows());
+ * priceColumn.setCellValueFactory(price.cellValueFactory());
+ * </pre>
+ */
+public final class ColumnarTable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * A row of a table. It only holds the row index, so it is cheap to
+     * create and reads the current values of the table.
+     *
+     * @param table the table
+     * @param index the index of the row
+     */
+    public record Row(ColumnarTable table, int index) {
+    }
+
+    /**
+     * Writes the values of rows in a bulk operation.
+     */
+    @FunctionalInterface
+    public interface RowWriter {
+        /**
+         * Writes the values of a row with the {@code set} methods of the columns.
+         *
+         * @param row the index of the row in the table
+         */
+        void write(int row);
+    }
+
+    /**
+     * A column of a table.
+     *
+     * @param <T> the boxed value type
+     */
+    public abstract static class Column<T> {
+        private final ColumnarTable table;
+        private final String name;
+
+        private Column(ColumnarTable table, String name) {
+            this.table = table;
+            this.name = name;
+        }
+
+        /**
+         * Returns the name of the column.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the value at the row, boxed.
+         *
+         * @param row the index of the row
+         * @return the value
+         * @throws IndexOutOfBoundsException if the row does not exist
+         */
+        public abstract T getValue(int row);
+
+        /**
+         * Returns a cell value factory for a TableColumn showing this column.
+         * A value is boxed only when its cell is shown.
+         *
+         * @return the cell value factory
+         */
+        public Callback<TableColumn.CellDataFeatures<Row, T>, ObservableValue<T>> cellValueFactory() {
+            return features -> new ReadOnlyObjectWrapper<>(getValue(features.getValue().index()));
+        }
+
+        int checkRow(int row) {
+            return Objects.checkIndex(row, table.size);
+        }
+
+        /**
+         * Reports a change of a value outside of bulk operations.
+         */
+        void changed(int row) {
+            table.changed(row);
+        }
+
+        abstract void grow(int capacity);
+
+        /**
+         * Resets the values of the rows, from inclusive to exclusive.
+         */
+        abstract void clear(int from, int to);
+    }
+
+    /**
+     * A column of int values.
+     */
+    public static final class IntColumn extends Column<Integer> {
+        private int[] values;
+
+        private IntColumn(ColumnarTable table, String name, int capacity) {
+            super(table, name);
+            values = new int[capacity];
+        }
+
+        public int get(int row) {
+            return values[checkRow(row)];
+        }
+
+        public void set(int row, int value) {
+            values[checkRow(row)] = value;
+            changed(row);
+        }
+
+        @Override
+        public Integer getValue(int row) {
+            return get(row);
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void clear(int from, int to) {
+            Arrays.fill(values, from, to, 0);
+        }
+    }
+
+    /**
+     * A column of long values.
+     */
+    public static final class LongColumn extends Column<Long> {
+        private long[] values;
+
+        private LongColumn(ColumnarTable table, String name, int capacity) {
+            super(table, name);
+            values = new long[capacity];
+        }
+
+        public long get(int row) {
+            return values[checkRow(row)];
+        }
+
+        public void set(int row, long value) {
+            values[checkRow(row)] = value;
+            changed(row);
+        }
+
+        @Override
+        public Long getValue(int row) {
+            return get(row);
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void clear(int from, int to) {
+            Arrays.fill(values, from, to, 0L);
+        }
+    }
+
+    /**
+     * A column of double values.
+     */
+    public static final class DoubleColumn extends Column<Double> {
+        private double[] values;
+
+        private DoubleColumn(ColumnarTable table, String name, int capacity) {
+            super(table, name);
+            values = new double[capacity];
+        }
+
+        public double get(int row) {
+            return values[checkRow(row)];
+        }
+
+        public void set(int row, double value) {
+            values[checkRow(row)] = value;
+            changed(row);
+        }
+
+        @Override
+        public Double getValue(int row) {
+            return get(row);
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void clear(int from, int to) {
+            Arrays.fill(values, from, to, 0d);
+        }
+    }
+
+    /**
+     * A column of object values, such as Strings. The references are stored
+     * in an array, without an object per row.
+     *
+     * @param <T> the value type
+     */
+    public static final class ObjectColumn<T> extends Column<T> {
+        private Object[] values;
+
+        private ObjectColumn(ColumnarTable table, String name, int capacity) {
+            super(table, name);
+            values = new Object[capacity];
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(int row) {
+            return (T) values[checkRow(row)];
+        }
+
+        public void set(int row, T value) {
+            values[checkRow(row)] = value;
+            changed(row);
+        }
+
+        @Override
+        public T getValue(int row) {
+            return get(row);
+        }
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        void clear(int from, int to) {
+            Arrays.fill(values, from, to, null);
+        }
+    }
+
+    /**
+     * The rows of the table as an ObservableList. Rows are created when read.
+     */
+    private final class RowList extends ObservableListBase<Row> {
+        @Override
+        public Row get(int index) {
+            return new Row(ColumnarTable.this, Objects.checkIndex(index, size));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        void fireUpdated(int row) {
+            beginChange();
+            nextUpdate(row);
+            endChange();
+        }
+
+        void fireAdded(int from, int to) {
+            beginChange();
+            nextAdd(from, to);
+            endChange();
+        }
+
+        void fireReplaced(int removedSize, int addedSize) {
+            beginChange();
+            if (removedSize > 0) {
+                nextRemove(0, removedRows(removedSize));
+            }
+            if (addedSize > 0) {
+                nextAdd(0, addedSize);
+            }
+            endChange();
+        }
+
+        /**
+         * The removed rows of a change. Their values are gone, so they only
+         * carry their indices; no row object is created unless a listener
+         * reads one.
+         */
+        private List<Row> removedRows(int count) {
+            return new AbstractList<>() {
+                @Override
+                public Row get(int index) {
+                    return new Row(ColumnarTable.this, Objects.checkIndex(index, count));
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+    }
+
+    private final List<Column<?>> columns = new ArrayList<>();
+    private final RowList rows = new RowList();
+    private int capacity = INITIAL_CAPACITY;
+    private int size;
+    private boolean bulk;
+
+    /**
+     * Adds a column of int values.
+     *
+     * @param name the name of the column
+     * @return the column
+     * @throws IllegalStateException if the table already has rows
+     */
+    public IntColumn intColumn(String name) {
+        return addColumn(new IntColumn(this, name, capacity));
+    }
+
+    /**
+     * Adds a column of long values.
+     *
+     * @param name the name of the column
+     * @return the column
+     * @throws IllegalStateException if the table already has rows
+     */
+    public LongColumn longColumn(String name) {
+        return addColumn(new LongColumn(this, name, capacity));
+    }
+
+    /**
+     * Adds a column of double values.
+     *
+     * @param name the name of the column
+     * @return the column
+     * @throws IllegalStateException if the table already has rows
+     */
+    public DoubleColumn doubleColumn(String name) {
+        return addColumn(new DoubleColumn(this, name, capacity));
+    }
+
+    /**
+     * Adds a column of object values.
+     *
+     * @param <T>  the value type
+     * @param name the name of the column
+     * @return the column
+     * @throws IllegalStateException if the table already has rows
+     */
+    public <T> ObjectColumn<T> objectColumn(String name) {
+        return addColumn(new ObjectColumn<>(this, name, capacity));
+    }
+
+    private <C extends Column<?>> C addColumn(C column) {
+        Objects.requireNonNull(column.getName(), "name must not be null.");
+        if (size > 0) {
+            throw new IllegalStateException("Columns must be added before rows: " + column.getName());
+        }
+        columns.add(column);
+        return column;
+    }
+
+    /**
+     * Returns the columns of the table in the order they were added.
+     *
+     * @return an unmodifiable list of the columns
+     */
+    public List<Column<?>> getColumns() {
+        return List.copyOf(columns);
+    }
+
+    /**
+     * Returns the rows of the table, for the items of a TableView or ListView.
+     * The list is read-only; use the bulk operations of this table to change it.
+     *
+     * @return the observable rows
+     */
+    public ObservableList<Row> rows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends rows and fires a single change event for all of them.
+     * New rows start with zero or null values.
+     *
+     * @param count  the number of rows to append
+     * @param writer writes the values of each new row, or null to leave them empty
+     * @throws IllegalArgumentException if count is negative
+     */
+    public void appendRows(int count, RowWriter writer) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must not be negative: " + count);
+        }
+        if (count == 0) {
+            return;
+        }
+        int from = size;
+        ensureCapacity(from + count);
+        size = from + count;
+        write(from, size, writer);
+        rows.fireAdded(from, size);
+    }
+
+    /**
+     * Replaces all rows and fires a single change event.
+     *
+     * @param count  the number of new rows
+     * @param writer writes the values of each new row, or null to leave them empty
+     * @throws IllegalArgumentException if count is negative
+     */
+    public void replaceRows(int count, RowWriter writer) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must not be negative: " + count);
+        }
+        int removed = size;
+        ensureCapacity(count);
+        clearValues(0, Math.max(removed, count));
+        size = count;
+        write(0, count, writer);
+        rows.fireReplaced(removed, count);
+    }
+
+    /**
+     * Removes all rows and fires a single change event.
+     */
+    public void clear() {
+        replaceRows(0, null);
+    }
+
+    private void write(int from, int to, RowWriter writer) {
+        if (writer == null) {
+            return;
+        }
+        bulk = true;
+        try {
+            for (int row = from; row < to; row++) {
+                writer.write(row);
+            }
+        } finally {
+            bulk = false;
+        }
+    }
+
+    private void changed(int row) {
+        if (!bulk) {
+            rows.fireUpdated(row);
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= capacity) {
+            return;
+        }
+        int newCapacity = (int) Math.min(Math.max((long) capacity * 2, required), Integer.MAX_VALUE - 8);
+        if (newCapacity < required) {
+            throw new OutOfMemoryError("Too many rows: " + required);
+        }
+        for (var column : columns) {
+            column.grow(newCapacity);
+        }
+        capacity = newCapacity;
+    }
+
+    /**
+     * Resets the values of the rows, from inclusive to exclusive, so replaced
+     * rows start empty and released objects can be collected.
+     */
+    private void clearValues(int from, int to) {
+        for (var column : columns) {
+            column.clear(from, to);
+        }
+    }
+}
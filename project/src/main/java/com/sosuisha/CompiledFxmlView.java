@@ -0,0 +1,53 @@
+package com.sosuisha;
+
+import javafx.util.Callback;
+import java.net.URL;
+import java.util.ResourceBundle;
+
+/**
+ * A view class generated from an FXML file at build time.
+ * <p>
+ * Implementations are generated by FxmlViewGenerator, a build tool in
+ * src/tools that is not part of the application, and registered
+ * with {@link java.util.ServiceLoader}. They build the node graph directly,
+ * inject the controller fields and call its initialize method, without
+ * FXMLLoader. SceneBuilder uses them through {@link CompiledFxmlViews}.
+ */
+public interface CompiledFxmlView {
+
+    /**
+     * The root node and controller built by a compiled view.
+     *
+     * @param root       the root node
+     * @param controller the controller, or null if the FXML has no fx:controller
+     */
+    record Result(Object root, Object controller) {
+    }
+
+    /**
+     * Returns the absolute resource path of the source FXML, e.g. "/com/example/main.fxml".
+     *
+     * @return the resource path
+     */
+    String fxmlPath();
+
+    /**
+     * Returns the CRC-32 of the source FXML at generation time.
+     * A view whose FXML has changed since then is not used.
+     *
+     * @return the checksum
+     */
+    long checksum();
+
+    /**
+     * Builds the view.
+     *
+     * @param location          the URL of the FXML, used for relative locations
+     * @param resources         the ResourceBundle for %key values, or null
+     * @param controllerFactory the controller factory, or null to use the no-arg constructor
+     * @return the root node and controller
+     * @throws Exception if building fails
+     */
+    Result build(URL location, ResourceBundle resources, Callback<Class<?>, Object> controllerFactory)
+            throws Exception;
+}
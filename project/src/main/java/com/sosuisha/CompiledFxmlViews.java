@@ -0,0 +1,208 @@
+package com.sosuisha;
+
+import javafx.event.Event;
+import javafx.event.EventHandler;
+import javafx.fxml.FXMLLoader;
+import javafx.fxml.JavaFXBuilderFactory;
+import javafx.fxml.LoadException;
+import javafx.util.Builder;
+import javafx.util.BuilderFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Registry of build-time compiled FXML views, and runtime support for the generated code.
+ */
+public final class CompiledFxmlViews {
+    private static final BuilderFactory BUILDER_FACTORY = ImageCache.builderFactory(new JavaFXBuilderFactory());
+    private static final System.Logger LOGGER = System.getLogger(CompiledFxmlViews.class.getName());
+
+    /** Compiled views by the external form of their FXML URL, loaded on first use. */
+    private static volatile Map<String, CompiledFxmlView> views;
+
+    /** Whether the FXML at a URL still matches its compiled view. */
+    private static final Map<String, Boolean> upToDate = new ConcurrentHashMap<>();
+
+    private CompiledFxmlViews() {
+    }
+
+    /**
+     * Returns the compiled view for the FXML, if one exists and is up to date.
+     *
+     * @param fxmlURL the URL of the FXML file
+     * @return the compiled view, or null
+     */
+    static CompiledFxmlView find(URL fxmlURL) {
+        var key = fxmlURL.toExternalForm();
+        var view = views().get(key);
+        if (view == null) {
+            return null;
+        }
+        return upToDate.computeIfAbsent(key, k -> isUpToDate(fxmlURL, view)) ? view : null;
+    }
+
+    private static Map<String, CompiledFxmlView> views() {
+        var result = views;
+        if (result == null) {
+            synchronized (CompiledFxmlViews.class) {
+                result = views;
+                if (result == null) {
+                    result = new ConcurrentHashMap<>();
+                    for (var view : ServiceLoader.load(CompiledFxmlView.class, CompiledFxmlViews.class.getClassLoader())) {
+                        var url = view.getClass().getResource(view.fxmlPath());
+                        if (url != null) {
+                            result.put(url.toExternalForm(), view);
+                        }
+                    }
+                    views = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the FXML still has the checksum it was compiled with.
+     *
+     * @param fxmlURL the URL of the FXML file
+     * @param view    the compiled view
+     * @return false if the FXML has changed or cannot be read
+     */
+    static boolean isUpToDate(URL fxmlURL, CompiledFxmlView view) {
+        try (InputStream in = fxmlURL.openStream()) {
+            var crc = new CRC32();
+            crc.update(in.readAllBytes());
+            if (crc.getValue() == view.checksum()) {
+                return true;
+            }
+            LOGGER.log(System.Logger.Level.DEBUG, fxmlURL + " has changed since it was compiled.");
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.DEBUG, "Cannot read " + fxmlURL, e);
+        }
+        return false;
+    }
+
+    /**
+     * Returns a new builder for a class without a default constructor.
+     *
+     * @param type the class to build
+     * @return the builder, which is also a Map of property names to values
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> builder(Class<?> type) {
+        return (Map<String, Object>) BUILDER_FACTORY.getBuilder(type);
+    }
+
+    /**
+     * Builds the object from a builder returned by {@link #builder(Class)}.
+     *
+     * @param builder the builder
+     * @return the built object
+     */
+    public static Object build(Map<String, Object> builder) {
+        return ((Builder<?>) builder).build();
+    }
+
+    /**
+     * Resolves an @location value the same way FXMLLoader does.
+     *
+     * @param location the URL of the FXML
+     * @param path     the path after the @ prefix
+     * @return the resolved URL string
+     * @throws LoadException if the path cannot be resolved
+     */
+    @SuppressWarnings("deprecation") // URL(URL, String) also resolves jar: URLs, like FXMLLoader.
+    public static String resolveLocation(URL location, String path) throws LoadException {
+        if (path.startsWith("/")) {
+            var url = FXMLLoader.getDefaultClassLoader().getResource(path.substring(1));
+            if (url == null) {
+                throw new LoadException("Resource not found: " + path);
+            }
+            return url.toString();
+        }
+        try {
+            return new URL(location, path).toString();
+        } catch (MalformedURLException e) {
+            throw new LoadException(e);
+        }
+    }
+
+    /**
+     * Looks up a %key string.
+     *
+     * @param resources the ResourceBundle, or null
+     * @param key       the key
+     * @return the string
+     * @throws LoadException if there is no bundle or no such key
+     */
+    public static String resource(ResourceBundle resources, String key) throws LoadException {
+        if (resources == null) {
+            throw new LoadException("No resources specified for %" + key);
+        }
+        try {
+            return resources.getString(key);
+        } catch (MissingResourceException e) {
+            throw new LoadException("Resource \"" + key + "\" not found", e);
+        }
+    }
+
+    /**
+     * Sets a property from a %key string. If the resources follow the current
+     * locale, the property is set again when it changes (see {@link Localization}).
+     *
+     * @param <T>       the target type
+     * @param target    the object whose property is set
+     * @param setter    sets the property of the target
+     * @param resources the ResourceBundle, or null
+     * @param key       the key
+     * @throws LoadException if there is no bundle or no such key
+     */
+    public static <T> void setResource(T target, BiConsumer<? super T, String> setter, ResourceBundle resources,
+            String key) throws LoadException {
+        Localization.getDefault().bind(resources, key, target, setter, resource(resources, key));
+    }
+
+    /**
+     * Starts timing the controller's initialize method for {@link SceneMetrics}.
+     *
+     * @return the timer to stop when initialize has returned
+     */
+    public static SceneMetrics.Timer startInitialize() {
+        return SceneMetrics.start(SceneMetrics.Phase.INITIALIZE);
+    }
+
+    /**
+     * Creates an event handler that calls a #method of the controller.
+     *
+     * @param <T>        the event type
+     * @param method     the controller method, taking no parameter or the event
+     * @param controller the controller
+     * @return the event handler
+     */
+    public static <T extends Event> EventHandler<T> handler(MethodHandle method, Object controller) {
+        boolean withEvent = method.type().parameterCount() == 2;
+        return event -> {
+            try {
+                if (withEvent) {
+                    method.invoke(controller, event);
+                } else {
+                    method.invoke(controller);
+                }
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        };
+    }
+}
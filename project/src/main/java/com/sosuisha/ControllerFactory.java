@@ -0,0 +1,181 @@
+package com.sosuisha;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Instantiates controller classes with constructor arguments.
+ * <p>
+ * The best-matching constructor is resolved once per controller class and
+ * argument-type signature using assignability rules: an argument matches a
+ * parameter of its own type, any supertype or interface, or the boxed form of
+ * a primitive, and null matches any reference type. As with overload
+ * resolution in Java, constructors that accept the arguments without
+ * unboxing are preferred; only if there are none are primitive parameters
+ * considered, so {@code (Integer)} is chosen over {@code (int)} for an
+ * Integer argument. When several constructors match in the same phase, the
+ * most specific one is chosen. The resolved constructor is cached as a
+ * spreading {@link MethodHandle}, so later loads skip the lookup.
+ */
+final class ControllerFactory {
+    /**
+     * Argument types of a call. A null argument is recorded as a null type.
+     */
+    private record Signature(Class<?>[] types) {
+        static Signature of(Object[] args) {
+            var types = new Class<?>[args.length];
+            for (int i = 0; i < args.length; i++) {
+                types[i] = args[i] != null ? args[i].getClass() : null;
+            }
+            return new Signature(types);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Signature s && Arrays.equals(types, s.types);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(types);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.stream(types).map(t -> t == null ? "null" : t.getName()).toList().toString();
+        }
+    }
+
+    /**
+     * The resolved constructors of each controller class. A ClassValue keeps
+     * its values with the class they are computed for, so the method
+     * handles, which refer to the controller class, do not keep it or its
+     * class loader reachable: the cache of a class is collected with the
+     * class when its loader is unloaded, e.g. with the views of a plugin.
+     * The argument types in the keys stay reachable as long as the
+     * controller class does.
+     */
+    private static final ClassValue<ConcurrentHashMap<Signature, MethodHandle>> FACTORIES = new ClassValue<>() {
+        @Override
+        protected ConcurrentHashMap<Signature, MethodHandle> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private ControllerFactory() {
+    }
+
+    /**
+     * Creates an instance of the controller class.
+     *
+     * @param controllerClass the class specified by fx:controller
+     * @param args            the constructor arguments
+     * @return the new controller
+     * @throws IllegalArgumentException if no constructor or more than one equally
+     *                                  specific constructor matches the arguments
+     * @throws Throwable                any exception thrown by the constructor
+     */
+    static Object newInstance(Class<?> controllerClass, Object... args) throws Throwable {
+        var factory = FACTORIES.get(controllerClass)
+                .computeIfAbsent(Signature.of(args), signature -> resolve(controllerClass, signature));
+        return factory.invokeExact(args);
+    }
+
+    private static MethodHandle resolve(Class<?> controllerClass, Signature signature) {
+        var constructor = findConstructor(controllerClass, signature.types());
+        try {
+            constructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(constructor)
+                    .asType(MethodType.genericMethodType(signature.types().length))
+                    .asSpreader(Object[].class, signature.types().length);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot access constructor " + constructor, e);
+        }
+    }
+
+    /**
+     * Finds the most specific constructor that accepts the argument types.
+     */
+    static Constructor<?> findConstructor(Class<?> type, Class<?>[] argTypes) {
+        var candidates = applicable(type, argTypes, false);
+        if (candidates.isEmpty()) {
+            candidates = applicable(type, argTypes, true);
+        }
+        if (candidates.isEmpty()) {
+            throw new IllegalArgumentException("No constructor of " + type.getName()
+                    + " accepts " + new Signature(argTypes));
+        }
+        var best = mostSpecific(candidates);
+        if (best.size() > 1) {
+            throw new IllegalArgumentException("Ambiguous constructors of " + type.getName()
+                    + " for " + new Signature(argTypes) + ": " + best);
+        }
+        return best.get(0);
+    }
+
+    /**
+     * Returns the constructors that accept the argument types, either by
+     * assignment only, or also by unboxing to primitive parameters.
+     */
+    private static List<Constructor<?>> applicable(Class<?> type, Class<?>[] argTypes, boolean unboxing) {
+        var result = new ArrayList<Constructor<?>>();
+        for (var constructor : type.getDeclaredConstructors()) {
+            if (isApplicable(constructor.getParameterTypes(), argTypes, unboxing)) {
+                result.add(constructor);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isApplicable(Class<?>[] paramTypes, Class<?>[] argTypes, boolean unboxing) {
+        if (paramTypes.length != argTypes.length) {
+            return false;
+        }
+        for (int i = 0; i < paramTypes.length; i++) {
+            if (paramTypes[i].isPrimitive()) {
+                // The arguments are always objects, so a primitive parameter needs unboxing.
+                if (!unboxing || argTypes[i] == null
+                        || !MethodType.methodType(paramTypes[i]).wrap().returnType().isAssignableFrom(argTypes[i])) {
+                    return false;
+                }
+            } else if (argTypes[i] != null && !paramTypes[i].isAssignableFrom(argTypes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Constructor<?>> mostSpecific(List<Constructor<?>> candidates) {
+        var result = new ArrayList<Constructor<?>>();
+        for (var candidate : candidates) {
+            boolean dominated = false;
+            for (var other : candidates) {
+                if (other != candidate && isMoreSpecific(other, candidate) && !isMoreSpecific(candidate, other)) {
+                    dominated = true;
+                    break;
+                }
+            }
+            if (!dominated) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isMoreSpecific(Constructor<?> a, Constructor<?> b) {
+        var aTypes = a.getParameterTypes();
+        var bTypes = b.getParameterTypes();
+        for (int i = 0; i < aTypes.length; i++) {
+            if (!bTypes[i].isAssignableFrom(aTypes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,465 @@
+package com.sosuisha;
+
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.collections.ListChangeListener;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.layout.StackPane;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+import javafx.stage.Window;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Opt-in monitor of the pulses of every showing window, and of the Scenes
+ * and controllers built by {@link SceneBuilder} that are still in memory.
+ * <p>
+ * Nothing is measured until {@link #install()} is called; until then the
+ * only cost is a null check per built Scene. Once installed, each window's
+ * Scene gets a pre-layout and a post-layout pulse listener, which only read
+ * the time: the pulse time of a window runs from its pre-layout to its
+ * post-layout listener, which is the CSS and layout passes that the Scene
+ * runs in between. Animations and rendering are shared by all windows and
+ * are not included. Per pulse, this costs two {@code System.nanoTime()} calls
+ * and a store into a ring buffer; nodes are counted about once per second.
+ * {@link #uninstall()} removes the listeners.
+ * <p>
+ * Pulses only happen when something changes or animates, so the frames per
+ * second of an idle window are low. A window is sluggish when its FPS drops
+ * during an animation or its pulse percentiles are high.
+ * <p>
+ * Scenes and controllers are tracked with weak references, so a Scene that is
+ * no longer in a showing window but is still counted after a garbage
+ * collection is retained by something, e.g. a listener on a Model property.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * var monitor = FrameMonitor.install();
+ * monitor.registerMBean();
+ * monitor.setOverlayVisible(true);
+ * ...
+ * monitor.getWindowStats().forEach(System.out::println);
+ * </pre>
+ */
+public final class FrameMonitor implements FrameMonitorMXBean {
+    /** The ObjectName of the MXBean. */
+    public static final String OBJECT_NAME = "com.sosuisha:type=FrameMonitor";
+
+    /** The number of recent pulses kept per window for percentiles. */
+    private static final int WINDOW_SIZE = 1024;
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private static volatile FrameMonitor instance;
+
+    /**
+     * A Scene built by SceneBuilder and its controller.
+     */
+    private record Tracked(WeakReference<Scene> scene, WeakReference<Object> controller) {
+    }
+
+    /**
+     * The pulse listeners and statistics of one window.
+     */
+    private static final class WindowMonitor {
+        private final Window window;
+        private final String name;
+        private final ChangeListener<Scene> sceneListener = (observable, oldScene, newScene) -> rehook(oldScene,
+                newScene);
+        private final Runnable preLayout = this::preLayout;
+        private final Runnable postLayout = this::postLayout;
+        private final long[] pulses = new long[WINDOW_SIZE];
+        private long pulseCount;
+        private long pulseStart;
+        private long secondStart;
+        private int pulsesThisSecond;
+        private double fps;
+        private int nodeCount;
+
+        WindowMonitor(Window window) {
+            this.window = window;
+            this.name = (window instanceof Stage stage && stage.getTitle() != null
+                    ? stage.getTitle() : window.getClass().getSimpleName())
+                    + "@" + Integer.toHexString(System.identityHashCode(window));
+            window.sceneProperty().addListener(sceneListener);
+            rehook(null, window.getScene());
+        }
+
+        void detach() {
+            window.sceneProperty().removeListener(sceneListener);
+            rehook(window.getScene(), null);
+        }
+
+        private void rehook(Scene oldScene, Scene newScene) {
+            if (oldScene != null) {
+                oldScene.removePreLayoutPulseListener(preLayout);
+                oldScene.removePostLayoutPulseListener(postLayout);
+            }
+            if (newScene != null) {
+                newScene.addPreLayoutPulseListener(preLayout);
+                newScene.addPostLayoutPulseListener(postLayout);
+            }
+        }
+
+        private void preLayout() {
+            // The Scene runs its CSS and layout passes after this listener.
+            pulseStart = System.nanoTime();
+        }
+
+        private void postLayout() {
+            if (pulseStart == 0) {
+                return;
+            }
+            long end = System.nanoTime();
+            int nodes = -1;
+            if (end - secondStart >= SECOND) {
+                // Once per second, and on the FX thread where the graph can be walked safely.
+                nodes = countNodes(window.getScene().getRoot());
+            }
+            synchronized (this) {
+                int i = (int) (pulseCount % WINDOW_SIZE);
+                pulses[i] = end - pulseStart;
+                pulseCount++;
+                pulsesThisSecond++;
+                if (nodes >= 0) {
+                    fps = secondStart == 0 ? 0 : pulsesThisSecond * (double) SECOND / (end - secondStart);
+                    secondStart = end;
+                    pulsesThisSecond = 0;
+                    nodeCount = nodes;
+                }
+            }
+            pulseStart = 0;
+        }
+
+        synchronized void reset() {
+            pulseCount = 0;
+            pulsesThisSecond = 0;
+            secondStart = 0;
+            fps = 0;
+        }
+
+        synchronized WindowFrameStats snapshot() {
+            int n = (int) Math.min(pulseCount, WINDOW_SIZE);
+            var p = Arrays.copyOf(pulses, n);
+            Arrays.sort(p);
+            return new WindowFrameStats(name, fps, pulseCount, micros(p, 0.5), micros(p, 0.95), micros(p, 0.99),
+                    micros(p, 1), nodeCount);
+        }
+
+        private static long micros(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+            return sorted[Math.max(index, 0)] / 1000;
+        }
+    }
+
+    private final Map<Window, WindowMonitor> windows = new IdentityHashMap<>();
+    private final ConcurrentLinkedQueue<Tracked> tracked = new ConcurrentLinkedQueue<>();
+    private final ListChangeListener<Window> windowsListener = change -> {
+        while (change.next()) {
+            for (var window : change.getRemoved()) {
+                unwatch(window);
+            }
+            for (var window : change.getAddedSubList()) {
+                watch(window);
+            }
+        }
+    };
+    private Stage overlay;
+    private Label overlayLabel;
+    /** Refreshes the overlay while it is shown; null while it is hidden. */
+    private Thread overlayRefresher;
+    private volatile boolean overlayVisible;
+    private boolean registered;
+
+    /**
+     * Returns the installed monitor.
+     *
+     * @return the monitor, or null if {@link #install()} has not been called
+     */
+    public static FrameMonitor getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts monitoring the windows, if not started yet.
+     * Must be called on the FX Application Thread.
+     *
+     * @return the monitor
+     */
+    public static synchronized FrameMonitor install() {
+        if (instance == null) {
+            var monitor = new FrameMonitor();
+            monitor.start();
+            instance = monitor;
+        }
+        return instance;
+    }
+
+    /**
+     * Stops monitoring the windows: removes the pulse listeners, closes the
+     * overlay and unregisters the MXBean. Does nothing if not installed.
+     * Must be called on the FX Application Thread.
+     */
+    public static synchronized void uninstall() {
+        var monitor = instance;
+        if (monitor != null) {
+            instance = null;
+            monitor.stop();
+        }
+    }
+
+    /**
+     * Records a Scene and controller built by SceneBuilder.
+     * Does nothing unless the monitor is installed.
+     *
+     * @param scene      the Scene
+     * @param controller the controller, or null
+     */
+    static void track(Scene scene, Object controller) {
+        var monitor = instance;
+        if (monitor != null) {
+            monitor.tracked.add(new Tracked(new WeakReference<>(scene),
+                    controller != null ? new WeakReference<>(controller) : null));
+        }
+    }
+
+    private FrameMonitor() {
+    }
+
+    private void start() {
+        var all = Window.getWindows();
+        all.addListener(windowsListener);
+        for (var window : all) {
+            watch(window);
+        }
+    }
+
+    private void stop() {
+        Window.getWindows().removeListener(windowsListener);
+        List<WindowMonitor> monitors;
+        synchronized (windows) {
+            monitors = List.copyOf(windows.values());
+            windows.clear();
+        }
+        monitors.forEach(WindowMonitor::detach);
+        overlayVisible = false;
+        updateOverlay();
+        overlay = null;
+        tracked.clear();
+        synchronized (this) {
+            if (registered) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+                } catch (JMException e) {
+                    // Already unregistered, or registered by another class loader.
+                }
+                registered = false;
+            }
+        }
+    }
+
+    private void watch(Window window) {
+        if (window == overlay) {
+            return;
+        }
+        synchronized (windows) {
+            windows.computeIfAbsent(window, WindowMonitor::new);
+        }
+    }
+
+    private void unwatch(Window window) {
+        WindowMonitor monitor;
+        synchronized (windows) {
+            monitor = windows.remove(window);
+        }
+        if (monitor != null) {
+            monitor.detach();
+        }
+    }
+
+    /**
+     * Registers this object with the platform MBeanServer as {@value #OBJECT_NAME}.
+     * Calling it again has no effect.
+     *
+     * @throws IllegalStateException if registration fails
+     */
+    public synchronized void registerMBean() {
+        if (registered) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered by another class loader; keep that one.
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register " + OBJECT_NAME, e);
+        }
+        registered = true;
+    }
+
+    @Override
+    public List<WindowFrameStats> getWindowStats() {
+        List<WindowMonitor> monitors;
+        synchronized (windows) {
+            monitors = List.copyOf(windows.values());
+        }
+        var result = new ArrayList<WindowFrameStats>();
+        for (var monitor : monitors) {
+            result.add(monitor.snapshot());
+        }
+        return result;
+    }
+
+    @Override
+    public int getLiveSceneCount() {
+        prune();
+        int count = 0;
+        for (var t : tracked) {
+            if (t.scene().get() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int getRetainedSceneCount() {
+        prune();
+        int count = 0;
+        for (var t : tracked) {
+            var scene = t.scene().get();
+            if (scene != null && (scene.getWindow() == null || !scene.getWindow().isShowing())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int getLiveControllerCount() {
+        prune();
+        int count = 0;
+        for (var t : tracked) {
+            if (t.controller() != null && t.controller().get() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Forgets the views whose Scene and controller have been collected.
+     */
+    private void prune() {
+        tracked.removeIf(t -> t.scene().get() == null && (t.controller() == null || t.controller().get() == null));
+    }
+
+    @Override
+    public boolean isOverlayVisible() {
+        return overlayVisible;
+    }
+
+    @Override
+    public void setOverlayVisible(boolean visible) {
+        overlayVisible = visible;
+        if (Platform.isFxApplicationThread()) {
+            updateOverlay();
+        } else {
+            Platform.runLater(this::updateOverlay);
+        }
+    }
+
+    @Override
+    public void reset() {
+        synchronized (windows) {
+            windows.values().forEach(WindowMonitor::reset);
+        }
+    }
+
+    /**
+     * Shows or hides the overlay window. While it is shown, it is refreshed
+     * once per second from a virtual thread, so it does not keep the pulses
+     * of other windows running; the thread ends when the overlay is hidden.
+     */
+    private void updateOverlay() {
+        if (!overlayVisible || instance != this) {
+            if (overlayRefresher != null) {
+                overlayRefresher.interrupt();
+                overlayRefresher = null;
+            }
+            if (overlay != null) {
+                overlay.hide();
+            }
+            return;
+        }
+        if (overlay == null) {
+            overlayLabel = new Label();
+            overlayLabel.setStyle("-fx-font-family: monospace; -fx-padding: 6;");
+            overlay = new Stage(StageStyle.UTILITY);
+            overlay.setTitle("Frame monitor");
+            overlay.setAlwaysOnTop(true);
+            overlay.setScene(new Scene(new StackPane(overlayLabel)));
+        }
+        if (overlayRefresher == null) {
+            var label = overlayLabel;
+            overlayRefresher = Thread.ofVirtual().name("frame-monitor-overlay").start(() -> {
+                while (true) {
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    var text = overlayText();
+                    Platform.runLater(() -> label.setText(text));
+                }
+            });
+        }
+        overlayLabel.setText(overlayText());
+        overlay.show();
+    }
+
+    /**
+     * Returns the thread that refreshes the overlay, or null while it is
+     * hidden. Must be called on the FX Application Thread.
+     */
+    Thread getOverlayRefresher() {
+        return overlayRefresher;
+    }
+
+    private String overlayText() {
+        var text = new StringBuilder();
+        for (var stats : getWindowStats()) {
+            text.append(stats).append('\n');
+        }
+        text.append(String.format("scenes: %d live, %d retained; controllers: %d live",
+                getLiveSceneCount(), getRetainedSceneCount(), getLiveControllerCount()));
+        return text.toString();
+    }
+
+    private static int countNodes(Node node) {
+        int count = 1;
+        if (node instanceof Parent parent) {
+            for (var child : parent.getChildrenUnmodifiable()) {
+                count += countNodes(child);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,47 @@
+package com.sosuisha;
+
+import java.util.List;
+
+/**
+ * JMX interface of {@link FrameMonitor}, registered as
+ * {@value FrameMonitor#OBJECT_NAME} by {@link FrameMonitor#registerMBean()}.
+ */
+public interface FrameMonitorMXBean {
+
+    /**
+     * @return the frame statistics of each showing window
+     */
+    List<WindowFrameStats> getWindowStats();
+
+    /**
+     * @return the number of Scenes built by SceneBuilder that have not been garbage collected
+     */
+    int getLiveSceneCount();
+
+    /**
+     * @return the number of live Scenes built by SceneBuilder that are not in a showing window
+     */
+    int getRetainedSceneCount();
+
+    /**
+     * @return the number of controllers created by SceneBuilder that have not been garbage collected
+     */
+    int getLiveControllerCount();
+
+    /**
+     * @return whether the on-screen overlay is shown
+     */
+    boolean isOverlayVisible();
+
+    /**
+     * Shows or hides the on-screen overlay.
+     *
+     * @param visible whether the overlay is shown
+     */
+    void setOverlayVisible(boolean visible);
+
+    /**
+     * Clears the frame statistics of all windows.
+     */
+    void reset();
+}
@@ -0,0 +1,359 @@
+package com.sosuisha;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.beans.value.WritableValue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Delivers updates from background threads to the FX Application Thread,
+ * at most once per pulse.
+ * <p>
+ * Values posted to a property are coalesced: only the latest value pending
+ * for each property is set in the next pulse, so a high-rate source does not
+ * flood the event queue with {@code Platform.runLater} calls. Tasks that must
+ * not be coalesced, like appending to a list, are queued up to a capacity.
+ * What happens when a value is already pending or the queue is full is
+ * decided by the {@link Backpressure} policy.
+ * <p>
+ * Values and tasks are delivered in one queue, in the order they were posted
+ * and submitted. A coalesced value replaces the pending one in its place, so
+ * it is set at the position of the first value posted to the property since
+ * the last pulse.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * var updater = new FxUpdater(FxUpdater.Backpressure.LATEST, 1000);
+ * // on any thread
+ * updater.post(priceProperty, price);
+ * updater.submit(() -&gt; trades.add(trade));
+ * ...
+ * System.out.println(updater.getStats());
+ * </pre>
+ */
+public final class FxUpdater {
+    /** The default capacity of the task queue. */
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    private static final FxUpdater DEFAULT = new FxUpdater(Backpressure.LATEST, DEFAULT_CAPACITY);
+    private static final System.Logger LOGGER = System.getLogger(FxUpdater.class.getName());
+
+    /**
+     * What to do with an update that cannot be queued.
+     */
+    public enum Backpressure {
+        /** Discard the new update and keep the pending one. */
+        DROP,
+        /** Replace the pending value, or discard the oldest queued task. */
+        LATEST,
+        /**
+         * Block the producer until the pending update has been delivered.
+         * Updates posted on the FX Application Thread never block and are
+         * handled like {@link #LATEST}.
+         */
+        BLOCK
+    }
+
+    /**
+     * Counters of an updater since it was created.
+     *
+     * @param submitted        the number of values posted and tasks submitted
+     * @param delivered        the number of values set and tasks run on the FX thread
+     * @param coalesced        the number of values replaced by a later value
+     * @param dropped          the number of updates discarded by the backpressure policy
+     * @param blockedNanos     the total time producers were blocked
+     * @param queueDepth       the number of updates pending now
+     * @param maxQueueDepth    the largest number of updates pending at once
+     * @param pulses           the number of pulses that delivered updates
+     * @param meanLatencyNanos the mean time from submission to delivery
+     * @param maxLatencyNanos  the longest time from submission to delivery
+     */
+    public record Stats(long submitted, long delivered, long coalesced, long dropped, long blockedNanos,
+            int queueDepth, int maxQueueDepth, long pulses, long meanLatencyNanos, long maxLatencyNanos) {
+    }
+
+    /**
+     * An update waiting for the next pulse.
+     */
+    private static final class Pending {
+        private final long submitted;
+        private final WritableValue<Object> property;
+        private final Runnable task;
+        private Object value;
+
+        @SuppressWarnings("unchecked")
+        Pending(WritableValue<?> property, Runnable task, Object value) {
+            this.submitted = System.nanoTime();
+            this.property = (WritableValue<Object>) property;
+            this.task = task;
+            this.value = value;
+        }
+
+        void run() {
+            if (task != null) {
+                task.run();
+            } else {
+                property.setValue(value);
+            }
+        }
+    }
+
+    private final Backpressure backpressure;
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition deliveredCondition = lock.newCondition();
+    /** The values and tasks pending for the next pulse, in submission order. */
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    /** The pending values of the queue, by property. */
+    private final Map<WritableValue<?>, Pending> values = new HashMap<>();
+    private int queuedTasks;
+    private boolean scheduled;
+    private AnimationTimer timer;
+
+    private long submitted;
+    private long delivered;
+    private long coalesced;
+    private long dropped;
+    private long blockedNanos;
+    private int maxQueueDepth;
+    private long pulses;
+    private long latencyTotal;
+    private long latencyMax;
+
+    /**
+     * Returns the updater shared by the application, with the
+     * {@link Backpressure#LATEST} policy and {@link #DEFAULT_CAPACITY}.
+     *
+     * @return the default updater
+     */
+    public static FxUpdater getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Creates a new updater.
+     *
+     * @param backpressure the policy for updates that cannot be queued
+     * @param capacity     the maximum number of queued tasks
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public FxUpdater(Backpressure backpressure, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.backpressure = Objects.requireNonNull(backpressure, "backpressure must not be null.");
+        this.capacity = capacity;
+    }
+
+    /**
+     * Sets the property to the value in the next pulse. If a value is still
+     * pending for the property, the backpressure policy applies.
+     * May be called on any thread.
+     *
+     * @param <T>      the value type
+     * @param property the property, only changed on the FX Application Thread
+     * @param value    the new value
+     * @return false if the value was dropped, or the producer was interrupted while blocked
+     */
+    public <T> boolean post(WritableValue<T> property, T value) {
+        Objects.requireNonNull(property, "property must not be null.");
+        lock.lock();
+        try {
+            submitted++;
+            var pending = values.get(property);
+            if (pending != null && backpressure == Backpressure.BLOCK && !Platform.isFxApplicationThread()) {
+                if (!await(() -> values.containsKey(property))) {
+                    return false;
+                }
+                pending = null;
+            }
+            if (pending != null) {
+                if (backpressure == Backpressure.DROP) {
+                    dropped++;
+                    return false;
+                }
+                pending.value = value;
+                coalesced++;
+                return true;
+            }
+            var update = new Pending(property, null, value);
+            values.put(property, update);
+            queue.add(update);
+            queued();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the task in the next pulse. If the queue is full, the backpressure
+     * policy applies. May be called on any thread.
+     *
+     * @param task the task
+     * @return false if the task was dropped, or the producer was interrupted while blocked
+     */
+    public boolean submit(Runnable task) {
+        Objects.requireNonNull(task, "task must not be null.");
+        lock.lock();
+        try {
+            submitted++;
+            if (queuedTasks >= capacity) {
+                switch (backpressure) {
+                    case DROP -> {
+                        dropped++;
+                        return false;
+                    }
+                    case LATEST -> {
+                        removeOldestTask();
+                        dropped++;
+                    }
+                    case BLOCK -> {
+                        if (!Platform.isFxApplicationThread() && !await(() -> queuedTasks >= capacity)) {
+                            return false;
+                        }
+                        if (queuedTasks >= capacity) {
+                            removeOldestTask();
+                            dropped++;
+                        }
+                    }
+                }
+            }
+            queue.add(new Pending(null, task, null));
+            queuedTasks++;
+            queued();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the task queued first, skipping the values queued before it.
+     * Called with the lock held while the queue holds tasks.
+     */
+    private void removeOldestTask() {
+        for (var it = queue.iterator(); it.hasNext();) {
+            if (it.next().task != null) {
+                it.remove();
+                queuedTasks--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits until the next delivery while the condition holds. Called with the lock held.
+     *
+     * @return false if interrupted
+     */
+    private boolean await(BooleanSupplier full) {
+        long start = System.nanoTime();
+        try {
+            while (full.getAsBoolean()) {
+                deliveredCondition.await(1, TimeUnit.SECONDS);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped++;
+            return false;
+        } finally {
+            blockedNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Records the queue depth and starts the pulse timer. Called with the lock held.
+     */
+    private void queued() {
+        maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+        if (!scheduled) {
+            scheduled = true;
+            Platform.runLater(this::startTimer);
+        }
+    }
+
+    private void startTimer() {
+        if (timer == null) {
+            timer = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    deliver();
+                }
+            };
+        }
+        timer.start();
+    }
+
+    /**
+     * Delivers the pending updates in a pulse. The timer stops after a pulse
+     * without updates, and is started again by the next update.
+     */
+    private void deliver() {
+        var batch = new ArrayList<Pending>();
+        lock.lock();
+        try {
+            if (queue.isEmpty()) {
+                scheduled = false;
+                timer.stop();
+                return;
+            }
+            batch.addAll(queue);
+            queue.clear();
+            values.clear();
+            queuedTasks = 0;
+            pulses++;
+            deliveredCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        long latencies = 0;
+        long max = 0;
+        long now = System.nanoTime();
+        for (var pending : batch) {
+            long latency = now - pending.submitted;
+            latencies += latency;
+            max = Math.max(max, latency);
+            try {
+                pending.run();
+            } catch (RuntimeException e) {
+                // Keep delivering the other updates.
+                LOGGER.log(System.Logger.Level.WARNING, "Update failed", e);
+            }
+        }
+        lock.lock();
+        try {
+            delivered += batch.size();
+            latencyTotal += latencies;
+            latencyMax = Math.max(latencyMax, max);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the counters of this updater.
+     *
+     * @return a snapshot of the counters
+     */
+    public Stats getStats() {
+        lock.lock();
+        try {
+            return new Stats(submitted, delivered, coalesced, dropped, blockedNanos,
+                    queue.size(), maxQueueDepth, pulses,
+                    delivered > 0 ? latencyTotal / delivered : 0, latencyMax);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
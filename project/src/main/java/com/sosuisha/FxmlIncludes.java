@@ -0,0 +1,305 @@
+package com.sosuisha;
+
+import javafx.fxml.FXMLLoader;
+import javafx.fxml.LoadException;
+import javafx.util.BuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Loads the {@code fx:include} fragments of an FXML document in parallel.
+ * <p>
+ * The document is scanned once per URL. Each {@code <fx:include .../>} is
+ * replaced by a {@link ParallelInclude} element with the same {@code fx:id},
+ * and all fragments start loading on the executor before FXMLLoader parses
+ * the rewritten document. When the parser reaches a placeholder, it waits
+ * for that fragment and puts its root into the graph, and the fragment's
+ * controller is injected into the {@code <fx:id>Controller} field like
+ * FXMLLoader does. So, as with {@code fx:include}, every included controller
+ * has been initialized when the parent's initialize method is called; the
+ * included controllers are initialized concurrently with each other, on the
+ * threads of the executor.
+ * <p>
+ * Documents whose includes cannot be rewritten safely, e.g. an include with
+ * child elements or a non-UTF-8 encoding, are loaded by FXMLLoader as is.
+ */
+final class FxmlIncludes {
+    private static final Pattern INCLUDE = Pattern.compile("<fx:include\\b([^>]*?)(/?)>");
+    private static final Pattern ATTRIBUTE = Pattern.compile("([\\w:.-]+)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+    private static final Pattern SKIPPED = Pattern.compile("<!--.*?-->|<!\\[CDATA\\[.*?]]>", Pattern.DOTALL);
+    private static final Pattern ENCODING = Pattern.compile("<\\?xml[^>]*encoding\\s*=\\s*[\"']([^\"']+)[\"']");
+
+    /** Plans by the external form of the FXML URL; empty if the document is loaded as is. */
+    private static final Map<String, Optional<Plan>> PLANS = new ConcurrentHashMap<>();
+
+    /**
+     * An {@code fx:include} of the document.
+     *
+     * @param source    the source attribute, unresolved
+     * @param resources the base name of the resources attribute, or null
+     * @param fxId      the fx:id, or null
+     */
+    record Include(String source, String resources, String fxId) {
+    }
+
+    /**
+     * The root and controller of a loaded fragment.
+     *
+     * @param root       the root node
+     * @param controller the controller, or null
+     */
+    record Fragment(Object root, Object controller) {
+    }
+
+    /**
+     * Loads a fragment.
+     */
+    @FunctionalInterface
+    interface FragmentLoader {
+        Fragment load(URL url, Include include) throws IOException;
+    }
+
+    /**
+     * The rewritten document and its includes, in document order.
+     */
+    record Plan(byte[] fxml, List<Include> includes) {
+    }
+
+    /**
+     * The fragments being loaded for one load of a document.
+     */
+    static final class Run {
+        private final FXMLLoader loader;
+        private final List<Include> includes;
+        private final List<CompletableFuture<Fragment>> fragments;
+
+        private Run(FXMLLoader loader, List<Include> includes, List<CompletableFuture<Fragment>> fragments) {
+            this.loader = loader;
+            this.includes = includes;
+            this.fragments = fragments;
+        }
+
+        /**
+         * Waits for the fragment of a placeholder and injects its controller.
+         */
+        Object take(int slot) throws IOException {
+            if (slot < 0 || slot >= fragments.size()) {
+                throw new LoadException("Unknown include slot " + slot);
+            }
+            Fragment fragment;
+            try {
+                fragment = fragments.get(slot).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for " + includes.get(slot).source());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException io) {
+                    throw io.getCause();
+                }
+                throw new LoadException(e.getCause());
+            }
+            var fxId = includes.get(slot).fxId();
+            if (fxId != null && fragment.controller() != null) {
+                var id = fxId + "Controller";
+                loader.getNamespace().put(id, fragment.controller());
+                injectField(loader.getController(), id, fragment.controller());
+            }
+            return fragment.root();
+        }
+
+        /**
+         * Discards the fragments that were not taken, e.g. after the parent failed.
+         * A fragment that is already loading runs to completion.
+         */
+        void cancel() {
+            for (var fragment : fragments) {
+                fragment.cancel(true);
+            }
+        }
+    }
+
+    private FxmlIncludes() {
+    }
+
+    /**
+     * Returns the plan of the document.
+     *
+     * @param fxmlURL the URL of the FXML
+     * @return the plan, or null if the document has no include or cannot be rewritten
+     * @throws IOException if the FXML cannot be read
+     */
+    static Plan plan(URL fxmlURL) throws IOException {
+        var key = fxmlURL.toExternalForm();
+        var plan = PLANS.get(key);
+        if (plan == null) {
+            try (InputStream in = fxmlURL.openStream()) {
+                plan = Optional.ofNullable(rewrite(new String(in.readAllBytes(), StandardCharsets.UTF_8)));
+            }
+            PLANS.putIfAbsent(key, plan);
+        }
+        return plan.orElse(null);
+    }
+
+    /**
+     * Replaces the includes outside of comments and CDATA sections by placeholders.
+     *
+     * @return the plan, or null if there is nothing to do or the document cannot be rewritten
+     */
+    static Plan rewrite(String fxml) {
+        var encoding = ENCODING.matcher(fxml);
+        if (encoding.find() && !encoding.group(1).equalsIgnoreCase("UTF-8")) {
+            return null;
+        }
+        var skipped = new ArrayList<int[]>();
+        var skip = SKIPPED.matcher(fxml);
+        while (skip.find()) {
+            skipped.add(new int[] { skip.start(), skip.end() });
+        }
+        var includes = new ArrayList<Include>();
+        var result = new StringBuilder();
+        var matcher = INCLUDE.matcher(fxml);
+        int last = 0;
+        while (matcher.find()) {
+            if (isSkipped(skipped, matcher.start())) {
+                continue;
+            }
+            if (matcher.group(2).isEmpty()) {
+                // An include with children, e.g. <fx:define>; keep FXMLLoader's handling.
+                return null;
+            }
+            var attributes = attributes(matcher.group(1));
+            var source = attributes.get("source");
+            if (source == null || attributes.containsKey("charset")) {
+                return null;
+            }
+            var fxId = attributes.get("fx:id");
+            result.append(fxml, last, matcher.start())
+                    .append("<").append(ParallelInclude.class.getName())
+                    .append(" slot=\"").append(includes.size()).append('"');
+            if (fxId != null) {
+                result.append(" fx:id=\"").append(fxId).append('"');
+            }
+            result.append("/>");
+            last = matcher.end();
+            includes.add(new Include(source, attributes.get("resources"), fxId));
+        }
+        if (includes.isEmpty()) {
+            return null;
+        }
+        result.append(fxml, last, fxml.length());
+        return new Plan(result.toString().getBytes(StandardCharsets.UTF_8), List.copyOf(includes));
+    }
+
+    private static boolean isSkipped(List<int[]> ranges, int index) {
+        for (var range : ranges) {
+            if (index >= range[0] && index < range[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, String> attributes(String text) {
+        var result = new HashMap<String, String>();
+        Matcher matcher = ATTRIBUTE.matcher(text);
+        while (matcher.find()) {
+            var value = matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+            result.put(matcher.group(1), unescape(value));
+        }
+        return result;
+    }
+
+    private static String unescape(String value) {
+        return value.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+                .replace("&apos;", "'").replace("&amp;", "&");
+    }
+
+    /**
+     * Starts loading all fragments of the plan on the executor, and lets the
+     * loader build placeholders from them.
+     *
+     * @param plan      the plan
+     * @param location  the URL of the document, for relative sources
+     * @param loader    the FXMLLoader of the document
+     * @param fragments loads a fragment
+     * @param executor  the executor
+     * @return the run, to be cancelled when the load is done
+     */
+    static Run start(Plan plan, URL location, FXMLLoader loader, FragmentLoader fragments, Executor executor) {
+        var futures = new ArrayList<CompletableFuture<Fragment>>();
+        for (var include : plan.includes()) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    var url = URI.create(CompiledFxmlViews.resolveLocation(location, include.source())).toURL();
+                    return fragments.load(url, include);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor));
+        }
+        var run = new Run(loader, plan.includes(), futures);
+        BuilderFactory defaults = loader.getBuilderFactory();
+        loader.setBuilderFactory(type -> type == ParallelInclude.class
+                ? new ParallelInclude(run)
+                : defaults.getBuilder(type));
+        return run;
+    }
+
+    /**
+     * Sets a controller field the way FXMLLoader injects fx:id fields: a
+     * public field or one annotated with {@code @FXML}, in the class or a superclass.
+     */
+    private static void injectField(Object controller, String name, Object value) throws LoadException {
+        if (controller == null) {
+            return;
+        }
+        for (Class<?> type = controller.getClass(); type != null && type != Object.class;
+                type = type.getSuperclass()) {
+            Field field;
+            try {
+                field = type.getDeclaredField(name);
+            } catch (NoSuchFieldException e) {
+                continue;
+            }
+            if (!Modifier.isPublic(field.getModifiers()) && !field.isAnnotationPresent(javafx.fxml.FXML.class)) {
+                return;
+            }
+            if (!field.getType().isInstance(value)) {
+                return;
+            }
+            try {
+                field.setAccessible(true);
+                field.set(controller, value);
+            } catch (IllegalAccessException | RuntimeException e) {
+                throw new LoadException("Cannot inject " + name + " into " + type.getName(), e);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Opens the rewritten document for FXMLLoader.
+     */
+    static InputStream open(Plan plan) {
+        return new ByteArrayInputStream(plan.fxml());
+    }
+}
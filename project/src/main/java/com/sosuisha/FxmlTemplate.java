@@ -0,0 +1,1011 @@
+package com.sosuisha;
+
+import javafx.event.Event;
+import javafx.event.EventHandler;
+import javafx.fxml.FXML;
+import javafx.fxml.FXMLLoader;
+import javafx.fxml.Initializable;
+import javafx.fxml.JavaFXBuilderFactory;
+import javafx.fxml.LoadException;
+import javafx.util.Builder;
+import javafx.util.BuilderFactory;
+import javafx.util.Callback;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.Objects;
+import java.util.ResourceBundle;
+import java.util.Set;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Pre-resolved instantiation plan of an FXML document.
+ * <p>
+ * The document is parsed once; classes, constructors, setters and attribute
+ * values are resolved up front; only {@code %key} strings are looked up in
+ * the ResourceBundle per instance. {@link #instantiate(Callback)} then creates a
+ * fresh node graph and controller from the plan without touching the XML.
+ * <p>
+ * Only the commonly used subset of FXML is supported: instance and property
+ * elements, default and static properties, {@code fx:id}, {@code fx:controller},
+ * {@code fx:value}, {@code fx:constant}, and the {@code @}, {@code %},
+ * {@code $} and {@code #} attribute prefixes. Anything else makes
+ * {@link #compile(URL, ResourceBundle)} throw {@link Unsupported}, and the
+ * caller falls back to {@link FXMLLoader}.
+ */
+final class FxmlTemplate {
+    private static final String FX_NAMESPACE_PREFIX = "http://javafx.com/fxml";
+    private static final BuilderFactory BUILDER_FACTORY = ImageCache.builderFactory(new JavaFXBuilderFactory());
+
+    /**
+     * Thrown when the FXML document uses a feature that the template does not support.
+     */
+    static final class Unsupported extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    /** A value assigned to a property. */
+    sealed interface Value permits Constant, ResourceString, StaticField, Reference, Handler, ObjectPlan {
+    }
+
+    /**
+     * A pre-coerced value.
+     * {@code text} keeps the attribute text as written in the FXML.
+     */
+    record Constant(Object value, String text) implements Value {
+    }
+
+    /** A {@code %key} string looked up in the ResourceBundle at instantiation. */
+    record ResourceString(String key) implements Value {
+    }
+
+    /** An {@code fx:constant} value. */
+    record StaticField(Field field, Object value) implements Value {
+    }
+
+    /** A {@code $id} reference to an object in the namespace. */
+    record Reference(String id) implements Value {
+    }
+
+    /** A {@code #method} event handler bound to the controller. */
+    record Handler(String methodName) implements Value {
+    }
+
+    /**
+     * An object to instantiate.
+     * If {@code constructor} is null, the object is created through a {@link Builder}.
+     */
+    record ObjectPlan(Class<?> type, Constructor<?> constructor, String fxId, List<Step> steps)
+            implements Value {
+    }
+
+    /** A step applied to a newly created object (or to its builder). */
+    sealed interface Step permits SetProperty, AddAll, SetStatic, PutBuilder {
+    }
+
+    record SetProperty(String name, Method setter, Value value) implements Step {
+    }
+
+    record AddAll(String name, Method getter, List<Value> values) implements Step {
+    }
+
+    record SetStatic(Method setter, Value value) implements Step {
+    }
+
+    record PutBuilder(String name, Value value) implements Step {
+    }
+
+    /**
+     * The result of {@link #instantiate(Callback)}.
+     */
+    record Instance(Object root, Object controller, Map<String, Object> namespace) {
+    }
+
+    private final URL location;
+    private final ResourceBundle resources;
+    private final ObjectPlan root;
+    private final Class<?> controllerType;
+    private final Set<Class<?>> referencedClasses;
+
+    private FxmlTemplate(URL location, ResourceBundle resources, ObjectPlan root,
+            Class<?> controllerType, Set<Class<?>> referencedClasses) {
+        this.location = location;
+        this.resources = resources;
+        this.root = root;
+        this.controllerType = controllerType;
+        this.referencedClasses = referencedClasses;
+    }
+
+    URL location() {
+        return location;
+    }
+
+    ObjectPlan root() {
+        return root;
+    }
+
+    Class<?> controllerType() {
+        return controllerType;
+    }
+
+    /**
+     * Returns the classes referenced by this template, including the controller class.
+     */
+    Set<Class<?>> referencedClasses() {
+        return referencedClasses;
+    }
+
+    /**
+     * Parses the FXML document and resolves it into an instantiation plan.
+     *
+     * @param location  the URL of the FXML file
+     * @param resources the ResourceBundle used for %key values, or null
+     * @return the compiled template
+     * @throws IOException  if the document cannot be read
+     * @throws Unsupported  if the document uses unsupported FXML features
+     */
+    static FxmlTemplate compile(URL location, ResourceBundle resources) throws IOException, Unsupported {
+        var factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        try (InputStream in = location.openStream()) {
+            var reader = factory.createXMLStreamReader(in);
+            try {
+                return new Compiler(location, resources, reader).compile();
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            // Let FXMLLoader report the syntax error in its own words.
+            throw new Unsupported("Malformed XML: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a new object graph and controller from this template.
+     *
+     * @param controllerFactory the factory for the fx:controller class, or null
+     *                          to use its public no-arg constructor
+     * @return the root object, the controller and the namespace
+     * @throws IOException if instantiation fails
+     */
+    Instance instantiate(Callback<Class<?>, Object> controllerFactory) throws IOException {
+        var namespace = new HashMap<String, Object>();
+        Object controller = null;
+        try {
+            if (controllerType != null) {
+                controller = controllerFactory != null
+                        ? controllerFactory.call(controllerType)
+                        : controllerType.getConstructor().newInstance();
+                namespace.put(FXMLLoader.CONTROLLER_KEYWORD, controller);
+            }
+            var rootObject = instantiate(root, namespace, controller);
+            if (controller != null) {
+                initializeController(controller, namespace);
+            }
+            return new Instance(rootObject, controller, namespace);
+        } catch (LoadException e) {
+            throw e;
+        } catch (InvocationTargetException e) {
+            throw new LoadException(e.getCause());
+        } catch (Exception e) {
+            throw new LoadException(e);
+        }
+    }
+
+    private Object instantiate(ObjectPlan plan, Map<String, Object> namespace, Object controller)
+            throws Exception {
+        Object target = plan.constructor() != null
+                ? plan.constructor().newInstance()
+                : BUILDER_FACTORY.getBuilder(plan.type());
+        if (plan.fxId() != null && plan.constructor() != null) {
+            namespace.put(plan.fxId(), target);
+        }
+        for (var step : plan.steps()) {
+            switch (step) {
+                case SetProperty s when s.value() instanceof ResourceString r ->
+                        Localization.getDefault().bind(resources, r.key(), target,
+                                (object, text) -> invokeSetter(s.setter(), object, text), resourceString(r.key()));
+                case SetProperty s -> s.setter().invoke(target, resolve(s.value(), namespace, controller));
+                case SetStatic s -> s.setter().invoke(null, target, resolve(s.value(), namespace, controller));
+                case AddAll s -> {
+                    @SuppressWarnings("unchecked")
+                    var list = (Collection<Object>) s.getter().invoke(target);
+                    for (var value : s.values()) {
+                        list.add(resolve(value, namespace, controller));
+                    }
+                }
+                case PutBuilder s -> {
+                    @SuppressWarnings("unchecked")
+                    var map = (Map<String, Object>) target;
+                    map.put(s.name(), resolve(s.value(), namespace, controller));
+                }
+            }
+        }
+        if (plan.constructor() == null) {
+            target = ((Builder<?>) target).build();
+            if (plan.fxId() != null) {
+                namespace.put(plan.fxId(), target);
+            }
+        }
+        return target;
+    }
+
+    private Object resolve(Value value, Map<String, Object> namespace, Object controller) throws Exception {
+        return switch (value) {
+            case Constant c -> c.value();
+            case StaticField f -> f.value();
+            case ResourceString r -> resourceString(r.key());
+            case ObjectPlan p -> instantiate(p, namespace, controller);
+            case Reference r -> {
+                if (!namespace.containsKey(r.id())) {
+                    throw new LoadException("Unknown reference $" + r.id() + " in " + location);
+                }
+                yield namespace.get(r.id());
+            }
+            case Handler h -> eventHandler(controller, h.methodName());
+        };
+    }
+
+    private static void invokeSetter(Method setter, Object target, String text) {
+        try {
+            setter.invoke(target, text);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private String resourceString(String key) throws LoadException {
+        if (resources == null) {
+            throw new LoadException("No resources specified for %" + key + " in " + location);
+        }
+        try {
+            return resources.getString(key);
+        } catch (MissingResourceException e) {
+            throw new LoadException("Resource \"" + key + "\" not found in " + location, e);
+        }
+    }
+
+    private EventHandler<Event> eventHandler(Object controller, String methodName) throws LoadException {
+        if (controller == null) {
+            throw new LoadException("No controller specified for #" + methodName + " in " + location);
+        }
+        var method = ControllerMembers.of(controller.getClass()).handlers.get(methodName);
+        if (method == null) {
+            throw new LoadException("Controller method \"" + methodName + "\" not found in "
+                    + controller.getClass().getName());
+        }
+        return event -> {
+            try {
+                if (method.getParameterCount() == 0) {
+                    method.invoke(controller);
+                } else {
+                    method.invoke(controller, event);
+                }
+            } catch (InvocationTargetException e) {
+                throw new RuntimeException(e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        };
+    }
+
+    private void initializeController(Object controller, Map<String, Object> namespace) throws Exception {
+        var members = ControllerMembers.of(controller.getClass());
+        for (var entry : namespace.entrySet()) {
+            var field = members.fields.get(entry.getKey());
+            if (field != null && !entry.getKey().equals(FXMLLoader.CONTROLLER_KEYWORD)) {
+                field.set(controller, entry.getValue());
+            }
+        }
+        var locationField = members.fields.get(FXMLLoader.LOCATION_KEY);
+        if (locationField != null && locationField.getType() == URL.class) {
+            locationField.set(controller, location);
+        }
+        var resourcesField = members.fields.get(FXMLLoader.RESOURCES_KEY);
+        if (resourcesField != null && resourcesField.getType() == ResourceBundle.class) {
+            resourcesField.set(controller, resources);
+        }
+        if (controller instanceof Initializable initializable) {
+            var timer = SceneMetrics.start(SceneMetrics.Phase.INITIALIZE);
+            initializable.initialize(location, resources);
+            timer.stop();
+        } else if (members.initialize != null) {
+            var timer = SceneMetrics.start(SceneMetrics.Phase.INITIALIZE);
+            members.initialize.invoke(controller);
+            timer.stop();
+        }
+    }
+
+    /**
+     * Injectable fields and handler methods of a controller class, resolved once per class.
+     */
+    static final class ControllerMembers {
+        private static final ClassValue<ControllerMembers> CACHE = new ClassValue<>() {
+            @Override
+            protected ControllerMembers computeValue(Class<?> type) {
+                return new ControllerMembers(type);
+            }
+        };
+
+        final Map<String, Field> fields = new HashMap<>();
+        final Map<String, Method> handlers = new HashMap<>();
+        final Method initialize;
+
+        static ControllerMembers of(Class<?> type) {
+            return CACHE.get(type);
+        }
+
+        private ControllerMembers(Class<?> type) {
+            Method init = null;
+            for (var c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (var field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || !isAccessible(field.getModifiers(),
+                            field.isAnnotationPresent(FXML.class))) {
+                        continue;
+                    }
+                    if (!fields.containsKey(field.getName())) {
+                        field.setAccessible(true);
+                        fields.put(field.getName(), field);
+                    }
+                }
+                for (var method : c.getDeclaredMethods()) {
+                    if (Modifier.isStatic(method.getModifiers()) || !isAccessible(method.getModifiers(),
+                            method.isAnnotationPresent(FXML.class))) {
+                        continue;
+                    }
+                    var params = method.getParameterTypes();
+                    if (params.length == 0 && method.getName().equals("initialize")) {
+                        if (init == null) {
+                            method.setAccessible(true);
+                            init = method;
+                        }
+                    } else if (params.length == 1 && Event.class.isAssignableFrom(params[0])
+                            || params.length == 0) {
+                        var existing = handlers.get(method.getName());
+                        // Prefer the variant that receives the event.
+                        if (existing == null || existing.getParameterCount() < params.length) {
+                            method.setAccessible(true);
+                            handlers.put(method.getName(), method);
+                        }
+                    }
+                }
+            }
+            initialize = init;
+        }
+
+        private static boolean isAccessible(int modifiers, boolean annotated) {
+            return annotated || Modifier.isPublic(modifiers);
+        }
+    }
+
+    /**
+     * Single-use recursive descent compiler from StAX events to an {@link ObjectPlan} tree.
+     */
+    private static final class Compiler {
+        private final URL location;
+        private final ResourceBundle resources;
+        private final XMLStreamReader reader;
+        private final ClassLoader classLoader = FXMLLoader.getDefaultClassLoader();
+        private final Map<String, Class<?>> classImports = new HashMap<>();
+        private final List<String> packageImports = new ArrayList<>();
+        private final Set<Class<?>> referencedClasses = new LinkedHashSet<>();
+        private Class<?> controllerType;
+
+        Compiler(URL location, ResourceBundle resources, XMLStreamReader reader) {
+            this.location = location;
+            this.resources = resources;
+            this.reader = reader;
+        }
+
+        FxmlTemplate compile() throws XMLStreamException, Unsupported {
+            ObjectPlan rootPlan = null;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION -> processingInstruction();
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        var value = instanceElement(true);
+                        if (!(value instanceof ObjectPlan plan)) {
+                            throw new Unsupported("Root element must be an object");
+                        }
+                        rootPlan = plan;
+                    }
+                    default -> {
+                    }
+                }
+            }
+            if (rootPlan == null) {
+                throw new Unsupported("No root element");
+            }
+            if (controllerType != null) {
+                referencedClasses.add(controllerType);
+            }
+            return new FxmlTemplate(location, resources, rootPlan, controllerType,
+                    Set.copyOf(referencedClasses));
+        }
+
+        private void processingInstruction() throws Unsupported {
+            var target = reader.getPITarget();
+            var data = reader.getPIData() == null ? "" : reader.getPIData().trim();
+            switch (target) {
+                case "import" -> {
+                    if (data.endsWith(".*")) {
+                        packageImports.add(data.substring(0, data.length() - 2));
+                    } else {
+                        var type = loadClass(data);
+                        classImports.put(type.getSimpleName(), type);
+                    }
+                }
+                case "compile" -> {
+                }
+                default -> throw new Unsupported("Processing instruction <?" + target + "?>");
+            }
+        }
+
+        /**
+         * Compiles the instance element at the current START_ELEMENT.
+         */
+        private Value instanceElement(boolean isRoot) throws XMLStreamException, Unsupported {
+            if (isFxPrefix(reader.getPrefix(), reader.getNamespaceURI())) {
+                throw new Unsupported("<fx:" + reader.getLocalName() + ">");
+            }
+            var type = resolveClass(reader.getLocalName());
+            referencedClasses.add(type);
+
+            String fxId = null;
+            String fxValue = null;
+            String fxConstant = null;
+            var attributes = new ArrayList<String[]>();
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                var name = reader.getAttributeLocalName(i);
+                var value = reader.getAttributeValue(i);
+                if (isFxPrefix(reader.getAttributePrefix(i), reader.getAttributeNamespace(i))) {
+                    switch (name) {
+                        case "id" -> fxId = value;
+                        case "value" -> fxValue = value;
+                        case "constant" -> fxConstant = value;
+                        case "controller" -> {
+                            if (!isRoot) {
+                                throw new Unsupported("fx:controller on a non-root element");
+                            }
+                            controllerType = loadClass(value);
+                        }
+                        default -> throw new Unsupported("fx:" + name);
+                    }
+                } else {
+                    attributes.add(new String[] { name, value });
+                }
+            }
+
+            if (fxValue != null || fxConstant != null) {
+                if (fxId != null || !attributes.isEmpty()) {
+                    throw new Unsupported("fx:value/fx:constant with other attributes");
+                }
+                skipEmptyElement();
+                if (fxValue != null) {
+                    return new Constant(valueOf(type, fxValue), fxValue);
+                }
+                return constant(type, fxConstant);
+            }
+
+            var constructor = publicNoArgConstructor(type);
+            if (constructor == null) {
+                var builder = BUILDER_FACTORY.getBuilder(type);
+                if (!(builder instanceof Map)) {
+                    throw new Unsupported("No default constructor or map builder for " + type.getName());
+                }
+            }
+            var steps = new ArrayList<Step>();
+            if (fxId != null && constructor != null) {
+                var idSetter = findSetter(type, "id", String.class);
+                if (idSetter != null) {
+                    steps.add(new SetProperty("id", idSetter, new Constant(fxId, fxId)));
+                }
+            }
+            for (var attribute : attributes) {
+                steps.add(attribute(type, constructor == null, attribute[0], attribute[1]));
+            }
+
+            var defaultValues = new ArrayList<Value>();
+            while (true) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    break;
+                }
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        var localName = reader.getLocalName();
+                        if (isFxPrefix(reader.getPrefix(), reader.getNamespaceURI())
+                                || isClassName(localName)) {
+                            defaultValues.add(instanceElement(false));
+                        } else {
+                            // Like FXMLLoader, keep the children and the property elements in document order.
+                            if (!defaultValues.isEmpty()) {
+                                steps.add(defaultProperty(type, constructor == null, defaultValues));
+                                defaultValues.clear();
+                            }
+                            steps.add(propertyElement(type, constructor == null, localName));
+                        }
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> {
+                        if (!reader.isWhiteSpace()) {
+                            throw new Unsupported("Text content in <" + type.getSimpleName() + ">");
+                        }
+                    }
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION ->
+                        throw new Unsupported("Nested processing instruction");
+                    default -> {
+                    }
+                }
+            }
+            if (!defaultValues.isEmpty()) {
+                steps.add(defaultProperty(type, constructor == null, defaultValues));
+            }
+            return new ObjectPlan(type, constructor, fxId, List.copyOf(steps));
+        }
+
+        private Step attribute(Class<?> type, boolean builder, String name, String text) throws Unsupported {
+            var dot = name.lastIndexOf('.');
+            if (dot > 0) {
+                if (builder) {
+                    throw new Unsupported("Static property on a builder: " + name);
+                }
+                var ownerType = resolveClass(name.substring(0, dot));
+                var propertyName = name.substring(dot + 1);
+                var setter = findStaticSetter(ownerType, propertyName, type, text);
+                return new SetStatic(setter, attributeValue(text, setter.getParameterTypes()[1]));
+            }
+            if (builder) {
+                if (text.startsWith("#") || text.startsWith("$")) {
+                    throw new Unsupported("Reference or handler on a builder: " + name);
+                }
+                if (text.startsWith("%") && !text.startsWith("%%")) {
+                    return new PutBuilder(name, new ResourceString(text.substring(1)));
+                }
+                return new PutBuilder(name, new Constant(resolvePrefix(text), text));
+            }
+            if (text.startsWith("#") && name.startsWith("on")) {
+                var setter = findSetter(type, name, EventHandler.class);
+                if (setter == null) {
+                    throw new Unsupported("Event handler property " + name);
+                }
+                return new SetProperty(name, setter, new Handler(text.substring(1)));
+            }
+            var setter = findSetter(type, name, text);
+            if (setter != null) {
+                return new SetProperty(name, setter, attributeValue(text, setter.getParameterTypes()[0]));
+            }
+            // Like FXMLLoader, a read-only list property takes a comma-separated list.
+            var getter = hasSetter(type, name) ? null : findListGetter(type, name);
+            if (getter != null && listElementType(getter) == String.class) {
+                var values = new ArrayList<Value>();
+                for (var item : text.split(",")) {
+                    var trimmed = item.trim();
+                    if (!trimmed.isEmpty()) {
+                        values.add(new Constant(resolvePrefix(trimmed), trimmed));
+                    }
+                }
+                return new AddAll(name, getter, List.copyOf(values));
+            }
+            throw new Unsupported("Property " + type.getName() + "." + name);
+        }
+
+        private Value attributeValue(String text, Class<?> targetType) throws Unsupported {
+            if (text.startsWith("$")) {
+                var id = text.substring(1);
+                if (id.startsWith("{") || id.contains(".")) {
+                    throw new Unsupported("Expression " + text);
+                }
+                if (id.startsWith("$")) {
+                    return new Constant(coerce(id, targetType), text);
+                }
+                return new Reference(id);
+            }
+            if (text.startsWith("%") && !text.startsWith("%%")) {
+                if (targetType != String.class && targetType != Object.class) {
+                    throw new Unsupported("Resource string for " + targetType.getName());
+                }
+                return new ResourceString(text.substring(1));
+            }
+            return new Constant(coerce(resolvePrefix(text), targetType), text);
+        }
+
+        /**
+         * Resolves the \, @ and % prefixes of an attribute value.
+         */
+        @SuppressWarnings("deprecation") // URL(URL, String) also resolves jar: URLs, like FXMLLoader.
+        private String resolvePrefix(String text) throws Unsupported {
+            if (text.startsWith("\\")) {
+                return text.substring(1);
+            }
+            if (text.startsWith("@")) {
+                var path = text.substring(1);
+                if (path.startsWith("@")) {
+                    return path;
+                }
+                if (path.startsWith("/")) {
+                    var url = classLoader.getResource(path.substring(1));
+                    if (url == null) {
+                        throw new Unsupported("Resource not found: " + path);
+                    }
+                    return url.toString();
+                }
+                try {
+                    return new URL(location, path).toString();
+                } catch (MalformedURLException e) {
+                    throw new Unsupported("Malformed location: " + path);
+                }
+            }
+            if (text.startsWith("%")) {
+                var key = text.substring(1);
+                if (key.startsWith("%")) {
+                    return key;
+                }
+                if (resources == null) {
+                    throw new Unsupported("No resources specified for " + text);
+                }
+                try {
+                    return resources.getString(key);
+                } catch (MissingResourceException e) {
+                    throw new Unsupported("Missing resource key " + key);
+                }
+            }
+            return text;
+        }
+
+        private Step propertyElement(Class<?> ownerType, boolean builder, String name)
+                throws XMLStreamException, Unsupported {
+            if (reader.getAttributeCount() > 0) {
+                throw new Unsupported("Attributes on property element <" + name + ">");
+            }
+            var values = new ArrayList<Value>();
+            var text = new StringBuilder();
+            while (true) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    break;
+                }
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT -> values.add(instanceElement(false));
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> text.append(reader.getText());
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION ->
+                        throw new Unsupported("Nested processing instruction");
+                    default -> {
+                    }
+                }
+            }
+            var trimmed = text.toString().trim();
+            if (!trimmed.isEmpty()) {
+                if (!values.isEmpty()) {
+                    throw new Unsupported("Mixed content in <" + name + ">");
+                }
+                return attribute(ownerType, builder, name, trimmed);
+            }
+
+            var dot = name.lastIndexOf('.');
+            if (dot > 0) {
+                if (builder || values.size() != 1) {
+                    throw new Unsupported("Static property element <" + name + ">");
+                }
+                var staticOwner = resolveClass(name.substring(0, dot));
+                var setter = findStaticSetter(staticOwner, name.substring(dot + 1), ownerType, null);
+                return new SetStatic(setter, values.get(0));
+            }
+            if (builder) {
+                if (values.size() != 1) {
+                    throw new Unsupported("List property <" + name + "> on a builder");
+                }
+                return new PutBuilder(name, values.get(0));
+            }
+            return assign(ownerType, name, values);
+        }
+
+        private Step defaultProperty(Class<?> type, boolean builder, List<Value> values) throws Unsupported {
+            var annotation = type.getAnnotation(javafx.beans.DefaultProperty.class);
+            if (annotation == null || builder) {
+                throw new Unsupported("No default property for " + type.getName());
+            }
+            return assign(type, annotation.value(), values);
+        }
+
+        private Step assign(Class<?> type, String name, List<Value> values) throws Unsupported {
+            var getter = hasSetter(type, name) ? null : findListGetter(type, name);
+            if (getter != null) {
+                return new AddAll(name, getter, List.copyOf(values));
+            }
+            if (values.size() == 1) {
+                var valueType = valueType(values.get(0));
+                var setter = findSetter(type, name, valueType);
+                if (setter != null) {
+                    return new SetProperty(name, setter, values.get(0));
+                }
+            }
+            throw new Unsupported("Property " + type.getName() + "." + name);
+        }
+
+        private static Class<?> valueType(Value value) {
+            return switch (value) {
+                case ObjectPlan p -> p.type();
+                case Constant c -> c.value() == null ? Object.class : c.value().getClass();
+                case StaticField f -> f.field().getType();
+                default -> Object.class;
+            };
+        }
+
+        private void skipEmptyElement() throws XMLStreamException, Unsupported {
+            while (true) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    return;
+                }
+                if (event == XMLStreamConstants.START_ELEMENT
+                        || (event == XMLStreamConstants.CHARACTERS && !reader.isWhiteSpace())) {
+                    throw new Unsupported("Content in fx:value/fx:constant element");
+                }
+            }
+        }
+
+        private Class<?> resolveClass(String name) throws Unsupported {
+            var imported = classImports.get(name);
+            if (imported != null) {
+                return imported;
+            }
+            if (name.indexOf('.') > 0) {
+                return loadClass(name);
+            }
+            for (var packageName : packageImports) {
+                try {
+                    return Class.forName(packageName + "." + name, false, classLoader);
+                } catch (ClassNotFoundException e) {
+                    // Try the next package.
+                }
+            }
+            throw new Unsupported("Class not imported: " + name);
+        }
+
+        private Class<?> loadClass(String name) throws Unsupported {
+            try {
+                return Class.forName(name, false, classLoader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                throw new Unsupported("Class not found: " + name);
+            }
+        }
+
+        private static boolean isFxPrefix(String prefix, String namespaceURI) {
+            return (namespaceURI != null && namespaceURI.startsWith(FX_NAMESPACE_PREFIX))
+                    || "fx".equals(prefix);
+        }
+
+        private static boolean isClassName(String localName) {
+            var simpleName = localName.substring(localName.lastIndexOf('.') + 1);
+            return !simpleName.isEmpty() && Character.isUpperCase(simpleName.charAt(0));
+        }
+
+        private static Constructor<?> publicNoArgConstructor(Class<?> type) throws Unsupported {
+            if (!Modifier.isPublic(type.getModifiers())) {
+                throw new Unsupported("Class is not public: " + type.getName());
+            }
+            try {
+                return type.getConstructor();
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        private static Object valueOf(Class<?> type, String text) throws Unsupported {
+            if (type == String.class) {
+                return text;
+            }
+            return coerce(text, type);
+        }
+
+        private static StaticField constant(Class<?> type, String name) throws Unsupported {
+            try {
+                var field = type.getField(name);
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    throw new Unsupported("Not a constant: " + type.getName() + "." + name);
+                }
+                return new StaticField(field, field.get(null));
+            } catch (ReflectiveOperationException e) {
+                throw new Unsupported("Constant not found: " + type.getName() + "." + name);
+            }
+        }
+
+        private static String setterName(String property) {
+            return "set" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        }
+
+        /**
+         * Finds the setter of a property that accepts the given text after coercion.
+         */
+        private static Method findSetter(Class<?> type, String property, String text) {
+            Method fallback = null;
+            for (var method : type.getMethods()) {
+                if (!isSetter(method, setterName(property), 1)) {
+                    continue;
+                }
+                var paramType = method.getParameterTypes()[0];
+                if (paramType == String.class) {
+                    return method;
+                }
+                if (fallback == null && canCoerce(text, paramType)) {
+                    fallback = method;
+                }
+            }
+            return fallback;
+        }
+
+        private static Method findSetter(Class<?> type, String property, Class<?> valueType) {
+            for (var method : type.getMethods()) {
+                if (isSetter(method, setterName(property), 1)
+                        && wrap(method.getParameterTypes()[0]).isAssignableFrom(wrap(valueType))) {
+                    return method;
+                }
+            }
+            return null;
+        }
+
+        private static Method findStaticSetter(Class<?> ownerType, String property, Class<?> targetType,
+                String text) throws Unsupported {
+            for (var method : ownerType.getMethods()) {
+                if (Modifier.isStatic(method.getModifiers()) && method.getName().equals(setterName(property))
+                        && method.getParameterCount() == 2
+                        && method.getParameterTypes()[0].isAssignableFrom(targetType)
+                        && (text == null || canCoerce(text, method.getParameterTypes()[1]))) {
+                    return method;
+                }
+            }
+            throw new Unsupported("Static property " + ownerType.getName() + "." + property);
+        }
+
+        private static boolean hasSetter(Class<?> type, String property) {
+            for (var method : type.getMethods()) {
+                if (isSetter(method, setterName(property), 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean isSetter(Method method, String name, int paramCount) {
+            return !Modifier.isStatic(method.getModifiers()) && method.getName().equals(name)
+                    && method.getParameterCount() == paramCount;
+        }
+
+        private static Method findListGetter(Class<?> type, String property) {
+            var suffix = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+            try {
+                var getter = type.getMethod("get" + suffix);
+                if (Collection.class.isAssignableFrom(getter.getReturnType())
+                        && !Modifier.isStatic(getter.getModifiers())) {
+                    return getter;
+                }
+            } catch (NoSuchMethodException e) {
+                // Not a list property.
+            }
+            return null;
+        }
+
+        private static Class<?> listElementType(Method getter) {
+            if (getter.getGenericReturnType() instanceof ParameterizedType p
+                    && p.getActualTypeArguments().length == 1
+                    && p.getActualTypeArguments()[0] instanceof Class<?> c) {
+                return c;
+            }
+            return Object.class;
+        }
+
+        private static boolean canCoerce(String text, Class<?> type) {
+            if (text.startsWith("$") && !text.startsWith("$$")) {
+                return !type.isPrimitive();
+            }
+            if (text.startsWith("@") || text.startsWith("%")) {
+                return type == String.class || type == Object.class;
+            }
+            try {
+                coerce(text.startsWith("\\") ? text.substring(1) : text, type);
+                return true;
+            } catch (Unsupported e) {
+                return false;
+            }
+        }
+
+        /**
+         * Converts an attribute string into the parameter type of a setter.
+         */
+        static Object coerce(String text, Class<?> type) throws Unsupported {
+            var wrapped = wrap(type);
+            try {
+                if (wrapped == String.class || wrapped == Object.class) {
+                    return text;
+                } else if (wrapped == Boolean.class) {
+                    return Boolean.valueOf(text.trim());
+                } else if (wrapped == Character.class) {
+                    if (text.length() != 1) {
+                        throw new Unsupported("Not a character: " + text);
+                    }
+                    return text.charAt(0);
+                } else if (wrapped == Double.class) {
+                    return Double.valueOf(text.trim());
+                } else if (wrapped == Float.class) {
+                    return Float.valueOf(text.trim());
+                } else if (wrapped == Integer.class) {
+                    return Integer.valueOf(text.trim());
+                } else if (wrapped == Long.class) {
+                    return Long.valueOf(text.trim());
+                } else if (wrapped == Short.class) {
+                    return Short.valueOf(text.trim());
+                } else if (wrapped == Byte.class) {
+                    return Byte.valueOf(text.trim());
+                } else if (type.isEnum()) {
+                    return enumValue(type, text.trim());
+                }
+                var valueOf = type.getMethod("valueOf", String.class);
+                if (Modifier.isStatic(valueOf.getModifiers()) && type.isAssignableFrom(valueOf.getReturnType())) {
+                    return valueOf.invoke(null, text);
+                }
+            } catch (NumberFormatException | ReflectiveOperationException e) {
+                // Fall through.
+            }
+            throw new Unsupported("Cannot coerce \"" + text + "\" to " + type.getName());
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private static Object enumValue(Class<?> type, String text) throws Unsupported {
+            try {
+                return Enum.valueOf((Class) type, text);
+            } catch (IllegalArgumentException e) {
+                try {
+                    return Enum.valueOf((Class) type, text.toUpperCase(java.util.Locale.ROOT));
+                } catch (IllegalArgumentException e2) {
+                    throw new Unsupported("No enum constant " + type.getName() + "." + text);
+                }
+            }
+        }
+
+        private static Class<?> wrap(Class<?> type) {
+            if (!type.isPrimitive()) {
+                return type;
+            }
+            return switch (type.getName()) {
+                case "boolean" -> Boolean.class;
+                case "char" -> Character.class;
+                case "byte" -> Byte.class;
+                case "short" -> Short.class;
+                case "int" -> Integer.class;
+                case "long" -> Long.class;
+                case "float" -> Float.class;
+                case "double" -> Double.class;
+                default -> Void.class;
+            };
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FxmlTemplate[" + location + ", controller=" + Objects.toString(controllerType) + "]";
+    }
+}
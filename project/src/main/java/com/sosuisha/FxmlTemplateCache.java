@@ -0,0 +1,187 @@
+package com.sosuisha;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ResourceBundle;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded LRU cache of parsed FXML templates.
+ * <p>
+ * Templates are keyed by FXML URL and ResourceBundle (base name and locale),
+ * so the second and later builds of a view only construct nodes.
+ * FXML documents that use features the template does not support are
+ * remembered as such and always loaded by FXMLLoader.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * FxmlTemplateCache.getDefault().setMaxSize(32);
+ * ...
+ * var cache = FxmlTemplateCache.getDefault();
+ * System.out.println(cache.hitCount() + " hits, " + cache.missCount() + " misses");
+ * </pre>
+ */
+public final class FxmlTemplateCache {
+    private static final int DEFAULT_MAX_SIZE = 64;
+    private static final FxmlTemplateCache DEFAULT = new FxmlTemplateCache(DEFAULT_MAX_SIZE);
+
+    private record Key(String url, String baseName, Locale locale, boolean live, ResourceBundle anonymousBundle) {
+        static Key of(URL url, ResourceBundle resources) {
+            if (resources == null) {
+                return new Key(url.toExternalForm(), null, null, false, null);
+            }
+            if (resources.getBaseBundleName() == null) {
+                // No base name to identify the bundle; fall back to identity.
+                return new Key(url.toExternalForm(), null, null, false, resources);
+            }
+            // A template for a live bundle binds its %key values; one for a fixed bundle does not.
+            return new Key(url.toExternalForm(), resources.getBaseBundleName(), resources.getLocale(),
+                    Localization.isLive(resources), null);
+        }
+    }
+
+    private final Map<Key, Optional<FxmlTemplate>> templates = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Optional<FxmlTemplate>> eldest) {
+            if (size() > maxSize) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    };
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private int maxSize;
+
+    /**
+     * Returns the cache shared by all SceneBuilders.
+     *
+     * @return the default cache
+     */
+    public static FxmlTemplateCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize the maximum number of templates to keep
+     * @throws IllegalArgumentException if maxSize is negative
+     */
+    public FxmlTemplateCache(int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * Sets the maximum number of templates to keep.
+     * The least recently used templates are evicted first.
+     *
+     * @param maxSize the maximum number of templates
+     * @throws IllegalArgumentException if maxSize is negative
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must not be negative.");
+        }
+        this.maxSize = maxSize;
+        var it = templates.entrySet().iterator();
+        while (templates.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of cached templates.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return templates.size();
+    }
+
+    /**
+     * Removes all templates. The counters are kept.
+     */
+    public synchronized void clear() {
+        templates.clear();
+    }
+
+    /** @return the number of builds served from a cached template */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /** @return the number of builds that had to parse the FXML */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /** @return the number of templates evicted because of the size bound */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /** @return the number of builds delegated to FXMLLoader because of unsupported FXML */
+    public long fallbackCount() {
+        return fallbacks.sum();
+    }
+
+    /**
+     * Returns the template for the FXML, compiling it on a miss.
+     *
+     * @param url       the URL of the FXML file
+     * @param resources the ResourceBundle, or null
+     * @return the template, or null if the FXML must be loaded by FXMLLoader
+     * @throws IOException if the FXML cannot be read
+     */
+    FxmlTemplate get(URL url, ResourceBundle resources) throws IOException {
+        var key = Key.of(url, resources);
+        Optional<FxmlTemplate> entry;
+        synchronized (this) {
+            entry = templates.get(key);
+        }
+        if (entry != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            entry = compile(url, resources);
+            synchronized (this) {
+                templates.putIfAbsent(key, entry);
+            }
+        }
+        if (entry.isEmpty()) {
+            fallbacks.increment();
+        }
+        return entry.orElse(null);
+    }
+
+    private static Optional<FxmlTemplate> compile(URL url, ResourceBundle resources) throws IOException {
+        try {
+            return Optional.of(FxmlTemplate.compile(url, resources));
+        } catch (FxmlTemplate.Unsupported e) {
+            System.getLogger(FxmlTemplateCache.class.getName()).log(System.Logger.Level.DEBUG,
+                    "Loading " + url + " with FXMLLoader: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FxmlTemplateCache[size=" + size() + ", hits=" + hitCount() + ", misses=" + missCount()
+                + ", evictions=" + evictionCount() + ", fallbacks=" + fallbackCount() + "]";
+    }
+}
@@ -0,0 +1,486 @@
+package com.sosuisha;
+
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.fxml.JavaFXBuilderFactory;
+import javafx.scene.image.Image;
+import javafx.util.Builder;
+import javafx.util.BuilderFactory;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memory-bounded LRU cache of decoded images, shared by all views.
+ * <p>
+ * Images are keyed by URL and requested size, so every view that shows the
+ * same icon at the same size gets the same decoded {@link Image}, and a new
+ * view does not decode it again. Images are decoded in the background at
+ * their requested size unless requested otherwise: {@link #get} returns at
+ * once, and the image appears in its ImageView when it is ready.
+ * <p>
+ * The cache holds at most {@link #getMaxBytes()} bytes of decoded pixels,
+ * counted as 4 bytes per pixel. The least recently used images are evicted
+ * first. With soft-reference spill enabled, evicted images are still kept
+ * through soft references until the garbage collector needs the memory, so
+ * they can come back without being decoded again.
+ * <p>
+ * In views built by {@link SceneBuilder}, {@code Image} elements in FXML are
+ * resolved through the cache given to {@link SceneBuilder#imageCache(ImageCache)},
+ * which is {@link #getDefault()} unless specified otherwise. Unlike with a
+ * plain FXMLLoader, an {@code Image} without a {@code backgroundLoading}
+ * attribute is decoded in the background, so loading the view does not wait
+ * for it; {@code backgroundLoading="false"} decodes it before the view is
+ * returned, e.g. when the layout depends on its size:
+ *
+ * <pre>
+ * &lt;ImageView&gt;
+ *     &lt;Image url="@icons/save.png" requestedWidth="16" requestedHeight="16"/&gt;
+ * &lt;/ImageView&gt;
+ * &lt;ImageView&gt;
+ *     &lt;Image url="@images/banner.png" backgroundLoading="false"/&gt;
+ * &lt;/ImageView&gt;
+ * </pre>
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * ImageCache.getDefault().setMaxBytes(32 * 1024 * 1024);
+ * ...
+ * avatar.setImage(ImageCache.getDefault().get(user.avatarUrl(), 48, 48, true, true));
+ * ...
+ * var stats = ImageCache.getDefault().getStats();
+ * System.out.println(stats.hitRate() + " hit rate, " + stats.bytes() + " bytes");
+ * </pre>
+ */
+public final class ImageCache {
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final ImageCache DEFAULT = new ImageCache(DEFAULT_MAX_BYTES, true);
+
+    /** The cache of the view being loaded on the current thread. */
+    private static final ThreadLocal<ImageCache> CURRENT = new ThreadLocal<>();
+
+    private record Key(String url, double width, double height, boolean preserveRatio, boolean smooth) {
+    }
+
+    private static final class Entry {
+        private final Image image;
+        private long bytes;
+
+        private Entry(Image image, long bytes) {
+            this.image = image;
+            this.bytes = bytes;
+        }
+    }
+
+    /** An evicted image, kept until the garbage collector needs the memory. */
+    private static final class Spilled extends SoftReference<Image> {
+        private final Key key;
+
+        private Spilled(Key key, Image image, ReferenceQueue<Image> queue) {
+            super(image, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Counters of a cache since it was created, and its memory usage now.
+     *
+     * @param hits      the number of requests served by a cached image, including spilled ones
+     * @param spillHits the number of requests served by an image brought back from the spill
+     * @param misses    the number of requests that had to decode the image
+     * @param evictions the number of images evicted because of the memory bound
+     * @param entries   the number of images in the cache now
+     * @param bytes     the estimated size of the decoded images in the cache now
+     * @param maxBytes  the memory bound
+     * @param spilled   the number of evicted images still softly reachable now
+     */
+    public record Stats(long hits, long spillHits, long misses, long evictions, int entries, long bytes,
+            long maxBytes, int spilled) {
+        /**
+         * Returns the fraction of requests served without decoding.
+         *
+         * @return the hit rate from 0 to 1, or 0 if nothing was requested
+         */
+        public double hitRate() {
+            long total = hits + misses;
+            return total > 0 ? (double) hits / total : 0;
+        }
+    }
+
+    private final Map<Key, Entry> images = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, Spilled> spill = new HashMap<>();
+    private final ReferenceQueue<Image> collected = new ReferenceQueue<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder spillHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long maxBytes;
+    private long bytes;
+    private boolean softSpill;
+
+    /**
+     * Returns the cache shared by the application, which holds up to 64 MiB
+     * of decoded images and spills evicted ones to soft references.
+     *
+     * @return the default cache
+     */
+    public static ImageCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxBytes  the maximum size of the decoded images to keep
+     * @param softSpill whether to keep evicted images through soft references
+     * @throws IllegalArgumentException if maxBytes is negative
+     */
+    public ImageCache(long maxBytes, boolean softSpill) {
+        setMaxBytes(maxBytes);
+        this.softSpill = softSpill;
+    }
+
+    /**
+     * Sets the maximum size of the decoded images to keep, counted as 4 bytes
+     * per pixel. The least recently used images are evicted first. An image
+     * larger than the bound is still kept while it is the only one.
+     *
+     * @param maxBytes the maximum size in bytes
+     * @throws IllegalArgumentException if maxBytes is negative
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must not be negative.");
+        }
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets whether evicted images are kept through soft references.
+     * Disabling it drops the spilled images.
+     *
+     * @param softSpill true to spill evicted images
+     */
+    public synchronized void setSoftSpill(boolean softSpill) {
+        this.softSpill = softSpill;
+        if (!softSpill) {
+            spill.clear();
+        }
+    }
+
+    public synchronized boolean isSoftSpill() {
+        return softSpill;
+    }
+
+    /**
+     * Returns the image at its original size.
+     *
+     * @param url the URL of the image
+     * @return the shared image, which may still be loading
+     * @see #get(String, double, double, boolean, boolean)
+     */
+    public Image get(String url) {
+        return get(url, 0, 0, false, false);
+    }
+
+    /**
+     * Returns the image decoded at the requested size, decoding it in the
+     * background on a miss. The arguments are those of the {@link Image}
+     * constructor. Check {@link Image#isError()} when it has loaded; a
+     * failed image is removed from the cache, so the next request tries again.
+     *
+     * @param url             the URL of the image
+     * @param requestedWidth  the width to scale to, or 0 for the original width
+     * @param requestedHeight the height to scale to, or 0 for the original height
+     * @param preserveRatio   whether to keep the aspect ratio within the requested size
+     * @param smooth          whether to use a better quality filter when scaling
+     * @return the shared image, which may still be loading
+     */
+    public Image get(String url, double requestedWidth, double requestedHeight, boolean preserveRatio,
+            boolean smooth) {
+        return get(url, requestedWidth, requestedHeight, preserveRatio, smooth, true);
+    }
+
+    /**
+     * Returns the image decoded at the requested size, like
+     * {@link #get(String, double, double, boolean, boolean)}. Without
+     * background loading, a miss, or a cached image that is still loading in
+     * the background, is decoded on the calling thread before returning.
+     *
+     * @param url               the URL of the image
+     * @param requestedWidth    the width to scale to, or 0 for the original width
+     * @param requestedHeight   the height to scale to, or 0 for the original height
+     * @param preserveRatio     whether to keep the aspect ratio within the requested size
+     * @param smooth            whether to use a better quality filter when scaling
+     * @param backgroundLoading whether to return before the image is decoded
+     * @return the shared image, which may still be loading if backgroundLoading is true
+     */
+    public Image get(String url, double requestedWidth, double requestedHeight, boolean preserveRatio,
+            boolean smooth, boolean backgroundLoading) {
+        Objects.requireNonNull(url, "url must not be null.");
+        var key = new Key(url, Math.max(requestedWidth, 0), Math.max(requestedHeight, 0), preserveRatio, smooth);
+        synchronized (this) {
+            expunge();
+            var entry = images.get(key);
+            if (entry != null && (backgroundLoading || entry.image.getProgress() >= 1)) {
+                hits.increment();
+                return entry.image;
+            }
+            var spilled = spill.remove(key);
+            var image = spilled != null ? spilled.get() : null;
+            if (image != null && (backgroundLoading || image.getProgress() >= 1)) {
+                hits.increment();
+                spillHits.increment();
+                put(key, image);
+                return image;
+            }
+            misses.increment();
+            image = new Image(url, key.width(), key.height(), preserveRatio, smooth, backgroundLoading);
+            put(key, image);
+            return image;
+        }
+    }
+
+    /**
+     * Returns the number of images in the cache, not counting spilled ones.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return images.size();
+    }
+
+    /**
+     * Returns the estimated size of the decoded images in the cache.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Removes all images, including spilled ones. The counters are kept.
+     * Views that show an image keep showing it.
+     */
+    public synchronized void clear() {
+        images.clear();
+        spill.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Returns the counters and the memory usage of the cache.
+     *
+     * @return the stats
+     */
+    public Stats getStats() {
+        synchronized (this) {
+            expunge();
+            return new Stats(hits.sum(), spillHits.sum(), misses.sum(), evictions.sum(), images.size(), bytes,
+                    maxBytes, spill.size());
+        }
+    }
+
+    private void put(Key key, Image image) {
+        var entry = new Entry(image, estimate(key, image));
+        var replaced = images.put(key, entry);
+        if (replaced != null) {
+            bytes -= replaced.bytes;
+        }
+        bytes += entry.bytes;
+        if (image.getProgress() < 1) {
+            watch(key, entry);
+        } else if (image.isError()) {
+            images.remove(key);
+            bytes -= entry.bytes;
+            return;
+        }
+        evict();
+    }
+
+    /**
+     * Updates the entry once its image has loaded, when its size is known or
+     * the load has failed. The progress of a background load changes on the
+     * FX Application Thread, so the progress is checked and the listener is
+     * added there, where the load cannot complete in between.
+     */
+    private void watch(Key key, Entry entry) {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> watch(key, entry));
+            return;
+        }
+        var progress = entry.image.progressProperty();
+        if (progress.get() >= 1) {
+            loaded(key, entry);
+            return;
+        }
+        progress.addListener(new InvalidationListener() {
+            @Override
+            public void invalidated(Observable observable) {
+                if (progress.get() >= 1) {
+                    progress.removeListener(this);
+                    loaded(key, entry);
+                }
+            }
+        });
+    }
+
+    private synchronized void loaded(Key key, Entry entry) {
+        if (images.get(key) != entry) {
+            return;
+        }
+        if (entry.image.isError()) {
+            System.getLogger(ImageCache.class.getName()).log(System.Logger.Level.DEBUG,
+                    "Failed to load " + key.url(), entry.image.getException());
+            images.remove(key);
+            bytes -= entry.bytes;
+            return;
+        }
+        var actual = pixelBytes(entry.image.getWidth(), entry.image.getHeight());
+        bytes += actual - entry.bytes;
+        entry.bytes = actual;
+        evict();
+    }
+
+    /**
+     * Evicts the least recently used images until the cache fits in its
+     * bound, keeping at least one.
+     */
+    private void evict() {
+        var it = images.entrySet().iterator();
+        while (bytes > maxBytes && images.size() > 1 && it.hasNext()) {
+            var eldest = it.next();
+            it.remove();
+            bytes -= eldest.getValue().bytes;
+            evictions.increment();
+            if (softSpill && !eldest.getValue().image.isError()) {
+                spill.put(eldest.getKey(), new Spilled(eldest.getKey(), eldest.getValue().image, collected));
+            }
+        }
+    }
+
+    /**
+     * Removes the spilled images that the garbage collector has cleared.
+     */
+    private void expunge() {
+        for (var ref = collected.poll(); ref != null; ref = collected.poll()) {
+            var spilled = (Spilled) ref;
+            spill.remove(spilled.key, spilled);
+        }
+    }
+
+    /**
+     * Returns the size of the image, or an estimate from the requested size
+     * while it is loading.
+     */
+    private static long estimate(Key key, Image image) {
+        if (image.getProgress() >= 1) {
+            return pixelBytes(image.getWidth(), image.getHeight());
+        }
+        return pixelBytes(key.width(), key.height());
+    }
+
+    private static long pixelBytes(double width, double height) {
+        return (long) Math.ceil(width) * (long) Math.ceil(height) * 4;
+    }
+
+    /**
+     * Runs the load of a view with the cache resolving its FXML images.
+     *
+     * @param cache the cache, or null to decode the images as FXMLLoader does
+     * @param load  loads the view
+     * @return the result of the load
+     */
+    static <T> T using(ImageCache cache, LazyInclude.IOSupplier<T> load) throws IOException {
+        var previous = CURRENT.get();
+        if (cache != null) {
+            CURRENT.set(cache);
+        } else {
+            CURRENT.remove();
+        }
+        try {
+            return load.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns a builder factory that builds {@code Image} elements through
+     * the cache of the view being loaded, and other types with the defaults.
+     *
+     * @param defaults the factory for the other types, or null for a
+     *                 JavaFXBuilderFactory, which FXMLLoader uses when it has none
+     * @return the builder factory
+     */
+    static BuilderFactory builderFactory(BuilderFactory defaults) {
+        var factory = defaults != null ? defaults : new JavaFXBuilderFactory();
+        return type -> type == Image.class ? new ImageBuilder(factory) : factory.getBuilder(type);
+    }
+
+    /**
+     * Builds an {@code Image} element of FXML. It is a Map of the attributes,
+     * like the builder of JavaFXBuilderFactory, so all FXML loaders can use it.
+     * Without a current cache, or with attributes the cache does not key by,
+     * the image is built by the default builder. Without a
+     * {@code backgroundLoading} attribute, the image is decoded in the
+     * background, unlike with the default builder.
+     */
+    private static final class ImageBuilder extends HashMap<String, Object> implements Builder<Image> {
+        private static final long serialVersionUID = 1L;
+        private static final Set<String> CACHEABLE = Set.of("url", "requestedWidth", "requestedHeight",
+                "preserveRatio", "smooth", "backgroundLoading");
+
+        // A builder only lives while its element is loaded, so it is never serialized.
+        private final transient BuilderFactory defaults;
+
+        private ImageBuilder(BuilderFactory defaults) {
+            this.defaults = defaults;
+        }
+
+        @Override
+        public Image build() {
+            var cache = CURRENT.get();
+            if (cache == null || !containsKey("url") || !CACHEABLE.containsAll(keySet())) {
+                @SuppressWarnings("unchecked")
+                var builder = (Map<String, Object>) defaults.getBuilder(Image.class);
+                builder.putAll(this);
+                return (Image) ((Builder<?>) builder).build();
+            }
+            return cache.get(String.valueOf(get("url")), number("requestedWidth"), number("requestedHeight"),
+                    bool("preserveRatio"), bool("smooth"), !containsKey("backgroundLoading")
+                            || bool("backgroundLoading"));
+        }
+
+        private double number(String name) {
+            var value = get(name);
+            if (value == null) {
+                return 0;
+            }
+            return value instanceof Number n ? n.doubleValue() : Double.parseDouble(value.toString().trim());
+        }
+
+        private boolean bool(String name) {
+            var value = get(name);
+            return value instanceof Boolean b ? b : value != null && Boolean.parseBoolean(value.toString().trim());
+        }
+    }
+}
@@ -7,6 +7,7 @@ import javafx.application.Application;
  */
 public class Launcher {
     public static void main(String[] args) {
+        StartupTimings.getDefault().milestone("main");
         Application.launch(App.class, args);
     }
 }
@@ -0,0 +1,359 @@
+package com.sosuisha;
+
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.control.TitledPane;
+import javafx.scene.layout.StackPane;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A placeholder for an FXML subtree that is loaded when it is first shown.
+ * <p>
+ * Use it instead of {@code fx:include} for the content of tabs, TitledPanes
+ * and other panels that are not visible when the view opens. The included
+ * FXML, its nodes and its controller are not created until the placeholder is
+ * in a Scene and shown, i.e. it and all its ancestors are visible and no
+ * TitledPane around it is collapsed:
+ *
+ * <pre>
+ * &lt;?import com.sosuisha.LazyInclude?&gt;
+ * ...
+ * &lt;Tab text="Settings"&gt;
+ *     &lt;content&gt;
+ *         &lt;LazyInclude source="@settings.fxml"/&gt;
+ *     &lt;/content&gt;
+ * &lt;/Tab&gt;
+ * </pre>
+ * <p>
+ * In a view built by {@link SceneBuilder}, the included FXML is loaded like
+ * the view itself: from its compiled view class or cached template when
+ * possible, with the same ResourceBundle, controller constructor arguments and
+ * {@link ViewTasks}. A source without the {@code @} prefix is resolved
+ * relative to the FXML of the view, or to the classpath if it starts with
+ * {@code /}. With {@link SceneBuilder#prefetchLazy(Duration)}, the subtrees
+ * that are still not shown are loaded off the FX Application Thread some
+ * time after the view opens, one at a time, so showing them later is instant.
+ */
+public final class LazyInclude extends StackPane {
+    private static final System.Logger LOGGER = System.getLogger(LazyInclude.class.getName());
+
+    /** The context of the view being loaded on the current thread. */
+    private static final ThreadLocal<Context> CONTEXT = new ThreadLocal<>();
+
+    /**
+     * Loads the root of an included FXML.
+     */
+    @FunctionalInterface
+    interface Loader {
+        Parent load(URL url) throws IOException;
+    }
+
+    /**
+     * Loads a view.
+     */
+    @FunctionalInterface
+    interface IOSupplier<T> {
+        T get() throws IOException;
+    }
+
+    /**
+     * The view that created placeholders, and the placeholders it created.
+     */
+    static final class Context {
+        private final URL location;
+        private final Loader loader;
+        private final List<LazyInclude> includes = new ArrayList<>();
+
+        Context(URL location, Loader loader) {
+            this.location = location;
+            this.loader = loader;
+        }
+
+        /**
+         * Returns the placeholders created while loading the view.
+         */
+        List<LazyInclude> includes() {
+            return includes;
+        }
+    }
+
+    /**
+     * Runs the load of a view and collects the placeholders it creates into
+     * the context. They load their FXML with the loader of the context.
+     *
+     * @param context the context of the view
+     * @param load    loads the view
+     * @return the root of the view
+     */
+    static <T> T collect(Context context, IOSupplier<T> load) throws IOException {
+        var previous = CONTEXT.get();
+        CONTEXT.set(context);
+        try {
+            return load.get();
+        } finally {
+            if (previous != null) {
+                CONTEXT.set(previous);
+            } else {
+                CONTEXT.remove();
+            }
+        }
+    }
+
+    /**
+     * Loads the placeholders that are still not shown, one at a time on a
+     * virtual thread, after the delay.
+     *
+     * @param includes the placeholders of a view
+     * @param delay    the delay after which the view is expected to be idle
+     */
+    static void prefetch(List<LazyInclude> includes, Duration delay) {
+        if (includes.isEmpty()) {
+            return;
+        }
+        var pending = List.copyOf(includes);
+        Thread.ofVirtual().name("lazy-include-prefetch").start(() -> {
+            try {
+                Thread.sleep(delay);
+                for (var include : pending) {
+                    // A failure is logged, and showing the placeholder tries again.
+                    include.fetch();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    private final Context context;
+    private final StringProperty source = new SimpleStringProperty(this, "source");
+    private final ReadOnlyBooleanWrapper loaded = new ReadOnlyBooleanWrapper(this, "loaded");
+    private final AtomicReference<CompletableFuture<Parent>> fetch = new AtomicReference<>();
+    private final List<Observable> watched = new ArrayList<>();
+    private final InvalidationListener showingListener = observable -> update();
+
+    /**
+     * Creates a placeholder. In a view loaded by SceneBuilder, the placeholder
+     * belongs to that view.
+     */
+    public LazyInclude() {
+        context = CONTEXT.get();
+        if (context != null) {
+            context.includes.add(this);
+        }
+        sceneProperty().addListener(showingListener);
+    }
+
+    /**
+     * Creates a placeholder for the FXML.
+     *
+     * @param source the location of the FXML
+     */
+    public LazyInclude(String source) {
+        this();
+        setSource(source);
+    }
+
+    /**
+     * The location of the FXML to include.
+     *
+     * @return the source property
+     */
+    public final StringProperty sourceProperty() {
+        return source;
+    }
+
+    public final String getSource() {
+        return source.get();
+    }
+
+    public final void setSource(String source) {
+        this.source.set(source);
+    }
+
+    /**
+     * Whether the included FXML has been loaded and added as the child of
+     * this placeholder. Changes on the FX Application Thread.
+     *
+     * @return the loaded property
+     */
+    public final ReadOnlyBooleanProperty loadedProperty() {
+        return loaded.getReadOnlyProperty();
+    }
+
+    public final boolean isLoaded() {
+        return loaded.get();
+    }
+
+    /**
+     * Returns the root of the included FXML.
+     *
+     * @return the root, or null if it is not loaded yet
+     */
+    public final Node getContent() {
+        return isLoaded() ? getChildren().get(0) : null;
+    }
+
+    /**
+     * Loads the included FXML now, if it is not loaded yet.
+     * Must be called on the FX Application Thread.
+     */
+    public final void load() {
+        if (isLoaded()) {
+            return;
+        }
+        var future = fetch.get();
+        if (future == null) {
+            future = new CompletableFuture<>();
+            if (fetch.compareAndSet(null, future)) {
+                fetch(future);
+            } else {
+                future = fetch.get();
+            }
+        }
+        if (future.isDone()) {
+            attach(future);
+        } else {
+            // Being prefetched on another thread.
+            future.whenCompleteAsync((root, e) -> attach(fetch.get()), Platform::runLater);
+        }
+    }
+
+    /**
+     * Starts loading the FXML on the current thread unless it has been started.
+     */
+    private CompletableFuture<Parent> fetch() {
+        var future = new CompletableFuture<Parent>();
+        if (!fetch.compareAndSet(null, future)) {
+            return fetch.get();
+        }
+        fetch(future);
+        if (!future.isCompletedExceptionally()) {
+            Platform.runLater(() -> {
+                if (isShowing()) {
+                    load();
+                }
+            });
+        }
+        return future;
+    }
+
+    private void fetch(CompletableFuture<Parent> future) {
+        try {
+            var url = resolve();
+            future.complete(context != null ? context.loader.load(url) : FXMLLoader.load(url));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(System.Logger.Level.ERROR, "Failed to load " + getSource(), e);
+            future.completeExceptionally(e);
+        }
+    }
+
+    private void attach(CompletableFuture<Parent> future) {
+        if (isLoaded()) {
+            return;
+        }
+        if (future.isCompletedExceptionally()) {
+            // Try again the next time the placeholder is shown.
+            fetch.compareAndSet(future, null);
+            return;
+        }
+        getChildren().setAll(future.join());
+        loaded.set(true);
+        unwatch();
+    }
+
+    private URL resolve() throws IOException {
+        var path = getSource();
+        if (path == null || path.isEmpty()) {
+            throw new IOException("LazyInclude has no source.");
+        }
+        if (context != null && context.location != null) {
+            return URI.create(CompiledFxmlViews.resolveLocation(context.location, path)).toURL();
+        }
+        if (path.startsWith("/")) {
+            var url = LazyInclude.class.getResource(path);
+            if (url == null) {
+                throw new IOException("Resource not found: " + path);
+            }
+            return url;
+        }
+        try {
+            return URI.create(path).toURL();
+        } catch (IllegalArgumentException | MalformedURLException e) {
+            throw new IOException("Cannot resolve " + path + " without the location of the view", e);
+        }
+    }
+
+    /**
+     * Loads the FXML if the placeholder is shown, or listens to the ancestors
+     * that decide whether it is shown. The ancestors are collected again on
+     * every change, since one of them may have been replaced.
+     */
+    private void update() {
+        if (isShowing()) {
+            load();
+            return;
+        }
+        unwatch();
+        if (isLoaded() || getScene() == null) {
+            return;
+        }
+        var path = new ArrayList<Node>();
+        for (Node node = this; node != null; node = node.getParent()) {
+            path.add(node);
+            watch(node.visibleProperty());
+            watch(node.parentProperty());
+            if (node instanceof TitledPane pane && path.contains(pane.getContent())) {
+                watch(pane.expandedProperty());
+            }
+        }
+    }
+
+    private void watch(Observable observable) {
+        observable.addListener(showingListener);
+        watched.add(observable);
+    }
+
+    private void unwatch() {
+        for (var observable : watched) {
+            observable.removeListener(showingListener);
+        }
+        watched.clear();
+    }
+
+    /**
+     * Returns whether the placeholder is in a Scene, it and its ancestors are
+     * visible, and no TitledPane around it is collapsed.
+     */
+    private boolean isShowing() {
+        if (getScene() == null) {
+            return false;
+        }
+        var path = new ArrayList<Node>();
+        for (Node node = this; node != null; node = node.getParent()) {
+            path.add(node);
+            if (!node.isVisible()) {
+                return false;
+            }
+            if (node instanceof TitledPane pane && !pane.isExpanded() && path.contains(pane.getContent())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,311 @@
+package com.sosuisha;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.Objects;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * The current locale of the application and a cache of its ResourceBundles.
+ * <p>
+ * A view built with {@link SceneBuilder#resources(String)} follows the
+ * current locale: when it changes, the properties set from %key values are
+ * set again from the bundle of the new locale, without reloading the FXML or
+ * creating a new controller. The controller's {@code resources} field also
+ * returns strings of the current locale.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * var localization = Localization.getDefault();
+ * localization.setSupportedLocales(Locale.ENGLISH, Locale.JAPANESE);
+ * localization.preload("com.example.i18n.Messages");
+ * var scene = SceneBuilder.fromFxml("/com/example/main.fxml")
+ *         .resources("com.example.i18n.Messages")
+ *         .build();
+ * ...
+ * localization.setLocale(Locale.JAPANESE);
+ * </pre>
+ * <p>
+ * %key values are re-applied for views built from a compiled view class or a
+ * cached template. Views that fall back to FXMLLoader keep the strings of
+ * the locale they were built with. Text that a controller sets itself can be
+ * updated by listening to {@link #localeProperty()}.
+ */
+public final class Localization {
+    private static final Localization DEFAULT = new Localization(Locale.getDefault());
+    private static final System.Logger LOGGER = System.getLogger(Localization.class.getName());
+    private static final int MIN_PRUNE_THRESHOLD = 1024;
+
+    private record BundleKey(String baseName, Locale locale) {
+    }
+
+    /**
+     * A property set from a %key value, re-applied when the locale changes.
+     * The target is weakly referenced, so that bound views can be collected.
+     */
+    private record Binding(String baseName, String key, WeakReference<Object> target,
+            BiConsumer<Object, String> setter) {
+    }
+
+    private final Map<BundleKey, ResourceBundle> bundles = new ConcurrentHashMap<>();
+    private final Map<String, LiveBundle> liveBundles = new ConcurrentHashMap<>();
+    private final List<Binding> bindings = new ArrayList<>();
+    private int pruneThreshold = MIN_PRUNE_THRESHOLD;
+    private final ReadOnlyObjectWrapper<Locale> localeProperty = new ReadOnlyObjectWrapper<>(this, "locale");
+    private volatile Locale locale;
+    private volatile List<Locale> supportedLocales = List.of();
+
+    /**
+     * Returns the localization of the application.
+     *
+     * @return the shared instance
+     */
+    public static Localization getDefault() {
+        return DEFAULT;
+    }
+
+    private Localization(Locale locale) {
+        this.locale = locale;
+        localeProperty.set(locale);
+    }
+
+    /**
+     * Returns the current locale.
+     *
+     * @return the current locale
+     */
+    public Locale getLocale() {
+        return locale;
+    }
+
+    /**
+     * Changes the current locale and updates the %key properties of the views
+     * that follow it. Must be called on the FX Application Thread.
+     *
+     * @param locale the new locale
+     * @throws IllegalStateException if called on another thread
+     */
+    public void setLocale(Locale locale) {
+        Objects.requireNonNull(locale, "locale must not be null.");
+        if (!Platform.isFxApplicationThread()) {
+            throw new IllegalStateException("Not on FX application thread; currentThread = "
+                    + Thread.currentThread().getName());
+        }
+        if (locale.equals(this.locale)) {
+            return;
+        }
+        this.locale = locale;
+        rebind();
+        localeProperty.set(locale);
+    }
+
+    /**
+     * The current locale, changed by {@link #setLocale(Locale)}.
+     *
+     * @return the read-only locale property
+     */
+    public ReadOnlyObjectProperty<Locale> localeProperty() {
+        return localeProperty.getReadOnlyProperty();
+    }
+
+    /**
+     * Specifies the locales the user can switch to, for {@link #preload(String)}.
+     *
+     * @param locales the supported locales
+     */
+    public void setSupportedLocales(Locale... locales) {
+        supportedLocales = List.of(locales);
+    }
+
+    /**
+     * Returns the locales the user can switch to.
+     *
+     * @return an unmodifiable list of locales
+     */
+    public List<Locale> getSupportedLocales() {
+        return supportedLocales;
+    }
+
+    /**
+     * Loads the bundles of the current and the supported locales into the
+     * cache, so that switching to them does not load anything. It may be
+     * called on any thread, typically during startup.
+     *
+     * @param baseName the base name of the resource bundle
+     * @throws MissingResourceException if the bundle cannot be found
+     */
+    public void preload(String baseName) {
+        getBundle(baseName, locale);
+        for (var supported : supportedLocales) {
+            getBundle(baseName, supported);
+        }
+    }
+
+    /**
+     * Returns the bundle of a locale, loading it on first use.
+     *
+     * @param baseName the base name of the resource bundle
+     * @param locale   the locale
+     * @return the bundle
+     * @throws MissingResourceException if the bundle cannot be found
+     */
+    public ResourceBundle getBundle(String baseName, Locale locale) {
+        var key = new BundleKey(baseName, locale);
+        var bundle = bundles.get(key);
+        if (bundle == null) {
+            // Not computeIfAbsent: loading a bundle may load other bundles.
+            bundle = ResourceBundle.getBundle(baseName, locale);
+            var previous = bundles.putIfAbsent(key, bundle);
+            if (previous != null) {
+                bundle = previous;
+            }
+        }
+        return bundle;
+    }
+
+    /**
+     * Returns a bundle that always reads from the bundle of the current locale.
+     *
+     * @param baseName the base name of the resource bundle
+     * @return the bundle
+     * @throws MissingResourceException if the bundle cannot be found
+     */
+    public ResourceBundle getLiveBundle(String baseName) {
+        getBundle(baseName, locale);
+        return liveBundles.computeIfAbsent(baseName, LiveBundle::new);
+    }
+
+    /**
+     * Returns whether the bundle was returned by {@link #getLiveBundle(String)}.
+     */
+    static boolean isLive(ResourceBundle resources) {
+        return resources instanceof LiveBundle;
+    }
+
+    /**
+     * Clears the bundle cache. Views keep following the current locale.
+     */
+    public void clearCache() {
+        bundles.clear();
+    }
+
+    /**
+     * Returns the number of %key properties that follow the current locale
+     * and whose views have not been collected yet.
+     *
+     * @return the number of bound properties
+     */
+    public int getBindingCount() {
+        synchronized (bindings) {
+            bindings.removeIf(binding -> binding.target().get() == null);
+            return bindings.size();
+        }
+    }
+
+    /**
+     * Sets a property from a %key value. If the resources follow the current
+     * locale, the property is set again whenever it changes.
+     *
+     * @param <T>       the target type
+     * @param resources the ResourceBundle
+     * @param key       the key
+     * @param target    the object whose property is set
+     * @param setter    sets the property of the target
+     * @param value     the value of the key in the resources
+     */
+    @SuppressWarnings("unchecked")
+    <T> void bind(ResourceBundle resources, String key, T target, BiConsumer<? super T, String> setter,
+            String value) {
+        setter.accept(target, value);
+        if (resources instanceof LiveBundle live) {
+            var binding = new Binding(live.getBaseBundleName(), key, new WeakReference<>(target),
+                    (BiConsumer<Object, String>) setter);
+            synchronized (bindings) {
+                if (bindings.size() >= pruneThreshold) {
+                    // Drop the bindings of collected views before the list grows further.
+                    bindings.removeIf(b -> b.target().get() == null);
+                    pruneThreshold = Math.max(MIN_PRUNE_THRESHOLD, bindings.size() * 2);
+                }
+                bindings.add(binding);
+            }
+        }
+    }
+
+    private void rebind() {
+        List<Binding> snapshot;
+        synchronized (bindings) {
+            bindings.removeIf(binding -> binding.target().get() == null);
+            snapshot = List.copyOf(bindings);
+        }
+        for (var binding : snapshot) {
+            var target = binding.target().get();
+            if (target == null) {
+                continue;
+            }
+            try {
+                binding.setter().accept(target, getBundle(binding.baseName(), locale).getString(binding.key()));
+            } catch (MissingResourceException e) {
+                // Keep the previous text, like a missing translation.
+                LOGGER.log(System.Logger.Level.WARNING, "Resource \"" + binding.key() + "\" not found in "
+                        + binding.baseName() + " for " + locale);
+            }
+        }
+    }
+
+    /**
+     * A bundle that delegates to the bundle of the current locale.
+     */
+    private final class LiveBundle extends ResourceBundle {
+        private final String baseName;
+
+        LiveBundle(String baseName) {
+            this.baseName = baseName;
+        }
+
+        private ResourceBundle current() {
+            return getBundle(baseName, locale);
+        }
+
+        @Override
+        protected Object handleGetObject(String key) {
+            var bundle = current();
+            return bundle.containsKey(key) ? bundle.getObject(key) : null;
+        }
+
+        @Override
+        public Enumeration<String> getKeys() {
+            return current().getKeys();
+        }
+
+        @Override
+        public boolean containsKey(String key) {
+            return current().containsKey(key);
+        }
+
+        @Override
+        public String getBaseBundleName() {
+            return baseName;
+        }
+
+        @Override
+        public Locale getLocale() {
+            return locale;
+        }
+
+        @Override
+        public String toString() {
+            return "LiveBundle[" + baseName + "]";
+        }
+    }
+}
@@ -22,6 +22,7 @@ public class MainController {
     @FXML
     private void initialize() {
         // initialize() is called after main.fxml is loaded.
-        messageLabel.setText(model.getMessage());
+        // The model changes on the FX Application Thread, so the label can follow it.
+        messageLabel.textProperty().bind(model.messageProperty());
     }
 }
@@ -1,9 +1,106 @@
 package com.sosuisha;
 
-public class Model {
-    private String name = "JavaFX";
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+
+/**
+ * The state of the application.
+ * <p>
+ * Properties are observed on the FX Application Thread, so views can bind to
+ * them. Setters may be called on any thread: changes are delivered through an
+ * {@link FxUpdater}, which coalesces them to at most one per pulse.
+ * <p>
+ * A model created with a {@link ModelStore} starts from the stored state and
+ * saves its changes to the store.
+ * <p>
+ * The state is kept in a {@link ModelHistory}, so changes can be undone and
+ * redone, and the properties follow its snapshots.
+ */
+public final class Model {
+    private final ModelHistory history;
+    private final ReadOnlyStringWrapper name = new ReadOnlyStringWrapper(this, "name");
+    private final ReadOnlyStringWrapper message = new ReadOnlyStringWrapper(this, "message");
+
+    private static final String NAME_KEY = "name";
+    private static final String DEFAULT_NAME = "JavaFX";
+
+    public Model() {
+        this(FxUpdater.getDefault());
+    }
+
+    /**
+     * Creates a model that restores its state from the store and saves its changes to it.
+     *
+     * @param store the store
+     */
+    public Model(ModelStore store) {
+        this(FxUpdater.getDefault(), store);
+    }
+
+    /**
+     * Creates a model whose changes are delivered by the updater.
+     *
+     * @param updater the updater
+     */
+    public Model(FxUpdater updater) {
+        this(updater, DEFAULT_NAME);
+    }
+
+    /**
+     * Creates a model that restores its state from the store and saves its
+     * changes to it, whose changes are delivered by the updater.
+     *
+     * @param updater the updater
+     * @param store   the store
+     */
+    public Model(FxUpdater updater, ModelStore store) {
+        // Nothing observes the model yet, so it can be restored on any thread.
+        this(updater, store.getString(NAME_KEY, DEFAULT_NAME));
+        name.addListener((observable, oldName, newName) -> store.putString(NAME_KEY, newName));
+    }
+
+    private Model(FxUpdater updater, String initialName) {
+        this.history = new ModelHistory(updater, PersistentMap.<String, Object>of().plus(NAME_KEY, initialName));
+        name.set(initialName);
+        history.snapshotProperty().addListener(
+                (observable, oldSnapshot, snapshot) -> name.set(snapshot.get(NAME_KEY)));
+        message.bind(Bindings.concat("Hello, ", name, "!"));
+    }
+
+    /**
+     * Returns the history of the state, to undo and redo changes or to
+     * group several of them into one transaction.
+     *
+     * @return the history
+     */
+    public ModelHistory getHistory() {
+        return history;
+    }
+
+    public String getName() {
+        return name.get();
+    }
+
+    /**
+     * Changes the name in the next pulse, as an edit that can be undone.
+     * May be called on any thread.
+     *
+     * @param name the new name
+     */
+    public void setName(String name) {
+        history.put("Rename", NAME_KEY, name);
+    }
+
+    public ReadOnlyStringProperty nameProperty() {
+        return name.getReadOnlyProperty();
+    }
 
     public String getMessage() {
-        return "Hello, " + name + "!";
+        return message.get();
+    }
+
+    public ReadOnlyStringProperty messageProperty() {
+        return message.getReadOnlyProperty();
     }
 }
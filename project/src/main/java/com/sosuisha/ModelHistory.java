@@ -0,0 +1,424 @@
+package com.sosuisha;
+
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.value.WritableValue;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Versioned state of a {@link Model} with undo and redo.
+ * <p>
+ * The state is a {@link PersistentMap} of values, which may themselves be
+ * persistent maps and lists for large documents. Every edit produces a new
+ * version that shares all unchanged nodes with the previous one, so taking
+ * a {@link Snapshot} is O(1) and keeping a deep history costs memory in
+ * proportion to the changes, not to the size of the document.
+ * <p>
+ * The edits of a {@link #edit(String, Consumer) transaction} are applied
+ * together: they make one history entry, and views are notified once, in
+ * the next pulse, through {@link #snapshotProperty()}. The history is
+ * bounded by a number of entries and by the estimated memory that only the
+ * past versions hold; the oldest entries are evicted first.
+ * <p>
+ * Edits, undo and redo may be called on any thread.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * var history = model.getHistory();
+ * history.edit("Rename", tx -&gt; {
+ *     tx.put("name", newName);
+ *     tx.update("shapes", (PersistentVector&lt;Shape&gt; shapes) -&gt; shapes.set(index, renamed));
+ * });
+ * undoItem.disableProperty().bind(Bindings.createBooleanBinding(
+ *         () -&gt; !history.snapshotProperty().get().canUndo(), history.snapshotProperty()));
+ * undoItem.setOnAction(e -&gt; history.undo());
+ * </pre>
+ */
+public final class ModelHistory {
+    /** The default maximum number of undo entries. */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /** The default maximum memory held by the past versions. */
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * A version of the state, and its position in the history.
+     *
+     * @param version   the number of the version, incremented by each commit, undo and redo
+     * @param state     the state
+     * @param undoCount the number of edits that can be undone
+     * @param redoCount the number of edits that can be redone
+     * @param undoLabel the label of the edit that undo reverts, or null
+     * @param redoLabel the label of the edit that redo applies again, or null
+     */
+    public record Snapshot(long version, PersistentMap<String, Object> state, int undoCount, int redoCount,
+            String undoLabel, String redoLabel) {
+        /**
+         * Returns a value of the state.
+         *
+         * @param <T> the value type
+         * @param key the key
+         * @return the value, or null
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T get(String key) {
+            return (T) state.get(key);
+        }
+
+        public boolean canUndo() {
+            return undoCount > 0;
+        }
+
+        public boolean canRedo() {
+            return redoCount > 0;
+        }
+    }
+
+    /**
+     * The edits of a transaction. They are applied to the state of the
+     * transaction, which the other threads do not see until it is committed.
+     */
+    public interface Transaction {
+        /**
+         * Returns a value of the state, including the edits made so far.
+         *
+         * @param <T> the value type
+         * @param key the key
+         * @return the value, or null
+         */
+        <T> T get(String key);
+
+        /**
+         * Sets a value.
+         *
+         * @param key   the key
+         * @param value the value, or null to remove the key
+         */
+        void put(String key, Object value);
+
+        /**
+         * Replaces a value by a function of it.
+         *
+         * @param <T>      the value type
+         * @param key      the key
+         * @param function computes the new value from the current one, which may be null
+         */
+        <T> void update(String key, UnaryOperator<T> function);
+    }
+
+    /**
+     * Counters of a history since it was created, and its size now.
+     *
+     * @param commits   the number of transactions that changed the state
+     * @param undos     the number of edits undone
+     * @param redos     the number of edits redone
+     * @param evicted   the number of entries evicted because of the bounds
+     * @param undoCount the number of edits that can be undone now
+     * @param redoCount the number of edits that can be redone now
+     * @param bytes     the estimated memory held only by the past and undone versions now
+     */
+    public record Stats(long commits, long undos, long redos, long evicted, int undoCount, int redoCount,
+            long bytes) {
+    }
+
+    /**
+     * A version kept in the history, with the memory that only it holds,
+     * compared with the version that replaced it.
+     */
+    private record Entry(PersistentMap<String, Object> state, String label, long bytes) {
+    }
+
+    private static final class Edits implements Transaction {
+        private PersistentMap<String, Object> state;
+
+        private Edits(PersistentMap<String, Object> state) {
+            this.state = state;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T get(String key) {
+            return (T) state.get(key);
+        }
+
+        @Override
+        public void put(String key, Object value) {
+            Objects.requireNonNull(key, "key must not be null.");
+            state = value != null ? state.plus(key, value) : state.minus(key);
+        }
+
+        @Override
+        public <T> void update(String key, UnaryOperator<T> function) {
+            put(key, function.apply(get(key)));
+        }
+    }
+
+    private final FxUpdater updater;
+    private final ReadOnlyObjectWrapper<Snapshot> snapshotProperty;
+    private final AtomicBoolean publishing = new AtomicBoolean();
+    private final WritableValue<Snapshot> delivery = new WritableValue<>() {
+        @Override
+        public Snapshot getValue() {
+            return snapshotProperty.get();
+        }
+
+        @Override
+        public void setValue(Snapshot ignored) {
+            publishing.set(false);
+            snapshotProperty.set(snapshot);
+        }
+    };
+    private final ArrayDeque<Entry> undo = new ArrayDeque<>();
+    private final ArrayDeque<Entry> redo = new ArrayDeque<>();
+    private volatile Snapshot snapshot;
+    private Edits open;
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private long bytes;
+    private long commits;
+    private long undos;
+    private long redos;
+    private long evicted;
+
+    /**
+     * Creates a history whose changes are delivered by the updater.
+     *
+     * @param updater the updater
+     * @param initial the initial state
+     */
+    public ModelHistory(FxUpdater updater, PersistentMap<String, Object> initial) {
+        this.updater = Objects.requireNonNull(updater, "updater must not be null.");
+        this.snapshot = new Snapshot(0, Objects.requireNonNull(initial, "initial must not be null."), 0, 0,
+                null, null);
+        this.snapshotProperty = new ReadOnlyObjectWrapper<>(this, "snapshot", snapshot);
+    }
+
+    /**
+     * Returns the current version. It is immutable and can be kept and read
+     * on any thread.
+     *
+     * @return the snapshot
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the current version as seen on the FX Application Thread.
+     * It changes at most once per pulse, however many transactions were
+     * committed since the last one.
+     *
+     * @return the property
+     */
+    public ReadOnlyObjectProperty<Snapshot> snapshotProperty() {
+        return snapshotProperty.getReadOnlyProperty();
+    }
+
+    /**
+     * Applies the edits as one transaction. If they change the state, they
+     * make one history entry, clear the redo entries and notify the views
+     * once. If the edits throw, the state is not changed.
+     * <p>
+     * A transaction started inside another one on the same thread joins it.
+     * Other threads wait until the transaction is committed, so the edits
+     * should only compute the new state.
+     *
+     * @param label the label of the edit, e.g. for an "Undo Rename" menu item
+     * @param edits the edits
+     * @return true if the state changed
+     */
+    public synchronized boolean edit(String label, Consumer<? super Transaction> edits) {
+        if (open != null) {
+            var joined = open.state;
+            edits.accept(open);
+            return open.state != joined;
+        }
+        var before = snapshot.state();
+        var tx = new Edits(before);
+        open = tx;
+        try {
+            edits.accept(tx);
+        } finally {
+            open = null;
+        }
+        if (tx.state == before) {
+            return false;
+        }
+        commits++;
+        clearRedo();
+        undo.push(new Entry(before, label, before.retainedBytes(tx.state)));
+        bytes += undo.peek().bytes();
+        evict();
+        publish(tx.state);
+        return true;
+    }
+
+    /**
+     * Sets a value as one transaction.
+     *
+     * @param label the label of the edit
+     * @param key   the key
+     * @param value the value, or null to remove the key
+     * @return true if the state changed
+     */
+    public boolean put(String label, String key, Object value) {
+        return edit(label, tx -> tx.put(key, value));
+    }
+
+    /**
+     * Reverts the last edit.
+     *
+     * @return false if there is nothing to undo
+     */
+    public synchronized boolean undo() {
+        checkNotInTransaction();
+        if (undo.isEmpty()) {
+            return false;
+        }
+        var entry = undo.pop();
+        bytes -= entry.bytes();
+        var current = snapshot.state();
+        redo.push(new Entry(current, entry.label(), current.retainedBytes(entry.state())));
+        bytes += redo.peek().bytes();
+        undos++;
+        publish(entry.state());
+        return true;
+    }
+
+    /**
+     * Applies the last undone edit again.
+     *
+     * @return false if there is nothing to redo
+     */
+    public synchronized boolean redo() {
+        checkNotInTransaction();
+        if (redo.isEmpty()) {
+            return false;
+        }
+        var entry = redo.pop();
+        bytes -= entry.bytes();
+        var current = snapshot.state();
+        undo.push(new Entry(current, entry.label(), current.retainedBytes(entry.state())));
+        bytes += undo.peek().bytes();
+        redos++;
+        evict();
+        publish(entry.state());
+        return true;
+    }
+
+    /**
+     * Removes all undo and redo entries. The state is kept.
+     */
+    public synchronized void clear() {
+        checkNotInTransaction();
+        undo.clear();
+        redo.clear();
+        bytes = 0;
+        publish(snapshot.state());
+    }
+
+    /**
+     * Sets the maximum number of edits that can be undone.
+     *
+     * @param maxEntries the maximum number of entries
+     * @throws IllegalArgumentException if maxEntries is negative
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries must not be negative.");
+        }
+        this.maxEntries = maxEntries;
+        if (evict()) {
+            publish(snapshot.state());
+        }
+    }
+
+    public synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the maximum memory that the past versions may hold, estimated
+     * from the nodes and values they do not share with the newer ones.
+     * The most recent entry is kept even if it alone is larger.
+     *
+     * @param maxBytes the maximum memory in bytes
+     * @throws IllegalArgumentException if maxBytes is negative
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must not be negative.");
+        }
+        this.maxBytes = maxBytes;
+        if (evict()) {
+            publish(snapshot.state());
+        }
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the counters and the size of this history.
+     *
+     * @return the stats
+     */
+    public synchronized Stats getStats() {
+        return new Stats(commits, undos, redos, evicted, undo.size(), redo.size(), bytes);
+    }
+
+    /**
+     * Evicts the oldest undo entries while the history is over its bounds.
+     * The redo entries are dropped by the next commit anyway.
+     *
+     * @return true if an entry was evicted
+     */
+    private boolean evict() {
+        boolean any = false;
+        while (!undo.isEmpty()
+                && (undo.size() > maxEntries || bytes > maxBytes && undo.size() > 1)) {
+            bytes -= undo.removeLast().bytes();
+            evicted++;
+            any = true;
+        }
+        return any;
+    }
+
+    private void clearRedo() {
+        for (var entry : redo) {
+            bytes -= entry.bytes();
+        }
+        redo.clear();
+    }
+
+    /**
+     * Makes the state current, and delivers the latest snapshot to the FX
+     * Application Thread in the next pulse unless a delivery is already pending.
+     * <p>
+     * The delivery is posted as a value rather than submitted as a task, so
+     * it is never dropped by a full task queue, and it reads the snapshot when
+     * it runs, so a pending delivery also carries the later commits.
+     */
+    private void publish(PersistentMap<String, Object> state) {
+        var top = undo.peek();
+        var next = redo.peek();
+        snapshot = new Snapshot(snapshot.version() + 1, state, undo.size(), redo.size(),
+                top != null ? top.label() : null, next != null ? next.label() : null);
+        if (publishing.compareAndSet(false, true)) {
+            // No delivery is pending, so the backpressure policy neither drops nor blocks this one.
+            updater.post(delivery, snapshot);
+        }
+    }
+
+    private void checkNotInTransaction() {
+        if (open != null) {
+            throw new IllegalStateException("Cannot undo or redo inside a transaction.");
+        }
+    }
+}
@@ -0,0 +1,592 @@
+package com.sosuisha;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent key-value snapshot of the {@link Model} state.
+ * <p>
+ * The state is kept in a compact binary file that is memory-mapped when the
+ * store is opened. Opening only reads the index of keys; a value is decoded
+ * when it is first read, so restoring a large model costs little more than
+ * restoring a small one.
+ * <p>
+ * Changes are kept in memory and written behind: the first change after a
+ * save schedules the next one after the save delay, so a burst of changes is
+ * committed as one batch, on a virtual thread. Each commit writes a new file
+ * next to the previous one, forces it to disk and then renames it into place
+ * atomically, so a crash leaves either the old or the new state, never a
+ * mix of both. The previous file is deleted after the commit.
+ * <p>
+ * The restore, decode and save latencies are available from {@link #getStats()}.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * var store = ModelStore.open(Path.of(System.getProperty("user.home"), ".myapp", "model.snapshot"));
+ * var model = new Model(store);
+ * ...
+ * // When the application stops
+ * store.close();
+ * </pre>
+ * <p>
+ * All methods may be called on any thread.
+ */
+public final class ModelStore implements AutoCloseable {
+    private static final System.Logger LOGGER = System.getLogger(ModelStore.class.getName());
+
+    /** The default delay between the first change and its save. */
+    public static final Duration DEFAULT_SAVE_DELAY = Duration.ofMillis(200);
+
+    /** "SSMS" */
+    private static final int MAGIC = 0x53534D53;
+    private static final int VERSION = 1;
+    /** magic, version, generation, entry count, index length */
+    private static final int HEADER_LENGTH = 4 + 4 + 8 + 4 + 4;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** Runs the write-behind saves on virtual threads. */
+    private static final Executor EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    /** Marks a pending removal. */
+    private static final Object REMOVED = new Object();
+
+    private enum Kind {
+        STRING, LONG, DOUBLE, BOOLEAN, BYTES
+    }
+
+    /**
+     * The location of a value in the mapped file.
+     */
+    private record Slot(Kind kind, int offset, int length, int crc) {
+    }
+
+    /**
+     * A committed file. The buffer is null if nothing has been committed yet.
+     */
+    private record Snapshot(long generation, Path file, MappedByteBuffer buffer, Map<String, Slot> index) {
+    }
+
+    /**
+     * Latencies and counters of a store since it was opened.
+     *
+     * @param restore    the time to map the file and read its index
+     * @param entries    the number of committed entries
+     * @param decodes    the number of values decoded from the file
+     * @param decodeTime the total time spent decoding values
+     * @param saves      the number of commits
+     * @param lastSave   the duration of the last commit
+     * @param maxSave    the longest commit
+     * @param lastBatch  the number of changes in the last commit
+     * @param lastBytes  the size of the file written by the last commit
+     * @param failures   the number of commits that failed
+     */
+    public record Stats(Duration restore, int entries, long decodes, Duration decodeTime, long saves,
+            Duration lastSave, Duration maxSave, int lastBatch, long lastBytes, long failures) {
+    }
+
+    private final Path file;
+    private final Duration saveDelay;
+    private final Object commitLock = new Object();
+    private final Map<String, Object> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+    private final long restoreNanos;
+    private final LongAdder decodes = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile Snapshot snapshot;
+    private volatile long saves;
+    private volatile long lastSaveNanos;
+    private volatile long maxSaveNanos;
+    private volatile int lastBatch;
+    private volatile long lastBytes;
+    private volatile boolean closed;
+
+    /**
+     * Opens the store with {@link #DEFAULT_SAVE_DELAY}.
+     *
+     * @param file the path of the snapshot; the committed files are named
+     *             after it, with the generation as suffix
+     * @return the store
+     * @throws IOException if the directory cannot be created or read
+     */
+    public static ModelStore open(Path file) throws IOException {
+        return open(file, DEFAULT_SAVE_DELAY);
+    }
+
+    /**
+     * Opens the store and restores the last committed snapshot, if any.
+     * An incomplete or corrupt file is skipped in favor of an older one.
+     *
+     * @param file      the path of the snapshot; the committed files are named
+     *                  after it, with the generation as suffix
+     * @param saveDelay the delay between the first change and its save
+     * @return the store
+     * @throws IOException if the directory cannot be created or read
+     */
+    public static ModelStore open(Path file, Duration saveDelay) throws IOException {
+        return new ModelStore(file.toAbsolutePath(), Objects.requireNonNull(saveDelay, "saveDelay must not be null."));
+    }
+
+    private ModelStore(Path file, Duration saveDelay) throws IOException {
+        this.file = file;
+        this.saveDelay = saveDelay;
+        long start = System.nanoTime();
+        Files.createDirectories(file.getParent());
+        this.snapshot = restore();
+        this.restoreNanos = System.nanoTime() - start;
+        LOGGER.log(System.Logger.Level.DEBUG, () -> "Restored " + snapshot.index().size() + " entries from "
+                + (snapshot.file() != null ? snapshot.file() : file) + " in " + restoreNanos / 1000 + " us");
+    }
+
+    /**
+     * Maps the newest valid committed file, and deletes the files left by an interrupted commit.
+     */
+    private Snapshot restore() throws IOException {
+        var generations = new TreeMap<Long, Path>(Collections.reverseOrder());
+        try (var files = Files.list(file.getParent())) {
+            for (var path : files.toList()) {
+                var name = path.getFileName().toString();
+                var prefix = file.getFileName() + ".";
+                if (!name.startsWith(prefix)) {
+                    continue;
+                }
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                try {
+                    generations.put(Long.parseLong(name.substring(prefix.length())), path);
+                } catch (NumberFormatException e) {
+                    // Not a snapshot of this store.
+                }
+            }
+        }
+        Snapshot restored = null;
+        for (var entry : generations.entrySet()) {
+            if (restored != null) {
+                // Left behind by a commit that could not delete it, e.g. while it was mapped on Windows.
+                deleteQuietly(entry.getValue());
+                continue;
+            }
+            try {
+                restored = map(entry.getValue(), entry.getKey());
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Skipped unreadable snapshot " + entry.getValue(), e);
+            }
+        }
+        return restored != null ? restored : new Snapshot(0, null, null, Map.of());
+    }
+
+    private static Snapshot map(Path path, long generation) throws IOException {
+        MappedByteBuffer buffer;
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a snapshot");
+        }
+        if (buffer.getInt(4) != VERSION || buffer.getLong(8) != generation) {
+            throw new IOException("Unsupported version or generation");
+        }
+        int count = buffer.getInt(16);
+        int indexLength = buffer.getInt(20);
+        if (count < 0 || indexLength < 0 || HEADER_LENGTH + (long) indexLength > buffer.capacity()) {
+            throw new IOException("Truncated index");
+        }
+        var index = new HashMap<String, Slot>(count * 2);
+        var in = buffer.slice(HEADER_LENGTH, indexLength);
+        for (int i = 0; i < count; i++) {
+            var key = new byte[Short.toUnsignedInt(in.getShort())];
+            in.get(key);
+            var slot = new Slot(Kind.values()[in.get()], in.getInt(), in.getInt(), in.getInt());
+            if (slot.offset() < HEADER_LENGTH + indexLength || slot.length() < 0
+                    || (long) slot.offset() + slot.length() > buffer.capacity()) {
+                throw new IOException("Value out of bounds");
+            }
+            index.put(new String(key, StandardCharsets.UTF_8), slot);
+        }
+        return new Snapshot(generation, path, buffer, Map.copyOf(index));
+    }
+
+    public String getString(String key, String defaultValue) {
+        return value(key) instanceof String value ? value : defaultValue;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        return value(key) instanceof Long value ? value : defaultValue;
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        return value(key) instanceof Double value ? value : defaultValue;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        return value(key) instanceof Boolean value ? value : defaultValue;
+    }
+
+    /**
+     * Returns a copy of the bytes stored under the key.
+     *
+     * @param key the key
+     * @return the bytes, or null if there is no byte array under the key
+     */
+    public byte[] getBytes(String key) {
+        return value(key) instanceof byte[] value ? value.clone() : null;
+    }
+
+    /**
+     * Returns whether a value is stored under the key.
+     *
+     * @param key the key
+     * @return true if there is a value
+     */
+    public boolean contains(String key) {
+        var value = pending.get(key);
+        return value != null ? value != REMOVED : snapshot.index().containsKey(key);
+    }
+
+    /**
+     * Returns the keys, including the changes that are not saved yet.
+     *
+     * @return the sorted keys
+     */
+    public Set<String> keys() {
+        var keys = new TreeSet<>(snapshot.index().keySet());
+        pending.forEach((key, value) -> {
+            if (value == REMOVED) {
+                keys.remove(key);
+            } else {
+                keys.add(key);
+            }
+        });
+        return keys;
+    }
+
+    /**
+     * Stores the string, or removes the key if it is null.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public void putString(String key, String value) {
+        change(key, value != null ? value : REMOVED);
+    }
+
+    public void putLong(String key, long value) {
+        change(key, value);
+    }
+
+    public void putDouble(String key, double value) {
+        change(key, value);
+    }
+
+    public void putBoolean(String key, boolean value) {
+        change(key, value);
+    }
+
+    /**
+     * Stores a copy of the bytes, or removes the key if it is null.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public void putBytes(String key, byte[] value) {
+        change(key, value != null ? value.clone() : REMOVED);
+    }
+
+    public void remove(String key) {
+        change(key, REMOVED);
+    }
+
+    private void change(String key, Object value) {
+        Objects.requireNonNull(key, "key must not be null.");
+        if (closed) {
+            throw new IllegalStateException("The store is closed.");
+        }
+        if (key.getBytes(StandardCharsets.UTF_8).length > 0xFFFF) {
+            throw new IllegalArgumentException("Key too long: " + key.substring(0, 64) + "...");
+        }
+        pending.put(key, value);
+        if (saveScheduled.compareAndSet(false, true)) {
+            EXECUTOR.execute(() -> {
+                try {
+                    Thread.sleep(saveDelay);
+                } catch (InterruptedException e) {
+                    // Save now.
+                }
+                // Changes made during the save are committed by the next one.
+                saveScheduled.set(false);
+                try {
+                    save();
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(System.Logger.Level.WARNING, "Failed to save " + file
+                            + "; the changes are kept for the next save", e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the pending value, or decodes the committed one.
+     */
+    private Object value(String key) {
+        var value = pending.get(key);
+        if (value != null) {
+            return value == REMOVED ? null : value;
+        }
+        var snapshot = this.snapshot;
+        var slot = snapshot.index().get(key);
+        if (slot == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        var bytes = new byte[slot.length()];
+        snapshot.buffer().get(slot.offset(), bytes);
+        if (crc(bytes) != slot.crc()) {
+            LOGGER.log(System.Logger.Level.WARNING, "Ignored corrupt value of " + key + " in " + snapshot.file());
+            return null;
+        }
+        var decoded = switch (slot.kind()) {
+            case STRING -> new String(bytes, StandardCharsets.UTF_8);
+            case LONG -> ByteBuffer.wrap(bytes).getLong();
+            case DOUBLE -> ByteBuffer.wrap(bytes).getDouble();
+            case BOOLEAN -> bytes[0] != 0;
+            case BYTES -> bytes;
+        };
+        decodes.increment();
+        decodeNanos.add(System.nanoTime() - start);
+        return decoded;
+    }
+
+    /**
+     * Commits the pending changes now, on the calling thread.
+     *
+     * @throws IOException if the snapshot cannot be written; the changes are kept
+     */
+    public void flush() throws IOException {
+        save();
+    }
+
+    private void save() throws IOException {
+        synchronized (commitLock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            long start = System.nanoTime();
+            var batch = new HashMap<>(pending);
+            try {
+                commit(batch);
+            } catch (IOException | RuntimeException e) {
+                failures.increment();
+                throw e;
+            }
+            // Keep the changes that were made again during the commit.
+            batch.forEach(pending::remove);
+            long nanos = System.nanoTime() - start;
+            lastSaveNanos = nanos;
+            maxSaveNanos = Math.max(maxSaveNanos, nanos);
+            lastBatch = batch.size();
+            saves++;
+        }
+    }
+
+    private void commit(Map<String, Object> batch) throws IOException {
+        var old = snapshot;
+        var keys = new TreeSet<>(old.index().keySet());
+        var encoded = new HashMap<String, byte[]>();
+        var kinds = new HashMap<String, Kind>();
+        for (var change : batch.entrySet()) {
+            if (change.getValue() == REMOVED) {
+                keys.remove(change.getKey());
+            } else {
+                keys.add(change.getKey());
+                kinds.put(change.getKey(), kind(change.getValue()));
+                encoded.put(change.getKey(), encode(change.getValue()));
+            }
+        }
+
+        // Lay out the index, then the values in the same order.
+        var keyBytes = new ArrayList<byte[]>(keys.size());
+        int indexLength = 0;
+        for (var key : keys) {
+            var bytes = key.getBytes(StandardCharsets.UTF_8);
+            keyBytes.add(bytes);
+            indexLength += 2 + bytes.length + 1 + 4 + 4 + 4;
+        }
+        var index = ByteBuffer.allocate(HEADER_LENGTH + indexLength);
+        long generation = old.generation() + 1;
+        index.putInt(MAGIC).putInt(VERSION).putLong(generation).putInt(keys.size()).putInt(indexLength);
+        var slots = new HashMap<String, Slot>(keys.size() * 2);
+        var values = new ArrayList<ByteBuffer>(keys.size());
+        long offset = HEADER_LENGTH + indexLength;
+        int i = 0;
+        for (var key : keys) {
+            Slot slot;
+            var bytes = encoded.get(key);
+            var oldSlot = old.index().get(key);
+            int length = bytes != null ? bytes.length : oldSlot.length();
+            if (offset + length > Integer.MAX_VALUE) {
+                throw new IOException("The snapshot exceeds 2 GB");
+            }
+            if (bytes != null) {
+                slot = new Slot(kinds.get(key), (int) offset, length, crc(bytes));
+                values.add(ByteBuffer.wrap(bytes));
+            } else {
+                // Unchanged: copy the encoded value from the mapped file without decoding it.
+                slot = new Slot(oldSlot.kind(), (int) offset, length, oldSlot.crc());
+                values.add(old.buffer().slice(oldSlot.offset(), length));
+            }
+            var key8 = keyBytes.get(i++);
+            index.putShort((short) key8.length).put(key8).put((byte) slot.kind().ordinal())
+                    .putInt(slot.offset()).putInt(slot.length()).putInt(slot.crc());
+            slots.put(key, slot);
+            offset += slot.length();
+        }
+        index.flip();
+
+        var target = generationFile(generation);
+        var temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        try {
+            try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(channel, index);
+                for (var value : values) {
+                    writeFully(channel, value);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        forceDirectory();
+
+        MappedByteBuffer buffer;
+        try (var channel = FileChannel.open(target, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        snapshot = new Snapshot(generation, target, buffer, Map.copyOf(slots));
+        lastBytes = offset;
+        if (old.file() != null) {
+            deleteQuietly(old.file());
+        }
+    }
+
+    /**
+     * Deletes an old snapshot. It cannot be deleted while it is mapped on
+     * Windows; then the next {@link #restore()} deletes it.
+     */
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOGGER.log(System.Logger.Level.DEBUG, "Cannot delete " + path + " yet", e);
+        }
+    }
+
+    private Path generationFile(long generation) {
+        return file.resolveSibling(file.getFileName() + "." + generation);
+    }
+
+    /**
+     * Makes the rename durable. Not supported on every platform.
+     */
+    private void forceDirectory() {
+        try (var channel = FileChannel.open(file.getParent(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // e.g. Windows, where directories cannot be opened.
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static Kind kind(Object value) {
+        return switch (value) {
+            case String s -> Kind.STRING;
+            case Long l -> Kind.LONG;
+            case Double d -> Kind.DOUBLE;
+            case Boolean b -> Kind.BOOLEAN;
+            case byte[] bytes -> Kind.BYTES;
+            default -> throw new IllegalArgumentException("Unsupported value: " + value.getClass());
+        };
+    }
+
+    private static byte[] encode(Object value) {
+        return switch (value) {
+            case String s -> s.getBytes(StandardCharsets.UTF_8);
+            case Long l -> ByteBuffer.allocate(8).putLong(l).array();
+            case Double d -> ByteBuffer.allocate(8).putDouble(d).array();
+            case Boolean b -> new byte[] { (byte) (b ? 1 : 0) };
+            case byte[] bytes -> bytes;
+            default -> throw new IllegalArgumentException("Unsupported value: " + value.getClass());
+        };
+    }
+
+    private static int crc(byte[] bytes) {
+        var crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Returns the latencies and counters of this store.
+     *
+     * @return a snapshot of the statistics
+     */
+    public Stats getStats() {
+        return new Stats(Duration.ofNanos(restoreNanos), snapshot.index().size(), decodes.sum(),
+                Duration.ofNanos(decodeNanos.sum()), saves, Duration.ofNanos(lastSaveNanos),
+                Duration.ofNanos(maxSaveNanos), lastBatch, lastBytes, failures.sum());
+    }
+
+    /**
+     * Commits the pending changes and rejects further changes. The values
+     * can still be read.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            save();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(System.Logger.Level.ERROR, "Failed to save " + file + " on close", e);
+        }
+        LOGGER.log(System.Logger.Level.DEBUG, () -> "Closed " + file + ": " + getStats());
+    }
+
+    @Override
+    public String toString() {
+        return "ModelStore[" + file + ", generation=" + snapshot.generation() + ", pending=" + pending.size() + "]";
+    }
+}
@@ -0,0 +1,48 @@
+package com.sosuisha;
+
+import javafx.util.Builder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Placeholder for an {@code fx:include} whose fragment is loaded in parallel.
+ * <p>
+ * Not used in FXML files directly: {@link FxmlIncludes} puts it in place of
+ * {@code fx:include} when {@link SceneBuilder#parallelIncludes(boolean)} is
+ * enabled, and FXMLLoader builds it into the root of the loaded fragment.
+ */
+public final class ParallelInclude implements Builder<Object> {
+    private final FxmlIncludes.Run run;
+    private int slot = -1;
+
+    ParallelInclude(FxmlIncludes.Run run) {
+        this.run = run;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Sets the index of the include in its document.
+     *
+     * @param slot the index
+     */
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * Waits for the fragment and returns its root.
+     *
+     * @return the root of the fragment
+     */
+    @Override
+    public Object build() {
+        try {
+            return run.take(slot);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
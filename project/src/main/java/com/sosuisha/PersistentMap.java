@@ -0,0 +1,507 @@
+package com.sosuisha;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable map that shares structure between versions.
+ * <p>
+ * It is a hash array mapped trie: a tree of nodes with up to 32 children,
+ * indexed by 5 bits of the hash of the key at each level. {@link #plus} and
+ * {@link #minus} copy only the nodes on the path to the key, at most 7 of
+ * them, and share all the others with the original map. So keeping every
+ * version of a large map, as {@link ModelHistory} does, costs memory in
+ * proportion to the changes, not to the size of the map.
+ * <p>
+ * Keys must have a consistent {@code hashCode} and {@code equals}; null keys
+ * and values are not allowed. Instances are thread-safe.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * PersistentMap&lt;String, Integer&gt; v1 = PersistentMap.of();
+ * var v2 = v1.plus("width", 640).plus("height", 480);
+ * var v3 = v2.plus("width", 800);
+ * v2.get("width"); // 640
+ * v3.get("width"); // 800
+ * </pre>
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public final class PersistentMap<K, V> implements Iterable<Map.Entry<K, V>> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    /** Estimated sizes of the objects of the trie, with compressed references. */
+    static final int OBJECT_BYTES = 16;
+    static final int REFERENCE_BYTES = 4;
+
+    private static final Bitmap EMPTY_NODE = new Bitmap(0, new Object[0]);
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(EMPTY_NODE, 0);
+
+    /** A key and its value. */
+    private record Leaf(int hash, Object key, Object value) {
+    }
+
+    /** A node whose slots are leaves or child nodes, one per bit set in the bitmap. */
+    private record Bitmap(int bitmap, Object[] slots) {
+    }
+
+    /** The leaves of keys whose hashes are equal. */
+    private record Collision(int hash, Leaf[] leaves) {
+    }
+
+    private final Bitmap root;
+    private final int size;
+
+    private PersistentMap(Bitmap root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> of() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Returns a map with the entries of a Map.
+     *
+     * @param <K>     the key type
+     * @param <V>     the value type
+     * @param entries the entries
+     * @return the map
+     */
+    public static <K, V> PersistentMap<K, V> copyOf(Map<? extends K, ? extends V> entries) {
+        PersistentMap<K, V> result = of();
+        for (var entry : entries.entrySet()) {
+            result = result.plus(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the value of the key.
+     *
+     * @param key the key
+     * @return the value, or null if the map has no such key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        var leaf = find(key);
+        return leaf != null ? (V) leaf.value() : null;
+    }
+
+    /**
+     * Returns the value of the key, or a default value.
+     *
+     * @param key          the key
+     * @param defaultValue the value to return if the map has no such key
+     * @return the value
+     */
+    public V getOrDefault(Object key, V defaultValue) {
+        var value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public boolean containsKey(Object key) {
+        return find(key) != null;
+    }
+
+    /**
+     * Returns a map with the key set to the value. This map is not changed.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the new map, or this map if the key already has the same value
+     */
+    public PersistentMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(key, "key must not be null.");
+        Objects.requireNonNull(value, "value must not be null.");
+        var added = new boolean[1];
+        var newRoot = (Bitmap) put(root, 0, new Leaf(hash(key), key, value), added);
+        return newRoot == root ? this : new PersistentMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map without the key. This map is not changed.
+     *
+     * @param key the key
+     * @return the new map, or this map if it has no such key
+     */
+    public PersistentMap<K, V> minus(Object key) {
+        if (key == null || size == 0) {
+            return this;
+        }
+        int hash = hash(key);
+        var result = remove(root, 0, hash, key);
+        if (result == root) {
+            return this;
+        }
+        if (result == null) {
+            return of();
+        }
+        if (result instanceof Leaf leaf) {
+            // The root stays a bitmap node, even with a single leaf.
+            return new PersistentMap<>(new Bitmap(bit(leaf.hash(), 0), new Object[] {leaf}), size - 1);
+        }
+        return new PersistentMap<>((Bitmap) result, size - 1);
+    }
+
+    /**
+     * Calls the action for each entry, in no particular order.
+     *
+     * @param action the action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (var leaf : leaves()) {
+            action.accept((K) leaf.key(), (V) leaf.value());
+        }
+    }
+
+    /**
+     * Iterates over the entries in no particular order.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<Map.Entry<K, V>> iterator() {
+        var leaves = leaves().iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return leaves.hasNext();
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+                var leaf = leaves.next();
+                return new AbstractMap.SimpleImmutableEntry<>((K) leaf.key(), (V) leaf.value());
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        var text = new StringBuilder("{");
+        forEach((key, value) -> text.append(text.length() > 1 ? ", " : "").append(key).append('=').append(value));
+        return text.append('}').toString();
+    }
+
+    private Iterable<Leaf> leaves() {
+        return () -> new Iterator<>() {
+            private final ArrayDeque<Object> stack = new ArrayDeque<>();
+            private Leaf next;
+
+            {
+                stack.push(root);
+                next = advance();
+            }
+
+            private Leaf advance() {
+                while (!stack.isEmpty()) {
+                    var item = stack.pop();
+                    switch (item) {
+                        case Leaf leaf -> {
+                            return leaf;
+                        }
+                        case Bitmap node -> {
+                            for (int i = node.slots().length - 1; i >= 0; i--) {
+                                stack.push(node.slots()[i]);
+                            }
+                        }
+                        case Collision node -> {
+                            for (int i = node.leaves().length - 1; i >= 0; i--) {
+                                stack.push(node.leaves()[i]);
+                            }
+                        }
+                        default -> throw new IllegalStateException();
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Leaf next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                var result = next;
+                next = advance();
+                return result;
+            }
+        };
+    }
+
+    private Leaf find(Object key) {
+        if (key == null) {
+            return null;
+        }
+        int hash = hash(key);
+        Object node = root;
+        for (int shift = 0; ; shift += BITS) {
+            switch (node) {
+                case Bitmap bitmap -> {
+                    int bit = bit(hash, shift);
+                    if ((bitmap.bitmap() & bit) == 0) {
+                        return null;
+                    }
+                    node = bitmap.slots()[index(bitmap.bitmap(), bit)];
+                }
+                case Leaf leaf -> {
+                    return leaf.hash() == hash && leaf.key().equals(key) ? leaf : null;
+                }
+                case Collision collision -> {
+                    for (var leaf : collision.leaves()) {
+                        if (leaf.key().equals(key)) {
+                            return leaf;
+                        }
+                    }
+                    return null;
+                }
+                default -> throw new IllegalStateException();
+            }
+        }
+    }
+
+    /**
+     * Returns the node with the leaf put into it, or the same node if the
+     * key already has the same value.
+     */
+    private static Object put(Object node, int shift, Leaf leaf, boolean[] added) {
+        return switch (node) {
+            case Bitmap bitmap -> {
+                int bit = bit(leaf.hash(), shift);
+                int index = index(bitmap.bitmap(), bit);
+                if ((bitmap.bitmap() & bit) == 0) {
+                    added[0] = true;
+                    var slots = new Object[bitmap.slots().length + 1];
+                    System.arraycopy(bitmap.slots(), 0, slots, 0, index);
+                    slots[index] = leaf;
+                    System.arraycopy(bitmap.slots(), index, slots, index + 1, bitmap.slots().length - index);
+                    yield new Bitmap(bitmap.bitmap() | bit, slots);
+                }
+                var slot = bitmap.slots()[index];
+                var newSlot = slot instanceof Leaf existing && !existing.key().equals(leaf.key())
+                        ? merge(shift + BITS, existing, leaf, added)
+                        : put(slot, shift + BITS, leaf, added);
+                if (newSlot == slot) {
+                    yield bitmap;
+                }
+                var slots = bitmap.slots().clone();
+                slots[index] = newSlot;
+                yield new Bitmap(bitmap.bitmap(), slots);
+            }
+            case Leaf existing -> existing.value().equals(leaf.value()) ? existing : leaf;
+            case Collision collision -> {
+                if (collision.hash() != leaf.hash()) {
+                    // Push the collision one level down, next to the new leaf.
+                    var parent = new Bitmap(bit(collision.hash(), shift), new Object[] {collision});
+                    yield put(parent, shift, leaf, added);
+                }
+                var leaves = collision.leaves();
+                for (int i = 0; i < leaves.length; i++) {
+                    if (leaves[i].key().equals(leaf.key())) {
+                        if (leaves[i].value().equals(leaf.value())) {
+                            yield collision;
+                        }
+                        var copy = leaves.clone();
+                        copy[i] = leaf;
+                        yield new Collision(collision.hash(), copy);
+                    }
+                }
+                added[0] = true;
+                var copy = Arrays.copyOf(leaves, leaves.length + 1);
+                copy[leaves.length] = leaf;
+                yield new Collision(collision.hash(), copy);
+            }
+            default -> throw new IllegalStateException();
+        };
+    }
+
+    /**
+     * Returns the node that holds two leaves of different keys.
+     */
+    private static Object merge(int shift, Leaf a, Leaf b, boolean[] added) {
+        added[0] = true;
+        if (a.hash() == b.hash()) {
+            return new Collision(a.hash(), new Leaf[] {a, b});
+        }
+        int bitA = bit(a.hash(), shift);
+        int bitB = bit(b.hash(), shift);
+        if (bitA == bitB) {
+            return new Bitmap(bitA, new Object[] {merge(shift + BITS, a, b, added)});
+        }
+        return new Bitmap(bitA | bitB, Integer.compareUnsigned(bitA, bitB) < 0
+                ? new Object[] {a, b}
+                : new Object[] {b, a});
+    }
+
+    /**
+     * Returns the node without the key: the same node if it has no such
+     * key, null if it becomes empty, or a Leaf if only one is left, so that
+     * the parent can hold it directly.
+     */
+    private static Object remove(Object node, int shift, int hash, Object key) {
+        return switch (node) {
+            case Bitmap bitmap -> {
+                int bit = bit(hash, shift);
+                if ((bitmap.bitmap() & bit) == 0) {
+                    yield bitmap;
+                }
+                int index = index(bitmap.bitmap(), bit);
+                var slot = bitmap.slots()[index];
+                var newSlot = remove(slot, shift + BITS, hash, key);
+                if (newSlot == slot) {
+                    yield bitmap;
+                }
+                if (newSlot != null) {
+                    if (bitmap.slots().length == 1 && newSlot instanceof Leaf) {
+                        yield newSlot;
+                    }
+                    var slots = bitmap.slots().clone();
+                    slots[index] = newSlot;
+                    yield new Bitmap(bitmap.bitmap(), slots);
+                }
+                if (bitmap.slots().length == 1) {
+                    yield null;
+                }
+                if (bitmap.slots().length == 2 && bitmap.slots()[1 - index] instanceof Leaf other) {
+                    yield other;
+                }
+                var slots = new Object[bitmap.slots().length - 1];
+                System.arraycopy(bitmap.slots(), 0, slots, 0, index);
+                System.arraycopy(bitmap.slots(), index + 1, slots, index, slots.length - index);
+                yield new Bitmap(bitmap.bitmap() & ~bit, slots);
+            }
+            case Leaf leaf -> leaf.hash() == hash && leaf.key().equals(key) ? null : leaf;
+            case Collision collision -> {
+                var leaves = collision.leaves();
+                for (int i = 0; i < leaves.length; i++) {
+                    if (leaves[i].key().equals(key)) {
+                        if (leaves.length == 2) {
+                            yield leaves[1 - i];
+                        }
+                        var copy = new Leaf[leaves.length - 1];
+                        System.arraycopy(leaves, 0, copy, 0, i);
+                        System.arraycopy(leaves, i + 1, copy, i, copy.length - i);
+                        yield new Collision(collision.hash(), copy);
+                    }
+                }
+                yield collision;
+            }
+            default -> throw new IllegalStateException();
+        };
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    /**
+     * Returns the estimated size of the objects that this map holds and a
+     * newer version of it does not, which is what keeping this version
+     * costs. Subtrees shared with the newer version are skipped without
+     * being walked, so it takes time in proportion to the changes.
+     *
+     * @param newer the newer version, or null to count the whole map
+     * @return the size in bytes
+     */
+    long retainedBytes(PersistentMap<?, ?> newer) {
+        if (newer == this) {
+            return 0;
+        }
+        return OBJECT_BYTES + retained(root, newer != null ? newer.root : null);
+    }
+
+    private static long retained(Object node, Object newer) {
+        if (node == newer) {
+            return 0;
+        }
+        return switch (node) {
+            case Leaf leaf -> {
+                long bytes = OBJECT_BYTES + 3L * REFERENCE_BYTES;
+                var same = newer instanceof Leaf other && other.key().equals(leaf.key()) ? other.value() : null;
+                yield bytes + retainedValueBytes(leaf.value(), same);
+            }
+            case Bitmap bitmap -> {
+                long bytes = 2L * OBJECT_BYTES + REFERENCE_BYTES * (bitmap.slots().length + 1L);
+                var other = newer instanceof Bitmap b ? b : null;
+                for (int remaining = bitmap.bitmap(), i = 0; remaining != 0; remaining &= remaining - 1, i++) {
+                    int bit = Integer.lowestOneBit(remaining);
+                    Object otherSlot = other != null && (other.bitmap() & bit) != 0
+                            ? other.slots()[index(other.bitmap(), bit)]
+                            : null;
+                    bytes += retained(bitmap.slots()[i], otherSlot);
+                }
+                yield bytes;
+            }
+            case Collision collision -> {
+                long bytes = 2L * OBJECT_BYTES + REFERENCE_BYTES * (collision.leaves().length + 1L);
+                for (var leaf : collision.leaves()) {
+                    bytes += retained(leaf, null);
+                }
+                yield bytes;
+            }
+            default -> throw new IllegalStateException();
+        };
+    }
+
+    /**
+     * Returns the estimated size of a value that a newer version does not
+     * share. Persistent collections in values are compared structurally.
+     *
+     * @param value the value in the older version
+     * @param newer the value of the same key or index in the newer version, or null
+     * @return the size in bytes
+     */
+    static long retainedValueBytes(Object value, Object newer) {
+        if (value == newer) {
+            return 0;
+        }
+        return switch (value) {
+            case null -> 0;
+            case PersistentMap<?, ?> map -> map.retainedBytes(newer instanceof PersistentMap<?, ?> m ? m : null);
+            case PersistentVector<?> vector ->
+                    vector.retainedBytes(newer instanceof PersistentVector<?> v ? v : null);
+            case String text -> 2L * OBJECT_BYTES + REFERENCE_BYTES + text.length();
+            default -> OBJECT_BYTES + 8;
+        };
+    }
+}
@@ -0,0 +1,385 @@
+package com.sosuisha;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Immutable list that shares structure between versions.
+ * <p>
+ * It is a tree of arrays of 32 elements with the last, partly filled array
+ * kept apart as a tail. {@link #get} and {@link #set} walk at most 7
+ * levels, {@link #plus} and {@link #removeLast()} mostly only copy the
+ * tail, and a new version shares all the arrays that did not change with
+ * the original list. {@link #insert} and {@link #remove} keep the elements
+ * before the index shared and rebuild the ones after it.
+ * <p>
+ * Null elements are allowed. Instances are thread-safe.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * PersistentVector&lt;String&gt; v1 = PersistentVector.of();
+ * var v2 = v1.plus("a").plus("b");
+ * var v3 = v2.set(0, "c");
+ * v2.get(0); // "a"
+ * v3.get(0); // "c"
+ * </pre>
+ *
+ * @param <E> the element type
+ */
+public final class PersistentVector<E> implements Iterable<E> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final Object[] EMPTY_ARRAY = new Object[0];
+    private static final Object[] EMPTY_ROOT = new Object[WIDTH];
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, BITS, EMPTY_ROOT, EMPTY_ARRAY);
+
+    private final int size;
+    private final int shift;
+    private final Object[] root;
+    private final Object[] tail;
+
+    private PersistentVector(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * Returns the empty list.
+     *
+     * @param <E> the element type
+     * @return the empty list
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> of() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    /**
+     * Returns a list with the elements of a collection, in iteration order.
+     *
+     * @param <E>      the element type
+     * @param elements the elements
+     * @return the list
+     */
+    public static <E> PersistentVector<E> copyOf(Iterable<? extends E> elements) {
+        PersistentVector<E> result = of();
+        for (var element : elements) {
+            result = result.plus(element);
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the element at the index.
+     *
+     * @param index the index
+     * @return the element
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, size);
+        return (E) arrayFor(index)[index & MASK];
+    }
+
+    /**
+     * Returns a list with the element appended. This list is not changed.
+     *
+     * @param element the element
+     * @return the new list
+     */
+    public PersistentVector<E> plus(E element) {
+        if (size - tailOffset() < WIDTH) {
+            var newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = element;
+            return new PersistentVector<>(size + 1, shift, root, newTail);
+        }
+        // The tail is full: push it into the tree.
+        Object[] newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = newPath(shift, tail);
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentVector<>(size + 1, newShift, newRoot, new Object[] {element});
+    }
+
+    /**
+     * Returns a list with the element at the index replaced. This list is not changed.
+     *
+     * @param index   the index
+     * @param element the element
+     * @return the new list, or this list if the index already holds the same element
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public PersistentVector<E> set(int index, E element) {
+        Objects.checkIndex(index, size);
+        if (Objects.equals(get(index), element)) {
+            return this;
+        }
+        if (index >= tailOffset()) {
+            var newTail = tail.clone();
+            newTail[index & MASK] = element;
+            return new PersistentVector<>(size, shift, root, newTail);
+        }
+        return new PersistentVector<>(size, shift, assoc(shift, root, index, element), tail);
+    }
+
+    /**
+     * Returns a list without the last element. This list is not changed.
+     *
+     * @return the new list
+     * @throws IllegalStateException if the list is empty
+     */
+    public PersistentVector<E> removeLast() {
+        if (size == 0) {
+            throw new IllegalStateException("The list is empty.");
+        }
+        if (size == 1) {
+            return of();
+        }
+        if (size - tailOffset() > 1) {
+            return new PersistentVector<>(size - 1, shift, root, Arrays.copyOf(tail, tail.length - 1));
+        }
+        // The tail becomes empty: take the last array of the tree as the tail.
+        var newTail = arrayFor(size - 2);
+        var newRoot = popTail(shift, root);
+        int newShift = shift;
+        if (newRoot == null) {
+            newRoot = EMPTY_ROOT;
+        }
+        if (shift > BITS && newRoot[1] == null) {
+            newRoot = (Object[]) newRoot[0];
+            newShift -= BITS;
+        }
+        return new PersistentVector<>(size - 1, newShift, newRoot, newTail);
+    }
+
+    /**
+     * Returns the first elements of this list. The arrays before the index
+     * are shared. Takes time in proportion to the number of removed elements.
+     *
+     * @param count the number of elements to keep
+     * @return the new list
+     * @throws IndexOutOfBoundsException if count is negative or greater than the size
+     */
+    public PersistentVector<E> take(int count) {
+        Objects.checkIndex(count, size + 1);
+        var result = this;
+        while (result.size > count) {
+            result = result.removeLast();
+        }
+        return result;
+    }
+
+    /**
+     * Returns a list with the element inserted at the index. Takes time in
+     * proportion to the number of elements after the index.
+     *
+     * @param index   the index, from 0 to the size
+     * @param element the element
+     * @return the new list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public PersistentVector<E> insert(int index, E element) {
+        Objects.checkIndex(index, size + 1);
+        return take(index).plus(element).plusAll(this, index);
+    }
+
+    /**
+     * Returns a list without the element at the index. Takes time in
+     * proportion to the number of elements after the index.
+     *
+     * @param index the index
+     * @return the new list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public PersistentVector<E> remove(int index) {
+        Objects.checkIndex(index, size);
+        return take(index).plusAll(this, index + 1);
+    }
+
+    private PersistentVector<E> plusAll(PersistentVector<E> source, int from) {
+        var result = this;
+        for (int i = from; i < source.size; i++) {
+            result = result.plus(source.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a read-only List view of this list.
+     *
+     * @return the view
+     */
+    public List<E> asList() {
+        return new AbstractList<>() {
+            @Override
+            public E get(int index) {
+                return PersistentVector.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return asList().iterator();
+    }
+
+    @Override
+    public String toString() {
+        return asList().toString();
+    }
+
+    private int tailOffset() {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    private Object[] arrayFor(int index) {
+        if (index >= tailOffset()) {
+            return tail;
+        }
+        var node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+        int index = ((size - 1) >>> level) & MASK;
+        var result = parent.clone();
+        if (level == BITS) {
+            result[index] = tailNode;
+        } else {
+            var child = (Object[]) parent[index];
+            result[index] = child != null
+                    ? pushTail(level - BITS, child, tailNode)
+                    : newPath(level - BITS, tailNode);
+        }
+        return result;
+    }
+
+    private static Object[] newPath(int level, Object[] node) {
+        if (level == 0) {
+            return node;
+        }
+        var result = new Object[WIDTH];
+        result[0] = newPath(level - BITS, node);
+        return result;
+    }
+
+    private static Object[] assoc(int level, Object[] node, int index, Object element) {
+        var result = node.clone();
+        if (level == 0) {
+            result[index & MASK] = element;
+        } else {
+            int child = (index >>> level) & MASK;
+            result[child] = assoc(level - BITS, (Object[]) node[child], index, element);
+        }
+        return result;
+    }
+
+    private Object[] popTail(int level, Object[] node) {
+        int index = ((size - 2) >>> level) & MASK;
+        if (level > BITS) {
+            var newChild = popTail(level - BITS, (Object[]) node[index]);
+            if (newChild == null && index == 0) {
+                return null;
+            }
+            var result = node.clone();
+            result[index] = newChild;
+            return result;
+        }
+        if (index == 0) {
+            return null;
+        }
+        var result = node.clone();
+        result[index] = null;
+        return result;
+    }
+
+    /**
+     * Returns the estimated size of the objects that this list holds and a
+     * newer version of it does not, which is what keeping this version
+     * costs. Arrays shared with the newer version are skipped without being
+     * walked, so it takes time in proportion to the changes.
+     *
+     * @param newer the newer version, or null to count the whole list
+     * @return the size in bytes
+     */
+    long retainedBytes(PersistentVector<?> newer) {
+        if (newer == this) {
+            return 0;
+        }
+        long bytes = PersistentMap.OBJECT_BYTES + 3L * PersistentMap.REFERENCE_BYTES;
+        var newerRoot = newer != null ? newer.root : null;
+        int newerShift = newer != null ? newer.shift : shift;
+        // Align the roots when the tree has grown or shrunk by some levels.
+        while (newerRoot != null && newerShift > shift) {
+            newerRoot = (Object[]) newerRoot[0];
+            newerShift -= BITS;
+        }
+        var node = root;
+        int level = shift;
+        while (newerRoot != null && level > newerShift) {
+            bytes += arrayBytes(node);
+            for (int i = 1; i < WIDTH && node[i] != null; i++) {
+                bytes += retained((Object[]) node[i], null, level - BITS);
+            }
+            node = (Object[]) node[0];
+            level -= BITS;
+        }
+        bytes += retained(node, newerRoot, level);
+        // A full tail is pushed into the tree of the next version as is.
+        boolean shared = newer != null && tail.length > 0 && tailOffset() < newer.tailOffset()
+                && newer.arrayFor(tailOffset()) == tail;
+        if (!shared) {
+            bytes += retained(tail, newer != null && tailOffset() == newer.tailOffset() ? newer.tail : null, 0);
+        }
+        return bytes;
+    }
+
+    private static long retained(Object[] node, Object[] newer, int level) {
+        if (node == newer || node == null) {
+            return 0;
+        }
+        long bytes = arrayBytes(node);
+        for (int i = 0; i < node.length; i++) {
+            var other = newer != null && i < newer.length ? newer[i] : null;
+            bytes += level == 0
+                    ? PersistentMap.retainedValueBytes(node[i], other)
+                    : retained((Object[]) node[i], (Object[]) other, level - BITS);
+        }
+        return bytes;
+    }
+
+    private static long arrayBytes(Object[] array) {
+        return PersistentMap.OBJECT_BYTES + (long) PersistentMap.REFERENCE_BYTES * array.length;
+    }
+}
@@ -0,0 +1,68 @@
+package com.sosuisha;
+
+/**
+ * Snapshot of the durations of one {@link SceneMetrics.Phase} for an FXML view.
+ */
+public final class PhaseStats {
+    private final SceneMetrics.Phase phase;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long lastNanos;
+
+    PhaseStats(SceneMetrics.Phase phase, long count, long totalNanos, long maxNanos, long lastNanos) {
+        this.phase = phase;
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.lastNanos = lastNanos;
+    }
+
+    /**
+     * @return the phase
+     */
+    public SceneMetrics.Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * @return the number of times the phase was measured
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the sum of all durations in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return the longest duration in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @return the most recent duration in nanoseconds
+     */
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    /**
+     * @return the average duration in milliseconds, or 0 if never measured
+     */
+    public double getAverageMillis() {
+        return count == 0 ? 0 : totalNanos / 1e6 / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: n=%d avg=%.3fms max=%.3fms last=%.3fms",
+                phase, count, getAverageMillis(), maxNanos / 1e6, lastNanos / 1e6);
+    }
+}
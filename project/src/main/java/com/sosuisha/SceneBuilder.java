@@ -1,14 +1,27 @@
 package com.sosuisha;
 
+import javafx.application.Platform;
+import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.fxml.FXMLLoader;
+import javafx.util.Callback;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.ResourceBundle;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 
 /**
  * Builder for constructing a JavaFX Scene from specified FXML and CSS files.
@@ -22,14 +35,93 @@ import java.util.ResourceBundle;
  *         .resources("com.example.i18n.Messages", Locale.getDefault())
  *         .build();
  * </pre>
+ * <p>
+ * To keep the FX Application Thread responsive while a large view loads,
+ * use {@link #buildAsync()}. The FXML is loaded in the background, and the
+ * future completes on the FX thread once the Scene is created there:
+ * 
+ * <pre>
+ * SceneBuilder.fromFxml("/com/example/main.fxml")
+ *         .buildAsync()
+ *         .thenAccept(stage::setScene);
+ * </pre>
+ * <p>
+ * If the FXML was compiled into a view class at build time (see
+ * FxmlViewGenerator in src/tools), that class builds the Scene without FXMLLoader.
+ * Otherwise parsed FXML is kept in {@link FxmlTemplateCache#getDefault()}, so
+ * building the same view again only constructs nodes and the controller.
+ * <p>
+ * Stylesheets are registered in {@link StylesheetRegistry#getDefault()}, which
+ * adds each one to a Scene only once and adds its global stylesheets to every
+ * Scene.
+ * <p>
+ * The duration of each phase of a build is recorded in
+ * {@link SceneMetrics#getDefault()} and emitted as JFR events.
+ * <p>
+ * With {@link #tasks(int)}, each built view gets its own {@link ViewTasks},
+ * which is passed to the controller constructor and cancels the background
+ * work of the controller when the view is closed.
+ * <p>
+ * Subtrees marked with {@link LazyInclude} are loaded, with their controllers,
+ * when they are first shown, or in the background with {@link #prefetchLazy(Duration)}.
+ * <p>
+ * {@link #buildHandle()} returns a {@link SceneHandle}, which releases the
+ * view when its window is closed for good. With {@link #trackListeners()}, the
+ * controller gets a {@link ViewListeners} for the listeners it adds to the Model.
  */
 public class SceneBuilder {
+    /**
+     * The root node and the controller of a loaded view.
+     */
+    private record Loaded(Parent root, Object controller) {
+    }
+
+    /**
+     * The per-view objects passed to the controllers of a view and its includes.
+     *
+     * @param tasks     the tasks, or null
+     * @param listeners the listeners, or null
+     */
+    private record Services(ViewTasks tasks, ViewListeners listeners) {
+        void close() {
+            if (tasks != null) {
+                tasks.close();
+            }
+            if (listeners != null) {
+                listeners.dispose();
+            }
+        }
+    }
+
+    /**
+     * A built Scene with its controller, tasks and listeners.
+     *
+     * @param scene      the Scene
+     * @param controller the controller, or null if the FXML has no fx:controller
+     * @param tasks      the tasks passed to the controller, or null
+     * @param listeners  the listeners passed to the controller, or null
+     */
+    record Built(Scene scene, Object controller, ViewTasks tasks, ViewListeners listeners) {
+    }
+
+    /** Runs asynchronous builds on virtual threads unless another executor is specified. */
+    private static final Executor DEFAULT_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
     private final URL fxmlURL;
     private List<String> cssURLs = new ArrayList<>();
     private int width = -1;
     private int height = -1;
     private Object[] ctrlConstructorParams;
+    private int taskConcurrency;
+    private boolean trackListeners;
+    private Duration prefetchDelay;
+    private boolean parallelIncludes;
     private ResourceBundle resources;
+    private String resourcesBaseName;
+    private Locale resourcesLocale;
+    private Executor executor = DEFAULT_EXECUTOR;
+    private FxmlTemplateCache templateCache = FxmlTemplateCache.getDefault();
+    private ImageCache imageCache = ImageCache.getDefault();
 
     /**
      * Creates a new SceneBuilder instance from the specified FXML resource name.
@@ -63,6 +155,7 @@ public class SceneBuilder {
     /**
      * Specifies the CSS resource name.
      * If multiple CSS files are needed, call this method multiple times.
+     * A CSS file that is already specified is ignored.
      * 
      * @param resourceName the path to the CSS resource
      * @return this builder
@@ -73,24 +166,31 @@ public class SceneBuilder {
         if (cssURL == null) {
             throw new IllegalArgumentException("CSS resource not found: " + resourceName);
         }
-        cssURLs.add(cssURL.toExternalForm());
-        return this;
+        return css(cssURL);
     }
 
     /**
      * Specifies the CSS URL.
      * If multiple CSS files are needed, call this method multiple times.
+     * A CSS file that is already specified is ignored.
      * 
      * @param url the URL of the CSS file
      * @return this builder
      */
     public SceneBuilder css(URL url) {
-        cssURLs.add(Objects.requireNonNull(url, "Url must not be null.").toExternalForm());
+        var cssURL = StylesheetRegistry.getDefault().register(url);
+        if (!cssURLs.contains(cssURL)) {
+            cssURLs.add(cssURL);
+        }
         return this;
     }
 
     /**
      * Specifies the constructor arguments for the controller.
+     * <p>
+     * The controller constructor is chosen by assignability: a parameter may be
+     * declared as a superclass or interface of the argument type, and a null
+     * argument matches any reference type.
      * 
      * @param constructorArgs the constructor arguments for the controller
      * @return this builder
@@ -100,6 +200,88 @@ public class SceneBuilder {
         return this;
     }
 
+    /**
+     * Creates a {@link ViewTasks} for each built view and passes it to the
+     * controller constructor as the last argument, after the arguments of
+     * {@link #newController(Object...)}. The tasks are cancelled when the
+     * window of the Scene is hidden or the Scene is removed from its window.
+     * 
+     * @param maxConcurrency the maximum number of tasks of a view that run at once
+     * @return this builder
+     * @throws IllegalArgumentException if maxConcurrency is not positive
+     */
+    public SceneBuilder tasks(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+        this.taskConcurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * Creates a {@link ViewListeners} for each built view and passes it to the
+     * controller constructor as the last argument, after the arguments of
+     * {@link #newController(Object...)} and the {@link ViewTasks}, if any.
+     * The listeners the controller adds through it are weak, so they do not
+     * keep the view in memory, and are removed by {@link SceneHandle#dispose()}.
+     * 
+     * @return this builder
+     */
+    public SceneBuilder trackListeners() {
+        this.trackListeners = true;
+        return this;
+    }
+
+    /**
+     * Loads the {@link LazyInclude} subtrees that are still not shown after
+     * the delay, one at a time off the FX Application Thread, so that showing
+     * them later is instant. By default, they are only loaded when shown.
+     * 
+     * @param delay the delay after loading the view, or null to disable prefetching
+     * @return this builder
+     */
+    public SceneBuilder prefetchLazy(Duration delay) {
+        this.prefetchDelay = delay;
+        return this;
+    }
+
+    /**
+     * Creates a pool of views built by this builder, for views that are
+     * opened and closed often, such as dialogs.
+     * Later changes to this builder apply to the views built afterwards.
+     * 
+     * @param <C>            the controller type
+     * @param controllerType the class of the fx:controller
+     * @param size           the maximum number of idle views to keep
+     * @return the new pool
+     * @throws IllegalArgumentException if size is negative
+     */
+    public <C> ViewPool<C> pool(Class<C> controllerType, int size) {
+        return new ViewPool<>(this, controllerType, size);
+    }
+
+    /**
+     * Loads the fx:include fragments of the FXML concurrently on the executor
+     * (virtual threads by default, which run on all cores), while FXMLLoader
+     * parses the including document. Each fragment is put in place when the
+     * parser reaches it, so the controllers of all fragments have been
+     * initialized before the initialize method of the including controller is
+     * called, as with sequential loading. The fragments are initialized on
+     * the threads of the executor, concurrently with each other, so their
+     * controllers must not depend on each other or on the FX Application
+     * Thread in initialize.
+     * <p>
+     * This applies to views loaded by FXMLLoader, which are the ones that use
+     * fx:include, and is inherited by the fragments themselves.
+     * 
+     * @param parallel whether to load the fragments in parallel
+     * @return this builder
+     */
+    public SceneBuilder parallelIncludes(boolean parallel) {
+        this.parallelIncludes = parallel;
+        return this;
+    }
+
     /**
      * Specifies the size of the Scene.
      * If not set, the Scene will use the size of the root container.
@@ -122,18 +304,77 @@ public class SceneBuilder {
      */
     public SceneBuilder resources(ResourceBundle resources) {
         this.resources = resources;
+        this.resourcesBaseName = null;
         return this;
     }
 
     /**
      * Specifies the ResourceBundle for internationalization.
+     * The bundle is loaded when the Scene is built, so {@link #buildAsync()}
+     * loads it off the FX Application Thread.
      * 
      * @param baseName the base name of the resource bundle
      * @param locale   the locale for the resource bundle
      * @return this builder
      */
     public SceneBuilder resources(String baseName, Locale locale) {
-        resources = ResourceBundle.getBundle(baseName, locale);
+        this.resourcesBaseName = Objects.requireNonNull(baseName, "baseName must not be null.");
+        this.resourcesLocale = Objects.requireNonNull(locale, "locale must not be null.");
+        this.resources = null;
+        return this;
+    }
+
+    /**
+     * Specifies the ResourceBundle for internationalization, following the
+     * current locale of {@link Localization#getDefault()}.
+     * When the locale changes, the %key values of the view are updated
+     * without rebuilding the Scene.
+     * 
+     * @param baseName the base name of the resource bundle
+     * @return this builder
+     */
+    public SceneBuilder resources(String baseName) {
+        this.resourcesBaseName = Objects.requireNonNull(baseName, "baseName must not be null.");
+        this.resourcesLocale = null;
+        this.resources = null;
+        return this;
+    }
+
+    /**
+     * Specifies the executor for {@link #buildAsync()}.
+     * By default, each asynchronous build runs on its own virtual thread.
+     * 
+     * @param executor the executor to use
+     * @return this builder
+     */
+    public SceneBuilder executor(Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "executor must not be null.");
+        return this;
+    }
+
+    /**
+     * Specifies the cache of parsed FXML templates.
+     * Pass null to always parse the FXML with FXMLLoader.
+     * 
+     * @param templateCache the cache to use, or null to disable caching
+     * @return this builder
+     */
+    public SceneBuilder templateCache(FxmlTemplateCache templateCache) {
+        this.templateCache = templateCache;
+        return this;
+    }
+
+    /**
+     * Specifies the cache through which the {@code Image} elements of the
+     * FXML are resolved. Cached images are shared with other views and
+     * decoded in the background at their requested size.
+     * Pass null to decode the images of each view as FXMLLoader does.
+     * 
+     * @param imageCache the cache to use, or null to disable caching
+     * @return this builder
+     */
+    public SceneBuilder imageCache(ImageCache imageCache) {
+        this.imageCache = imageCache;
         return this;
     }
 
@@ -144,46 +385,403 @@ public class SceneBuilder {
      * @throws IOException if loading the FXML fails
      */
     public Scene build() throws IOException {
-        var loader = resources != null
-                ? new FXMLLoader(fxmlURL, resources)
-                : new FXMLLoader(fxmlURL);
+        var services = newServices(false);
+        try {
+            return build(load(null, services), services);
+        } catch (IOException | RuntimeException | Error e) {
+            services.close();
+            throw e;
+        }
+    }
 
-        if (ctrlConstructorParams != null && ctrlConstructorParams.length > 0) {
-            loader.setControllerFactory(controllerClass -> {
-                // This lambda is a factory that instantiates the controller class when the root
-                // container node in main.fxml includes an fx:controller attribute.
-                // controllerClass refers to the class specified by the fx:controller attribute.
-                var paramTypes = new Class<?>[ctrlConstructorParams.length];
-                for (int i = 0; i < ctrlConstructorParams.length; i++) {
-                    paramTypes[i] = ctrlConstructorParams[i] != null
-                            ? ctrlConstructorParams[i].getClass()
-                            : Object.class; // If null, use Object.class to avoid NullPointerException.
+    /**
+     * Builds the Scene and returns a handle that can release the view, with
+     * its listeners, tasks and controller, when its window is closed for good.
+     * The handle always has a {@link ViewListeners}; it is passed to the
+     * controller only with {@link #trackListeners()}.
+     * 
+     * @return the handle of the constructed Scene
+     * @throws IOException if loading the FXML fails
+     */
+    public SceneHandle buildHandle() throws IOException {
+        var services = newServices(true);
+        try {
+            return newHandle(load(null, services), services);
+        } catch (IOException | RuntimeException | Error e) {
+            services.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Builds a Scene and returns it with its controller, for {@link ViewPool}.
+     * Unlike {@link #build()}, the tasks of the view are not closed when its
+     * window is hidden, since the view is used again.
+     *
+     * @return the Scene, the controller, the tasks and the listeners of the view
+     * @throws IOException if loading the FXML fails
+     */
+    Built buildReusable() throws IOException {
+        var services = newServices(false);
+        try {
+            var loaded = load(null, services);
+            return new Built(build(loaded, null), loaded.controller(), services.tasks(), services.listeners());
+        } catch (IOException | RuntimeException | Error e) {
+            services.close();
+            throw e;
+        }
+    }
+
+    private SceneHandle newHandle(Loaded loaded, Services services) {
+        return new SceneHandle(fxmlURL, build(loaded, services), loaded.controller(), services.tasks(),
+                services.listeners());
+    }
+
+    /**
+     * Creates the Scene of a loaded view.
+     *
+     * @param services the services whose tasks are closed with the Scene, or null if the view is reused
+     */
+    private Scene build(Loaded loaded, Services services) {
+        var root = loaded.root();
+        var scene = (width < 0 || height < 0)
+                ? new Scene(root)
+                : new Scene(root, width, height);
+
+        var stylesheets = StylesheetRegistry.getDefault().stylesheetsFor(cssURLs);
+        if (!stylesheets.isEmpty()) {
+            scene.getStylesheets().addAll(stylesheets);
+        }
+        SceneMetrics.getDefault().measureFirstPulse(fxmlURL, scene);
+        FrameMonitor.track(scene, loaded.controller());
+        if (services != null && services.tasks() != null) {
+            services.tasks().closeWith(scene);
+        }
+        return scene;
+    }
+
+    /**
+     * Creates the tasks and listeners of a new view, as configured.
+     *
+     * @param handle whether the view gets a handle, which always has listeners
+     */
+    private Services newServices(boolean handle) {
+        return new Services(
+                taskConcurrency > 0 ? new ViewTasks(taskConcurrency) : null,
+                trackListeners || handle ? new ViewListeners() : null);
+    }
+
+    /**
+     * Builds the Scene on the executor (virtual threads by default).
+     * <p>
+     * Loading the ResourceBundle, the FXML and the controller happens off the
+     * FX Application Thread. The Scene is then created on the FX thread, as
+     * JavaFX requires, and the returned future is completed there, so the
+     * Scene can be attached to a Stage in a dependent stage such as
+     * {@code thenAccept(stage::setScene)}.
+     * <p>
+     * Cancelling the returned future interrupts the build and skips its
+     * remaining phases. Load errors complete the future exceptionally.
+     * 
+     * @return a future that completes on the FX thread with the constructed Scene
+     */
+    public CompletableFuture<Scene> buildAsync() {
+        return buildAsync(false, this::build, (scene, services) -> services.close());
+    }
+
+    /**
+     * Builds the Scene on the executor like {@link #buildAsync()}, and returns
+     * a handle that can release the view like {@link #buildHandle()}.
+     * 
+     * @return a future that completes with the handle of the constructed Scene
+     */
+    public CompletableFuture<SceneHandle> buildHandleAsync() {
+        return buildAsync(true, this::newHandle, (sceneHandle, services) -> sceneHandle.dispose());
+    }
+
+    /**
+     * Loads a view on the executor, and creates the result on the FX
+     * Application Thread.
+     *
+     * @param handle  whether the result is a handle
+     * @param finish  creates the result from the loaded view on the FX thread
+     * @param discard releases the result if the future was cancelled while
+     *                it was being created, since nobody will receive it
+     */
+    private <T> CompletableFuture<T> buildAsync(boolean handle, BiFunction<Loaded, Services, T> finish,
+            BiConsumer<T, Services> discard) {
+        var worker = new AtomicReference<Thread>();
+        var future = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                var cancelled = super.cancel(mayInterruptIfRunning);
+                var thread = worker.get();
+                if (cancelled && thread != null) {
+                    thread.interrupt();
                 }
-                // Retrieve a constructor that accepts paramTypes as parameters,
-                // and then use it to create an instance.
-                try {
-                    return controllerClass.getDeclaredConstructor(paramTypes)
-                            .newInstance(ctrlConstructorParams);
-                } catch (Exception e) {
-                    throw new RuntimeException("Failed to create controller instance for "
-                            + controllerClass.getName(), e);
+                return cancelled;
+            }
+        };
+        executor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            worker.set(Thread.currentThread());
+            var services = newServices(handle);
+            try {
+                var loaded = load(future, services);
+                checkCancelled(future);
+                Platform.runLater(() -> finish(future, loaded, services, finish, discard));
+            } catch (Throwable e) {
+                services.close();
+                future.completeExceptionally(e);
+            } finally {
+                worker.set(null);
+                if (future.isCancelled()) {
+                    // Do not leak the interrupt to the next task of a pooled thread.
+                    Thread.interrupted();
                 }
-            });
-        }
+            }
+        });
+        return future;
+    }
 
-        Scene scene;
+    /**
+     * Creates the result of an asynchronous build on the FX Application Thread
+     * and completes the future with it.
+     */
+    private static <T> void finish(CompletableFuture<T> future, Loaded loaded, Services services,
+            BiFunction<Loaded, Services, T> finish, BiConsumer<T, Services> discard) {
+        if (future.isDone()) {
+            services.close();
+            return;
+        }
+        T result;
         try {
-            scene = (width < 0 || height < 0)
-                    ? new Scene(loader.load())
-                    : new Scene(loader.load(), width, height);
+            result = finish.apply(loaded, services);
+        } catch (Throwable e) {
+            services.close();
+            future.completeExceptionally(e);
+            return;
+        }
+        if (!future.complete(result)) {
+            discard.accept(result, services);
+        }
+    }
+
+    /**
+     * Warms up what {@link #build()} will need, without creating any nodes.
+     * <p>
+     * This loads the ResourceBundle, with the bundles of the supported locales
+     * of {@link Localization} if the view follows the current locale, and the
+     * compiled view class, or parses the
+     * FXML into the template cache and initializes the classes it references.
+     * It also loads the CSS files, including the global ones, into the
+     * {@link StylesheetRegistry}, which loads the CSS classes. It may be
+     * called on any thread, typically in parallel with other startup work.
+     * 
+     * @return this builder
+     * @throws IOException if the FXML or a CSS file cannot be read
+     */
+    public SceneBuilder preload() throws IOException {
+        var bundle = resolveResources();
+        if (resourcesBaseName != null && resourcesLocale == null) {
+            Localization.getDefault().preload(resourcesBaseName);
+        }
+        if (CompiledFxmlViews.find(fxmlURL) == null && templateCache != null) {
+            var template = templateCache.get(fxmlURL, bundle);
+            if (template != null) {
+                for (var type : template.referencedClasses()) {
+                    try {
+                        Class.forName(type.getName(), true, type.getClassLoader());
+                    } catch (ClassNotFoundException | LinkageError e) {
+                        // Not fatal for warm-up; build() reports the error if there is one.
+                    }
+                }
+            }
+        }
+        var registry = StylesheetRegistry.getDefault();
+        for (var css : registry.stylesheetsFor(cssURLs)) {
+            registry.preload(css);
+        }
+        return this;
+    }
+
+    /**
+     * Returns an executor that runs tasks on the FX Application Thread.
+     * Useful for attaching the result of {@link #buildAsync()}.
+     * 
+     * @return the FX thread executor
+     */
+    public static Executor fxThread() {
+        return Platform::runLater;
+    }
+
+    private static void checkCancelled(CompletableFuture<?> future) {
+        if (future == null) {
+            return;
+        }
+        if (future.isCancelled() || Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+
+    private ResourceBundle resolveResources() {
+        if (resourcesBaseName != null) {
+            var timer = SceneMetrics.start(SceneMetrics.Phase.RESOURCES);
+            try {
+                var localization = Localization.getDefault();
+                return resourcesLocale != null
+                        ? localization.getBundle(resourcesBaseName, resourcesLocale)
+                        : localization.getLiveBundle(resourcesBaseName);
+            } finally {
+                timer.stop();
+            }
+        }
+        return resources;
+    }
+
+    /**
+     * Loads the ResourceBundle and the root node, from the view class generated
+     * at build time or the cached template when possible. The load is recorded
+     * in {@link SceneMetrics}.
+     *
+     * @param future   the future of an asynchronous build to check for cancellation, or null
+     * @param services the tasks and listeners passed to the controller
+     */
+    private Loaded load(CompletableFuture<?> future, Services services) throws IOException {
+        try (var recording = SceneMetrics.getDefault().begin(fxmlURL)) {
+            var resources = resolveResources();
+            checkCancelled(future);
+            var context = new LazyInclude.Context(fxmlURL, url -> include(url).load(null, services).root());
+            var loaded = LazyInclude.collect(context,
+                    () -> ImageCache.using(imageCache, () -> loadRoot(resources, services, recording)));
+            recording.finish(loaded.root());
+            if (prefetchDelay != null) {
+                LazyInclude.prefetch(context.includes(), prefetchDelay);
+            }
+            return loaded;
         } catch (javafx.fxml.LoadException e) {
             // Set more informative message
             throw new javafx.fxml.LoadException("Failed to load FXML from " + fxmlURL, e);
         }
+    }
+
+    /**
+     * Returns a builder for the FXML of a {@link LazyInclude} or a parallel
+     * fx:include, with the resources, controller arguments, template and
+     * image caches and executor of this builder.
+     */
+    private SceneBuilder include(URL url) {
+        var builder = new SceneBuilder(url);
+        builder.ctrlConstructorParams = ctrlConstructorParams;
+        builder.trackListeners = trackListeners;
+        builder.resources = resources;
+        builder.resourcesBaseName = resourcesBaseName;
+        builder.resourcesLocale = resourcesLocale;
+        builder.templateCache = templateCache;
+        builder.imageCache = imageCache;
+        builder.prefetchDelay = prefetchDelay;
+        builder.parallelIncludes = parallelIncludes;
+        builder.executor = executor;
+        return builder;
+    }
+
+    private Loaded loadRoot(ResourceBundle resources, Services services, SceneMetrics.Recording recording)
+            throws IOException {
+        var compiled = CompiledFxmlViews.find(fxmlURL);
+        if (compiled != null) {
+            recording.loader("compiled");
+            try {
+                var result = compiled.build(fxmlURL, resources, controllerFactory(services));
+                return new Loaded((Parent) result.root(), result.controller());
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new javafx.fxml.LoadException(e);
+            }
+        }
 
-        if (!cssURLs.isEmpty()) {
-            scene.getStylesheets().addAll(cssURLs);
+        var template = templateCache != null ? templateCache.get(fxmlURL, resources) : null;
+        if (template != null) {
+            recording.loader("template");
+            var instance = template.instantiate(controllerFactory(services));
+            return new Loaded((Parent) instance.root(), instance.controller());
         }
-        return scene;
+
+        recording.loader("FXMLLoader");
+        var loader = resources != null
+                ? new FXMLLoader(fxmlURL, resources)
+                : new FXMLLoader(fxmlURL);
+        loader.setControllerFactory(controllerFactory(services));
+        loader.setBuilderFactory(ImageCache.builderFactory(loader.getBuilderFactory()));
+        var plan = parallelIncludes ? FxmlIncludes.plan(fxmlURL) : null;
+        if (plan == null) {
+            Parent root = loader.load();
+            return new Loaded(root, loader.getController());
+        }
+        // Load the fx:include fragments on the executor while FXMLLoader parses this document.
+        var run = FxmlIncludes.start(plan, fxmlURL, loader, (url, include) -> {
+            var builder = include(url);
+            if (include.resources() != null) {
+                builder.resourcesBaseName = include.resources();
+                builder.resources = null;
+            }
+            var fragment = builder.load(null, services);
+            return new FxmlIncludes.Fragment(fragment.root(), fragment.controller());
+        }, executor);
+        try {
+            Parent root = loader.load(FxmlIncludes.open(plan));
+            return new Loaded(root, loader.getController());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            run.cancel();
+        }
+    }
+
+    /**
+     * Returns the factory for the fx:controller class.
+     * Without constructor arguments, the no-arg constructor is used.
+     * The tasks, if any, and the listeners, if tracked, are appended to the
+     * constructor arguments.
+     */
+    private Callback<Class<?>, Object> controllerFactory(Services services) {
+        var args = constructorArgs(services);
+        return controllerClass -> {
+            // This lambda is a factory that instantiates the controller class when the root
+            // container node in main.fxml includes an fx:controller attribute.
+            // controllerClass refers to the class specified by the fx:controller attribute.
+            // The best-matching constructor is resolved once per controller class and
+            // argument types, and then reused as a cached MethodHandle.
+            var timer = SceneMetrics.start(SceneMetrics.Phase.CONTROLLER);
+            try {
+                return ControllerFactory.newInstance(controllerClass, args);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException("Failed to create controller instance for "
+                        + controllerClass.getName(), e);
+            } finally {
+                timer.stop();
+            }
+        };
+    }
+
+    private Object[] constructorArgs(Services services) {
+        var args = ctrlConstructorParams != null ? ctrlConstructorParams : new Object[0];
+        if (services.tasks() != null) {
+            args = append(args, services.tasks());
+        }
+        if (trackListeners && services.listeners() != null) {
+            args = append(args, services.listeners());
+        }
+        return args;
+    }
+
+    private static Object[] append(Object[] params, Object arg) {
+        var args = Arrays.copyOf(params, params.length + 1);
+        args[params.length] = arg;
+        return args;
     }
 }
@@ -0,0 +1,313 @@
+package com.sosuisha;
+
+import javafx.application.Platform;
+import javafx.event.EventHandler;
+import javafx.scene.Group;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import javafx.stage.WindowEvent;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A Scene built by {@link SceneBuilder#buildHandle()}, which can release its
+ * view when its window is closed for good.
+ * <p>
+ * {@link #dispose()} removes the listeners and bindings tracked by the
+ * {@link ViewListeners} of the view, cancels its {@link ViewTasks}, lets the
+ * controller release its own resources if it implements {@link Disposable},
+ * clears the stylesheets of the Scene and detaches the root node. After that,
+ * nothing that outlives the view, like the {@link Model}, refers to its
+ * nodes or controller any more.
+ * <p>
+ * Handles that are not disposed are tracked with weak references, so that
+ * {@link #findLeaks()} can report the views whose window has been closed but
+ * which are still in memory.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * var handle = SceneBuilder.fromFxml("edit.fxml")
+ *         .newController(model)
+ *         .trackListeners()
+ *         .buildHandle()
+ *         .disposeOnHide();
+ * dialogStage.setScene(handle.scene());
+ * dialogStage.show();
+ * ...
+ * System.gc();
+ * SceneHandle.findLeaks().forEach(System.out::println);
+ * </pre>
+ */
+public final class SceneHandle implements AutoCloseable {
+    private static final System.Logger LOGGER = System.getLogger(SceneHandle.class.getName());
+
+    /** The handles that are not disposed yet. */
+    private static final Set<Entry> UNDISPOSED = ConcurrentHashMap.newKeySet();
+
+    /**
+     * A controller that releases its own resources when its view is disposed.
+     */
+    public interface Disposable {
+        /**
+         * Releases the resources of the controller that {@link ViewListeners}
+         * does not track. Called on the FX Application Thread, after the
+         * tracked listeners have been removed.
+         */
+        void dispose();
+    }
+
+    /**
+     * A view that was attached to a window, is no longer in a showing
+     * window, and has not been disposed.
+     *
+     * @param fxmlURL    the URL of the FXML
+     * @param controller the class name of the controller, or null
+     * @param age        the time since the view was built
+     */
+    public record Leak(URL fxmlURL, String controller, Duration age) {
+    }
+
+    /**
+     * What the leak detector knows about a handle. It does not refer to the
+     * Scene strongly, so that a view without a handle can be collected.
+     */
+    private static final class Entry {
+        private final URL fxmlURL;
+        private final String controller;
+        private final Instant created = Instant.now();
+        private final WeakReference<Scene> scene;
+        private volatile boolean attached;
+
+        private Entry(URL fxmlURL, Scene scene, Object controller) {
+            this.fxmlURL = fxmlURL;
+            this.controller = controller != null ? controller.getClass().getName() : null;
+            this.scene = new WeakReference<>(scene);
+        }
+    }
+
+    private final Entry entry;
+    private Scene scene;
+    private Object controller;
+    private ViewTasks tasks;
+    private ViewListeners listeners;
+    private boolean disposed;
+
+    SceneHandle(URL fxmlURL, Scene scene, Object controller, ViewTasks tasks, ViewListeners listeners) {
+        this.scene = scene;
+        this.controller = controller;
+        this.tasks = tasks;
+        this.listeners = listeners;
+        this.entry = new Entry(fxmlURL, scene, controller);
+        var weakEntry = new WeakReference<>(entry);
+        entry.attached = scene.getWindow() != null;
+        scene.windowProperty().addListener((observable, oldWindow, newWindow) -> {
+            var e = weakEntry.get();
+            if (e != null && newWindow != null) {
+                e.attached = true;
+            }
+        });
+        UNDISPOSED.add(entry);
+    }
+
+    /**
+     * Returns the Scene of the view.
+     *
+     * @return the Scene
+     * @throws IllegalStateException if the view has been disposed
+     */
+    public Scene scene() {
+        checkNotDisposed();
+        return scene;
+    }
+
+    /**
+     * Returns the root node of the view.
+     *
+     * @return the root node
+     * @throws IllegalStateException if the view has been disposed
+     */
+    public Parent root() {
+        checkNotDisposed();
+        return scene.getRoot();
+    }
+
+    /**
+     * Returns the controller of the view.
+     *
+     * @return the controller, or null if the FXML has no fx:controller
+     * @throws IllegalStateException if the view has been disposed
+     */
+    public Object controller() {
+        checkNotDisposed();
+        return controller;
+    }
+
+    /**
+     * Returns the listeners of the view. Listeners added to it from outside
+     * the controller are removed by {@link #dispose()} as well.
+     *
+     * @return the listeners
+     * @throws IllegalStateException if the view has been disposed
+     */
+    public ViewListeners listeners() {
+        checkNotDisposed();
+        return listeners;
+    }
+
+    /**
+     * Returns whether {@link #dispose()} has been called.
+     *
+     * @return true if disposed
+     */
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    /**
+     * Disposes the view when its window is hidden. If the window is shown
+     * again later, it must be given a new Scene.
+     *
+     * @return this handle
+     */
+    public SceneHandle disposeOnHide() {
+        checkNotDisposed();
+        var hidden = new EventHandler<WindowEvent>() {
+            @Override
+            public void handle(WindowEvent event) {
+                ((Window) event.getSource()).removeEventHandler(WindowEvent.WINDOW_HIDDEN, this);
+                dispose();
+            }
+        };
+        if (scene.getWindow() != null) {
+            scene.getWindow().addEventHandler(WindowEvent.WINDOW_HIDDEN, hidden);
+        }
+        scene.windowProperty().addListener((observable, oldWindow, newWindow) -> {
+            if (oldWindow != null) {
+                oldWindow.removeEventHandler(WindowEvent.WINDOW_HIDDEN, hidden);
+            }
+            if (newWindow != null) {
+                newWindow.addEventHandler(WindowEvent.WINDOW_HIDDEN, hidden);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Releases the view: removes the tracked listeners and bindings, closes
+     * the tasks, calls {@link Disposable#dispose()} of the controller, clears
+     * the stylesheets of the Scene, replaces its root by an empty node, and
+     * removes the Scene from its window if the window is not showing.
+     * Calling it again has no effect.
+     * <p>
+     * Must be called on the FX Application Thread if the window of the
+     * Scene is showing.
+     *
+     * @throws IllegalStateException if called on another thread while the window is showing
+     */
+    public void dispose() {
+        if (disposed) {
+            return;
+        }
+        var window = scene.getWindow();
+        if (window != null && window.isShowing() && !Platform.isFxApplicationThread()) {
+            throw new IllegalStateException("A showing view must be disposed on the FX Application Thread.");
+        }
+        disposed = true;
+        UNDISPOSED.remove(entry);
+        if (listeners != null) {
+            listeners.dispose();
+        }
+        if (tasks != null) {
+            tasks.close();
+        }
+        if (controller instanceof Disposable disposable) {
+            try {
+                disposable.dispose();
+            } catch (RuntimeException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Failed to dispose " + entry.controller, e);
+            }
+        }
+        scene.getStylesheets().clear();
+        scene.getRoot().getStylesheets().clear();
+        scene.setRoot(new Group());
+        if (window instanceof Stage stage && !stage.isShowing() && stage.getScene() == scene) {
+            stage.setScene(null);
+        }
+        scene = null;
+        controller = null;
+        tasks = null;
+        listeners = null;
+    }
+
+    /**
+     * Same as {@link #dispose()}.
+     */
+    @Override
+    public void close() {
+        dispose();
+    }
+
+    private void checkNotDisposed() {
+        if (disposed) {
+            throw new IllegalStateException("The view has been disposed.");
+        }
+    }
+
+    /**
+     * Returns the views built with a handle that were attached to a window,
+     * are no longer in a showing window, have not been disposed, and are
+     * still in memory. Run a garbage collection first, so that the views
+     * that are only weakly reachable are not reported.
+     * <p>
+     * Must be called on the FX Application Thread.
+     *
+     * @return the leaked views, oldest first
+     */
+    public static List<Leak> findLeaks() {
+        var now = Instant.now();
+        var leaks = new ArrayList<Leak>();
+        for (var entry : UNDISPOSED) {
+            var scene = entry.scene.get();
+            if (scene == null) {
+                // Collected without dispose(), which is fine.
+                UNDISPOSED.remove(entry);
+                continue;
+            }
+            var window = scene.getWindow();
+            if (entry.attached && (window == null || !window.isShowing())) {
+                leaks.add(new Leak(entry.fxmlURL, entry.controller, Duration.between(entry.created, now)));
+            }
+        }
+        leaks.sort((a, b) -> b.age().compareTo(a.age()));
+        return leaks;
+    }
+
+    /**
+     * Logs the result of {@link #findLeaks()} as a warning, if there is any leak.
+     * Must be called on the FX Application Thread.
+     *
+     * @return the number of leaked views
+     */
+    public static int logLeaks() {
+        var leaks = findLeaks();
+        if (!leaks.isEmpty()) {
+            var message = new StringBuilder(leaks.size() + " view(s) not disposed after their window was closed:");
+            for (var leak : leaks) {
+                message.append("\n  ").append(leak.fxmlURL())
+                        .append(leak.controller() != null ? " (" + leak.controller() + ")" : "")
+                        .append(", built ").append(leak.age().toSeconds()).append("s ago");
+            }
+            LOGGER.log(System.Logger.Level.WARNING, message.toString());
+        }
+        return leaks.size();
+    }
+}
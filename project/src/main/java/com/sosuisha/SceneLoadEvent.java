@@ -0,0 +1,35 @@
+package com.sosuisha;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for loading the root node of a Scene from FXML,
+ * from resolving the ResourceBundle to the initialized controller.
+ */
+@Name("com.sosuisha.SceneLoad")
+@Label("Scene Load")
+@Category({ "JavaFX", "SceneBuilder" })
+@Description("Loading of an FXML view by SceneBuilder")
+final class SceneLoadEvent extends jdk.jfr.Event {
+    @Label("FXML URL")
+    String fxmlUrl;
+
+    @Label("Loader")
+    @Description("compiled, template or FXMLLoader")
+    String loader;
+
+    @Label("Node Count")
+    int nodeCount;
+
+    @Label("Allocated")
+    @Description("Bytes allocated by the loading thread, or -1 if unknown")
+    @DataAmount
+    long allocatedBytes;
+
+    @Label("Succeeded")
+    boolean succeeded;
+}
@@ -0,0 +1,118 @@
+package com.sosuisha;
+
+import java.util.List;
+
+/**
+ * Snapshot of the load metrics of one FXML view, see {@link SceneMetrics}.
+ * <p>
+ * The getters make this class usable as an open type in {@link SceneMetricsMXBean}.
+ */
+public final class SceneLoadStats {
+    private final String fxmlUrl;
+    private final long loadCount;
+    private final long failureCount;
+    private final String lastLoader;
+    private final int lastNodeCount;
+    private final long lastAllocatedBytes;
+    private final long averageAllocatedBytes;
+    private final List<PhaseStats> phases;
+
+    SceneLoadStats(String fxmlUrl, long loadCount, long failureCount, String lastLoader, int lastNodeCount,
+            long lastAllocatedBytes, long averageAllocatedBytes, List<PhaseStats> phases) {
+        this.fxmlUrl = fxmlUrl;
+        this.loadCount = loadCount;
+        this.failureCount = failureCount;
+        this.lastLoader = lastLoader;
+        this.lastNodeCount = lastNodeCount;
+        this.lastAllocatedBytes = lastAllocatedBytes;
+        this.averageAllocatedBytes = averageAllocatedBytes;
+        this.phases = List.copyOf(phases);
+    }
+
+    /**
+     * @return the external form of the FXML URL
+     */
+    public String getFxmlUrl() {
+        return fxmlUrl;
+    }
+
+    /**
+     * @return the number of successful loads
+     */
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * @return the number of failed loads
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return how the view was last loaded: "compiled", "template" or "FXMLLoader"
+     */
+    public String getLastLoader() {
+        return lastLoader;
+    }
+
+    /**
+     * @return the number of nodes created by the last load, before skins are applied
+     */
+    public int getLastNodeCount() {
+        return lastNodeCount;
+    }
+
+    /**
+     * Returns the bytes allocated by the thread of the last load.
+     * Allocation is only measured on platform threads, so loads on virtual
+     * threads (the default for {@link SceneBuilder#buildAsync()}) do not count.
+     *
+     * @return the allocated bytes, or -1 if never measured
+     */
+    public long getLastAllocatedBytes() {
+        return lastAllocatedBytes;
+    }
+
+    /**
+     * @return the average bytes allocated by measured loads, or -1 if never measured
+     */
+    public long getAverageAllocatedBytes() {
+        return averageAllocatedBytes;
+    }
+
+    /**
+     * @return the durations of the phases measured so far
+     */
+    public List<PhaseStats> getPhases() {
+        return phases;
+    }
+
+    /**
+     * Returns the durations of a phase.
+     *
+     * @param phase the phase
+     * @return the durations, or null if the phase has not been measured
+     */
+    public PhaseStats phase(SceneMetrics.Phase phase) {
+        for (var stats : phases) {
+            if (stats.getPhase() == phase) {
+                return stats;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        var sb = new StringBuilder(fxmlUrl)
+                .append(": loads=").append(loadCount)
+                .append(" failures=").append(failureCount)
+                .append(" loader=").append(lastLoader)
+                .append(" nodes=").append(lastNodeCount)
+                .append(" allocated=").append(lastAllocatedBytes);
+        phases.forEach(p -> sb.append("\n  ").append(p));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,427 @@
+package com.sosuisha;
+
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Load-time metrics of the views built by {@link SceneBuilder}.
+ * <p>
+ * For each FXML URL, the duration of every {@link Phase} is recorded, together
+ * with the number of nodes created and an estimate of the bytes allocated.
+ * Each load is also emitted as a {@code com.sosuisha.SceneLoad} JFR event and
+ * each phase as a {@code com.sosuisha.ScenePhase} event, so the same data can
+ * be seen in a flight recording.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * SceneMetrics.getDefault().getAllStats().forEach(System.out::println);
+ * </pre>
+ * <p>
+ * The metrics can also be watched with JConsole or any JMX client after
+ * calling {@link #registerMBean()}.
+ */
+public final class SceneMetrics implements SceneMetricsMXBean {
+    /** The ObjectName of the MXBean. */
+    public static final String OBJECT_NAME = "com.sosuisha:type=SceneMetrics";
+
+    /**
+     * The phases of building a Scene.
+     */
+    public enum Phase {
+        /** Loading the ResourceBundle. */
+        RESOURCES,
+        /**
+         * Parsing the FXML and creating the nodes, excluding the controller phases.
+         * For views loaded by FXMLLoader, this also includes the initialize method.
+         */
+        FXML,
+        /** Constructing the controller. */
+        CONTROLLER,
+        /** Calling the initialize method of the controller. */
+        INITIALIZE,
+        /** Applying CSS in the first pulse after the Scene is shown. */
+        CSS,
+        /** Laying out the Scene in the first pulse after it is shown. */
+        LAYOUT
+    }
+
+    private static final SceneMetrics DEFAULT = new SceneMetrics();
+    private static final ThreadLocal<Recording> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, ViewMetrics> views = new ConcurrentHashMap<>();
+    private volatile boolean enabled = true;
+    private boolean registered;
+
+    /**
+     * Returns the metrics of all SceneBuilders.
+     *
+     * @return the default metrics
+     */
+    public static SceneMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    private SceneMetrics() {
+    }
+
+    /**
+     * Registers this object with the platform MBeanServer as {@value #OBJECT_NAME}.
+     * Calling it again has no effect.
+     *
+     * @throws IllegalStateException if registration fails
+     */
+    public synchronized void registerMBean() {
+        if (registered) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered by another class loader; keep that one.
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register " + OBJECT_NAME, e);
+        }
+        registered = true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public List<String> getFxmlUrls() {
+        return List.copyOf(views.keySet());
+    }
+
+    @Override
+    public SceneLoadStats getStats(String fxmlUrl) {
+        var view = views.get(fxmlUrl);
+        return view != null ? view.snapshot(fxmlUrl) : null;
+    }
+
+    /**
+     * Returns the metrics of an FXML view.
+     *
+     * @param fxmlURL the FXML URL
+     * @return the metrics, or null if the view has not been loaded
+     */
+    public SceneLoadStats getStats(URL fxmlURL) {
+        return getStats(fxmlURL.toExternalForm());
+    }
+
+    @Override
+    public List<SceneLoadStats> getAllStats() {
+        var result = new ArrayList<SceneLoadStats>();
+        views.forEach((url, view) -> result.add(view.snapshot(url)));
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        views.clear();
+    }
+
+    private ViewMetrics view(String url) {
+        return views.computeIfAbsent(url, k -> new ViewMetrics());
+    }
+
+    /**
+     * Starts recording a load of the FXML on the current thread.
+     * Phases timed on this thread until the recording is closed belong to it.
+     *
+     * @param fxmlURL the FXML URL
+     * @return the recording, to be closed when the load is done
+     */
+    Recording begin(URL fxmlURL) {
+        var recording = new Recording(this, fxmlURL.toExternalForm(), CURRENT.get());
+        CURRENT.set(recording);
+        return recording;
+    }
+
+    /**
+     * Starts timing a phase of the load recorded on the current thread.
+     *
+     * @param phase the phase
+     * @return the timer
+     */
+    static Timer start(Phase phase) {
+        var recording = CURRENT.get();
+        return new Timer(recording != null ? recording.metrics : DEFAULT,
+                recording != null ? recording.url : null, recording, phase);
+    }
+
+    /**
+     * Times CSS and layout in the first pulse of the Scene. CSS is applied
+     * explicitly before the layout pass so that the two can be told apart.
+     *
+     * @param fxmlURL the FXML URL of the root
+     * @param scene   the Scene, not yet shown; it may have been created off the FX thread
+     */
+    void measureFirstPulse(URL fxmlURL, Scene scene) {
+        var url = fxmlURL.toExternalForm();
+        var layout = new Timer[1];
+        var before = new Runnable() {
+            @Override
+            public void run() {
+                scene.removePreLayoutPulseListener(this);
+                var css = new Timer(SceneMetrics.this, url, null, Phase.CSS);
+                scene.getRoot().applyCss();
+                css.stop();
+                layout[0] = new Timer(SceneMetrics.this, url, null, Phase.LAYOUT);
+            }
+        };
+        var after = new Runnable() {
+            @Override
+            public void run() {
+                if (layout[0] != null) {
+                    scene.removePostLayoutPulseListener(this);
+                    layout[0].stop();
+                }
+            }
+        };
+        Runnable install = () -> {
+            scene.addPreLayoutPulseListener(before);
+            scene.addPostLayoutPulseListener(after);
+        };
+        if (Platform.isFxApplicationThread()) {
+            install.run();
+        } else {
+            // Pulse listeners can only be added on the FX thread. The Scene of an
+            // asynchronous build is attached later by another runLater, so this runs first.
+            Platform.runLater(install);
+        }
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread, or -1 if unknown.
+     * Virtual threads have no allocation counter.
+     */
+    private static long allocatedBytes() {
+        return Thread.currentThread().isVirtual() ? -1 : Allocation.currentThreadBytes();
+    }
+
+    private static int countNodes(Node node) {
+        int count = 1;
+        if (node instanceof Parent parent) {
+            for (var child : parent.getChildrenUnmodifiable()) {
+                count += countNodes(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Times one phase. Durations are added to the current load, or directly
+     * to the view metrics for phases that run after the load.
+     */
+    public static final class Timer {
+        private final SceneMetrics metrics;
+        private final String url;
+        private final Recording recording;
+        private final Phase phase;
+        private final ScenePhaseEvent event = new ScenePhaseEvent();
+        private final long start;
+
+        private Timer(SceneMetrics metrics, String url, Recording recording, Phase phase) {
+            this.metrics = metrics;
+            this.url = url;
+            this.recording = recording;
+            this.phase = phase;
+            event.begin();
+            start = System.nanoTime();
+        }
+
+        /**
+         * Stops timing and records the duration.
+         */
+        public void stop() {
+            long nanos = System.nanoTime() - start;
+            event.end();
+            if (event.shouldCommit()) {
+                event.fxmlUrl = url;
+                event.phase = phase.name();
+                event.commit();
+            }
+            if (recording != null) {
+                recording.phaseNanos.merge(phase, nanos, Long::sum);
+            } else if (url != null && metrics.enabled) {
+                metrics.view(url).record(phase, nanos);
+            }
+        }
+    }
+
+    /**
+     * A load of one FXML view on the current thread.
+     */
+    static final class Recording implements AutoCloseable {
+        private final SceneMetrics metrics;
+        private final String url;
+        private final Recording previous;
+        private final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+        private final SceneLoadEvent event = new SceneLoadEvent();
+        private final long start;
+        private final long startAllocated;
+        private String loader;
+        private boolean succeeded;
+
+        private Recording(SceneMetrics metrics, String url, Recording previous) {
+            this.metrics = metrics;
+            this.url = url;
+            this.previous = previous;
+            event.begin();
+            startAllocated = allocatedBytes();
+            start = System.nanoTime();
+        }
+
+        /**
+         * Records how the view is loaded: "compiled", "template" or "FXMLLoader".
+         */
+        void loader(String loader) {
+            this.loader = loader;
+        }
+
+        /**
+         * Records the successful load of the root node.
+         */
+        void finish(Object root) {
+            long total = System.nanoTime() - start;
+            long endAllocated = allocatedBytes();
+            long allocated = startAllocated >= 0 && endAllocated >= 0 ? endAllocated - startAllocated : -1;
+            int nodes = root instanceof Node node ? countNodes(node) : 0;
+            succeeded = true;
+
+            // FXML is what remains after the phases timed separately.
+            long fxml = total;
+            for (var nanos : phaseNanos.values()) {
+                fxml -= nanos;
+            }
+            phaseNanos.put(Phase.FXML, Math.max(0, fxml));
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.fxmlUrl = url;
+                event.loader = loader;
+                event.nodeCount = nodes;
+                event.allocatedBytes = allocated;
+                event.succeeded = true;
+                event.commit();
+            }
+            if (metrics.enabled) {
+                metrics.view(url).record(loader, nodes, allocated, phaseNanos);
+            }
+        }
+
+        @Override
+        public void close() {
+            CURRENT.set(previous);
+            if (!succeeded) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.fxmlUrl = url;
+                    event.loader = loader;
+                    event.allocatedBytes = -1;
+                    event.commit();
+                }
+                if (metrics.enabled) {
+                    metrics.view(url).recordFailure();
+                }
+            }
+        }
+    }
+
+    /**
+     * Accumulated metrics of one FXML URL.
+     */
+    private static final class ViewMetrics {
+        private static final int PHASES = Phase.values().length;
+
+        private final long[] count = new long[PHASES];
+        private final long[] total = new long[PHASES];
+        private final long[] max = new long[PHASES];
+        private final long[] last = new long[PHASES];
+        private long loads;
+        private long failures;
+        private String lastLoader;
+        private int lastNodes;
+        private long lastAllocated = -1;
+        private long allocatedSamples;
+        private long allocatedTotal;
+
+        synchronized void record(String loader, int nodes, long allocated, Map<Phase, Long> phaseNanos) {
+            loads++;
+            lastLoader = loader;
+            lastNodes = nodes;
+            if (allocated >= 0) {
+                lastAllocated = allocated;
+                allocatedSamples++;
+                allocatedTotal += allocated;
+            }
+            phaseNanos.forEach(this::record);
+        }
+
+        synchronized void record(Phase phase, long nanos) {
+            int i = phase.ordinal();
+            count[i]++;
+            total[i] += nanos;
+            max[i] = Math.max(max[i], nanos);
+            last[i] = nanos;
+        }
+
+        synchronized void recordFailure() {
+            failures++;
+        }
+
+        synchronized SceneLoadStats snapshot(String url) {
+            var phases = new ArrayList<PhaseStats>();
+            for (var phase : Phase.values()) {
+                int i = phase.ordinal();
+                if (count[i] > 0) {
+                    phases.add(new PhaseStats(phase, count[i], total[i], max[i], last[i]));
+                }
+            }
+            return new SceneLoadStats(url, loads, failures, lastLoader, lastNodes, lastAllocated,
+                    allocatedSamples > 0 ? allocatedTotal / allocatedSamples : -1, phases);
+        }
+    }
+
+    /**
+     * Per-thread allocation counter, loaded on first use.
+     */
+    private static final class Allocation {
+        private static final com.sun.management.ThreadMXBean THREADS = threadMXBean();
+
+        private static com.sun.management.ThreadMXBean threadMXBean() {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                    && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads;
+            }
+            return null;
+        }
+
+        /**
+         * Returns the bytes allocated by the current platform thread, or -1 if unknown.
+         */
+        static long currentThreadBytes() {
+            return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+        }
+    }
+}
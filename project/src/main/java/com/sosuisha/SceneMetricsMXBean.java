@@ -0,0 +1,46 @@
+package com.sosuisha;
+
+import java.util.List;
+
+/**
+ * JMX interface of {@link SceneMetrics}, registered as
+ * {@value SceneMetrics#OBJECT_NAME} by {@link SceneMetrics#registerMBean()}.
+ */
+public interface SceneMetricsMXBean {
+
+    /**
+     * @return whether metrics are recorded
+     */
+    boolean isEnabled();
+
+    /**
+     * Turns recording on or off. JFR events are controlled by JFR settings
+     * and are emitted regardless of this flag.
+     *
+     * @param enabled whether metrics are recorded
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return the external forms of the FXML URLs that have been loaded
+     */
+    List<String> getFxmlUrls();
+
+    /**
+     * Returns the metrics of an FXML view.
+     *
+     * @param fxmlUrl the external form of the FXML URL
+     * @return the metrics, or null if the view has not been loaded
+     */
+    SceneLoadStats getStats(String fxmlUrl);
+
+    /**
+     * @return the metrics of all loaded FXML views
+     */
+    List<SceneLoadStats> getAllStats();
+
+    /**
+     * Clears all metrics.
+     */
+    void reset();
+}
@@ -0,0 +1,21 @@
+package com.sosuisha;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for one phase of building a Scene, see {@link SceneMetrics.Phase}.
+ */
+@Name("com.sosuisha.ScenePhase")
+@Label("Scene Phase")
+@Category({ "JavaFX", "SceneBuilder" })
+@Description("A phase of building an FXML view: resources, controller, initialize, CSS or layout")
+final class ScenePhaseEvent extends jdk.jfr.Event {
+    @Label("FXML URL")
+    String fxmlUrl;
+
+    @Label("Phase")
+    String phase;
+}
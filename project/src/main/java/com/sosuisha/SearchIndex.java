@@ -0,0 +1,1103 @@
+package com.sosuisha;
+
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * In-memory index of a large list of the model, to filter it without
+ * scanning every element on each keystroke.
+ * <p>
+ * Text fields are indexed by the trigrams of their values, case-insensitively,
+ * so {@link Query#contains(String, String)} only checks the elements that
+ * have all the trigrams of the text. Numeric fields are kept sorted, so
+ * {@link Query#between(String, double, double)} only reads the elements in
+ * the range. The index follows the changes of the list incrementally:
+ * added, replaced and updated elements are indexed as they change, and
+ * removed ones are dropped lazily, rebuilding the index once they outnumber
+ * the live ones.
+ * <p>
+ * {@link #filtered()} returns an {@link ObservableList} for TableView and
+ * ListView that shows the elements matching its query. When the query or
+ * the list changes, it fires a change for the elements that start or stop
+ * matching only, and when a query narrows the previous one, as typing
+ * does, it only checks the elements that matched before.
+ * <p>
+ * Elements updated in place must be reported by the list, as
+ * {@link ColumnarTable#rows()} does, or through an extractor. The index and
+ * its views must be used on the FX Application Thread once they are shown,
+ * like the list itself.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * var index = new SearchIndex&lt;&gt;(table.rows())
+ *         .textField("name", row -&gt; name.get(row.index()))
+ *         .numberField("price", row -&gt; price.get(row.index()));
+ * var view = index.filtered();
+ * view.queryProperty().bind(Bindings.createObjectBinding(
+ *         () -&gt; SearchIndex.Query.all().contains("name", searchField.getText()),
+ *         searchField.textProperty()));
+ * tableView.setItems(view);
+ * </pre>
+ *
+ * @param <T> the element type
+ */
+public final class SearchIndex<T> {
+    private static final int GRAM = 3;
+
+    /** The number of removed elements tolerated before the index is rebuilt. */
+    private static final int MIN_DEAD = 1024;
+
+    /** The number of numeric values kept unsorted before they are merged. */
+    private static final int MIN_PENDING = 4096;
+
+    /**
+     * A conjunction of conditions on the fields of an index. Instances are
+     * immutable; each method returns a new query with one more condition.
+     */
+    public static final class Query {
+        private static final Query ALL = new Query(List.of());
+
+        private sealed interface Condition permits Contains, Between {
+            String field();
+        }
+
+        private record Contains(String field, String text) implements Condition {
+        }
+
+        private record Between(String field, double min, double max) implements Condition {
+        }
+
+        private final List<Condition> conditions;
+
+        private Query(List<Condition> conditions) {
+            this.conditions = conditions;
+        }
+
+        /**
+         * Returns the query that matches every element.
+         *
+         * @return the query
+         */
+        public static Query all() {
+            return ALL;
+        }
+
+        /**
+         * Returns a query that also requires the text field to contain the
+         * text, ignoring case. An empty or null text adds no condition.
+         *
+         * @param field the name of a text field
+         * @param text  the text to find
+         * @return the new query
+         */
+        public Query contains(String field, String text) {
+            Objects.requireNonNull(field, "field must not be null.");
+            if (text == null || text.isEmpty()) {
+                return this;
+            }
+            return with(new Contains(field, text));
+        }
+
+        /**
+         * Returns a query that also requires the numeric field to be within
+         * the range. Use infinities for an open range; NaN never matches.
+         *
+         * @param field the name of a numeric field
+         * @param min   the minimum, inclusive
+         * @param max   the maximum, inclusive
+         * @return the new query
+         */
+        public Query between(String field, double min, double max) {
+            Objects.requireNonNull(field, "field must not be null.");
+            return with(new Between(field, min, max));
+        }
+
+        private Query with(Condition condition) {
+            var list = new ArrayList<>(conditions);
+            list.add(condition);
+            return new Query(List.copyOf(list));
+        }
+
+        /**
+         * Returns whether every element matching this query also matches
+         * the other, so this query can filter the result of the other.
+         */
+        boolean narrows(Query other) {
+            for (var condition : other.conditions) {
+                if (conditions.stream().noneMatch(mine -> implies(mine, condition))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean implies(Condition mine, Condition other) {
+            if (!mine.field().equals(other.field())) {
+                return false;
+            }
+            return switch (mine) {
+                case Contains c -> other instanceof Contains o && indexOfIgnoreCase(c.text(), o.text()) >= 0;
+                case Between b -> other instanceof Between o && b.min() >= o.min() && b.max() <= o.max();
+            };
+        }
+
+        @Override
+        public String toString() {
+            return "Query" + conditions;
+        }
+    }
+
+    /**
+     * Counters of an index since it was created, and its size now.
+     *
+     * @param elements the number of elements of the list
+     * @param dead     the number of removed elements still in the index
+     * @param grams    the number of distinct trigrams of the text fields
+     * @param postings the number of element references in the trigram lists
+     * @param rebuilds the number of times the index was rebuilt
+     * @param queries  the number of queries run on the index
+     */
+    public record Stats(int elements, int dead, int grams, long postings, long rebuilds, long queries) {
+    }
+
+    /**
+     * A growable array of ints.
+     */
+    private static class IntList {
+        int[] values = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.max(16, size * 2));
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * The ids of the elements that have a trigram, in ascending order.
+     */
+    private static final class Postings extends IntList {
+        void insert(int id) {
+            if (size > 0 && values[size - 1] < id) {
+                add(id);
+                return;
+            }
+            int at = Arrays.binarySearch(values, 0, size, id);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            add(0);
+            System.arraycopy(values, at, values, at + 1, size - 1 - at);
+            values[at] = id;
+        }
+
+        void remove(int id) {
+            int at = Arrays.binarySearch(values, 0, size, id);
+            if (at >= 0) {
+                System.arraycopy(values, at + 1, values, at, size - 1 - at);
+                size--;
+            }
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(values, 0, size, id) >= 0;
+        }
+    }
+
+    private static final class TextField<T> {
+        private final Function<? super T, String> extractor;
+        private final Map<Long, Postings> grams = new HashMap<>();
+        private String[] texts = new String[0];
+
+        private TextField(Function<? super T, String> extractor) {
+            this.extractor = extractor;
+        }
+
+        void index(int id, T element) {
+            var text = extractor.apply(element);
+            texts[id] = text;
+            if (text != null) {
+                forEachGram(text, gram -> grams.computeIfAbsent(gram, g -> new Postings()).insert(id));
+            }
+        }
+
+        void unindex(int id) {
+            var text = texts[id];
+            texts[id] = null;
+            if (text != null) {
+                forEachGram(text, gram -> {
+                    var postings = grams.get(gram);
+                    if (postings != null) {
+                        postings.remove(id);
+                    }
+                });
+            }
+        }
+
+        void clear(int capacity) {
+            grams.clear();
+            texts = new String[capacity];
+        }
+
+        void grow(int capacity) {
+            texts = Arrays.copyOf(texts, capacity);
+        }
+    }
+
+    private static final class NumberField<T> {
+        private final ToDoubleFunction<? super T> extractor;
+        private double[] values = new double[0];
+        private int[] sortedIds = new int[0];
+        private double[] sortedValues = new double[0];
+        private IntList pending = new IntList();
+
+        private NumberField(ToDoubleFunction<? super T> extractor) {
+            this.extractor = extractor;
+        }
+
+        void index(int id, T element) {
+            values[id] = extractor.applyAsDouble(element);
+            // The old sorted entry of the id, if any, no longer matches its value.
+            pending.add(id);
+        }
+
+        void clear(int capacity) {
+            values = new double[capacity];
+            sortedIds = new int[0];
+            sortedValues = new double[0];
+            pending = new IntList();
+        }
+
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    private final ObservableList<T> source;
+    private final ListChangeListener<T> listener = this::sourceChanged;
+    private final Map<String, TextField<T>> texts = new HashMap<>();
+    private final Map<String, NumberField<T>> numbers = new HashMap<>();
+    private final List<WeakReference<View<T>>> views = new ArrayList<>();
+    private final IntList idAt = new IntList();
+    private int[] positionOf = new int[0];
+    private boolean positionsDirty;
+    private final BitSet alive = new BitSet();
+    private int nextId;
+    private int dead;
+    private boolean built;
+    private long rebuilds;
+    private long queries;
+
+    /**
+     * Creates an index of the list. The list is indexed on the first query;
+     * a field added after that indexes the list again.
+     *
+     * @param source the list
+     */
+    public SearchIndex(ObservableList<T> source) {
+        this.source = Objects.requireNonNull(source, "source must not be null.");
+        source.addListener(listener);
+    }
+
+    /**
+     * Indexes a text field.
+     *
+     * @param name      the name of the field in queries
+     * @param extractor returns the value of the field, or null
+     * @return this index
+     */
+    public SearchIndex<T> textField(String name, Function<? super T, String> extractor) {
+        checkNewField(name);
+        texts.put(name, new TextField<>(Objects.requireNonNull(extractor, "extractor must not be null.")));
+        if (built) {
+            rebuild();
+        }
+        return this;
+    }
+
+    /**
+     * Indexes a numeric field.
+     *
+     * @param name      the name of the field in queries
+     * @param extractor returns the value of the field
+     * @return this index
+     */
+    public SearchIndex<T> numberField(String name, ToDoubleFunction<? super T> extractor) {
+        checkNewField(name);
+        numbers.put(name, new NumberField<>(Objects.requireNonNull(extractor, "extractor must not be null.")));
+        if (built) {
+            rebuild();
+        }
+        return this;
+    }
+
+    private void checkNewField(String name) {
+        Objects.requireNonNull(name, "name must not be null.");
+        if (texts.containsKey(name) || numbers.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate field: " + name);
+        }
+    }
+
+    /**
+     * Returns a new list of the elements that match its query, in the order
+     * of the source list. Its query is {@link Query#all()} at first.
+     *
+     * @return the filtered list
+     */
+    public View<T> filtered() {
+        ensureBuilt();
+        var view = new View<>(this);
+        views.add(new WeakReference<>(view));
+        return view;
+    }
+
+    /**
+     * Returns the elements that match the query, in the order of the source list.
+     *
+     * @param query the query
+     * @return the matching elements
+     * @throws IllegalArgumentException if the query refers to a field that is not indexed
+     */
+    public List<T> find(Query query) {
+        var positions = search(query, null);
+        var result = new ArrayList<T>(positions.length);
+        for (int position : positions) {
+            result.add(source.get(position));
+        }
+        return result;
+    }
+
+    /**
+     * Stops following the changes of the source list. The views keep their
+     * current elements.
+     */
+    public void dispose() {
+        source.removeListener(listener);
+        views.clear();
+    }
+
+    /**
+     * Returns the counters and the size of the index.
+     *
+     * @return the stats
+     */
+    public Stats getStats() {
+        long postings = 0;
+        int grams = 0;
+        for (var field : texts.values()) {
+            grams += field.grams.size();
+            for (var list : field.grams.values()) {
+                postings += list.size;
+            }
+        }
+        return new Stats(idAt.size, dead, grams, postings, rebuilds, queries);
+    }
+
+    private void ensureBuilt() {
+        if (!built) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Indexes every element again with new ids, dropping the removed ones.
+     */
+    private void rebuild() {
+        int size = source.size();
+        int capacity = Math.max(16, size);
+        texts.values().forEach(field -> field.clear(capacity));
+        numbers.values().forEach(field -> field.clear(capacity));
+        idAt.values = new int[capacity];
+        idAt.size = 0;
+        positionOf = new int[capacity];
+        positionsDirty = false;
+        alive.clear();
+        nextId = 0;
+        dead = 0;
+        for (int position = 0; position < size; position++) {
+            int id = newId(source.get(position));
+            idAt.add(id);
+            positionOf[id] = position;
+        }
+        for (var field : numbers.values()) {
+            merge(field);
+        }
+        built = true;
+        rebuilds++;
+    }
+
+    private int newId(T element) {
+        int id = nextId++;
+        if (id == positionOf.length) {
+            int capacity = Math.max(16, id * 2);
+            positionOf = Arrays.copyOf(positionOf, capacity);
+            texts.values().forEach(field -> field.grow(capacity));
+            numbers.values().forEach(field -> field.grow(capacity));
+        }
+        alive.set(id);
+        index(id, element);
+        return id;
+    }
+
+    private void index(int id, T element) {
+        for (var field : texts.values()) {
+            field.index(id, element);
+        }
+        for (var field : numbers.values()) {
+            field.index(id, element);
+        }
+    }
+
+    /**
+     * Sorts the values of the live ids of a numeric field, including the pending ones.
+     */
+    private void merge(NumberField<T> field) {
+        var ids = new int[idAt.size];
+        var values = new double[idAt.size];
+        int count = 0;
+        for (int i = 0; i < idAt.size; i++) {
+            int id = idAt.values[i];
+            var value = field.values[id];
+            if (!Double.isNaN(value)) {
+                ids[count] = id;
+                values[count] = value;
+                count++;
+            }
+        }
+        sort(ids, values, 0, count - 1);
+        field.sortedIds = Arrays.copyOf(ids, count);
+        field.sortedValues = Arrays.copyOf(values, count);
+        field.pending = new IntList();
+    }
+
+    /**
+     * Sorts the ids by their values, both in place.
+     */
+    private static void sort(int[] ids, double[] values, int from, int to) {
+        while (to - from > 16) {
+            double pivot = values[(from + to) >>> 1];
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(ids, values, i++, j--);
+                }
+            }
+            // Recurse into the smaller part to bound the stack depth.
+            if (j - from < to - i) {
+                sort(ids, values, from, j);
+                from = i;
+            } else {
+                sort(ids, values, i, to);
+                to = j;
+            }
+        }
+        for (int i = from + 1; i <= to; i++) {
+            for (int j = i; j > from && values[j - 1] > values[j]; j--) {
+                swap(ids, values, j - 1, j);
+            }
+        }
+    }
+
+    private static void swap(int[] ids, double[] values, int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    private void sourceChanged(ListChangeListener.Change<? extends T> change) {
+        if (!built) {
+            // Nothing has been queried yet; index the list on first use.
+            return;
+        }
+        var live = new ArrayList<View<T>>();
+        views.removeIf(ref -> {
+            var view = ref.get();
+            if (view != null) {
+                live.add(view);
+            }
+            return view == null;
+        });
+        live.forEach(View::begin);
+        try {
+            while (change.next()) {
+                if (change.wasPermutated()) {
+                    var permuted = Arrays.copyOfRange(idAt.values, change.getFrom(), change.getTo());
+                    for (int i = change.getFrom(); i < change.getTo(); i++) {
+                        idAt.values[change.getPermutation(i)] = permuted[i - change.getFrom()];
+                    }
+                    positionsDirty = true;
+                    for (var view : live) {
+                        view.permutated(change);
+                    }
+                } else if (change.wasUpdated()) {
+                    for (int position = change.getFrom(); position < change.getTo(); position++) {
+                        int id = idAt.values[position];
+                        texts.values().forEach(field -> field.unindex(id));
+                        index(id, source.get(position));
+                    }
+                    for (var view : live) {
+                        view.updated(change.getFrom(), change.getTo());
+                    }
+                } else {
+                    replaced(change.getFrom(), change.getRemovedSize(), change.getAddedSize());
+                    for (var view : live) {
+                        view.replaced(change.getFrom(), change.getRemoved(), change.getAddedSize());
+                    }
+                }
+            }
+        } finally {
+            live.forEach(View::end);
+        }
+        if (dead > MIN_DEAD + idAt.size) {
+            rebuild();
+            return;
+        }
+        for (var field : numbers.values()) {
+            if (field.pending.size > MIN_PENDING + idAt.size / 8) {
+                merge(field);
+            }
+        }
+    }
+
+    /**
+     * Drops the ids of the removed elements, which stay in the index as
+     * dead ids until it is rebuilt, and indexes the added ones.
+     */
+    private void replaced(int from, int removed, int added) {
+        for (int i = from; i < from + removed; i++) {
+            alive.clear(idAt.values[i]);
+        }
+        dead += removed;
+        int tail = idAt.size - from - removed;
+        var ids = new int[added];
+        for (int i = 0; i < added; i++) {
+            ids[i] = newId(source.get(from + i));
+        }
+        if (idAt.size - removed + added > idAt.values.length) {
+            idAt.values = Arrays.copyOf(idAt.values, Math.max(16, (idAt.size - removed + added) * 2));
+        }
+        System.arraycopy(idAt.values, from + removed, idAt.values, from + added, tail);
+        System.arraycopy(ids, 0, idAt.values, from, added);
+        idAt.size += added - removed;
+        if (tail > 0 || removed > 0) {
+            positionsDirty = true;
+        } else {
+            for (int i = 0; i < added; i++) {
+                positionOf[ids[i]] = from + i;
+            }
+        }
+    }
+
+    private void ensurePositions() {
+        if (positionsDirty) {
+            for (int position = 0; position < idAt.size; position++) {
+                positionOf[idAt.values[position]] = position;
+            }
+            positionsDirty = false;
+        }
+    }
+
+    /**
+     * Returns the sorted positions of the elements that match the query.
+     *
+     * @param query    the query
+     * @param previous the positions that match a query that this one narrows, or null
+     */
+    private int[] search(Query query, int[] previous) {
+        ensureBuilt();
+        queries++;
+        for (var condition : query.conditions) {
+            checkField(condition);
+        }
+        var result = new IntList();
+        if (query.conditions.isEmpty()) {
+            result.values = new int[Math.max(16, idAt.size)];
+            for (int position = 0; position < idAt.size; position++) {
+                result.add(position);
+            }
+            return result.toArray();
+        }
+        int[] candidates = previous == null || previous.length > estimate(query) ? candidates(query) : null;
+        if (candidates == null) {
+            // Check the positions of the previous result, or every position.
+            int count = previous != null ? previous.length : idAt.size;
+            for (int i = 0; i < count; i++) {
+                int position = previous != null ? previous[i] : i;
+                if (matches(query, idAt.values[position])) {
+                    result.add(position);
+                }
+            }
+            return result.toArray();
+        }
+        ensurePositions();
+        for (int id : candidates) {
+            if (matches(query, id)) {
+                result.add(positionOf[id]);
+            }
+        }
+        var positions = result.toArray();
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    private void checkField(Query.Condition condition) {
+        var field = switch (condition) {
+            case Query.Contains c -> texts.get(c.field());
+            case Query.Between b -> numbers.get(b.field());
+        };
+        if (field == null) {
+            throw new IllegalArgumentException("Not an indexed "
+                    + (condition instanceof Query.Contains ? "text" : "numeric") + " field: " + condition.field());
+        }
+    }
+
+    /**
+     * Returns an upper bound of the number of candidates that the index
+     * gives for the query, without computing them.
+     */
+    private int estimate(Query query) {
+        int estimate = Integer.MAX_VALUE;
+        for (var condition : query.conditions) {
+            if (condition instanceof Query.Contains c && c.text().length() >= GRAM) {
+                var grams = texts.get(c.field()).grams;
+                int[] smallest = {Integer.MAX_VALUE};
+                forEachGram(c.text(), gram -> {
+                    var postings = grams.get(gram);
+                    smallest[0] = Math.min(smallest[0], postings != null ? postings.size : 0);
+                });
+                estimate = Math.min(estimate, smallest[0]);
+            } else if (condition instanceof Query.Between b) {
+                var field = numbers.get(b.field());
+                var sorted = field.sortedValues;
+                int count = lowerBound(sorted, Math.nextUp(b.max())) - lowerBound(sorted, b.min());
+                estimate = Math.min(estimate, Math.max(count, 0) + field.pending.size);
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns the sorted live ids that may match the query according to the
+     * indexes, or null if no condition can use them.
+     */
+    private int[] candidates(Query query) {
+        int[] candidates = null;
+        for (var condition : query.conditions) {
+            int[] ids = switch (condition) {
+                case Query.Contains c -> c.text().length() >= GRAM ? gramCandidates(texts.get(c.field()), c.text())
+                        : null;
+                case Query.Between b -> rangeCandidates(numbers.get(b.field()), b.min(), b.max());
+            };
+            if (ids != null) {
+                candidates = candidates == null ? ids : intersect(candidates, ids);
+            }
+        }
+        return candidates;
+    }
+
+    private int[] gramCandidates(TextField<T> field, String text) {
+        var lists = new ArrayList<Postings>();
+        boolean[] missing = {false};
+        forEachGram(text, gram -> {
+            var postings = field.grams.get(gram);
+            if (postings == null) {
+                missing[0] = true;
+            } else if (!lists.contains(postings)) {
+                lists.add(postings);
+            }
+        });
+        if (missing[0]) {
+            return new int[0];
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        var smallest = lists.get(0);
+        var result = new IntList();
+        next:
+        for (int i = 0; i < smallest.size; i++) {
+            int id = smallest.values[i];
+            if (!alive.get(id)) {
+                continue;
+            }
+            for (int j = 1; j < lists.size(); j++) {
+                if (!lists.get(j).contains(id)) {
+                    continue next;
+                }
+            }
+            result.add(id);
+        }
+        return result.toArray();
+    }
+
+    private int[] rangeCandidates(NumberField<T> field, double min, double max) {
+        var result = new IntList();
+        var values = field.sortedValues;
+        for (int i = lowerBound(values, min); i < values.length && values[i] <= max; i++) {
+            int id = field.sortedIds[i];
+            // Skip removed ids and ids whose value has changed since the merge.
+            if (alive.get(id) && Double.compare(field.values[id], values[i]) == 0) {
+                result.add(id);
+            }
+        }
+        for (int i = 0; i < field.pending.size; i++) {
+            int id = field.pending.values[i];
+            var value = field.values[id];
+            if (alive.get(id) && value >= min && value <= max) {
+                result.add(id);
+            }
+        }
+        var ids = result.toArray();
+        Arrays.sort(ids);
+        return distinct(ids);
+    }
+
+    /**
+     * Returns the index of the first value that is not less than the key.
+     */
+    private static int lowerBound(double[] sorted, double key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int[] distinct(int[] sorted) {
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return count == sorted.length ? sorted : Arrays.copyOf(sorted, count);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        var result = new IntList();
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result.add(a[i]);
+                i++;
+                j++;
+            }
+        }
+        return result.toArray();
+    }
+
+    private boolean matches(Query query, int id) {
+        for (var condition : query.conditions) {
+            boolean match = switch (condition) {
+                case Query.Contains c -> {
+                    var text = texts.get(c.field()).texts[id];
+                    yield text != null && indexOfIgnoreCase(text, c.text()) >= 0;
+                }
+                case Query.Between b -> {
+                    var value = numbers.get(b.field()).values[id];
+                    yield value >= b.min() && value <= b.max();
+                }
+            };
+            if (!match) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calls the action with each trigram of the text, folded to lower case
+     * and packed into a long.
+     */
+    private static void forEachGram(String text, LongConsumer action) {
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            action.accept((long) fold(text.charAt(i)) << 32 | (long) fold(text.charAt(i + 1)) << 16
+                    | fold(text.charAt(i + 2)));
+        }
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static int indexOfIgnoreCase(String text, String part) {
+        for (int i = 0; i + part.length() <= text.length(); i++) {
+            if (text.regionMatches(true, i, part, 0, part.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The elements of the source list that match a query, in source order.
+     *
+     * @param <T> the element type
+     */
+    public static final class View<T> extends ObservableListBase<T> {
+        private final SearchIndex<T> index;
+        private final ObjectProperty<Query> query = new SimpleObjectProperty<>(this, "query", Query.all()) {
+            @Override
+            protected void invalidated() {
+                apply(get());
+            }
+        };
+        private Query applied = Query.all();
+        private int[] positions;
+
+        private View(SearchIndex<T> index) {
+            this.index = index;
+            this.positions = index.search(applied, null);
+        }
+
+        /**
+         * The query of the elements to show. Null is the same as {@link Query#all()}.
+         *
+         * @return the property
+         */
+        public ObjectProperty<Query> queryProperty() {
+            return query;
+        }
+
+        public Query getQuery() {
+            return query.get();
+        }
+
+        public void setQuery(Query query) {
+            this.query.set(query);
+        }
+
+        @Override
+        public T get(int index) {
+            return this.index.source.get(positions[Objects.checkIndex(index, size())]);
+        }
+
+        @Override
+        public int size() {
+            return positions.length;
+        }
+
+        /**
+         * Returns the index in the source list of an element of this list.
+         *
+         * @param index the index in this list
+         * @return the index in the source list
+         */
+        public int getSourceIndex(int index) {
+            return positions[Objects.checkIndex(index, size())];
+        }
+
+        /**
+         * Filters the source list with the query, and fires a change for the
+         * elements that start or stop matching.
+         */
+        private void apply(Query next) {
+            if (next == null) {
+                next = Query.all();
+            }
+            var old = positions;
+            var updated = index.search(next, next.narrows(applied) ? old : null);
+            applied = next;
+            positions = updated;
+            int common = 0;
+            for (int i = 0, j = 0; i < old.length && j < updated.length; ) {
+                if (old[i] < updated[j]) {
+                    i++;
+                } else if (old[i] > updated[j]) {
+                    j++;
+                } else {
+                    common++;
+                    i++;
+                    j++;
+                }
+            }
+            if (common == old.length && common == updated.length) {
+                return;
+            }
+            beginChange();
+            if (common < Math.min(old.length, updated.length) / 2) {
+                // Most elements change: replace them all at once.
+                if (old.length > 0) {
+                    nextRemove(0, elements(old));
+                }
+                if (updated.length > 0) {
+                    nextAdd(0, updated.length);
+                }
+            } else {
+                var source = index.source;
+                int i = 0;
+                int j = 0;
+                while (i < old.length || j < updated.length) {
+                    if (j == updated.length || i < old.length && old[i] < updated[j]) {
+                        nextRemove(j, source.get(old[i++]));
+                    } else if (i == old.length || old[i] > updated[j]) {
+                        nextAdd(j, j + 1);
+                        j++;
+                    } else {
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            endChange();
+        }
+
+        private List<T> elements(int[] sourcePositions) {
+            var source = index.source;
+            return new AbstractList<>() {
+                @Override
+                public T get(int i) {
+                    return source.get(sourcePositions[i]);
+                }
+
+                @Override
+                public int size() {
+                    return sourcePositions.length;
+                }
+            };
+        }
+
+        private void begin() {
+            beginChange();
+        }
+
+        private void end() {
+            endChange();
+        }
+
+        /**
+         * Follows elements removed from and added to the source list at the position.
+         */
+        private void replaced(int from, List<? extends T> removed, int added) {
+            int low = lowerBound(from);
+            int high = lowerBound(from + removed.size());
+            for (int i = low; i < high; i++) {
+                nextRemove(low, removed.get(positions[i] - from));
+            }
+            var matched = new IntList();
+            for (int position = from; position < from + added; position++) {
+                if (index.matches(applied, index.idAt.values[position])) {
+                    matched.add(position);
+                }
+            }
+            var next = new int[positions.length - (high - low) + matched.size];
+            System.arraycopy(positions, 0, next, 0, low);
+            System.arraycopy(matched.values, 0, next, low, matched.size);
+            int shift = added - removed.size();
+            for (int i = high, j = low + matched.size; i < positions.length; i++, j++) {
+                next[j] = positions[i] + shift;
+            }
+            positions = next;
+            if (matched.size > 0) {
+                nextAdd(low, low + matched.size);
+            }
+        }
+
+        /**
+         * Follows elements of the source list updated in place, which may
+         * start or stop matching.
+         */
+        private void updated(int from, int to) {
+            for (int position = from; position < to; position++) {
+                int at = lowerBound(position);
+                boolean was = at < positions.length && positions[at] == position;
+                boolean is = index.matches(applied, index.idAt.values[position]);
+                if (was && is) {
+                    nextUpdate(at);
+                } else if (was) {
+                    nextRemove(at, index.source.get(position));
+                    positions = remove(positions, at);
+                } else if (is) {
+                    positions = insert(positions, at, position);
+                    nextAdd(at, at + 1);
+                }
+            }
+        }
+
+        /**
+         * Follows a reordering of the source list.
+         */
+        private void permutated(ListChangeListener.Change<? extends T> change) {
+            int low = lowerBound(change.getFrom());
+            int high = lowerBound(change.getTo());
+            if (high - low < 2) {
+                for (int i = low; i < high; i++) {
+                    positions[i] = change.getPermutation(positions[i]);
+                }
+                return;
+            }
+            var moved = new int[high - low];
+            for (int i = low; i < high; i++) {
+                moved[i - low] = change.getPermutation(positions[i]);
+            }
+            var sorted = moved.clone();
+            Arrays.sort(sorted);
+            var permutation = new int[high - low];
+            for (int i = 0; i < moved.length; i++) {
+                permutation[i] = low + Arrays.binarySearch(sorted, moved[i]);
+            }
+            System.arraycopy(sorted, 0, positions, low, sorted.length);
+            nextPermutation(low, high, permutation);
+        }
+
+        private int lowerBound(int position) {
+            int at = Arrays.binarySearch(positions, position);
+            return at >= 0 ? at : -at - 1;
+        }
+
+        private static int[] insert(int[] array, int at, int value) {
+            var result = new int[array.length + 1];
+            System.arraycopy(array, 0, result, 0, at);
+            result[at] = value;
+            System.arraycopy(array, at, result, at + 1, array.length - at);
+            return result;
+        }
+
+        private static int[] remove(int[] array, int at) {
+            var result = new int[array.length - 1];
+            System.arraycopy(array, 0, result, 0, at);
+            System.arraycopy(array, at + 1, result, at, result.length - at);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.sosuisha;
+
+import javafx.scene.Scene;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Timings of the application startup.
+ * <p>
+ * Milestones are measured from the start of the JVM process, so they include
+ * JVM and JavaFX toolkit startup. Stages are the durations of the individual
+ * startup steps, some of which run in parallel.
+ * <p>
+ * The two milestones to track are time-to-first-pixel (the first pulse of the
+ * splash window) and time-to-interactive (the first pulse of the main window):
+ *
+ * <pre>
+ * var timings = StartupTimings.getDefault();
+ * timings.getTimeToFirstPixel().ifPresent(d -&gt; System.out.println("First pixel: " + d.toMillis() + " ms"));
+ * timings.getTimeToInteractive().ifPresent(d -&gt; System.out.println("Interactive: " + d.toMillis() + " ms"));
+ * </pre>
+ * <p>
+ * The App also logs a summary at DEBUG level when the main window is shown.
+ */
+public final class StartupTimings {
+    /** Milestone name of the first pulse of the splash window. */
+    public static final String FIRST_PIXEL = "first-pixel";
+    /** Milestone name of the first pulse of the main window. */
+    public static final String INTERACTIVE = "interactive";
+
+    private static final StartupTimings DEFAULT = new StartupTimings();
+
+    private final Instant processStart = ProcessHandle.current().info().startInstant().orElseGet(Instant::now);
+    private final Map<String, Duration> milestones = new LinkedHashMap<>();
+    private final Map<String, Duration> stages = new LinkedHashMap<>();
+
+    /**
+     * Returns the timings of this application.
+     *
+     * @return the shared instance
+     */
+    public static StartupTimings getDefault() {
+        return DEFAULT;
+    }
+
+    private StartupTimings() {
+    }
+
+    /**
+     * Records a milestone at the current time.
+     *
+     * @param name the milestone name
+     */
+    synchronized void milestone(String name) {
+        milestones.putIfAbsent(name, Duration.between(processStart, Instant.now()));
+    }
+
+    /**
+     * Records a milestone at the first pulse that lays out the Scene,
+     * i.e. when it is about to be rendered for the first time.
+     *
+     * @param name  the milestone name
+     * @param scene the Scene
+     * @param then  called on the FX Application Thread after recording
+     */
+    void milestoneOnFirstPulse(String name, Scene scene, Runnable then) {
+        var listener = new Runnable() {
+            @Override
+            public void run() {
+                scene.removePostLayoutPulseListener(this);
+                milestone(name);
+                then.run();
+            }
+        };
+        scene.addPostLayoutPulseListener(listener);
+    }
+
+    /**
+     * Runs a startup stage and records its duration.
+     *
+     * @param <T>   the result type
+     * @param name  the stage name
+     * @param stage the stage
+     * @return a supplier that runs the stage and returns its result
+     */
+    <T> Supplier<T> timed(String name, Supplier<T> stage) {
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                return stage.get();
+            } finally {
+                record(name, Duration.ofNanos(System.nanoTime() - start));
+            }
+        };
+    }
+
+    /**
+     * Records the duration of a startup stage.
+     *
+     * @param name     the stage name
+     * @param duration the duration
+     */
+    synchronized void record(String name, Duration duration) {
+        stages.put(name, duration);
+    }
+
+    /**
+     * Returns the time from process start to the first frame of the splash window.
+     *
+     * @return the duration, or empty if no window has been shown yet
+     */
+    public Optional<Duration> getTimeToFirstPixel() {
+        return getMilestone(FIRST_PIXEL);
+    }
+
+    /**
+     * Returns the time from process start to the first frame of the main window.
+     *
+     * @return the duration, or empty if the main window has not been shown yet
+     */
+    public Optional<Duration> getTimeToInteractive() {
+        return getMilestone(INTERACTIVE);
+    }
+
+    /**
+     * Returns the time from process start to a milestone.
+     *
+     * @param name the milestone name
+     * @return the duration, or empty if the milestone has not been reached
+     */
+    public synchronized Optional<Duration> getMilestone(String name) {
+        return Optional.ofNullable(milestones.get(name));
+    }
+
+    /**
+     * Returns all milestones in the order they were reached.
+     *
+     * @return an unmodifiable map of milestone names to the time since process start
+     */
+    public synchronized Map<String, Duration> getMilestones() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(milestones));
+    }
+
+    /**
+     * Returns the durations of all startup stages in the order they finished.
+     *
+     * @return an unmodifiable map of stage names to durations
+     */
+    public synchronized Map<String, Duration> getStages() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(stages));
+    }
+
+    @Override
+    public synchronized String toString() {
+        var sb = new StringBuilder("Startup timings:");
+        milestones.forEach((name, d) -> sb.append("\n  ").append(name).append(" at ").append(d.toMillis()).append(" ms"));
+        stages.forEach((name, d) -> sb.append("\n  ").append(name).append(" took ").append(d.toMillis()).append(" ms"));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,336 @@
+package com.sosuisha;
+
+import javafx.css.CssParser;
+import javafx.css.Selector;
+import javafx.css.Styleable;
+import javafx.css.Stylesheet;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of the stylesheets used by {@link SceneBuilder}.
+ * <p>
+ * Stylesheets are identified by their normalized URL, so a sheet passed to
+ * several SceneBuilders, or twice to one, is added to a Scene only once and
+ * JavaFX parses it only once. Global stylesheets are added to every Scene
+ * built by a SceneBuilder, before the Scene's own stylesheets:
+ *
+ * <pre>
+ * StylesheetRegistry.getDefault().addGlobal("/com/example/common.css");
+ * </pre>
+ * <p>
+ * At build time, StylesheetCompiler of src/tools converts each .css file
+ * into a binary .bss file, which JavaFX loads instead of parsing the CSS.
+ * <p>
+ * The registry also reports how long each stylesheet takes to load, and
+ * with {@link #profile(Scene)} how long its selectors take to match the
+ * nodes of a Scene, to find slow selectors:
+ *
+ * <pre>
+ * var registry = StylesheetRegistry.getDefault();
+ * registry.getStats().forEach(System.out::println);
+ * registry.profile(scene).stream().limit(10).forEach(System.out::println);
+ * </pre>
+ */
+public final class StylesheetRegistry {
+    private static final StylesheetRegistry DEFAULT = new StylesheetRegistry();
+    private static final System.Logger LOGGER = System.getLogger(StylesheetRegistry.class.getName());
+
+    /**
+     * The load statistics of a stylesheet.
+     *
+     * @param url        the normalized URL of the stylesheet
+     * @param binary     whether it was loaded from a .bss file
+     * @param loadNanos  the time to load and parse it
+     * @param rules      the number of rules
+     * @param selectors  the number of selectors
+     * @param matchNanos the time its selectors took to match the nodes in the
+     *                   last {@link #profile(Scene)}, or -1 if not profiled
+     */
+    public record StylesheetStats(String url, boolean binary, long loadNanos, int rules, int selectors,
+            long matchNanos) {
+    }
+
+    /**
+     * The matching cost of a selector, measured by {@link #profile(Scene)}.
+     *
+     * @param url        the normalized URL of the stylesheet
+     * @param selector   the selector
+     * @param nodes      the number of nodes tested
+     * @param matches    the number of nodes it applies to
+     * @param matchNanos the time to test all nodes
+     */
+    public record SelectorStats(String url, String selector, int nodes, int matches, long matchNanos) {
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final List<String> globalStylesheets = new CopyOnWriteArrayList<>();
+
+    /**
+     * Returns the registry shared by all SceneBuilders.
+     *
+     * @return the default registry
+     */
+    public static StylesheetRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    private StylesheetRegistry() {
+    }
+
+    /**
+     * Registers a stylesheet.
+     *
+     * @param url the URL of the stylesheet
+     * @return the normalized URL, to be added to a Scene
+     */
+    public String register(URL url) {
+        return register(Objects.requireNonNull(url, "Url must not be null.").toExternalForm());
+    }
+
+    String register(String url) {
+        var normalized = normalize(url);
+        entries.computeIfAbsent(normalized, Entry::new);
+        return normalized;
+    }
+
+    private static String normalize(String url) {
+        try {
+            return URI.create(url).normalize().toString();
+        } catch (IllegalArgumentException e) {
+            // Not a valid URI, e.g. a jar: URL with spaces; use it as is.
+            return url;
+        }
+    }
+
+    /**
+     * Adds a stylesheet to every Scene built by a SceneBuilder from now on.
+     *
+     * @param resourceName the path to the CSS resource
+     * @throws IllegalArgumentException if the resource is not found
+     */
+    public void addGlobal(String resourceName) {
+        var url = StylesheetRegistry.class.getResource(resourceName);
+        if (url == null) {
+            throw new IllegalArgumentException("CSS resource not found: " + resourceName);
+        }
+        addGlobal(url);
+    }
+
+    /**
+     * Adds a stylesheet to every Scene built by a SceneBuilder from now on.
+     * Adding it again has no effect.
+     *
+     * @param url the URL of the stylesheet
+     */
+    public void addGlobal(URL url) {
+        var normalized = register(url);
+        synchronized (globalStylesheets) {
+            if (!globalStylesheets.contains(normalized)) {
+                globalStylesheets.add(normalized);
+            }
+        }
+    }
+
+    /**
+     * Stops adding a stylesheet to new Scenes. Scenes already built keep it.
+     *
+     * @param url the URL of the stylesheet
+     * @return true if it was a global stylesheet
+     */
+    public boolean removeGlobal(URL url) {
+        return globalStylesheets.remove(normalize(url.toExternalForm()));
+    }
+
+    /**
+     * Returns the global stylesheets in the order they are added to a Scene.
+     *
+     * @return an unmodifiable list of normalized URLs
+     */
+    public List<String> getGlobalStylesheets() {
+        return List.copyOf(globalStylesheets);
+    }
+
+    /**
+     * Returns the stylesheets of a Scene: the global stylesheets followed by
+     * its own, each once.
+     *
+     * @param stylesheets the normalized URLs of the Scene's own stylesheets
+     * @return the stylesheets to add to the Scene
+     */
+    List<String> stylesheetsFor(List<String> stylesheets) {
+        if (globalStylesheets.isEmpty()) {
+            return stylesheets;
+        }
+        var result = new LinkedHashSet<>(globalStylesheets);
+        result.addAll(stylesheets);
+        return List.copyOf(result);
+    }
+
+    /**
+     * Loads a stylesheet the way JavaFX does, from the .bss file next to it if
+     * there is one, and records how long it took. This loads the CSS classes
+     * ahead of the first Scene; a stylesheet is only loaded once.
+     *
+     * @param url the URL of the stylesheet
+     * @return the load statistics
+     * @throws IOException if the stylesheet cannot be read
+     */
+    public StylesheetStats preload(URL url) throws IOException {
+        return preload(url.toExternalForm());
+    }
+
+    StylesheetStats preload(String url) throws IOException {
+        var normalized = register(url);
+        var entry = entries.get(normalized);
+        entry.load();
+        return entry.stats();
+    }
+
+    /**
+     * Returns the statistics of the loaded stylesheets.
+     *
+     * @return the statistics, slowest to load first
+     */
+    public List<StylesheetStats> getStats() {
+        var result = new ArrayList<StylesheetStats>();
+        for (var entry : entries.values()) {
+            var stats = entry.stats();
+            if (stats != null) {
+                result.add(stats);
+            }
+        }
+        result.sort(Comparator.comparingLong(StylesheetStats::loadNanos).reversed());
+        return result;
+    }
+
+    /**
+     * Measures how long each selector of the Scene's stylesheets takes to
+     * match the nodes of the Scene.
+     * <p>
+     * Every selector is tested against every node, so the total is an upper
+     * bound of what JavaFX spends on matching; JavaFX skips selectors whose
+     * style classes a node does not have. Stylesheets are loaded first if
+     * needed. Call it on the FX Application Thread once the Scene is shown.
+     *
+     * @param scene the Scene
+     * @return the selectors, slowest first
+     * @throws IOException if a stylesheet cannot be read
+     */
+    public List<SelectorStats> profile(Scene scene) throws IOException {
+        var nodes = new ArrayList<Styleable>();
+        collect(scene.getRoot(), nodes);
+        var result = new ArrayList<SelectorStats>();
+        for (var url : scene.getStylesheets()) {
+            var entry = entries.get(register(url));
+            entry.load();
+            long sheetNanos = 0;
+            for (var rule : entry.stylesheet.getRules()) {
+                for (Selector selector : rule.getSelectors()) {
+                    int matches = 0;
+                    long start = System.nanoTime();
+                    for (var node : nodes) {
+                        if (selector.applies(node)) {
+                            matches++;
+                        }
+                    }
+                    long nanos = System.nanoTime() - start;
+                    sheetNanos += nanos;
+                    result.add(new SelectorStats(entry.url, selector.toString(), nodes.size(), matches, nanos));
+                }
+            }
+            entry.matchNanos = sheetNanos;
+        }
+        result.sort(Comparator.comparingLong(SelectorStats::matchNanos).reversed());
+        return result;
+    }
+
+    private static void collect(Node node, List<Styleable> nodes) {
+        nodes.add(node);
+        if (node instanceof Parent parent) {
+            for (var child : parent.getChildrenUnmodifiable()) {
+                collect(child, nodes);
+            }
+        }
+    }
+
+    /**
+     * Clears the statistics and the loaded stylesheets. Global stylesheets are kept.
+     */
+    public void reset() {
+        entries.clear();
+    }
+
+    /**
+     * A registered stylesheet.
+     */
+    private static final class Entry {
+        private final String url;
+        private volatile Stylesheet stylesheet;
+        private boolean binary;
+        private long loadNanos;
+        private volatile long matchNanos = -1;
+
+        Entry(String url) {
+            this.url = url;
+        }
+
+        synchronized void load() throws IOException {
+            if (stylesheet != null) {
+                return;
+            }
+            long start = System.nanoTime();
+            var loaded = loadBinary();
+            binary = loaded != null;
+            if (loaded == null) {
+                loaded = new CssParser().parse(URI.create(url).toURL());
+            }
+            loadNanos = System.nanoTime() - start;
+            stylesheet = loaded;
+        }
+
+        /**
+         * Loads the .bss file next to the .css file, like StyleManager.
+         * Returns null if there is none or binary stylesheets are disabled.
+         */
+        private Stylesheet loadBinary() {
+            if (!url.endsWith(".css") || !Boolean.parseBoolean(System.getProperty("binary.css", "true"))) {
+                return null;
+            }
+            var bss = url.substring(0, url.length() - ".css".length()) + ".bss";
+            try (InputStream in = URI.create(bss).toURL().openStream()) {
+                return Stylesheet.loadBinary(in);
+            } catch (FileNotFoundException e) {
+                return null;
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.log(System.Logger.Level.DEBUG, "Cannot load " + bss, e);
+                return null;
+            }
+        }
+
+        synchronized StylesheetStats stats() {
+            if (stylesheet == null) {
+                return null;
+            }
+            int selectors = 0;
+            for (var rule : stylesheet.getRules()) {
+                selectors += rule.getSelectors().size();
+            }
+            return new StylesheetStats(url, binary, loadNanos, stylesheet.getRules().size(), selectors, matchNanos);
+        }
+    }
+}
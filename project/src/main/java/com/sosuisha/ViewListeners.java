@@ -0,0 +1,187 @@
+package com.sosuisha;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.beans.WeakInvalidationListener;
+import javafx.beans.property.Property;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.beans.value.WeakChangeListener;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.WeakListChangeListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The listeners and bindings that a view registers on objects that outlive
+ * it, such as the {@link Model}.
+ * <p>
+ * Listeners added through this class are registered as weak listeners:
+ * the observed object only holds a weak reference to them, and this object
+ * holds the strong one. So a view that is never disposed can still be
+ * garbage collected once its window is gone, instead of being kept alive by
+ * the Model. {@link #dispose()} removes the listeners and unbinds the
+ * bindings right away, and runs the actions registered with
+ * {@link #onDispose(Runnable)}.
+ * <p>
+ * {@link SceneBuilder#trackListeners()} passes an instance to the controller
+ * constructor, and {@link SceneHandle#dispose()} disposes it.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * public MainController(Model model, ViewListeners listeners) {
+ *     this.model = model;
+ *     this.listeners = listeners;
+ * }
+ *
+ * &#64;FXML
+ * private void initialize() {
+ *     listeners.bind(messageLabel.textProperty(), model.messageProperty());
+ *     listeners.addListener(model.nameProperty(), (o, oldName, newName) -&gt; highlight());
+ * }
+ * </pre>
+ * <p>
+ * Must be used on the FX Application Thread, or during the build of the view.
+ */
+public final class ViewListeners {
+    private static final System.Logger LOGGER = System.getLogger(ViewListeners.class.getName());
+
+    private final List<Runnable> removals = new ArrayList<>();
+    private final List<Object> listeners = new ArrayList<>();
+    private boolean disposed;
+
+    /**
+     * Adds a change listener that is removed when the view is disposed.
+     *
+     * @param <T>        the value type
+     * @param observable the observed value
+     * @param listener   the listener
+     */
+    public <T> void addListener(ObservableValue<T> observable, ChangeListener<? super T> listener) {
+        checkNotDisposed();
+        var weak = new WeakChangeListener<>(listener);
+        observable.addListener(weak);
+        track(listener, () -> observable.removeListener(weak));
+    }
+
+    /**
+     * Adds an invalidation listener that is removed when the view is disposed.
+     *
+     * @param observable the observed object
+     * @param listener   the listener
+     */
+    public void addListener(Observable observable, InvalidationListener listener) {
+        checkNotDisposed();
+        var weak = new WeakInvalidationListener(listener);
+        observable.addListener(weak);
+        track(listener, () -> observable.removeListener(weak));
+    }
+
+    /**
+     * Adds a list change listener that is removed when the view is disposed.
+     * It is not an overload of {@code addListener}, since a lambda would be
+     * ambiguous between a list change listener and an invalidation listener.
+     *
+     * @param <E>      the element type
+     * @param list     the observed list
+     * @param listener the listener
+     */
+    public <E> void addListChangeListener(ObservableList<E> list, ListChangeListener<? super E> listener) {
+        checkNotDisposed();
+        var weak = new WeakListChangeListener<>(listener);
+        list.addListener(weak);
+        track(listener, () -> list.removeListener(weak));
+    }
+
+    /**
+     * Binds the property of the view, which is unbound when the view is disposed.
+     *
+     * @param <T>        the value type
+     * @param property   the property of the view
+     * @param observable the observed value
+     */
+    public <T> void bind(Property<T> property, ObservableValue<? extends T> observable) {
+        checkNotDisposed();
+        property.bind(observable);
+        track(null, property::unbind);
+    }
+
+    /**
+     * Binds the properties bidirectionally until the view is disposed.
+     *
+     * @param <T>      the value type
+     * @param property the property of the view
+     * @param other    the other property
+     */
+    public <T> void bindBidirectional(Property<T> property, Property<T> other) {
+        checkNotDisposed();
+        property.bindBidirectional(other);
+        track(null, () -> property.unbindBidirectional(other));
+    }
+
+    /**
+     * Runs the action when the view is disposed, e.g. to close a resource.
+     *
+     * @param action the action
+     */
+    public void onDispose(Runnable action) {
+        checkNotDisposed();
+        track(null, Objects.requireNonNull(action, "action must not be null."));
+    }
+
+    /**
+     * Returns the number of listeners, bindings and actions being tracked.
+     *
+     * @return the number of registrations
+     */
+    public int size() {
+        return removals.size();
+    }
+
+    /**
+     * Returns whether {@link #dispose()} has been called.
+     *
+     * @return true if disposed
+     */
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    /**
+     * Removes all listeners, unbinds all bindings and runs the dispose
+     * actions, in the reverse order of registration. Calling it again has no effect.
+     */
+    public void dispose() {
+        if (disposed) {
+            return;
+        }
+        disposed = true;
+        for (int i = removals.size() - 1; i >= 0; i--) {
+            try {
+                removals.get(i).run();
+            } catch (RuntimeException e) {
+                // Keep releasing the others.
+                LOGGER.log(System.Logger.Level.WARNING, "Failed to release a listener", e);
+            }
+        }
+        removals.clear();
+        listeners.clear();
+    }
+
+    private void track(Object listener, Runnable removal) {
+        if (listener != null) {
+            // The observed object only holds a weak reference.
+            listeners.add(listener);
+        }
+        removals.add(removal);
+    }
+
+    private void checkNotDisposed() {
+        if (disposed) {
+            throw new IllegalStateException("The view has been disposed.");
+        }
+    }
+}
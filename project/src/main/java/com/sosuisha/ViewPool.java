@@ -0,0 +1,329 @@
+package com.sosuisha;
+
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of pre-built views for dialogs and other views that are opened and
+ * closed often.
+ * <p>
+ * {@link #acquire()} returns an idle view, with its Scene, root node and
+ * controller, or builds one if the pool is empty. {@link View#close()} gives
+ * the view back: its controller is reset if it implements
+ * {@link Resettable}, the tasks of its {@link ViewTasks} are cancelled, and
+ * the view is kept for the next {@link #acquire()} unless the pool is full.
+ * The pool is refilled up to its size on a virtual thread, so that the next
+ * acquire is usually served without building anything.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * var dialogs = SceneBuilder.fromFxml("edit.fxml")
+ *         .css("style.css")
+ *         .newController(model)
+ *         .pool(EditController.class, 2);
+ * dialogs.prefill();
+ * ...
+ * var view = dialogs.acquire();
+ * view.controller().edit(item);
+ * dialogStage.setScene(view.scene());
+ * dialogStage.setOnHidden(e -&gt; view.close());
+ * dialogStage.show();
+ * ...
+ * System.out.println(dialogs.getStats());
+ * </pre>
+ *
+ * @param <C> the controller type
+ */
+public final class ViewPool<C> {
+    private static final System.Logger LOGGER = System.getLogger(ViewPool.class.getName());
+
+    /** Refills pools on virtual threads. */
+    private static final Executor EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * A controller that can be reused by a pooled view.
+     */
+    public interface Resettable {
+        /**
+         * Restores the state of a newly built view, e.g. clears the fields of
+         * a dialog. Called on the FX Application Thread when the view is
+         * given back to its pool.
+         */
+        void reset();
+    }
+
+    /**
+     * Counters of a pool since it was created.
+     *
+     * @param hits      the number of acquires served by an idle view
+     * @param misses    the number of acquires that had to build a view
+     * @param returned  the number of views given back and kept
+     * @param discarded the number of views given back to a full pool
+     * @param refilled  the number of views built in the background
+     * @param failures  the number of background builds that failed
+     * @param idle      the number of idle views now
+     */
+    public record Stats(long hits, long misses, long returned, long discarded, long refilled, long failures,
+            int idle) {
+        /**
+         * Returns the fraction of acquires served by an idle view.
+         *
+         * @return the hit rate from 0 to 1, or 0 if nothing was acquired
+         */
+        public double hitRate() {
+            long total = hits + misses;
+            return total > 0 ? (double) hits / total : 0;
+        }
+    }
+
+    /**
+     * A view acquired from a pool.
+     *
+     * @param <C> the controller type
+     */
+    public static final class View<C> implements AutoCloseable {
+        private final ViewPool<C> pool;
+        private final Scene scene;
+        private final C controller;
+        private final ViewTasks tasks;
+        private final ViewListeners listeners;
+        private final AtomicBoolean acquired = new AtomicBoolean();
+
+        private View(ViewPool<C> pool, Scene scene, C controller, ViewTasks tasks, ViewListeners listeners) {
+            this.pool = pool;
+            this.scene = scene;
+            this.controller = controller;
+            this.tasks = tasks;
+            this.listeners = listeners;
+        }
+
+        /**
+         * Returns the Scene of the view, with the stylesheets of the builder.
+         *
+         * @return the Scene
+         */
+        public Scene scene() {
+            return scene;
+        }
+
+        /**
+         * Returns the root node of the view.
+         *
+         * @return the root node
+         */
+        public Parent root() {
+            return scene.getRoot();
+        }
+
+        /**
+         * Returns the controller of the view.
+         *
+         * @return the controller, or null if the FXML has no fx:controller
+         */
+        public C controller() {
+            return controller;
+        }
+
+        /**
+         * Gives the view back to its pool. Call it on the FX Application
+         * Thread after the window of the view has been hidden. Closing a
+         * view that has already been given back has no effect.
+         */
+        @Override
+        public void close() {
+            if (acquired.compareAndSet(true, false)) {
+                pool.release(this);
+            }
+        }
+    }
+
+    private final SceneBuilder builder;
+    private final Class<C> controllerType;
+    private final ConcurrentLinkedDeque<View<C>> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder returned = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder refilled = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile int size;
+
+    /**
+     * Creates a pool. Usually called through {@link SceneBuilder#pool(Class, int)}.
+     *
+     * @param builder        the builder of the views
+     * @param controllerType the class of the fx:controller
+     * @param size           the maximum number of idle views to keep
+     * @throws IllegalArgumentException if size is negative
+     */
+    public ViewPool(SceneBuilder builder, Class<C> controllerType, int size) {
+        this.builder = Objects.requireNonNull(builder, "builder must not be null.");
+        this.controllerType = Objects.requireNonNull(controllerType, "controllerType must not be null.");
+        setSize(size);
+    }
+
+    /**
+     * Sets the maximum number of idle views to keep. Excess idle views are discarded.
+     *
+     * @param size the pool size
+     * @throws IllegalArgumentException if size is negative
+     */
+    public void setSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must not be negative: " + size);
+        }
+        this.size = size;
+        while (idleCount.get() > size) {
+            var view = idle.pollLast();
+            if (view == null) {
+                break;
+            }
+            idleCount.decrementAndGet();
+            discard(view);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns an idle view, or builds one if there is none.
+     * The pool is then refilled in the background.
+     * The Scene is not shown yet, so it may be called on any thread.
+     *
+     * @return the view
+     * @throws IOException if building the view fails
+     */
+    public View<C> acquire() throws IOException {
+        var view = idle.pollFirst();
+        if (view != null) {
+            idleCount.decrementAndGet();
+            hits.increment();
+        } else {
+            misses.increment();
+            view = newView();
+        }
+        view.acquired.set(true);
+        refill();
+        return view;
+    }
+
+    /**
+     * Fills the pool up to its size in the background.
+     */
+    public void prefill() {
+        refill();
+    }
+
+    /**
+     * Discards the idle views. The counters are kept.
+     */
+    public void clear() {
+        View<C> view;
+        while ((view = idle.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            discard(view);
+        }
+    }
+
+    private void release(View<C> view) {
+        if (view.controller instanceof Resettable resettable) {
+            try {
+                resettable.reset();
+            } catch (RuntimeException e) {
+                // Do not reuse a view in an unknown state.
+                LOGGER.log(System.Logger.Level.WARNING, "Failed to reset " + controllerType.getName(), e);
+                discarded.increment();
+                discard(view);
+                return;
+            }
+        }
+        if (view.tasks != null) {
+            view.tasks.cancelAll();
+        }
+        if (idleCount.incrementAndGet() <= size) {
+            idle.addFirst(view);
+            returned.increment();
+        } else {
+            idleCount.decrementAndGet();
+            discarded.increment();
+            discard(view);
+        }
+    }
+
+    private void refill() {
+        if (idleCount.get() >= size || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+        EXECUTOR.execute(() -> {
+            try {
+                while (idleCount.get() < size) {
+                    var view = newView();
+                    idleCount.incrementAndGet();
+                    idle.addLast(view);
+                    refilled.increment();
+                }
+            } catch (IOException | RuntimeException e) {
+                failures.increment();
+                LOGGER.log(System.Logger.Level.WARNING, "Failed to refill the pool of " + controllerType.getName(), e);
+            } finally {
+                refilling.set(false);
+            }
+        });
+    }
+
+    private View<C> newView() throws IOException {
+        var built = builder.buildReusable();
+        try {
+            return new View<>(this, built.scene(), controllerType.cast(built.controller()), built.tasks(),
+                    built.listeners());
+        } catch (ClassCastException e) {
+            if (built.tasks() != null) {
+                built.tasks().close();
+            }
+            if (built.listeners() != null) {
+                built.listeners().dispose();
+            }
+            throw new IllegalArgumentException("The controller is not a " + controllerType.getName(), e);
+        }
+    }
+
+    private static void discard(View<?> view) {
+        if (view.tasks != null) {
+            view.tasks.close();
+        }
+        if (view.listeners != null) {
+            // The listeners of a pooled view are kept across reuses and only removed here.
+            view.listeners.dispose();
+        }
+    }
+
+    /**
+     * Returns the counters of this pool.
+     *
+     * @return a snapshot of the counters
+     */
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), returned.sum(), discarded.sum(), refilled.sum(),
+                failures.sum(), idleCount.get());
+    }
+
+    @Override
+    public String toString() {
+        var stats = getStats();
+        return "ViewPool[" + controllerType.getSimpleName() + ", size=" + size + ", idle=" + stats.idle()
+                + ", hitRate=" + String.format("%.2f", stats.hitRate()) + "]";
+    }
+}
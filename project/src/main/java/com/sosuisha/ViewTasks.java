@@ -0,0 +1,369 @@
+package com.sosuisha;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.WritableValue;
+import javafx.event.EventHandler;
+import javafx.scene.Scene;
+import javafx.stage.Window;
+import javafx.stage.WindowEvent;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs background work of a view on virtual threads.
+ * <p>
+ * Each task runs on its own virtual thread, and at most
+ * {@code maxConcurrency} tasks of the view run at once; the others wait for
+ * a permit. Results and progress are delivered on the FX Application Thread,
+ * so a controller can update its nodes and the Model from them directly.
+ * When the view is closed, all its tasks are cancelled and their threads are
+ * interrupted.
+ * <p>
+ * {@link SceneBuilder#tasks(int)} creates an instance for each built view and
+ * passes it to the controller constructor after the arguments of
+ * {@link SceneBuilder#newController(Object...)}. The view is closed when the
+ * window of its Scene is hidden, or when the Scene is replaced in its window.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * public MainController(Model model, ViewTasks tasks) { ... }
+ *
+ * var job = tasks.submit(progress -&gt; {
+ *     for (int i = 0; i &lt; files.size(); i++) {
+ *         importFile(files.get(i));
+ *         progress.update(i + 1, files.size());
+ *     }
+ *     return files.size();
+ * });
+ * progressBar.progressProperty().bind(job.progressProperty());
+ * job.result().thenAccept(count -&gt; statusLabel.setText(count + " files imported"));
+ * </pre>
+ */
+public final class ViewTasks implements AutoCloseable {
+    /** The default maximum number of tasks of a view that run at once. */
+    public static final int DEFAULT_MAX_CONCURRENCY = 4;
+
+    /** Starts each task on its own virtual thread. */
+    private static final Executor EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Work that runs off the FX Application Thread.
+     *
+     * @param <T> the result type
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        /**
+         * Performs the work. Implementations should stop early when
+         * {@link Progress#isCancelled()} returns true or the thread is
+         * interrupted.
+         *
+         * @param progress the progress reporter of the task
+         * @return the result
+         * @throws Exception if the work fails
+         */
+        T call(Progress progress) throws Exception;
+    }
+
+    /**
+     * Reports the progress of a task. May be called on any thread; the
+     * values are coalesced to at most one update per pulse.
+     */
+    public interface Progress {
+        /**
+         * Reports the amount of work done.
+         *
+         * @param done  the amount of work done
+         * @param total the total amount of work
+         */
+        void update(double done, double total);
+
+        /**
+         * Reports a message describing the current step.
+         *
+         * @param message the message
+         */
+        void message(String message);
+
+        /**
+         * Returns whether the task has been cancelled.
+         *
+         * @return true if the task has been cancelled
+         */
+        boolean isCancelled();
+    }
+
+    /**
+     * A submitted task.
+     *
+     * @param <T> the result type
+     */
+    public static final class Job<T> implements Progress {
+        private final ReadOnlyDoubleWrapper progress = new ReadOnlyDoubleWrapper(this, "progress", -1);
+        private final ReadOnlyStringWrapper message = new ReadOnlyStringWrapper(this, "message", "");
+        /**
+         * Sets the progress posted by the task, unless the job is done. The
+         * completion is not delivered through the updater, so a progress
+         * value still pending in the updater may arrive after it.
+         */
+        private final WritableValue<Number> postedProgress = new WritableValue<>() {
+            @Override
+            public Number getValue() {
+                return progress.getValue();
+            }
+
+            @Override
+            public void setValue(Number value) {
+                if (!result.isDone()) {
+                    progress.setValue(value);
+                }
+            }
+        };
+        private final AtomicReference<Thread> worker = new AtomicReference<>();
+        private final CompletableFuture<T> result = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                var cancelled = super.cancel(mayInterruptIfRunning);
+                var thread = worker.get();
+                if (cancelled && thread != null) {
+                    thread.interrupt();
+                }
+                return cancelled;
+            }
+        };
+
+        private Job() {
+        }
+
+        /**
+         * Returns the result of the task. The future completes on the FX
+         * Application Thread, so the dependent actions registered before
+         * completion, like {@code thenAccept}, run on the FX thread too.
+         *
+         * @return the future of the result
+         */
+        public CompletableFuture<T> result() {
+            return result;
+        }
+
+        /**
+         * Cancels the task and interrupts its thread.
+         *
+         * @return true if the task was cancelled, false if it had already completed
+         */
+        public boolean cancel() {
+            return result.cancel(true);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return result.isCancelled();
+        }
+
+        /**
+         * The fraction of the work done, from 0 to 1, or -1 if unknown.
+         * Changes on the FX Application Thread.
+         *
+         * @return the progress property
+         */
+        public ReadOnlyDoubleProperty progressProperty() {
+            return progress.getReadOnlyProperty();
+        }
+
+        /**
+         * The message reported by the task. Changes on the FX Application Thread.
+         *
+         * @return the message property
+         */
+        public ReadOnlyStringProperty messageProperty() {
+            return message.getReadOnlyProperty();
+        }
+
+        @Override
+        public void update(double done, double total) {
+            FxUpdater.getDefault().post(postedProgress, total > 0 ? Math.min(Math.max(done / total, 0), 1) : -1);
+        }
+
+        @Override
+        public void message(String message) {
+            FxUpdater.getDefault().post(this.message, message);
+        }
+    }
+
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final Set<Job<?>> active = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * Creates the tasks of a view with {@link #DEFAULT_MAX_CONCURRENCY}.
+     */
+    public ViewTasks() {
+        this(DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * Creates the tasks of a view.
+     *
+     * @param maxConcurrency the maximum number of tasks that run at once
+     * @throws IllegalArgumentException if maxConcurrency is not positive
+     */
+    public ViewTasks(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    /**
+     * Runs the work on a virtual thread. May be called on any thread.
+     * If the view is already closed, the returned job is cancelled.
+     *
+     * @param <T>  the result type
+     * @param work the work
+     * @return the job of the work
+     */
+    public <T> Job<T> submit(Work<T> work) {
+        Objects.requireNonNull(work, "work must not be null.");
+        var job = new Job<T>();
+        active.add(job);
+        job.result.whenComplete((r, e) -> active.remove(job));
+        if (closed) {
+            job.cancel();
+            return job;
+        }
+        EXECUTOR.execute(() -> run(job, work));
+        return job;
+    }
+
+    /**
+     * Runs the task without a result on a virtual thread. May be called on any thread.
+     *
+     * @param task the task
+     * @return the job of the task
+     */
+    public Job<Void> run(Runnable task) {
+        Objects.requireNonNull(task, "task must not be null.");
+        return submit(progress -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private <T> void run(Job<T> job, Work<T> work) {
+        if (job.isCancelled()) {
+            return;
+        }
+        job.worker.set(Thread.currentThread());
+        boolean acquired = false;
+        try {
+            if (job.isCancelled()) {
+                return;
+            }
+            permits.acquire();
+            acquired = true;
+            if (job.isCancelled()) {
+                throw new CancellationException();
+            }
+            var value = work.call(job);
+            Platform.runLater(() -> {
+                job.progress.set(1);
+                job.result.complete(value);
+            });
+        } catch (Throwable e) {
+            if (!job.isCancelled()) {
+                Platform.runLater(() -> job.result.completeExceptionally(e));
+            }
+        } finally {
+            job.worker.set(null);
+            if (acquired) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of tasks that run at once.
+     *
+     * @return the maximum concurrency
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Returns the number of tasks submitted and not completed yet.
+     *
+     * @return the number of active tasks
+     */
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * Returns whether the view has been closed.
+     *
+     * @return true if closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Cancels the active tasks of the view and interrupts their threads.
+     * Unlike {@link #close()}, tasks can still be submitted afterwards,
+     * e.g. by a view that is closed and opened again.
+     */
+    public void cancelAll() {
+        for (var job : active) {
+            job.cancel();
+        }
+    }
+
+    /**
+     * Cancels all tasks of the view and interrupts their threads.
+     * Tasks submitted afterwards are cancelled immediately.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        cancelAll();
+    }
+
+    /**
+     * Closes this when the Scene is closed, i.e. when its window is hidden or
+     * the Scene is removed from its window.
+     *
+     * @param scene the Scene of the view
+     */
+    void closeWith(Scene scene) {
+        EventHandler<WindowEvent> onHidden = event -> close();
+        ChangeListener<Window> onWindow = (observable, oldWindow, newWindow) -> {
+            if (oldWindow != null) {
+                oldWindow.removeEventHandler(WindowEvent.WINDOW_HIDDEN, onHidden);
+                close();
+            }
+            if (newWindow != null) {
+                newWindow.addEventHandler(WindowEvent.WINDOW_HIDDEN, onHidden);
+            }
+        };
+        scene.windowProperty().addListener(onWindow);
+        if (scene.getWindow() != null) {
+            scene.getWindow().addEventHandler(WindowEvent.WINDOW_HIDDEN, onHidden);
+        }
+    }
+}
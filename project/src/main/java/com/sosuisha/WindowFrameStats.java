@@ -0,0 +1,94 @@
+package com.sosuisha;
+
+/**
+ * Snapshot of the pulses of one window, see {@link FrameMonitor}.
+ * <p>
+ * The getters make this class usable as an open type in {@link FrameMonitorMXBean}.
+ * The scene time of a pulse is the time of the CSS and layout passes of the
+ * window's Scene. Percentiles are computed over the most recent pulses.
+ */
+public final class WindowFrameStats {
+    private final String window;
+    private final double fps;
+    private final long pulseCount;
+    private final long pulseP50Micros;
+    private final long pulseP95Micros;
+    private final long pulseP99Micros;
+    private final long pulseMaxMicros;
+    private final int nodeCount;
+
+    WindowFrameStats(String window, double fps, long pulseCount, long pulseP50Micros, long pulseP95Micros,
+            long pulseP99Micros, long pulseMaxMicros, int nodeCount) {
+        this.window = window;
+        this.fps = fps;
+        this.pulseCount = pulseCount;
+        this.pulseP50Micros = pulseP50Micros;
+        this.pulseP95Micros = pulseP95Micros;
+        this.pulseP99Micros = pulseP99Micros;
+        this.pulseMaxMicros = pulseMaxMicros;
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * @return the title of the window, or its class name if it has no title, with an identity hash
+     */
+    public String getWindow() {
+        return window;
+    }
+
+    /**
+     * @return the pulses per second of the window in the last full second
+     */
+    public double getFps() {
+        return fps;
+    }
+
+    /**
+     * @return the number of pulses since the window was shown or the monitor was reset
+     */
+    public long getPulseCount() {
+        return pulseCount;
+    }
+
+    /**
+     * @return the median time of the window's scene in a pulse, in microseconds
+     */
+    public long getPulseP50Micros() {
+        return pulseP50Micros;
+    }
+
+    /**
+     * @return the 95th percentile of the window's scene time in a pulse, in microseconds
+     */
+    public long getPulseP95Micros() {
+        return pulseP95Micros;
+    }
+
+    /**
+     * @return the 99th percentile of the window's scene time in a pulse, in microseconds
+     */
+    public long getPulseP99Micros() {
+        return pulseP99Micros;
+    }
+
+    /**
+     * @return the longest scene time in a recent pulse, in microseconds
+     */
+    public long getPulseMaxMicros() {
+        return pulseMaxMicros;
+    }
+
+    /**
+     * @return the number of nodes in the window's scene, counted about once per second
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %.0f fps, pulse p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms, %d nodes",
+                window, fps, pulseP50Micros / 1e3, pulseP95Micros / 1e3, pulseP99Micros / 1e3,
+                pulseMaxMicros / 1e3, nodeCount);
+    }
+}
@@ -0,0 +1,178 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Startup and memory comparison of the native executable with the JVM
+ * build, run by the native profile.
+ * <p>
+ * Starts the executable built by GluonFX and the jar of target/app several
+ * times each with --exit-after-startup, and prints the median time to first
+ * pixel and time to interactive, and the median peak resident set size.
+ * The peak RSS is read from /proc on Linux and sampled with ps on macOS; it
+ * is not measured on Windows.
+ * <p>
+ * Usage:
+ * java NativeImageComparison.java &lt;gluonfx dir&gt; &lt;executable name&gt; &lt;java&gt; &lt;jar&gt; [runs]
+ */
+public class NativeImageComparison {
+    static final String EXIT_AFTER_STARTUP = "--exit-after-startup";
+    static final Pattern MILESTONE = Pattern.compile("\\s*(\\S+) at (\\d+) ms");
+    static final Pattern VM_HWM = Pattern.compile("VmHWM:\\s+(\\d+) kB");
+    static final long SAMPLE_MILLIS = 10;
+
+    record Result(long firstPixel, long interactive, long peakRssKiB) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("Usage: NativeImageComparison <gluonfx dir> <executable name> <java> <jar> [runs]");
+            System.exit(1);
+        }
+        var executable = findExecutable(Path.of(args[0]), args[1]);
+        var jvmCommand = List.of(args[2], "-jar", args[3], EXIT_AFTER_STARTUP);
+        var nativeCommand = List.of(executable.toString(), EXIT_AFTER_STARTUP);
+        int runs = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+        // The first start warms up the OS file cache for both variants.
+        run(jvmCommand);
+        run(nativeCommand);
+
+        var jvm = new ArrayList<Result>();
+        var nativeImage = new ArrayList<Result>();
+        for (int i = 0; i < runs; i++) {
+            // Alternate to spread any drift of the machine evenly.
+            jvm.add(run(jvmCommand));
+            nativeImage.add(run(nativeCommand));
+        }
+
+        System.out.printf("%-24s %16s %16s %16s%n", "Median of " + runs + " runs", "first pixel", "interactive",
+                "peak RSS");
+        print("JVM", jvm);
+        print("native image", nativeImage);
+        long before = median(jvm.stream().map(Result::interactive).toList());
+        long after = median(nativeImage.stream().map(Result::interactive).toList());
+        System.out.printf("Time to interactive: %d ms -> %d ms (%+.1f%%)%n",
+                before, after, (after - before) * 100.0 / before);
+        long rssBefore = median(jvm.stream().map(Result::peakRssKiB).toList());
+        long rssAfter = median(nativeImage.stream().map(Result::peakRssKiB).toList());
+        if (rssBefore > 0 && rssAfter > 0) {
+            System.out.printf("Peak RSS: %d MiB -> %d MiB (%+.1f%%)%n",
+                    rssBefore / 1024, rssAfter / 1024, (rssAfter - rssBefore) * 100.0 / rssBefore);
+        }
+    }
+
+    static void print(String label, List<Result> results) {
+        long rss = median(results.stream().map(Result::peakRssKiB).toList());
+        System.out.printf("%-24s %13d ms %13d ms %16s%n", label,
+                median(results.stream().map(Result::firstPixel).toList()),
+                median(results.stream().map(Result::interactive).toList()),
+                rss > 0 ? rss / 1024 + " MiB" : "n/a");
+    }
+
+    static long median(List<Long> values) {
+        var sorted = values.stream().sorted().toList();
+        return sorted.get(sorted.size() / 2);
+    }
+
+    /**
+     * Finds the executable under the GluonFX output directory, whose
+     * subdirectory is named after the target, e.g. x86_64-linux.
+     */
+    static Path findExecutable(Path gluonfxDir, String name) throws IOException {
+        try (Stream<Path> paths = Files.walk(gluonfxDir)) {
+            return paths.filter(p -> Files.isRegularFile(p) && Files.isExecutable(p))
+                    .filter(p -> p.getFileName().toString().equals(name)
+                            || p.getFileName().toString().equals(name + ".exe"))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No executable " + name + " in " + gluonfxDir
+                            + "; run the native build first."));
+        }
+    }
+
+    /**
+     * Starts the app until its main window is interactive, and returns the
+     * startup timings it prints and its peak RSS, or -1 if unknown.
+     */
+    static Result run(List<String> command) throws IOException, InterruptedException {
+        var process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        var peakRss = new AtomicLong(-1);
+        var sampler = Thread.ofVirtual().start(() -> {
+            while (process.isAlive()) {
+                long rss = peakRss(process.pid());
+                if (rss > peakRss.get()) {
+                    peakRss.set(rss);
+                }
+                try {
+                    Thread.sleep(SAMPLE_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        long firstPixel = -1;
+        long interactive = -1;
+        var output = new ArrayList<String>();
+        try (var reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.add(line);
+                var matcher = MILESTONE.matcher(line);
+                if (matcher.matches()) {
+                    switch (matcher.group(1)) {
+                        case "first-pixel" -> firstPixel = Long.parseLong(matcher.group(2));
+                        case "interactive" -> interactive = Long.parseLong(matcher.group(2));
+                        default -> {
+                        }
+                    }
+                }
+            }
+        }
+        int exitCode = process.waitFor();
+        sampler.join();
+        if (exitCode != 0 || interactive < 0) {
+            throw new IllegalStateException(command.get(0) + " exited with " + exitCode
+                    + (interactive < 0 ? " without printing its startup timings" : "") + ":\n"
+                    + String.join("\n", output));
+        }
+        return new Result(firstPixel, interactive, peakRss.get());
+    }
+
+    /**
+     * Returns the peak RSS of the process so far on Linux, or its current
+     * RSS on macOS, in KiB, or -1 if it cannot be read.
+     */
+    static long peakRss(long pid) {
+        var status = Path.of("/proc/" + pid + "/status");
+        try {
+            if (Files.exists(status)) {
+                for (var line : Files.readAllLines(status)) {
+                    var matcher = VM_HWM.matcher(line);
+                    if (matcher.matches()) {
+                        return Long.parseLong(matcher.group(1));
+                    }
+                }
+                return -1;
+            }
+            if (System.getProperty("os.name").toLowerCase().contains("mac")) {
+                var ps = new ProcessBuilder("ps", "-o", "rss=", "-p", Long.toString(pid)).start();
+                var text = new String(ps.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+                ps.waitFor();
+                return text.isEmpty() ? -1 : Long.parseLong(text);
+            }
+        } catch (IOException | NumberFormatException e) {
+            // The process has exited.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return -1;
+    }
+}
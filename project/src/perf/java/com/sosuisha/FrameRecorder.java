@@ -0,0 +1,152 @@
+package com.sosuisha;
+
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records the pulses of a Scene.
+ * <p>
+ * In the pre-layout pulse listener, the recorder counts the nodes that need
+ * layout, then runs the CSS pass and the layout pass of the root itself and
+ * times each of them; the passes of the Scene that follow find nothing left
+ * to do. The pulse time runs from {@link #frameStarted()}, called at the
+ * start of the animation phase, to the post-layout pulse listener. Rendering
+ * happens on the render thread and is not included.
+ */
+final class FrameRecorder {
+    /**
+     * The measurements of a pulse.
+     *
+     * @param pulseNanos  the time from the start of the frame to the end of layout
+     * @param cssNanos    the time of the CSS pass
+     * @param layoutNanos the time of the layout pass
+     * @param dirtyNodes  the number of nodes that needed layout
+     * @param nodes       the number of nodes in the Scene
+     */
+    record Sample(long pulseNanos, long cssNanos, long layoutNanos, int dirtyNodes, int nodes) {
+    }
+
+    /**
+     * The distribution of a measurement over the recorded pulses.
+     *
+     * @param p50  the median
+     * @param p95  the 95th percentile
+     * @param max  the maximum
+     * @param mean the mean
+     */
+    record Distribution(double p50, double p95, double max, double mean) {
+        static Distribution of(double[] values) {
+            if (values.length == 0) {
+                return new Distribution(0, 0, 0, 0);
+            }
+            var sorted = values.clone();
+            Arrays.sort(sorted);
+            return new Distribution(percentile(sorted, 0.5), percentile(sorted, 0.95), sorted[sorted.length - 1],
+                    Arrays.stream(sorted).average().orElse(0));
+        }
+
+        private static double percentile(double[] sorted, double p) {
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+        }
+    }
+
+    private final Scene scene;
+    private final Runnable preLayout = this::preLayout;
+    private final Runnable postLayout = this::postLayout;
+    private final List<Sample> samples = new ArrayList<>();
+    private boolean recording;
+    private long frameStart;
+    private long css;
+    private long layout;
+    private int dirty;
+    private int nodes;
+
+    FrameRecorder(Scene scene) {
+        this.scene = scene;
+        scene.addPreLayoutPulseListener(preLayout);
+        scene.addPostLayoutPulseListener(postLayout);
+    }
+
+    /**
+     * Starts or stops keeping samples, e.g. to skip warm-up frames.
+     */
+    void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Marks the start of a frame, before the scenario changes anything.
+     */
+    void frameStarted() {
+        frameStart = System.nanoTime();
+    }
+
+    private void preLayout() {
+        var root = scene.getRoot();
+        nodes = 0;
+        dirty = 0;
+        count(root);
+        long start = System.nanoTime();
+        root.applyCss();
+        long cssEnd = System.nanoTime();
+        root.layout();
+        long layoutEnd = System.nanoTime();
+        css = cssEnd - start;
+        layout = layoutEnd - cssEnd;
+    }
+
+    private void postLayout() {
+        if (recording && frameStart != 0) {
+            samples.add(new Sample(System.nanoTime() - frameStart, css, layout, dirty, nodes));
+        }
+        frameStart = 0;
+    }
+
+    private void count(Node node) {
+        nodes++;
+        if (node instanceof Parent parent) {
+            if (parent.isNeedsLayout()) {
+                dirty++;
+            }
+            for (var child : parent.getChildrenUnmodifiable()) {
+                count(child);
+            }
+        }
+    }
+
+    /**
+     * Removes the pulse listeners from the Scene.
+     */
+    void detach() {
+        scene.removePreLayoutPulseListener(preLayout);
+        scene.removePostLayoutPulseListener(postLayout);
+    }
+
+    List<Sample> samples() {
+        return samples;
+    }
+
+    Distribution pulseMillis() {
+        return Distribution.of(samples.stream().mapToDouble(s -> s.pulseNanos() / 1e6).toArray());
+    }
+
+    Distribution cssMillis() {
+        return Distribution.of(samples.stream().mapToDouble(s -> s.cssNanos() / 1e6).toArray());
+    }
+
+    Distribution layoutMillis() {
+        return Distribution.of(samples.stream().mapToDouble(s -> s.layoutNanos() / 1e6).toArray());
+    }
+
+    Distribution dirtyNodes() {
+        return Distribution.of(samples.stream().mapToDouble(Sample::dirtyNodes).toArray());
+    }
+
+    int nodeCount() {
+        return samples.isEmpty() ? nodes : samples.get(samples.size() - 1).nodes();
+    }
+}
@@ -0,0 +1,30 @@
+package com.sosuisha;
+
+import javafx.fxml.FXML;
+import javafx.scene.control.Label;
+
+/**
+ * Controller of the generated large scenes, taking the Model like MainController.
+ */
+public class PerfController {
+    private final Model model;
+    private int opened;
+
+    @FXML
+    private Label status;
+
+    public PerfController(Model model) {
+        this.model = model;
+    }
+
+    @FXML
+    private void initialize() {
+        status.textProperty().bind(model.messageProperty());
+    }
+
+    @FXML
+    private void onOpen() {
+        opened++;
+        model.setName("row " + opened);
+    }
+}
@@ -0,0 +1,201 @@
+package com.sosuisha;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.stage.Stage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the {@link PerfScenario}s headless and checks their frame times against thresholds.
+ * <p>
+ * The FX toolkit runs on Monocle's headless platform with the software
+ * pipeline, so no display or GPU is needed. Each scenario is shown in a
+ * Stage and driven for a number of frames; after the warm-up frames, the
+ * pulse time, the CSS and layout pass times and the number of nodes needing
+ * layout are recorded by a {@link FrameRecorder}. The process exits with
+ * status 1 if a measurement exceeds its threshold.
+ * <p>
+ * Arguments: {@code [--thresholds file] [--frames n] [--warmup n] [scenario...]}.
+ * Without scenario names, all built-in scenarios run.
+ * <p>
+ * Run with: mvn -Pperf compile exec:exec (see src/perf/README.md)
+ */
+public final class PerfHarness {
+    private static final int DEFAULT_FRAMES = 300;
+    private static final int DEFAULT_WARMUP = 60;
+    private static final long TIMEOUT_SECONDS = 300;
+
+    /**
+     * A measurement checked against a threshold.
+     *
+     * @param key    the threshold key, without the scenario prefix
+     * @param value  the measured value
+     * @param limit  the threshold, or NaN if none is configured
+     */
+    private record Check(String key, double value, double limit) {
+        boolean passed() {
+            return Double.isNaN(limit) || value <= limit;
+        }
+    }
+
+    private PerfHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path thresholdsFile = null;
+        int frames = DEFAULT_FRAMES;
+        int warmup = DEFAULT_WARMUP;
+        var names = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--thresholds" -> thresholdsFile = Path.of(args[++i]);
+                case "--frames" -> frames = Integer.parseInt(args[++i]);
+                case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+                default -> names.add(args[i]);
+            }
+        }
+        var thresholds = loadThresholds(thresholdsFile);
+
+        startFx();
+        boolean passed = true;
+        for (var scenario : PerfScenarios.all()) {
+            if (!names.isEmpty() && !names.contains(scenario.name())) {
+                continue;
+            }
+            var recorder = run(scenario, frames, warmup);
+            passed &= report(scenario.name(), recorder, thresholds);
+        }
+        Platform.exit();
+        System.out.println(passed ? "All thresholds met." : "Thresholds exceeded.");
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static void startFx() throws InterruptedException {
+        setIfAbsent("glass.platform", "Monocle");
+        setIfAbsent("monocle.platform", "Headless");
+        setIfAbsent("prism.order", "sw");
+        var latch = new CountDownLatch(1);
+        Platform.startup(latch::countDown);
+        latch.await();
+        Platform.setImplicitExit(false);
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    private static Properties loadThresholds(Path file) throws IOException {
+        var thresholds = new Properties();
+        if (file != null) {
+            try (InputStream in = Files.newInputStream(file)) {
+                thresholds.load(in);
+            }
+        }
+        return thresholds;
+    }
+
+    /**
+     * Shows the Scene of the scenario and drives it for warmup + frames pulses.
+     */
+    private static FrameRecorder run(PerfScenario scenario, int frames, int warmup)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        var done = new CompletableFuture<FrameRecorder>();
+        Platform.runLater(() -> {
+            try {
+                var scene = scenario.open();
+                var stage = new Stage();
+                stage.setScene(scene);
+                stage.show();
+                var recorder = new FrameRecorder(scene);
+                new AnimationTimer() {
+                    private int frame;
+
+                    @Override
+                    public void handle(long now) {
+                        if (frame == warmup + frames) {
+                            stop();
+                            recorder.detach();
+                            stage.hide();
+                            done.complete(recorder);
+                            return;
+                        }
+                        recorder.setRecording(frame >= warmup);
+                        recorder.frameStarted();
+                        try {
+                            scenario.frame(frame, scene);
+                        } catch (RuntimeException e) {
+                            stop();
+                            recorder.detach();
+                            stage.hide();
+                            done.completeExceptionally(e);
+                            return;
+                        }
+                        frame++;
+                    }
+                }.start();
+            } catch (IOException | RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        });
+        return done.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Prints the measurements of a scenario and checks them.
+     *
+     * @return true if all thresholds are met
+     */
+    private static boolean report(String name, FrameRecorder recorder, Properties thresholds) {
+        var pulse = recorder.pulseMillis();
+        var css = recorder.cssMillis();
+        var layout = recorder.layoutMillis();
+        var dirty = recorder.dirtyNodes();
+        System.out.printf("%s: %d frames, %d nodes%n", name, recorder.samples().size(), recorder.nodeCount());
+        System.out.printf("  %-8s %9s %9s %9s %9s%n", "", "p50", "p95", "max", "mean");
+        System.out.printf("  %-8s %9.3f %9.3f %9.3f %9.3f  ms%n", "pulse", pulse.p50(), pulse.p95(), pulse.max(),
+                pulse.mean());
+        System.out.printf("  %-8s %9.3f %9.3f %9.3f %9.3f  ms%n", "css", css.p50(), css.p95(), css.max(), css.mean());
+        System.out.printf("  %-8s %9.3f %9.3f %9.3f %9.3f  ms%n", "layout", layout.p50(), layout.p95(),
+                layout.max(), layout.mean());
+        System.out.printf("  %-8s %9.0f %9.0f %9.0f %9.1f  nodes%n", "dirty", dirty.p50(), dirty.p95(), dirty.max(),
+                dirty.mean());
+
+        var checks = List.of(
+                check(name, "pulse.p95", pulse.p95(), thresholds),
+                check(name, "pulse.max", pulse.max(), thresholds),
+                check(name, "css.p95", css.p95(), thresholds),
+                check(name, "layout.p95", layout.p95(), thresholds),
+                check(name, "dirty.max", dirty.max(), thresholds));
+        boolean passed = true;
+        for (var check : checks) {
+            if (Double.isNaN(check.limit())) {
+                continue;
+            }
+            System.out.printf("  %-4s %s = %.3f (limit %.3f)%n", check.passed() ? "PASS" : "FAIL", check.key(),
+                    check.value(), check.limit());
+            passed &= check.passed();
+        }
+        return passed;
+    }
+
+    /**
+     * Looks up the threshold of the scenario, falling back to the "default." one.
+     */
+    private static Check check(String scenario, String key, double value, Properties thresholds) {
+        var limit = thresholds.getProperty(scenario + "." + key, thresholds.getProperty("default." + key));
+        return new Check(key, value, limit != null ? Double.parseDouble(limit.trim()) : Double.NaN);
+    }
+}
@@ -0,0 +1,40 @@
+package com.sosuisha;
+
+import javafx.scene.Scene;
+import java.io.IOException;
+
+/**
+ * A scripted interaction with a view, measured frame by frame by {@link PerfHarness}.
+ * <p>
+ * The harness shows the Scene returned by {@link #open()} in a Stage, then
+ * calls {@link #frame(int, Scene)} at the start of every pulse. Whatever the
+ * frame changes, like model updates, events or style classes, is processed
+ * by the CSS and layout passes of the same pulse, which the harness records.
+ */
+interface PerfScenario {
+
+    /**
+     * Returns the name of the scenario, used in the report and the thresholds.
+     *
+     * @return the name
+     */
+    String name();
+
+    /**
+     * Builds the Scene of the scenario, typically with {@link SceneBuilder}.
+     * Called on the FX Application Thread.
+     *
+     * @return the Scene
+     * @throws IOException if loading the FXML fails
+     */
+    Scene open() throws IOException;
+
+    /**
+     * Performs the step of a frame. Called on the FX Application Thread at the
+     * start of a pulse, before its CSS and layout passes.
+     *
+     * @param frame the index of the frame, from 0
+     * @param scene the Scene of the scenario
+     */
+    void frame(int frame, Scene scene);
+}
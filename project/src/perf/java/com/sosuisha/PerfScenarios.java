@@ -0,0 +1,149 @@
+package com.sosuisha;
+
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.control.TextField;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * The built-in scenarios: model updates on main.fxml, and interactions with
+ * generated large scenes.
+ * <p>
+ * A generated scene is a ScrollPane around a VBox of rows, each an HBox with
+ * a Label, a TextField and a Button whose onAction updates the Model, i.e.
+ * four nodes per row, plus a status Label bound to the Model.
+ */
+final class PerfScenarios {
+    /** The number of rows of the generated large scenes. */
+    static final int LARGE_ROWS = 2000;
+
+    private PerfScenarios() {
+    }
+
+    /**
+     * Returns all built-in scenarios.
+     *
+     * @return the scenarios
+     */
+    static List<PerfScenario> all() {
+        return List.of(
+                scenario("main-model-updates", () -> mainView(new Model()), (frame, scene) -> {
+                    // Delivered by FxUpdater in the next pulse, like updates from a background thread.
+                    model(scene).setName("JavaFX " + frame);
+                }),
+                scenario("large-relabel", PerfScenarios::largeView, (frame, scene) -> {
+                    var labels = scene.getRoot().lookupAll(".row-label").toArray();
+                    for (int i = 0; i < 50; i++) {
+                        ((Label) labels[(frame * 50 + i) % labels.length]).setText("Item " + frame + "-" + i);
+                    }
+                }),
+                scenario("large-restyle", PerfScenarios::largeView, (frame, scene) -> {
+                    var styles = scene.getRoot().getStyleClass();
+                    if (frame % 2 == 0) {
+                        styles.add("alternate");
+                    } else {
+                        styles.remove("alternate");
+                    }
+                }),
+                scenario("large-resize", PerfScenarios::largeView, (frame, scene) -> {
+                    scene.getWindow().setWidth(600 + (frame % 20) * 10);
+                }),
+                scenario("large-scroll", PerfScenarios::largeView, (frame, scene) -> {
+                    var scroll = (ScrollPane) scene.getRoot();
+                    scroll.setVvalue((frame % 100) / 100.0);
+                }),
+                scenario("large-interact", PerfScenarios::largeView, (frame, scene) -> {
+                    var buttons = scene.getRoot().lookupAll(".row-button").toArray();
+                    var fields = scene.getRoot().lookupAll(".row-field").toArray();
+                    ((Button) buttons[frame % buttons.length]).fire();
+                    ((TextField) fields[frame % fields.length]).appendText("x");
+                }));
+    }
+
+    private interface Opener {
+        Scene open() throws IOException;
+    }
+
+    private interface Step {
+        void frame(int frame, Scene scene);
+    }
+
+    private static PerfScenario scenario(String name, Opener opener, Step step) {
+        return new PerfScenario() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public Scene open() throws IOException {
+                return opener.open();
+            }
+
+            @Override
+            public void frame(int frame, Scene scene) {
+                step.frame(frame, scene);
+            }
+        };
+    }
+
+    private static Scene mainView(Model model) throws IOException {
+        var scene = SceneBuilder.fromFxml("main.fxml")
+                .css("style.css")
+                .newController(model)
+                .build();
+        scene.setUserData(model);
+        return scene;
+    }
+
+    private static Scene largeView() throws IOException {
+        var model = new Model();
+        var scene = SceneBuilder.fromFxml(largeFxml(LARGE_ROWS))
+                .newController(model)
+                .size(800, 600)
+                .build();
+        scene.setUserData(model);
+        return scene;
+    }
+
+    private static Model model(Scene scene) {
+        return (Model) scene.getUserData();
+    }
+
+    private static URL largeFxml(int rows) {
+        var fxml = new StringBuilder();
+        fxml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<?import javafx.scene.control.Button?>\n")
+                .append("<?import javafx.scene.control.Label?>\n")
+                .append("<?import javafx.scene.control.ScrollPane?>\n")
+                .append("<?import javafx.scene.control.TextField?>\n")
+                .append("<?import javafx.scene.layout.HBox?>\n")
+                .append("<?import javafx.scene.layout.VBox?>\n")
+                .append("<ScrollPane xmlns=\"http://javafx.com/javafx/23\" xmlns:fx=\"http://javafx.com/fxml/1\"")
+                .append(" fitToWidth=\"true\" fx:controller=\"").append(PerfController.class.getName()).append("\">\n")
+                .append("  <content>\n    <VBox styleClass=\"perf-root\">\n      <children>\n")
+                .append("        <Label fx:id=\"status\" />\n");
+        for (int i = 0; i < rows; i++) {
+            fxml.append("        <HBox styleClass=\"row\" spacing=\"4.0\">\n          <children>\n")
+                    .append("            <Label styleClass=\"row-label\" text=\"Item ").append(i).append("\" />\n")
+                    .append("            <TextField styleClass=\"row-field\" />\n")
+                    .append("            <Button styleClass=\"row-button\" text=\"Open\" onAction=\"#onOpen\" />\n")
+                    .append("          </children>\n        </HBox>\n");
+        }
+        fxml.append("      </children>\n    </VBox>\n  </content>\n</ScrollPane>\n");
+        try {
+            var file = Files.createTempFile("perf-" + rows + "-", ".fxml");
+            file.toFile().deleteOnExit();
+            Files.writeString(file, fxml.toString());
+            return file.toUri().toURL();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.sosuisha;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javafx.util.Callback;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ResourceBundle;
+import java.util.zip.CRC32;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks the lookup of compiled views and the checksum that keeps a view of
+ * a changed FXML file from being used.
+ */
+class CompiledFxmlViewsTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsTheViewsCompiledByTheBuild() {
+        var view = CompiledFxmlViews.find(App.class.getResource("main.fxml"));
+
+        assertNotNull(view);
+        assertEquals(App.class.getPackageName() + ".MainFxmlView", view.getClass().getName());
+    }
+
+    @Test
+    void findsNoViewForFxmlThatWasNotCompiled() {
+        assertNull(CompiledFxmlViews.find(CompiledFxmlViewsTest.class.getResource("plain.fxml")));
+    }
+
+    @Test
+    void usesAViewOnlyWhileItsFxmlHasTheSameChecksum() throws Exception {
+        var file = directory.resolve("view.fxml");
+        Files.writeString(file, "<VBox/>");
+        var crc = new CRC32();
+        crc.update(Files.readAllBytes(file));
+        var view = new StubView(crc.getValue());
+        var url = file.toUri().toURL();
+
+        assertTrue(CompiledFxmlViews.isUpToDate(url, view));
+        Files.writeString(file, "<HBox/>");
+        assertFalse(CompiledFxmlViews.isUpToDate(url, view));
+        Files.delete(file);
+        assertFalse(CompiledFxmlViews.isUpToDate(url, view));
+    }
+
+    private record StubView(long checksum) implements CompiledFxmlView {
+        @Override
+        public String fxmlPath() {
+            return "/view.fxml";
+        }
+
+        @Override
+        public Result build(URL location, ResourceBundle resources, Callback<Class<?>, Object> controllerFactory) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.sosuisha;
+
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.GridPane;
+import java.net.URL;
+import java.util.ResourceBundle;
+
+/**
+ * Controller of the form.fxml test view.
+ */
+public class FormController {
+    @FXML
+    private GridPane grid;
+
+    @FXML
+    private Label nameLabel;
+
+    @FXML
+    private TextField nameField;
+
+    @FXML
+    public Button saveButton;
+
+    @FXML
+    private URL location;
+
+    @FXML
+    private ResourceBundle resources;
+
+    int initializeCount;
+    int saveCount;
+
+    @FXML
+    private void initialize() {
+        initializeCount++;
+    }
+
+    @FXML
+    private void save(ActionEvent event) {
+        saveCount++;
+    }
+
+    GridPane grid() {
+        return grid;
+    }
+
+    Label nameLabel() {
+        return nameLabel;
+    }
+
+    TextField nameField() {
+        return nameField;
+    }
+
+    URL location() {
+        return location;
+    }
+
+    ResourceBundle resources() {
+        return resources;
+    }
+}
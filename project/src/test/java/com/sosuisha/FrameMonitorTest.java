@@ -0,0 +1,196 @@
+package com.sosuisha;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.StackPane;
+import javafx.scene.text.Text;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the monitor records the time of the CSS and layout passes
+ * that the Scene of a window runs itself, and that hiding the overlay and uninstalling the
+ * monitor stop all of its work.
+ * <p>
+ * The monitored windows show no text, so they need no fonts; the overlay
+ * test is skipped where the toolkit cannot lay out text.
+ */
+class FrameMonitorTest {
+    /** Takes a known time to lay out its children. */
+    private static final class SlowPane extends StackPane {
+        int layouts;
+
+        SlowPane() {
+            super(new Region());
+        }
+
+        @Override
+        protected void layoutChildren() {
+            layouts++;
+            try {
+                Thread.sleep(LAYOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.layoutChildren();
+        }
+    }
+
+    private static final long LAYOUT_MILLIS = 20;
+
+    private Stage stage;
+
+    @BeforeAll
+    static void startFx() throws InterruptedException {
+        FxTestSupport.startFx();
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        onFxThread(() -> {
+            FrameMonitor.uninstall();
+            if (stage != null) {
+                stage.close();
+            }
+            return null;
+        });
+    }
+
+    @Test
+    void recordsTheTimeOfTheScenesOwnLayoutPass() throws Exception {
+        var root = new SlowPane();
+        var monitor = onFxThread(() -> {
+            var installed = FrameMonitor.install();
+            stage = new Stage();
+            stage.setTitle("monitored");
+            stage.setScene(new Scene(root, 200, 100));
+            stage.show();
+            return installed;
+        });
+        awaitPulses(monitor, 5);
+
+        var stats = stats(monitor);
+        assertTrue(stats.getPulseMaxMicros() >= LAYOUT_MILLIS * 1000, "max " + stats.getPulseMaxMicros());
+        // The monitor only reads the time, so the root is laid out once per pulse at most.
+        int layouts = onFxThread(() -> root.layouts);
+        assertTrue(layouts <= stats.getPulseCount() + 1, layouts + " layouts in " + stats.getPulseCount() + " pulses");
+    }
+
+    @Test
+    void stopsRefreshingTheOverlayWhenHidden() throws Exception {
+        assumeTrue(onFxThread(FrameMonitorTest::canLayOutText), "no fonts to lay out the overlay");
+        var monitor = onFxThread(FrameMonitor::install);
+        var first = onFxThread(() -> {
+            monitor.setOverlayVisible(true);
+            return monitor.getOverlayRefresher();
+        });
+        assertTrue(onFxThread(() -> overlayShowing()));
+        assertTrue(first.isAlive());
+
+        onFxThread(() -> {
+            monitor.setOverlayVisible(false);
+            return null;
+        });
+        assertFalse(onFxThread(() -> overlayShowing()));
+        assertNull(onFxThread(monitor::getOverlayRefresher));
+        assertTrue(first.join(Duration.ofSeconds(5)), "the refresher ends when the overlay is hidden");
+
+        var second = onFxThread(() -> {
+            monitor.setOverlayVisible(true);
+            return monitor.getOverlayRefresher();
+        });
+        assertTrue(second.isAlive());
+        onFxThread(() -> {
+            FrameMonitor.uninstall();
+            return null;
+        });
+        assertNull(FrameMonitor.getInstance());
+        assertFalse(onFxThread(() -> overlayShowing()));
+        assertTrue(second.join(Duration.ofSeconds(5)), "the refresher ends when the monitor is uninstalled");
+    }
+
+    @Test
+    void uninstallRemovesThePulseListeners() throws Exception {
+        var monitor = onFxThread(() -> {
+            var installed = FrameMonitor.install();
+            stage = new Stage();
+            stage.setScene(new Scene(new StackPane(new Region()), 200, 100));
+            stage.show();
+            return installed;
+        });
+        awaitPulses(monitor, 1);
+        onFxThread(() -> {
+            FrameMonitor.uninstall();
+            return null;
+        });
+        assertTrue(monitor.getWindowStats().isEmpty());
+        assertNull(FrameMonitor.getInstance());
+        // A pulse of the window no longer reaches the monitor.
+        onFxThread(() -> {
+            stage.getScene().getRoot().requestLayout();
+            return null;
+        });
+        Thread.sleep(200);
+        assertTrue(monitor.getWindowStats().isEmpty());
+    }
+
+    private static boolean overlayShowing() {
+        return Window.getWindows().stream()
+                .anyMatch(window -> window instanceof Stage s && "Frame monitor".equals(s.getTitle()) && s.isShowing());
+    }
+
+    private static boolean canLayOutText() {
+        try {
+            return new Text("x").getLayoutBounds().getWidth() > 0;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    private static WindowFrameStats stats(FrameMonitor monitor) {
+        return monitor.getWindowStats().stream()
+                .filter(stats -> !stats.getWindow().startsWith("Frame monitor"))
+                .findFirst().orElseThrow();
+    }
+
+    private void awaitPulses(FrameMonitor monitor, long count) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            onFxThread(() -> {
+                // Something must change for the Scene to pulse.
+                stage.getScene().getRoot().requestLayout();
+                return null;
+            });
+            if (stats(monitor).getPulseCount() >= count) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        assertTrue(stats(monitor).getPulseCount() >= count, "pulses: " + stats(monitor).getPulseCount());
+    }
+
+    private static <T> T onFxThread(Callable<T> action) throws Exception {
+        var result = new CompletableFuture<T>();
+        Platform.runLater(() -> {
+            try {
+                result.complete(action.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result.get(5, TimeUnit.SECONDS);
+    }
+}
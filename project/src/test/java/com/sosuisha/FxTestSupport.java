@@ -0,0 +1,85 @@
+package com.sosuisha;
+
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.control.Label;
+import javafx.scene.control.Labeled;
+import javafx.scene.control.TextInputControl;
+import javafx.scene.layout.Region;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+/**
+ * Headless JavaFX startup and node graph comparison for the tests.
+ * <p>
+ * The FX toolkit runs on Monocle's headless platform with the software
+ * pipeline, set up by the surefire configuration, so the tests need no display.
+ */
+final class FxTestSupport {
+    private static boolean started;
+
+    private FxTestSupport() {
+    }
+
+    /**
+     * Starts the FX toolkit once per JVM.
+     */
+    static synchronized void startFx() throws InterruptedException {
+        if (started) {
+            return;
+        }
+        var latch = new CountDownLatch(1);
+        Platform.startup(latch::countDown);
+        latch.await();
+        Platform.setImplicitExit(false);
+        started = true;
+    }
+
+    /**
+     * Describes a node graph: the class, id, style classes, text, padding
+     * and layout constraints of each node, and its children in order. Two
+     * graphs built from the same FXML have the same description.
+     *
+     * @param node the root node
+     * @return the description
+     */
+    static String describe(Node node) {
+        var sb = new StringBuilder();
+        describe(node, 0, sb);
+        return sb.toString();
+    }
+
+    private static void describe(Node node, int depth, StringBuilder sb) {
+        sb.append("  ".repeat(depth)).append(node.getClass().getName());
+        if (node.getId() != null) {
+            sb.append(" id=").append(node.getId());
+        }
+        if (!node.getStyleClass().isEmpty()) {
+            sb.append(" styleClass=").append(node.getStyleClass());
+        }
+        if (node instanceof Labeled labeled) {
+            sb.append(" text=").append(labeled.getText());
+        }
+        if (node instanceof Label label && label.getLabelFor() != null) {
+            sb.append(" labelFor=").append(label.getLabelFor().getId());
+        }
+        if (node instanceof TextInputControl input) {
+            sb.append(" text=").append(input.getText()).append(" prompt=").append(input.getPromptText());
+        }
+        if (node instanceof Region region) {
+            sb.append(" padding=").append(region.getPadding()).append(" maxWidth=").append(region.getMaxWidth());
+        }
+        if (node.hasProperties()) {
+            // Static properties such as GridPane.columnIndex are kept in the properties of the node.
+            sb.append(" constraints=").append(node.getProperties().entrySet().stream()
+                    .map(e -> e.getKey() + "=" + e.getValue()).sorted().collect(Collectors.joining(",")));
+        }
+        sb.append('\n');
+        if (node instanceof Parent parent) {
+            for (var child : parent.getChildrenUnmodifiable()) {
+                describe(child, depth + 1, sb);
+            }
+        }
+    }
+}
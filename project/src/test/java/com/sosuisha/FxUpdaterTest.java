@@ -0,0 +1,253 @@
+package com.sosuisha;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javafx.application.Platform;
+import javafx.beans.value.WritableValue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the delivery order, coalescing and backpressure policies of the
+ * updater on the headless FX toolkit.
+ * <p>
+ * Updates made in one {@code Platform.runLater} block are all delivered in
+ * the same pulse, since no pulse can run while the block holds the FX thread.
+ */
+class FxUpdaterTest {
+    /** A property that records its values in the log of its test. */
+    private record Recorder(String name, List<String> log) implements WritableValue<Integer> {
+        @Override
+        public Integer getValue() {
+            return null;
+        }
+
+        @Override
+        public void setValue(Integer value) {
+            assertTrue(Platform.isFxApplicationThread());
+            log.add(name + "=" + value);
+        }
+    }
+
+    private final List<String> log = new ArrayList<>();
+    private final Recorder a = new Recorder("a", log);
+    private final Recorder b = new Recorder("b", log);
+
+    @BeforeAll
+    static void startFx() throws InterruptedException {
+        FxTestSupport.startFx();
+    }
+
+    @Test
+    void deliversValuesAndTasksInSubmissionOrderAndCoalescesValuesInPlace() throws Exception {
+        var updater = new FxUpdater(FxUpdater.Backpressure.LATEST, 10);
+        onFxThread(() -> {
+            updater.post(a, 1);
+            updater.submit(task("t1"));
+            updater.post(b, 1);
+            updater.post(a, 2);
+            updater.submit(task("t2"));
+            updater.post(a, 3);
+        });
+        awaitDelivered(updater, 4);
+        assertEquals(List.of("a=3", "t1", "b=1", "t2"), log());
+        var stats = updater.getStats();
+        assertEquals(6, stats.submitted());
+        assertEquals(2, stats.coalesced());
+        assertEquals(0, stats.dropped());
+        assertEquals(1, stats.pulses());
+        assertEquals(4, stats.maxQueueDepth());
+        assertEquals(0, stats.queueDepth());
+    }
+
+    @Test
+    void dropKeepsThePendingValueAndDiscardsTasksBeyondTheCapacity() throws Exception {
+        var updater = new FxUpdater(FxUpdater.Backpressure.DROP, 2);
+        var results = new ArrayList<Boolean>();
+        onFxThread(() -> {
+            results.add(updater.post(a, 1));
+            results.add(updater.post(a, 2));
+            results.add(updater.submit(task("t1")));
+            results.add(updater.submit(task("t2")));
+            results.add(updater.submit(task("t3")));
+            // Values do not count against the capacity of the task queue.
+            results.add(updater.post(b, 1));
+        });
+        awaitDelivered(updater, 4);
+        assertEquals(List.of(true, false, true, true, false, true), results);
+        assertEquals(List.of("a=1", "t1", "t2", "b=1"), log());
+        assertEquals(2, updater.getStats().dropped());
+    }
+
+    @Test
+    void latestReplacesThePendingValueAndDiscardsTheOldestTask() throws Exception {
+        var updater = new FxUpdater(FxUpdater.Backpressure.LATEST, 2);
+        onFxThread(() -> {
+            updater.post(a, 1);
+            updater.submit(task("t1"));
+            updater.post(b, 1);
+            updater.submit(task("t2"));
+            updater.submit(task("t3"));
+            updater.post(a, 2);
+        });
+        awaitDelivered(updater, 4);
+        assertEquals(List.of("a=2", "b=1", "t2", "t3"), log());
+        assertEquals(1, updater.getStats().dropped());
+        assertEquals(1, updater.getStats().coalesced());
+    }
+
+    @Test
+    void blockWaitsForTheNextPulse() throws Exception {
+        var updater = new FxUpdater(FxUpdater.Backpressure.BLOCK, 1);
+        var release = holdFxThread();
+        var results = new CompletableFuture<List<Boolean>>();
+        var producer = Thread.ofPlatform().start(() -> {
+            var list = new ArrayList<Boolean>();
+            list.add(updater.post(a, 1));
+            list.add(updater.submit(task("t1")));
+            list.add(updater.post(a, 2));
+            list.add(updater.submit(task("t2")));
+            results.complete(list);
+        });
+        awaitBlocked(producer);
+        assertFalse(results.isDone());
+        release.countDown();
+        assertEquals(List.of(true, true, true, true), results.get(5, TimeUnit.SECONDS));
+        awaitDelivered(updater, 4);
+        assertEquals(List.of("a=1", "t1", "a=2", "t2"), log());
+        assertEquals(0, updater.getStats().dropped());
+        assertEquals(0, updater.getStats().coalesced());
+        assertTrue(updater.getStats().blockedNanos() > 0);
+    }
+
+    @Test
+    void blockedProducerGivesUpWhenInterrupted() throws Exception {
+        var updater = new FxUpdater(FxUpdater.Backpressure.BLOCK, 1);
+        var release = holdFxThread();
+        var result = new CompletableFuture<Boolean>();
+        var producer = Thread.ofPlatform().start(() -> {
+            updater.submit(task("t1"));
+            result.complete(updater.submit(task("t2")));
+        });
+        awaitBlocked(producer);
+        producer.interrupt();
+        assertFalse(result.get(5, TimeUnit.SECONDS));
+        release.countDown();
+        awaitDelivered(updater, 1);
+        assertEquals(List.of("t1"), log());
+        assertEquals(1, updater.getStats().dropped());
+    }
+
+    @Test
+    void blockDoesNotBlockTheFxThread() throws Exception {
+        var updater = new FxUpdater(FxUpdater.Backpressure.BLOCK, 1);
+        onFxThread(() -> {
+            updater.post(a, 1);
+            updater.post(a, 2);
+            updater.submit(task("t1"));
+            updater.submit(task("t2"));
+        });
+        awaitDelivered(updater, 2);
+        assertEquals(List.of("a=2", "t2"), log());
+    }
+
+    @Test
+    void restartsTheTimerForUpdatesAfterAnIdlePulse() throws Exception {
+        var updater = new FxUpdater(FxUpdater.Backpressure.LATEST, 10);
+        updater.post(a, 1);
+        awaitDelivered(updater, 1);
+        // Let the timer see an empty queue and stop.
+        Thread.sleep(200);
+        long pulses = updater.getStats().pulses();
+        Thread.sleep(200);
+        assertEquals(pulses, updater.getStats().pulses(), "no pulses are counted while idle");
+
+        updater.post(a, 2);
+        updater.submit(task("t1"));
+        awaitDelivered(updater, 3);
+        assertEquals(List.of("a=1", "a=2", "t1"), log());
+        assertEquals(pulses + 1, updater.getStats().pulses());
+    }
+
+    private Runnable task(String name) {
+        return () -> {
+            assertTrue(Platform.isFxApplicationThread());
+            log.add(name);
+        };
+    }
+
+    private List<String> log() throws Exception {
+        // The log is written on the FX thread.
+        var copy = new CompletableFuture<List<String>>();
+        Platform.runLater(() -> copy.complete(List.copyOf(log)));
+        return copy.get(5, TimeUnit.SECONDS);
+    }
+
+    private static void onFxThread(Runnable action) throws Exception {
+        var done = new CompletableFuture<Void>();
+        Platform.runLater(() -> {
+            try {
+                action.run();
+                done.complete(null);
+            } catch (Throwable e) {
+                done.completeExceptionally(e);
+            }
+        });
+        done.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Keeps the FX thread busy until the returned latch is released, so no pulse runs.
+     */
+    private static CountDownLatch holdFxThread() throws Exception {
+        var release = new CountDownLatch(1);
+        var held = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            held.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.TIMED_WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(Thread.State.TIMED_WAITING, thread.getState());
+    }
+
+    private static void awaitDelivered(FxUpdater updater, long count) throws InterruptedException {
+        awaitStats(updater, stats -> assertEquals(count, stats.delivered()));
+    }
+
+    private static void awaitStats(FxUpdater updater, Consumer<FxUpdater.Stats> check)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            try {
+                check.accept(updater.getStats());
+                return;
+            } catch (AssertionError e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(5);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.sosuisha;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Scene;
+import java.net.URL;
+import java.util.ListResourceBundle;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the keys, the LRU eviction and the FXMLLoader fallback of the template cache.
+ */
+class FxmlTemplateCacheTest {
+    private static final String MESSAGES = FxmlTemplateCacheTest.class.getPackageName() + ".messages";
+    private static final URL FORM = FxmlTemplateCacheTest.class.getResource("form.fxml");
+    private static final URL PLAIN = FxmlTemplateCacheTest.class.getResource("plain.fxml");
+    private static final URL UNSUPPORTED = FxmlTemplateCacheTest.class.getResource("unsupported.fxml");
+
+    @BeforeAll
+    static void startFx() throws InterruptedException {
+        FxTestSupport.startFx();
+    }
+
+    @Test
+    void returnsTheCachedTemplateOnTheSecondGet() throws Exception {
+        var cache = new FxmlTemplateCache(4);
+
+        var first = cache.get(PLAIN, null);
+        var second = cache.get(PLAIN, null);
+
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+    }
+
+    @Test
+    void keysByBundleBaseNameAndLocale() throws Exception {
+        var cache = new FxmlTemplateCache(4);
+        var root = ResourceBundle.getBundle(MESSAGES, Locale.ROOT);
+
+        var template = cache.get(FORM, root);
+
+        // Bundles are cached by ResourceBundle, but an equal base name and locale is enough.
+        ResourceBundle.clearCache();
+        assertSame(template, cache.get(FORM, ResourceBundle.getBundle(MESSAGES, Locale.ROOT)));
+        assertNotSame(template, cache.get(FORM, ResourceBundle.getBundle(MESSAGES, Locale.JAPANESE)));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void keysBundlesWithoutBaseNameByIdentity() throws Exception {
+        var cache = new FxmlTemplateCache(4);
+        var first = new Messages();
+        var second = new Messages();
+
+        var template = cache.get(FORM, first);
+
+        assertSame(template, cache.get(FORM, first));
+        assertNotSame(template, cache.get(FORM, second));
+    }
+
+    @Test
+    void keepsTemplatesOfLiveAndFixedBundlesApart() throws Exception {
+        var cache = new FxmlTemplateCache(4);
+        var localization = Localization.getDefault();
+        var fixed = localization.getBundle(MESSAGES, localization.getLocale());
+        var live = localization.getLiveBundle(MESSAGES);
+
+        var fixedTemplate = cache.get(FORM, fixed);
+        var liveTemplate = cache.get(FORM, live);
+
+        assertNotSame(fixedTemplate, liveTemplate);
+        // Only the views of a live bundle follow the locale.
+        int bindings = localization.getBindingCount();
+        var fixedInstance = fixedTemplate.instantiate(null);
+        assertEquals(bindings, localization.getBindingCount());
+        var liveInstance = liveTemplate.instantiate(null);
+        assertEquals(bindings + 3, localization.getBindingCount());
+        assertNotNull(fixedInstance.root());
+        assertNotNull(liveInstance.root());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedTemplate() throws Exception {
+        var cache = new FxmlTemplateCache(2);
+        var root = ResourceBundle.getBundle(MESSAGES, Locale.ROOT);
+        var japanese = ResourceBundle.getBundle(MESSAGES, Locale.JAPANESE);
+
+        var plain = cache.get(PLAIN, null);
+        cache.get(FORM, root);
+        cache.get(PLAIN, null);
+        cache.get(FORM, japanese);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+        assertSame(plain, cache.get(PLAIN, null));
+        long misses = cache.missCount();
+        cache.get(FORM, root);
+        assertEquals(misses + 1, cache.missCount());
+    }
+
+    @Test
+    void evictsWhenTheMaximumSizeShrinks() throws Exception {
+        var cache = new FxmlTemplateCache(4);
+        cache.get(PLAIN, null);
+        cache.get(FORM, ResourceBundle.getBundle(MESSAGES, Locale.ROOT));
+        cache.get(FORM, ResourceBundle.getBundle(MESSAGES, Locale.JAPANESE));
+
+        cache.setMaxSize(1);
+
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.evictionCount());
+    }
+
+    @Test
+    void remembersUnsupportedDocuments() throws Exception {
+        var cache = new FxmlTemplateCache(4);
+
+        assertNull(cache.get(UNSUPPORTED, null));
+        assertNull(cache.get(UNSUPPORTED, null));
+
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+        assertEquals(2, cache.fallbackCount());
+    }
+
+    @Test
+    void sceneBuilderFallsBackToFxmlLoader() throws Exception {
+        var cache = new FxmlTemplateCache(4);
+        // A Scene adds the root style class to its root.
+        var expected = new Scene(FXMLLoader.load(UNSUPPORTED)).getRoot();
+
+        var scene = SceneBuilder.fromFxml(UNSUPPORTED).templateCache(cache).build();
+
+        assertEquals(FxTestSupport.describe(expected), FxTestSupport.describe(scene.getRoot()));
+        assertEquals(1, cache.fallbackCount());
+    }
+
+    @Test
+    void sceneBuilderBuildsFromTheCachedTemplate() throws Exception {
+        var cache = new FxmlTemplateCache(4);
+        var expected = new Scene(FXMLLoader.load(PLAIN)).getRoot();
+
+        var first = SceneBuilder.fromFxml(PLAIN).templateCache(cache).build();
+        var second = SceneBuilder.fromFxml(PLAIN).templateCache(cache).build();
+
+        assertEquals(FxTestSupport.describe(expected), FxTestSupport.describe(first.getRoot()));
+        assertEquals(FxTestSupport.describe(expected), FxTestSupport.describe(second.getRoot()));
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+    }
+
+    /** A bundle without a base name. */
+    private static final class Messages extends ListResourceBundle {
+        @Override
+        protected Object[][] getContents() {
+            return new Object[][] { { "name", "Name" }, { "name.prompt", "Your name" }, { "save", "Save" } };
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.sosuisha;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javafx.fxml.FXMLLoader;
+import javafx.fxml.LoadException;
+import javafx.scene.Parent;
+import java.net.URL;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a template builds the same object graph and controller as
+ * FXMLLoader, and that unsupported documents are left to FXMLLoader.
+ */
+class FxmlTemplateTest {
+    private static final URL FORM = FxmlTemplateTest.class.getResource("form.fxml");
+    private static final URL PLAIN = FxmlTemplateTest.class.getResource("plain.fxml");
+    private static final URL MIXED = FxmlTemplateTest.class.getResource("mixed.fxml");
+    private static final URL UNSUPPORTED = FxmlTemplateTest.class.getResource("unsupported.fxml");
+
+    private final ResourceBundle resources = ResourceBundle.getBundle(
+            FxmlTemplateTest.class.getPackageName() + ".messages", Locale.ROOT);
+
+    @BeforeAll
+    static void startFx() throws InterruptedException {
+        FxTestSupport.startFx();
+    }
+
+    @Test
+    void buildsTheSameGraphAsFxmlLoader() throws Exception {
+        var loader = new FXMLLoader(FORM, resources);
+        Parent expected = loader.load();
+
+        var instance = FxmlTemplate.compile(FORM, resources).instantiate(null);
+
+        var description = FxTestSupport.describe((Parent) instance.root());
+        assertEquals(FxTestSupport.describe(expected), description);
+        assertTrue(description.contains("prompt=Your name"), description);
+        assertTrue(description.contains("labelFor=nameField"), description);
+    }
+
+    @Test
+    void buildsTheSameGraphAsFxmlLoaderWithoutController() throws Exception {
+        Parent expected = FXMLLoader.load(PLAIN);
+
+        var instance = FxmlTemplate.compile(PLAIN, null).instantiate(null);
+
+        assertEquals(FxTestSupport.describe(expected), FxTestSupport.describe((Parent) instance.root()));
+        assertNull(instance.controller());
+    }
+
+    @Test
+    void keepsChildrenAndPropertyElementsInDocumentOrder() throws Exception {
+        Parent expected = FXMLLoader.load(MIXED);
+
+        var instance = FxmlTemplate.compile(MIXED, null).instantiate(null);
+
+        var description = FxTestSupport.describe((Parent) instance.root());
+        assertEquals(FxTestSupport.describe(expected), description);
+        assertTrue(description.matches("(?s).*First.*Second.*Third.*Fourth.*"), description);
+    }
+
+    @Test
+    void injectsTheSameFieldsAsFxmlLoader() throws Exception {
+        var loader = new FXMLLoader(FORM, resources);
+        loader.load();
+        FormController expected = loader.getController();
+
+        var instance = FxmlTemplate.compile(FORM, resources).instantiate(null);
+        var actual = (FormController) instance.controller();
+
+        assertEquals(FxTestSupport.describe(expected.grid()), FxTestSupport.describe(actual.grid()));
+        assertEquals(expected.nameLabel().getText(), actual.nameLabel().getText());
+        assertEquals(expected.nameField().getPromptText(), actual.nameField().getPromptText());
+        assertSame(actual.nameField(), actual.nameLabel().getLabelFor());
+        assertSame(actual.saveButton, instance.namespace().get("saveButton"));
+        assertEquals(expected.location(), actual.location());
+        assertEquals(expected.resources(), actual.resources());
+        assertEquals(expected.initializeCount, actual.initializeCount);
+        assertEquals(1, actual.initializeCount);
+    }
+
+    @Test
+    void bindsHandlersToTheController() throws Exception {
+        var instance = FxmlTemplate.compile(FORM, resources).instantiate(null);
+        var controller = (FormController) instance.controller();
+
+        controller.saveButton.fire();
+
+        assertEquals(1, controller.saveCount);
+    }
+
+    @Test
+    void createsANewGraphAndControllerPerInstance() throws Exception {
+        var template = FxmlTemplate.compile(FORM, resources);
+
+        var first = template.instantiate(null);
+        var second = template.instantiate(null);
+
+        assertNotSame(first.root(), second.root());
+        assertNotSame(first.controller(), second.controller());
+        assertEquals(FxTestSupport.describe((Parent) first.root()), FxTestSupport.describe((Parent) second.root()));
+    }
+
+    @Test
+    void usesTheControllerFactory() throws Exception {
+        var controller = new FormController();
+
+        var instance = FxmlTemplate.compile(FORM, resources).instantiate(type -> controller);
+
+        assertSame(controller, instance.controller());
+        assertSame(instance.root(), controller.grid().getParent());
+    }
+
+    @Test
+    void rejectsUnsupportedFeatures() {
+        assertThrows(FxmlTemplate.Unsupported.class, () -> FxmlTemplate.compile(UNSUPPORTED, null));
+    }
+
+    @Test
+    void failsLikeFxmlLoaderWithoutResources() throws Exception {
+        // %key strings are looked up per instance, so the template compiles without a bundle.
+        var template = FxmlTemplate.compile(FORM, null);
+
+        assertThrows(LoadException.class, () -> new FXMLLoader(FORM).load());
+        assertThrows(LoadException.class, () -> template.instantiate(null));
+    }
+}
@@ -0,0 +1,156 @@
+package com.sosuisha;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import javax.tools.ToolProvider;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Generates views from the test FXML documents, compiles them and checks
+ * that they build the same graph and controller as FXMLLoader.
+ */
+class FxmlViewGeneratorTest {
+    /** The package of the generated views, under the package of the tests. */
+    private static final String VIEWS = FxmlViewGeneratorTest.class.getPackageName() + ".gen";
+    private static final String PACKAGE = VIEWS.replace('.', '/') + "/";
+
+    @TempDir
+    static Path directory;
+    private static Path resourcesDir;
+    private static Path classesDir;
+    private static URLClassLoader classLoader;
+
+    private final ResourceBundle resources = ResourceBundle.getBundle(
+            FxmlViewGeneratorTest.class.getPackageName() + ".messages", Locale.ROOT);
+
+    @BeforeAll
+    static void generate() throws Exception {
+        FxTestSupport.startFx();
+        resourcesDir = directory.resolve("resources");
+        classesDir = directory.resolve("classes");
+        var sourcesDir = directory.resolve("generated-sources");
+        copy("form.fxml", "user-form.fxml");
+        copy("plain.fxml", "plain.fxml");
+        copy("unsupported.fxml", "unsupported.fxml");
+
+        FxmlViewGenerator.main(new String[] { resourcesDir.toString(), sourcesDir.toString(),
+                classesDir.toString() });
+
+        compile(sourcesDir);
+        classLoader = new URLClassLoader(new URL[] { classesDir.toUri().toURL() },
+                FxmlViewGeneratorTest.class.getClassLoader());
+    }
+
+    private static void copy(String name, String target) throws IOException {
+        var file = resourcesDir.resolve(PACKAGE + target);
+        Files.createDirectories(file.getParent());
+        try (var in = FxmlViewGeneratorTest.class.getResourceAsStream(name)) {
+            Files.copy(in, file);
+        }
+    }
+
+    private static void compile(Path sourcesDir) throws IOException {
+        List<String> args = new ArrayList<>(List.of("-d", classesDir.toString(),
+                "-cp", System.getProperty("java.class.path")));
+        try (Stream<Path> paths = Files.walk(sourcesDir)) {
+            paths.filter(path -> path.toString().endsWith(".java")).forEach(path -> args.add(path.toString()));
+        }
+        assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null, args.toArray(String[]::new)));
+    }
+
+    private static CompiledFxmlView view(String className) throws Exception {
+        return (CompiledFxmlView) classLoader.loadClass(VIEWS + "." + className)
+                .getDeclaredConstructor().newInstance();
+    }
+
+    private static URL fxml(String name) throws IOException {
+        return resourcesDir.resolve(PACKAGE + name).toUri().toURL();
+    }
+
+    @Test
+    void namesViewsAfterTheirFiles() {
+        assertEquals("MainFxmlView", FxmlViewGenerator.className("main.fxml"));
+        assertEquals("UserDetailFxmlView", FxmlViewGenerator.className("user-detail.fxml"));
+        assertEquals("V2ndPageFxmlView", FxmlViewGenerator.className("2nd_page.fxml"));
+    }
+
+    @Test
+    void registersTheSupportedViews() throws IOException {
+        var services = classesDir.resolve("META-INF/services/" + CompiledFxmlView.class.getName());
+
+        assertEquals(List.of(VIEWS + ".PlainFxmlView", VIEWS + ".UserFormFxmlView"),
+                Files.readAllLines(services));
+        assertFalse(Files.exists(directory.resolve("generated-sources/" + PACKAGE + "UnsupportedFxmlView.java")));
+    }
+
+    @Test
+    void recordsThePathAndChecksumOfTheFxml() throws Exception {
+        var view = view("UserFormFxmlView");
+        var crc = new CRC32();
+        crc.update(Files.readAllBytes(resourcesDir.resolve(PACKAGE + "user-form.fxml")));
+
+        assertEquals("/" + PACKAGE + "user-form.fxml", view.fxmlPath());
+        assertEquals(crc.getValue(), view.checksum());
+        assertTrue(CompiledFxmlViews.isUpToDate(fxml("user-form.fxml"), view));
+    }
+
+    @Test
+    void buildsTheSameGraphAsFxmlLoader() throws Exception {
+        var url = fxml("user-form.fxml");
+        Parent expected = new FXMLLoader(url, resources).load();
+
+        var result = view("UserFormFxmlView").build(url, resources, null);
+
+        assertEquals(FxTestSupport.describe(expected), FxTestSupport.describe((Parent) result.root()));
+    }
+
+    @Test
+    void buildsTheSameGraphAsFxmlLoaderWithoutController() throws Exception {
+        var url = fxml("plain.fxml");
+        Parent expected = FXMLLoader.load(url);
+
+        var result = view("PlainFxmlView").build(url, null, null);
+
+        assertEquals(FxTestSupport.describe(expected), FxTestSupport.describe((Parent) result.root()));
+        assertNull(result.controller());
+    }
+
+    @Test
+    void injectsTheSameFieldsAsFxmlLoader() throws Exception {
+        var url = fxml("user-form.fxml");
+        var loader = new FXMLLoader(url, resources);
+        loader.load();
+        FormController expected = loader.getController();
+
+        var actual = (FormController) view("UserFormFxmlView").build(url, resources, null).controller();
+
+        assertNotNull(actual);
+        assertEquals(FxTestSupport.describe(expected.grid()), FxTestSupport.describe(actual.grid()));
+        assertSame(actual.nameField(), actual.nameLabel().getLabelFor());
+        assertEquals(expected.location(), actual.location());
+        assertEquals(expected.resources(), actual.resources());
+        assertEquals(1, actual.initializeCount);
+        actual.saveButton.fire();
+        assertEquals(1, actual.saveCount);
+    }
+}
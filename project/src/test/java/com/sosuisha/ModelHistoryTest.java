@@ -0,0 +1,191 @@
+package com.sosuisha;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javafx.application.Platform;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks undo, redo, clear and the bounds of the history, and that the
+ * views get the latest snapshot on the FX Application Thread.
+ */
+class ModelHistoryTest {
+    private ModelHistory history;
+
+    @BeforeAll
+    static void startFx() throws InterruptedException {
+        FxTestSupport.startFx();
+    }
+
+    @BeforeEach
+    void createHistory() {
+        history = new ModelHistory(new FxUpdater(FxUpdater.Backpressure.LATEST, 100),
+                PersistentMap.<String, Object>of().plus("name", "initial"));
+    }
+
+    @Test
+    void undoesAndRedoesEdits() {
+        assertTrue(history.put("Rename", "name", "first"));
+        assertTrue(history.edit("Resize", tx -> {
+            tx.put("width", 640);
+            tx.update("name", (String name) -> name + "!");
+        }));
+        var snapshot = history.getSnapshot();
+        assertEquals("first!", snapshot.get("name"));
+        assertEquals(640, (int) snapshot.get("width"));
+        assertEquals(2, snapshot.undoCount());
+        assertEquals("Resize", snapshot.undoLabel());
+        assertFalse(snapshot.canRedo());
+
+        assertTrue(history.undo());
+        assertEquals("first", history.getSnapshot().get("name"));
+        assertNull(history.getSnapshot().get("width"));
+        assertEquals("Rename", history.getSnapshot().undoLabel());
+        assertEquals("Resize", history.getSnapshot().redoLabel());
+        assertTrue(history.undo());
+        assertEquals("initial", history.getSnapshot().get("name"));
+        assertFalse(history.undo());
+
+        assertTrue(history.redo());
+        assertTrue(history.redo());
+        assertEquals("first!", history.getSnapshot().get("name"));
+        assertFalse(history.redo());
+
+        history.undo();
+        history.put("Rename again", "name", "second");
+        assertFalse(history.getSnapshot().canRedo(), "a new edit clears the redo entries");
+        assertEquals(2, history.getSnapshot().undoCount());
+
+        var stats = history.getStats();
+        assertEquals(3, stats.commits());
+        assertEquals(3, stats.undos());
+        assertEquals(2, stats.redos());
+        assertEquals(8, history.getSnapshot().version());
+    }
+
+    @Test
+    void editsThatChangeNothingMakeNoEntry() {
+        assertFalse(history.put("Same", "name", "initial"));
+        assertFalse(history.edit("Nothing", tx -> { }));
+        assertFalse(history.getSnapshot().canUndo());
+        assertEquals(0, history.getSnapshot().version());
+    }
+
+    @Test
+    void nestedTransactionsJoinTheOuterOne() {
+        var results = new boolean[2];
+        assertTrue(history.edit("Outer", tx -> {
+            results[0] = history.put("Inner", "name", "initial");
+            results[1] = history.edit("Inner", inner -> inner.put("width", 1));
+            assertEquals(1, (int) tx.get("width"));
+        }));
+        assertFalse(results[0], "a nested edit that changes nothing returns false");
+        assertTrue(results[1]);
+        assertEquals(1, history.getSnapshot().undoCount());
+        assertEquals("Outer", history.getSnapshot().undoLabel());
+        assertThrows(IllegalStateException.class, () -> history.edit("Outer", tx -> history.undo()));
+    }
+
+    @Test
+    void anEditThatThrowsChangesNothing() {
+        var before = history.getSnapshot();
+        assertThrows(IllegalArgumentException.class, () -> history.edit("Fail", tx -> {
+            tx.put("name", "changed");
+            throw new IllegalArgumentException();
+        }));
+        assertSame(before, history.getSnapshot());
+        assertTrue(history.put("Rename", "name", "after"));
+    }
+
+    @Test
+    void clearKeepsTheState() {
+        history.put("A", "name", "a");
+        history.put("B", "name", "b");
+        history.undo();
+        history.clear();
+        assertEquals("a", history.getSnapshot().get("name"));
+        assertFalse(history.getSnapshot().canUndo());
+        assertFalse(history.getSnapshot().canRedo());
+        assertEquals(0, history.getStats().bytes());
+    }
+
+    @Test
+    void evictsTheOldestEntriesBeyondTheMaximumCount() {
+        history.setMaxEntries(3);
+        for (int i = 0; i < 10; i++) {
+            history.put("Edit " + i, "count", i);
+        }
+        assertEquals(3, history.getSnapshot().undoCount());
+        assertEquals(7, history.getStats().evicted());
+        history.undo();
+        history.undo();
+        history.undo();
+        assertFalse(history.undo());
+        assertEquals(6, (int) history.getSnapshot().get("count"));
+
+        history.redo();
+        history.setMaxEntries(0);
+        assertFalse(history.getSnapshot().canUndo());
+        assertThrows(IllegalArgumentException.class, () -> history.setMaxEntries(-1));
+    }
+
+    @Test
+    void evictsTheOldestEntriesBeyondTheMaximumMemory() {
+        var large = "x".repeat(10_000);
+        for (int i = 0; i < 10; i++) {
+            history.put("Edit " + i, "text", large + i);
+        }
+        long total = history.getStats().bytes();
+        assertTrue(total > 9 * 10_000, "bytes " + total);
+
+        history.setMaxBytes(35_000);
+        var stats = history.getStats();
+        assertTrue(stats.bytes() <= 35_000, "bytes " + stats.bytes());
+        assertEquals(3, stats.undoCount());
+        assertEquals(large + 6, undoAll());
+
+        history.setMaxBytes(0);
+        history.put("Edit", "text", large);
+        assertEquals(1, history.getStats().undoCount(), "the most recent entry is kept");
+    }
+
+    @Test
+    void deliversTheLatestSnapshotOnTheFxThread() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            history.put("Edit " + i, "count", i);
+        }
+        var latest = history.getSnapshot();
+        var delivered = new CompletableFuture<ModelHistory.Snapshot>();
+        Platform.runLater(() -> {
+            history.snapshotProperty().addListener((observable, old, snapshot) -> {
+                assertTrue(Platform.isFxApplicationThread());
+                if (snapshot.version() == latest.version()) {
+                    delivered.complete(snapshot);
+                }
+            });
+            if (history.snapshotProperty().get().version() == latest.version()) {
+                delivered.complete(history.snapshotProperty().get());
+            }
+        });
+        assertSame(latest, delivered.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Undoes every entry and returns the text of the oldest state reached.
+     */
+    private String undoAll() {
+        while (history.undo()) {
+            // Keep undoing.
+        }
+        return history.getSnapshot().get("text");
+    }
+}
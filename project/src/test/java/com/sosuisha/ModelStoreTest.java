@@ -0,0 +1,191 @@
+package com.sosuisha;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that a store restores what it committed, falls back to an older
+ * generation when the latest one is damaged, and does not lose changes made
+ * while a save is in flight.
+ */
+class ModelStoreTest {
+    /** Long enough that only the tests save, by flush or close. */
+    private static final Duration NO_WRITE_BEHIND = Duration.ofHours(1);
+
+    @TempDir
+    Path dir;
+
+    private Path file() {
+        return dir.resolve("model.snapshot");
+    }
+
+    private Path generation(long generation) {
+        return dir.resolve("model.snapshot." + generation);
+    }
+
+    @Test
+    void restoresTheSavedValues() throws IOException {
+        try (var store = ModelStore.open(file(), NO_WRITE_BEHIND)) {
+            store.putString("name", "日本語 text");
+            store.putLong("count", 42);
+            store.putDouble("ratio", 0.25);
+            store.putBoolean("flag", true);
+            store.putBytes("bytes", new byte[] {1, 2, 3});
+            store.putString("gone", "x");
+            store.flush();
+            store.remove("gone");
+            store.putLong("count", 43);
+        }
+        assertTrue(Files.exists(generation(2)));
+        assertFalse(Files.exists(generation(1)), "the previous generation is deleted after the commit");
+
+        try (var store = ModelStore.open(file(), NO_WRITE_BEHIND)) {
+            assertEquals("日本語 text", store.getString("name", null));
+            assertEquals(43, store.getLong("count", 0));
+            assertEquals(0.25, store.getDouble("ratio", 0));
+            assertTrue(store.getBoolean("flag", false));
+            assertArrayEquals(new byte[] {1, 2, 3}, store.getBytes("bytes"));
+            assertFalse(store.contains("gone"));
+            assertEquals(Set.of("name", "count", "ratio", "flag", "bytes"), store.keys());
+            assertEquals(5, store.getStats().decodes());
+        }
+    }
+
+    @Test
+    void deletesTheFilesOfAnInterruptedCommit() throws IOException {
+        try (var store = ModelStore.open(file(), NO_WRITE_BEHIND)) {
+            store.putString("name", "saved");
+        }
+        var temp = dir.resolve("model.snapshot.2.tmp");
+        Files.write(temp, new byte[] {1, 2, 3});
+
+        try (var store = ModelStore.open(file(), NO_WRITE_BEHIND)) {
+            assertEquals("saved", store.getString("name", null));
+        }
+        assertFalse(Files.exists(temp));
+    }
+
+    @Test
+    void fallsBackToThePreviousGenerationWhenTheLatestIsTruncated() throws IOException {
+        var previous = savePreviousAndLatest();
+        try (var channel = FileChannel.open(generation(2), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+        Files.copy(previous, generation(1));
+
+        try (var store = ModelStore.open(file(), NO_WRITE_BEHIND)) {
+            assertEquals("first", store.getString("name", null));
+            assertEquals(1, store.getLong("count", 0));
+        }
+    }
+
+    @Test
+    void fallsBackToThePreviousGenerationWhenTheLatestIsCorrupt() throws IOException {
+        var previous = savePreviousAndLatest();
+        try (var channel = FileChannel.open(generation(2), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0xDEADBEEF).flip(), 0);
+        }
+        Files.copy(previous, generation(1));
+
+        try (var store = ModelStore.open(file(), NO_WRITE_BEHIND)) {
+            assertEquals("first", store.getString("name", null));
+        }
+    }
+
+    @Test
+    void ignoresAValueThatFailsItsChecksum() throws IOException {
+        try (var store = ModelStore.open(file(), NO_WRITE_BEHIND)) {
+            store.putString("a", "kept");
+            store.putString("z", "damaged");
+        }
+        // The values are laid out in key order, so the last byte belongs to "z".
+        try (var channel = FileChannel.open(generation(1), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) ~last.get(0)}), channel.size() - 1);
+        }
+
+        try (var store = ModelStore.open(file(), NO_WRITE_BEHIND)) {
+            assertEquals("kept", store.getString("a", null));
+            assertNull(store.getString("z", null));
+        }
+    }
+
+    @Test
+    void savesBehindAfterTheDelay() throws Exception {
+        try (var store = ModelStore.open(file(), Duration.ofMillis(10))) {
+            store.putString("name", "behind");
+            store.putLong("count", 7);
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (store.getStats().saves() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, store.getStats().saves());
+            assertEquals(2, store.getStats().lastBatch());
+        }
+        try (var store = ModelStore.open(file(), NO_WRITE_BEHIND)) {
+            assertEquals("behind", store.getString("name", null));
+            assertEquals(7, store.getLong("count", 0));
+        }
+    }
+
+    @Test
+    void keepsChangesMadeWhileASaveIsInFlight() throws Exception {
+        var last = new long[1];
+        var stop = new AtomicBoolean();
+        try (var store = ModelStore.open(file(), NO_WRITE_BEHIND)) {
+            for (int i = 0; i < 100; i++) {
+                store.putString("padding" + i, "x".repeat(1000));
+            }
+            var writer = Thread.ofPlatform().start(() -> {
+                long value = 0;
+                while (!stop.get()) {
+                    store.putLong("counter", ++value);
+                }
+                last[0] = value;
+            });
+            for (int i = 0; i < 50; i++) {
+                store.flush();
+            }
+            stop.set(true);
+            writer.join();
+            assertEquals(last[0], store.getLong("counter", -1));
+        }
+        try (var store = ModelStore.open(file(), NO_WRITE_BEHIND)) {
+            assertEquals(last[0], store.getLong("counter", -1), "the last change was lost by a save");
+        }
+    }
+
+    /**
+     * Commits two generations and returns a copy of the first one, which
+     * the second commit deletes.
+     */
+    private Path savePreviousAndLatest() throws IOException {
+        var copy = dir.resolve("copy");
+        try (var store = ModelStore.open(file(), NO_WRITE_BEHIND)) {
+            store.putString("name", "first");
+            store.putLong("count", 1);
+            store.flush();
+            Files.copy(generation(1), copy);
+            store.putString("name", "second");
+            store.flush();
+        }
+        assertFalse(Files.exists(generation(1)));
+        return copy;
+    }
+}
@@ -0,0 +1,135 @@
+package com.sosuisha;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the map against a HashMap under random changes, and that the
+ * older versions are not changed by them.
+ */
+class PersistentMapTest {
+    /** A key whose hash collides with the other keys of the same group. */
+    private record Colliding(int group, int id) {
+        @Override
+        public int hashCode() {
+            return group;
+        }
+    }
+
+    private final Random random = new Random(7);
+
+    @Test
+    void behavesLikeAHashMap() {
+        checkRandomChanges(() -> random.nextInt(2000));
+    }
+
+    @Test
+    void behavesLikeAHashMapWithCollidingHashes() {
+        checkRandomChanges(() -> new Colliding(random.nextInt(8), random.nextInt(40)));
+    }
+
+    @Test
+    void behavesLikeAHashMapWithKeysSharingTheLowBitsOfTheirHashes() {
+        // The spread hashes share their lowest 10 bits, so the keys share the first two levels of the trie.
+        checkRandomChanges(() -> random.nextInt(64) << 26);
+    }
+
+    @Test
+    void returnsTheSameMapForChangesThatChangeNothing() {
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>of().plus("a", 1).plus("b", 2);
+        assertSame(map, map.plus("a", 1));
+        assertSame(map, map.minus("c"));
+        assertSame(map, map.minus(null));
+        assertSame(PersistentMap.of(), map.minus("a").minus("b"));
+        assertThrows(NullPointerException.class, () -> map.plus(null, 1));
+        assertThrows(NullPointerException.class, () -> map.plus("c", null));
+    }
+
+    @Test
+    void copiesAMap() {
+        var source = new HashMap<String, Integer>();
+        for (int i = 0; i < 500; i++) {
+            source.put("key" + i, i);
+        }
+        assertContents(source, PersistentMap.copyOf(source));
+    }
+
+    @Test
+    void retainedBytesCountOnlyWhatTheNewerVersionDoesNotShare() {
+        PersistentMap<Integer, String> map = PersistentMap.of();
+        for (int i = 0; i < 10_000; i++) {
+            map = map.plus(i, "value" + i);
+        }
+        long whole = map.retainedBytes(null);
+        assertEquals(0, map.retainedBytes(map));
+        long one = map.retainedBytes(map.plus(42, "changed"));
+        assertTrue(one > 0 && one < whole / 100, one + " of " + whole);
+        long removed = map.retainedBytes(map.minus(42));
+        assertTrue(removed > 0 && removed < whole / 100, removed + " of " + whole);
+        // A nested map is compared structurally with the newer one.
+        var outer = PersistentMap.<String, Object>of().plus("inner", map);
+        var newer = outer.plus("inner", map.plus(42, "changed"));
+        long nested = outer.retainedBytes(newer);
+        assertTrue(nested >= one && nested < one + 200, nested + " for " + one);
+    }
+
+    private void checkRandomChanges(Supplier<Object> keys) {
+        var expected = new HashMap<Object, Integer>();
+        PersistentMap<Object, Integer> map = PersistentMap.of();
+        var versions = new ArrayList<PersistentMap<Object, Integer>>();
+        var snapshots = new ArrayList<Map<Object, Integer>>();
+        for (int i = 0; i < 5000; i++) {
+            var key = keys.get();
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                int value = random.nextInt(10);
+                expected.put(key, value);
+                map = map.plus(key, value);
+            }
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.get(key), map.get(key));
+            if (i % 250 == 0) {
+                versions.add(map);
+                snapshots.add(new HashMap<>(expected));
+            }
+        }
+        assertContents(expected, map);
+        for (int i = 0; i < versions.size(); i++) {
+            assertContents(snapshots.get(i), versions.get(i));
+        }
+        for (var key : List.copyOf(expected.keySet())) {
+            map = map.minus(key);
+        }
+        assertTrue(map.isEmpty());
+        assertNull(map.get(keys.get()));
+    }
+
+    private static <K, V> void assertContents(Map<K, V> expected, PersistentMap<K, V> map) {
+        assertEquals(expected.size(), map.size());
+        for (var entry : expected.entrySet()) {
+            assertTrue(map.containsKey(entry.getKey()));
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        var iterated = new HashMap<K, V>();
+        for (var entry : map) {
+            assertNull(iterated.put(entry.getKey(), entry.getValue()), "duplicate key " + entry.getKey());
+        }
+        assertEquals(expected, iterated);
+        var visited = new HashMap<K, V>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+}
@@ -0,0 +1,147 @@
+package com.sosuisha;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the vector against an ArrayList under random changes, across the
+ * sizes where the tail is pushed into the tree and the tree grows a level,
+ * and that the older versions are not changed by them.
+ */
+class PersistentVectorTest {
+    private final Random random = new Random(11);
+
+    @Test
+    void appendsAndRemovesLastAcrossTreeLevels() {
+        var expected = new ArrayList<Integer>();
+        PersistentVector<Integer> vector = PersistentVector.of();
+        var versions = new ArrayList<PersistentVector<Integer>>();
+        var snapshots = new ArrayList<List<Integer>>();
+        // Past 32 + 32 * 32 elements the tree has two levels below the root.
+        for (int i = 0; i < 40_000; i++) {
+            expected.add(i);
+            vector = vector.plus(i);
+            if (Integer.bitCount(i) == 1 || i % 1031 == 0) {
+                versions.add(vector);
+                snapshots.add(List.copyOf(expected));
+            }
+        }
+        assertContents(expected, vector);
+        while (!vector.isEmpty()) {
+            vector = vector.removeLast();
+            expected.removeLast();
+            if (expected.size() % 997 == 0 || Integer.bitCount(expected.size()) == 1) {
+                assertContents(expected, vector);
+            }
+        }
+        for (int i = 0; i < versions.size(); i++) {
+            assertContents(snapshots.get(i), versions.get(i));
+        }
+        assertThrows(IllegalStateException.class, vector::removeLast);
+    }
+
+    @Test
+    void behavesLikeAnArrayList() {
+        var expected = new ArrayList<String>();
+        PersistentVector<String> vector = PersistentVector.of();
+        var versions = new ArrayList<PersistentVector<String>>();
+        var snapshots = new ArrayList<List<String>>();
+        for (int i = 0; i < 3000; i++) {
+            int size = expected.size();
+            int op = size == 0 ? 0 : random.nextInt(8);
+            switch (op) {
+                case 0, 1, 2 -> {
+                    var element = random.nextInt(20) == 0 ? null : "e" + i;
+                    expected.add(element);
+                    vector = vector.plus(element);
+                }
+                case 3 -> {
+                    int index = random.nextInt(size);
+                    expected.set(index, "s" + i);
+                    vector = vector.set(index, "s" + i);
+                }
+                case 4 -> {
+                    int index = random.nextInt(size + 1);
+                    expected.add(index, "i" + i);
+                    vector = vector.insert(index, "i" + i);
+                }
+                case 5 -> {
+                    int index = random.nextInt(size);
+                    expected.remove(index);
+                    vector = vector.remove(index);
+                }
+                case 6 -> {
+                    expected.removeLast();
+                    vector = vector.removeLast();
+                }
+                default -> {
+                    int count = size - random.nextInt(Math.min(size, 40) + 1);
+                    expected.subList(count, size).clear();
+                    vector = vector.take(count);
+                }
+            }
+            assertEquals(expected.size(), vector.size());
+            if (i % 100 == 0) {
+                assertContents(expected, vector);
+                versions.add(vector);
+                snapshots.add(new ArrayList<>(expected));
+            }
+        }
+        assertContents(expected, vector);
+        for (int i = 0; i < versions.size(); i++) {
+            assertContents(snapshots.get(i), versions.get(i));
+        }
+    }
+
+    @Test
+    void checksIndexes() {
+        var vector = PersistentVector.copyOf(List.of("a", "b", "c"));
+        assertThrows(IndexOutOfBoundsException.class, () -> vector.get(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> vector.get(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> vector.set(3, "d"));
+        assertThrows(IndexOutOfBoundsException.class, () -> vector.insert(4, "d"));
+        assertThrows(IndexOutOfBoundsException.class, () -> vector.remove(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> vector.take(4));
+        assertSame(vector, vector.set(1, "b"));
+        assertSame(vector, vector.take(3));
+    }
+
+    @Test
+    void retainedBytesCountOnlyWhatTheNewerVersionDoesNotShare() {
+        PersistentVector<Integer> vector = PersistentVector.of();
+        for (int i = 0; i < 100_000; i++) {
+            vector = vector.plus(i);
+        }
+        long whole = vector.retainedBytes(null);
+        assertEquals(0, vector.retainedBytes(vector));
+        long set = vector.retainedBytes(vector.set(12_345, -1));
+        assertTrue(set > 0 && set < whole / 100, set + " of " + whole);
+        long appended = vector.retainedBytes(vector.plus(-1));
+        assertTrue(appended < whole / 100, appended + " of " + whole);
+        long removed = vector.retainedBytes(vector.removeLast());
+        assertTrue(removed < whole / 100, removed + " of " + whole);
+        // Appending past a full tail pushes it into the tree as is.
+        var full = PersistentVector.copyOf(IntStream.range(0, 64).boxed().toList());
+        long pushed = full.retainedBytes(full.plus(64));
+        assertTrue(pushed < full.retainedBytes(null) / 4, pushed + " of " + full.retainedBytes(null));
+    }
+
+    private static <E> void assertContents(List<E> expected, PersistentVector<E> vector) {
+        assertEquals(expected.size(), vector.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), vector.get(i), "at " + i);
+        }
+        assertEquals(expected, vector.asList());
+        var iterated = new ArrayList<E>();
+        vector.forEach(iterated::add);
+        assertEquals(expected, iterated);
+    }
+}
@@ -0,0 +1,288 @@
+package com.sosuisha;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javafx.beans.Observable;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the index and its views against a brute-force filter of the
+ * source list while the list and the queries change at random.
+ */
+class SearchIndexTest {
+    /** An element whose fields are reported to the list through an extractor. */
+    private static final class Item {
+        final StringProperty name = new SimpleStringProperty();
+        final DoubleProperty price = new SimpleDoubleProperty();
+
+        Item(String name, double price) {
+            this.name.set(name);
+            this.price.set(price);
+        }
+
+        @Override
+        public String toString() {
+            return name.get() + ":" + price.get();
+        }
+    }
+
+    /**
+     * A query with the brute-force filter that it stands for.
+     *
+     * @param text the text that the name must contain ignoring case, or null
+     * @param min  the minimum price, or NaN for no range
+     * @param max  the maximum price
+     */
+    private record Filter(String text, double min, double max) {
+        static final Filter ALL = new Filter(null, Double.NaN, Double.NaN);
+
+        static Filter contains(String text) {
+            return new Filter(text, Double.NaN, Double.NaN);
+        }
+
+        Filter between(double min, double max) {
+            return new Filter(text, min, max);
+        }
+
+        SearchIndex.Query query() {
+            var query = SearchIndex.Query.all().contains("name", text);
+            return Double.isNaN(min) ? query : query.between("price", min, max);
+        }
+
+        boolean test(Item item) {
+            var name = item.name.get();
+            if (text != null && (name == null || !name.toLowerCase().contains(text.toLowerCase()))) {
+                return false;
+            }
+            double price = item.price.get();
+            return Double.isNaN(min) || price >= min && price <= max;
+        }
+    }
+
+    /** Case-insensitive texts that share many trigrams. */
+    private static final String LETTERS = "abcAB";
+
+    private final Random random = new Random(42);
+    private ObservableList<Item> source;
+    private SearchIndex<Item> index;
+
+    @BeforeEach
+    void createIndex() {
+        source = FXCollections.observableArrayList(item -> new Observable[] {item.name, item.price});
+        for (int i = 0; i < 200; i++) {
+            source.add(randomItem());
+        }
+        index = new SearchIndex<>(source)
+                .textField("name", item -> item.name.get())
+                .numberField("price", item -> item.price.get());
+    }
+
+    @Test
+    void findMatchesBruteForceForRandomQueries() {
+        for (int i = 0; i < 200; i++) {
+            var filter = randomFilter();
+            assertEquals(bruteForce(filter), index.find(filter.query()), filter.toString());
+        }
+    }
+
+    @Test
+    void followsAddRemoveAndSet() {
+        var view = index.filtered();
+        var mirror = mirror(view);
+        var filter = Filter.contains("ab");
+        view.setQuery(filter.query());
+        for (int i = 0; i < 500; i++) {
+            int size = source.size();
+            switch (random.nextInt(5)) {
+                case 0 -> source.add(random.nextInt(size + 1), randomItem());
+                case 1 -> source.addAll(random.nextInt(size + 1), List.of(randomItem(), randomItem(), randomItem()));
+                case 2 -> source.remove(random.nextInt(size));
+                case 3 -> {
+                    int from = random.nextInt(size / 2);
+                    source.remove(from, from + 1 + random.nextInt(10));
+                }
+                default -> source.set(random.nextInt(size), randomItem());
+            }
+            if (source.size() < 50) {
+                source.addAll(randomItem(), randomItem(), randomItem(), randomItem());
+            }
+            check(view, mirror, filter);
+            if (i % 25 == 0) {
+                filter = randomFilter();
+                view.setQuery(filter.query());
+                check(view, mirror, filter);
+            }
+        }
+    }
+
+    @Test
+    void followsPermutations() {
+        var view = index.filtered();
+        var mirror = mirror(view);
+        var filter = Filter.ALL.between(20, 70);
+        view.setQuery(filter.query());
+        FXCollections.sort(source, Comparator.comparing(item -> String.valueOf(item.name.get())));
+        check(view, mirror, filter);
+        FXCollections.sort(source, Comparator.comparingDouble(item -> -item.price.get()));
+        check(view, mirror, filter);
+        filter = Filter.contains("bc");
+        view.setQuery(filter.query());
+        FXCollections.shuffle(source, random);
+        check(view, mirror, filter);
+        assertEquals(bruteForce(filter), index.find(filter.query()));
+    }
+
+    @Test
+    void followsUpdatesFromTheExtractor() {
+        var view = index.filtered();
+        var mirror = mirror(view);
+        var filter = Filter.contains("abc").between(0, 50);
+        view.setQuery(filter.query());
+        for (int i = 0; i < 300; i++) {
+            var item = source.get(random.nextInt(source.size()));
+            if (random.nextBoolean()) {
+                item.name.set(randomText());
+            } else {
+                item.price.set(random.nextInt(100));
+            }
+            check(view, mirror, filter);
+        }
+        assertEquals(bruteForce(filter), index.find(filter.query()));
+    }
+
+    @Test
+    void narrowingAndWideningQueriesMatchBruteForce() {
+        var view = index.filtered();
+        var mirror = mirror(view);
+        var filters = List.of(
+                Filter.contains("a"),
+                Filter.contains("ab"),
+                Filter.contains("abc"),
+                Filter.contains("abca"),
+                Filter.contains("abca").between(10, 90),
+                Filter.contains("abca").between(30, 60),
+                Filter.contains("abc").between(30, 60),
+                Filter.contains("ab"),
+                Filter.ALL.between(Double.NEGATIVE_INFINITY, 40),
+                Filter.contains("BC"),
+                Filter.ALL);
+        for (var filter : filters) {
+            view.setQuery(filter.query());
+            check(view, mirror, filter);
+        }
+        for (var filter : filters.reversed()) {
+            view.setQuery(filter.query());
+            check(view, mirror, filter);
+        }
+        view.setQuery(null);
+        check(view, mirror, Filter.ALL);
+    }
+
+    @Test
+    void rebuildsOnceRemovedElementsOutnumberTheLiveOnes() {
+        var view = index.filtered();
+        var mirror = mirror(view);
+        var filter = Filter.contains("ab").between(10, 80);
+        view.setQuery(filter.query());
+        long rebuilds = index.getStats().rebuilds();
+        int removed = 0;
+        while (index.getStats().rebuilds() == rebuilds) {
+            source.set(random.nextInt(source.size()), randomItem());
+            removed++;
+            assertTrue(removed <= 1024 + source.size() + 1, "not rebuilt after " + removed + " removals");
+            if (removed % 100 == 0) {
+                assertEquals(removed, index.getStats().dead());
+                check(view, mirror, filter);
+            }
+        }
+        assertEquals(0, index.getStats().dead());
+        assertEquals(source.size(), index.getStats().elements());
+        check(view, mirror, filter);
+        for (int i = 0; i < 50; i++) {
+            var other = randomFilter();
+            assertEquals(bruteForce(other), index.find(other.query()), other.toString());
+        }
+    }
+
+    /**
+     * Checks that the view shows the elements matching the filter of its
+     * query in source order, and that its change events replayed onto the mirror give the same list.
+     */
+    private void check(SearchIndex.View<Item> view, List<Item> mirror, Filter filter) {
+        var expected = bruteForce(filter);
+        assertEquals(expected, view);
+        assertEquals(expected, mirror);
+        for (int i = 0; i < view.size(); i++) {
+            assertEquals(view.get(i), source.get(view.getSourceIndex(i)));
+        }
+    }
+
+    /**
+     * Returns a list that follows the view by replaying its change events.
+     */
+    private static List<Item> mirror(SearchIndex.View<Item> view) {
+        var mirror = new ArrayList<>(view);
+        view.addListener((ListChangeListener<Item>) change -> {
+            while (change.next()) {
+                if (change.wasPermutated()) {
+                    var moved = new ArrayList<>(mirror.subList(change.getFrom(), change.getTo()));
+                    for (int i = change.getFrom(); i < change.getTo(); i++) {
+                        mirror.set(change.getPermutation(i), moved.get(i - change.getFrom()));
+                    }
+                } else if (change.wasUpdated()) {
+                    for (int i = change.getFrom(); i < change.getTo(); i++) {
+                        assertEquals(mirror.get(i), change.getList().get(i));
+                    }
+                } else {
+                    var removed = mirror.subList(change.getFrom(), change.getFrom() + change.getRemovedSize());
+                    assertEquals(removed, change.getRemoved());
+                    removed.clear();
+                    mirror.addAll(change.getFrom(), change.getAddedSubList());
+                }
+            }
+        });
+        return mirror;
+    }
+
+    private List<Item> bruteForce(Filter filter) {
+        return source.stream().filter(filter::test).toList();
+    }
+
+    private Filter randomFilter() {
+        var filter = random.nextInt(4) != 0
+                ? Filter.contains(randomText().substring(0, 1 + random.nextInt(4)))
+                : Filter.ALL;
+        if (random.nextBoolean()) {
+            double min = random.nextInt(100);
+            filter = filter.between(min, min + random.nextInt(50));
+        }
+        return filter;
+    }
+
+    private Item randomItem() {
+        return new Item(random.nextInt(20) == 0 ? null : randomText(),
+                random.nextInt(30) == 0 ? Double.NaN : random.nextInt(100));
+    }
+
+    private String randomText() {
+        var sb = new StringBuilder();
+        int length = 4 + random.nextInt(8);
+        for (int i = 0; i < length; i++) {
+            sb.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+        }
+        return sb.toString();
+    }
+}
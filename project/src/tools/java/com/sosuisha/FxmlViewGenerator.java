@@ -0,0 +1,506 @@
+package com.sosuisha;
+
+import javafx.fxml.Initializable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Build-time compiler from FXML files to {@link CompiledFxmlView} classes.
+ * <p>
+ * Each FXML file under the resource directory is compiled into a Java class
+ * in the package of its directory, e.g. com/example/main.fxml into
+ * com.example.MainFxmlView. The generated class builds the node graph with
+ * plain constructor and setter calls, injects the @FXML fields of the
+ * controller and calls its initialize method. The classes are registered in
+ * META-INF/services so that SceneBuilder can find them.
+ * FXML files that use features the compiler does not support are skipped and
+ * loaded at runtime as before.
+ * <p>
+ * Usage: FxmlViewGenerator &lt;resources dir&gt; &lt;generated sources dir&gt; &lt;classes dir&gt;
+ */
+public final class FxmlViewGenerator {
+    private static final String VIEW_SUFFIX = "FxmlView";
+
+    private FxmlViewGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: FxmlViewGenerator <resources dir> <generated sources dir> <classes dir>");
+            System.exit(1);
+        }
+        var resourcesDir = Path.of(args[0]);
+        var sourcesDir = Path.of(args[1]);
+        var classesDir = Path.of(args[2]);
+
+        deleteRecursively(sourcesDir);
+        var generated = new ArrayList<String>();
+        if (Files.isDirectory(resourcesDir)) {
+            List<Path> fxmlFiles;
+            try (Stream<Path> paths = Files.walk(resourcesDir)) {
+                fxmlFiles = paths.filter(path -> path.toString().endsWith(".fxml")).sorted().toList();
+            }
+            for (var fxml : fxmlFiles) {
+                var resourcePath = "/" + resourcesDir.relativize(fxml).toString().replace('\\', '/');
+                try {
+                    var className = generate(fxml, resourcePath, sourcesDir);
+                    generated.add(className);
+                    System.out.println("Compiled " + resourcePath + " to " + className);
+                } catch (FxmlTemplate.Unsupported e) {
+                    System.out.println("Skipped " + resourcePath + ": " + e.getMessage());
+                }
+            }
+        }
+
+        var servicesFile = classesDir.resolve("META-INF/services/" + CompiledFxmlView.class.getName());
+        if (generated.isEmpty()) {
+            Files.deleteIfExists(servicesFile);
+        } else {
+            Files.createDirectories(servicesFile.getParent());
+            Files.write(servicesFile, generated);
+        }
+    }
+
+    private static String generate(Path fxml, String resourcePath, Path sourcesDir)
+            throws IOException, FxmlTemplate.Unsupported {
+        var slash = resourcePath.lastIndexOf('/');
+        var packageName = resourcePath.substring(1, Math.max(slash, 1)).replace('/', '.');
+        var simpleName = className(resourcePath.substring(slash + 1));
+        if (!packageName.isEmpty() && !isQualifiedIdentifier(packageName)) {
+            throw new FxmlTemplate.Unsupported("Directory is not a Java package");
+        }
+
+        var template = FxmlTemplate.compile(fxml.toUri().toURL(), null);
+        var crc = new CRC32();
+        crc.update(Files.readAllBytes(fxml));
+        var source = new Emitter(template, packageName, simpleName, resourcePath, crc.getValue()).emit();
+
+        var file = sourcesDir.resolve(packageName.replace('.', '/')).resolve(simpleName + ".java");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, source);
+        return packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+    }
+
+    /**
+     * Converts a file name such as "user-detail.fxml" into "UserDetailFxmlView".
+     */
+    static String className(String fileName) {
+        var baseName = fileName.substring(0, fileName.length() - ".fxml".length());
+        var sb = new StringBuilder();
+        boolean upper = true;
+        for (var c : baseName.toCharArray()) {
+            if (!Character.isJavaIdentifierPart(c) || c == '_' || c == '$') {
+                upper = true;
+            } else {
+                sb.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        if (sb.isEmpty() || !Character.isJavaIdentifierStart(sb.charAt(0))) {
+            sb.insert(0, 'V');
+        }
+        return sb + VIEW_SUFFIX;
+    }
+
+    private static boolean isQualifiedIdentifier(String name) {
+        for (var part : name.split("\\.", -1)) {
+            if (part.isEmpty() || !Character.isJavaIdentifierStart(part.charAt(0))
+                    || !part.chars().allMatch(Character::isJavaIdentifierPart)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Writes the Java source of one compiled view.
+     */
+    private static final class Emitter {
+        private static final String VIEWS = CompiledFxmlViews.class.getName();
+
+        private final FxmlTemplate template;
+        private final String packageName;
+        private final String simpleName;
+        private final String resourcePath;
+        private final long checksum;
+        private final Class<?> controllerType;
+        private final FxmlTemplate.ControllerMembers members;
+
+        private final StringBuilder fields = new StringBuilder();
+        private final StringBuilder staticInit = new StringBuilder();
+        private final StringBuilder body = new StringBuilder();
+        private final Map<String, String> idVariables = new HashMap<>();
+        private final Map<String, Class<?>> idTypes = new HashMap<>();
+        private final Map<Member, String> handles = new HashMap<>();
+        private final Map<Class<?>, String> lookups = new HashMap<>();
+        private int variableCount;
+
+        Emitter(FxmlTemplate template, String packageName, String simpleName, String resourcePath,
+                long checksum) {
+            this.template = template;
+            this.packageName = packageName;
+            this.simpleName = simpleName;
+            this.resourcePath = resourcePath;
+            this.checksum = checksum;
+            this.controllerType = template.controllerType();
+            this.members = controllerType != null ? FxmlTemplate.ControllerMembers.of(controllerType) : null;
+        }
+
+        String emit() throws FxmlTemplate.Unsupported {
+            if (controllerType != null) {
+                var name = typeName(controllerType);
+                line("var controller = (" + name + ") (controllerFactory != null");
+                line("        ? controllerFactory.call(" + name + ".class)");
+                line("        : " + (hasPublicNoArgConstructor(controllerType)
+                        ? "new " + name + "()"
+                        : name + ".class.getConstructor().newInstance()") + ");");
+            }
+            var root = object(template.root());
+            if (controllerType != null) {
+                injectController();
+            }
+            line("return new " + CompiledFxmlView.class.getCanonicalName() + ".Result(" + root + ", "
+                    + (controllerType != null ? "controller" : "null") + ");");
+
+            var sb = new StringBuilder();
+            sb.append("// Generated by ").append(FxmlViewGenerator.class.getSimpleName())
+                    .append(" from ").append(resourcePath).append(". Do not edit.\n");
+            if (!packageName.isEmpty()) {
+                sb.append("package ").append(packageName).append(";\n");
+            }
+            sb.append("\n@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+            sb.append("public final class ").append(simpleName).append(" implements ")
+                    .append(CompiledFxmlView.class.getCanonicalName()).append(" {\n");
+            sb.append(fields);
+            if (!staticInit.isEmpty()) {
+                sb.append("\n    static {\n        try {\n").append(staticInit)
+                        .append("        } catch (ReflectiveOperationException e) {\n")
+                        .append("            throw new ExceptionInInitializerError(e);\n        }\n    }\n");
+            }
+            sb.append("""
+
+                        @Override
+                        public String fxmlPath() {
+                            return %s;
+                        }
+
+                        @Override
+                        public long checksum() {
+                            return %dL;
+                        }
+
+                        @Override
+                        public Result build(java.net.URL location, java.util.ResourceBundle resources,
+                                javafx.util.Callback<Class<?>, Object> controllerFactory) throws Exception {
+                            try {
+                                return create(location, resources, controllerFactory);
+                            } catch (Exception | Error e) {
+                                throw e;
+                            } catch (Throwable e) {
+                                throw new java.lang.reflect.UndeclaredThrowableException(e);
+                            }
+                        }
+
+                        private static Result create(java.net.URL location, java.util.ResourceBundle resources,
+                                javafx.util.Callback<Class<?>, Object> controllerFactory) throws Throwable {
+                    """.formatted(quote(resourcePath), checksum));
+            sb.append(body);
+            sb.append("    }\n}\n");
+            return sb.toString();
+        }
+
+        private String object(FxmlTemplate.ObjectPlan plan) throws FxmlTemplate.Unsupported {
+            var type = typeName(plan.type());
+            var variable = "n" + variableCount++;
+            if (plan.constructor() != null) {
+                line("var " + variable + " = new " + type + "();");
+                register(plan, variable);
+                for (var step : plan.steps()) {
+                    step(variable, step);
+                }
+            } else {
+                var builder = "b" + variable.substring(1);
+                line("var " + builder + " = " + VIEWS + ".builder(" + type + ".class);");
+                for (var step : plan.steps()) {
+                    if (!(step instanceof FxmlTemplate.PutBuilder put)) {
+                        throw new FxmlTemplate.Unsupported("Unexpected step on a builder: " + step);
+                    }
+                    var value = value(put.value(), Object.class);
+                    line(builder + ".put(" + quote(put.name()) + ", " + value + ");");
+                }
+                line("var " + variable + " = (" + type + ") " + VIEWS + ".build(" + builder + ");");
+                register(plan, variable);
+            }
+            return variable;
+        }
+
+        private void register(FxmlTemplate.ObjectPlan plan, String variable) {
+            if (plan.fxId() != null) {
+                idVariables.put(plan.fxId(), variable);
+                idTypes.put(plan.fxId(), plan.type());
+            }
+        }
+
+        private void step(String target, FxmlTemplate.Step step) throws FxmlTemplate.Unsupported {
+            switch (step) {
+                case FxmlTemplate.SetProperty s when s.value() instanceof FxmlTemplate.ResourceString r ->
+                        // Set through the runtime, so that the property follows a locale switch.
+                        line(VIEWS + ".setResource(" + target + ", (target, text) -> target." + s.setter().getName()
+                                + "(text), resources, " + quote(r.key()) + ");");
+                case FxmlTemplate.SetProperty s -> {
+                    var value = value(s.value(), s.setter().getParameterTypes()[0]);
+                    line(target + "." + s.setter().getName() + "(" + value + ");");
+                }
+                case FxmlTemplate.SetStatic s -> {
+                    var value = value(s.value(), s.setter().getParameterTypes()[1]);
+                    line(typeName(s.setter().getDeclaringClass()) + "." + s.setter().getName()
+                            + "(" + target + ", " + value + ");");
+                }
+                case FxmlTemplate.AddAll s -> {
+                    for (var item : s.values()) {
+                        var value = value(item, Object.class);
+                        line(target + "." + s.getter().getName() + "().add(" + value + ");");
+                    }
+                }
+                case FxmlTemplate.PutBuilder s -> throw new FxmlTemplate.Unsupported("Builder step on an object");
+            }
+        }
+
+        private String value(FxmlTemplate.Value value, Class<?> targetType) throws FxmlTemplate.Unsupported {
+            return switch (value) {
+                case FxmlTemplate.Constant c -> constant(c, targetType);
+                case FxmlTemplate.StaticField f -> typeName(f.field().getDeclaringClass()) + "." + f.field().getName();
+                case FxmlTemplate.ResourceString r -> VIEWS + ".resource(resources, " + quote(r.key()) + ")";
+                case FxmlTemplate.ObjectPlan p -> object(p);
+                case FxmlTemplate.Reference r -> {
+                    var variable = idVariables.get(r.id());
+                    if (variable == null) {
+                        throw new FxmlTemplate.Unsupported("Forward reference $" + r.id());
+                    }
+                    yield variable;
+                }
+                case FxmlTemplate.Handler h -> {
+                    var method = members != null ? members.handlers.get(h.methodName()) : null;
+                    if (method == null) {
+                        throw new FxmlTemplate.Unsupported("Handler #" + h.methodName() + " not found");
+                    }
+                    yield VIEWS + ".handler(" + methodHandle(method) + ", controller)";
+                }
+            };
+        }
+
+        private String constant(FxmlTemplate.Constant constant, Class<?> targetType) throws FxmlTemplate.Unsupported {
+            var text = constant.text();
+            var value = constant.value();
+            if (value instanceof String && text.startsWith("@") && !text.startsWith("@@")) {
+                return VIEWS + ".resolveLocation(location, " + quote(text.substring(1)) + ")";
+            }
+            return switch (value) {
+                case null -> "null";
+                case String s -> quote(s);
+                case Boolean b -> b.toString();
+                case Character c -> "(char) " + (int) c;
+                case Double d -> d.isNaN() ? "Double.NaN"
+                        : d.isInfinite() ? (d > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY")
+                        : d.toString();
+                case Float f -> f.isNaN() ? "Float.NaN"
+                        : f.isInfinite() ? (f > 0 ? "Float.POSITIVE_INFINITY" : "Float.NEGATIVE_INFINITY")
+                        : f + "f";
+                case Integer i -> i.toString();
+                case Long l -> l + "L";
+                case Short s -> "(short) " + s;
+                case Byte b -> "(byte) " + b;
+                case Enum<?> e -> typeName(e.getDeclaringClass()) + "." + e.name();
+                default -> {
+                    var owner = hasValueOf(targetType) ? targetType : value.getClass();
+                    if (!hasValueOf(owner)) {
+                        throw new FxmlTemplate.Unsupported("Cannot express " + value + " in Java");
+                    }
+                    yield typeName(owner) + ".valueOf(" + quote(unescape(text)) + ")";
+                }
+            };
+        }
+
+        private void injectController() throws FxmlTemplate.Unsupported {
+            for (var entry : idVariables.entrySet()) {
+                var field = members.fields.get(entry.getKey());
+                if (field != null) {
+                    var variable = entry.getValue();
+                    if (!field.getType().isAssignableFrom(idTypes.get(entry.getKey()))) {
+                        variable = "(" + typeName(field.getType()) + ") (Object) " + variable;
+                    }
+                    setField(field, variable);
+                }
+            }
+            var location = members.fields.get("location");
+            if (location != null && location.getType() == java.net.URL.class) {
+                setField(location, "location");
+            }
+            var resources = members.fields.get("resources");
+            if (resources != null && resources.getType() == java.util.ResourceBundle.class) {
+                setField(resources, "resources");
+            }
+            if (Initializable.class.isAssignableFrom(controllerType)) {
+                line("var initializeTimer = " + VIEWS + ".startInitialize();");
+                line("controller.initialize(location, resources);");
+                line("initializeTimer.stop();");
+            } else if (members.initialize != null) {
+                line("var initializeTimer = " + VIEWS + ".startInitialize();");
+                if (isPublic(members.initialize)) {
+                    line("controller.initialize();");
+                } else {
+                    line(methodHandle(members.initialize) + ".invoke(controller);");
+                }
+                line("initializeTimer.stop();");
+            }
+        }
+
+        private void setField(Field field, String value) throws FxmlTemplate.Unsupported {
+            if (isPublic(field)) {
+                line("controller." + field.getName() + " = " + value + ";");
+            } else {
+                line(varHandle(field) + ".set(controller, " + value + ");");
+            }
+        }
+
+        private String varHandle(Field field) throws FxmlTemplate.Unsupported {
+            var name = handles.get(field);
+            if (name == null) {
+                name = "FIELD_" + field.getName();
+                var owner = typeName(field.getDeclaringClass());
+                var lookup = lookup(field.getDeclaringClass());
+                fields.append("    private static final java.lang.invoke.VarHandle ").append(name).append(";\n");
+                staticInit.append("            ").append(name).append(" = ").append(lookup)
+                        .append(".findVarHandle(").append(owner).append(".class, ").append(quote(field.getName()))
+                        .append(", ").append(typeName(field.getType())).append(".class);\n");
+                handles.put(field, name);
+            }
+            return name;
+        }
+
+        private String methodHandle(Method method) throws FxmlTemplate.Unsupported {
+            var name = handles.get(method);
+            if (name == null) {
+                name = "METHOD_" + method.getName();
+                var owner = typeName(method.getDeclaringClass());
+                var lookup = lookup(method.getDeclaringClass());
+                var methodType = new StringBuilder("java.lang.invoke.MethodType.methodType(")
+                        .append(typeName(method.getReturnType())).append(".class");
+                for (var param : method.getParameterTypes()) {
+                    methodType.append(", ").append(typeName(param)).append(".class");
+                }
+                methodType.append(")");
+                fields.append("    private static final java.lang.invoke.MethodHandle ").append(name).append(";\n");
+                staticInit.append("            ").append(name).append(" = ").append(lookup)
+                        .append(".findVirtual(").append(owner).append(".class, ").append(quote(method.getName()))
+                        .append(", ").append(methodType).append(");\n");
+                handles.put(method, name);
+            }
+            return name;
+        }
+
+        /**
+         * Declares a private lookup in the static initializer and returns its variable name.
+         */
+        private String lookup(Class<?> owner) throws FxmlTemplate.Unsupported {
+            var name = lookups.get(owner);
+            if (name == null) {
+                name = "lookup" + lookups.size();
+                staticInit.append("            var ").append(name)
+                        .append(" = java.lang.invoke.MethodHandles.privateLookupIn(").append(typeName(owner))
+                        .append(".class, java.lang.invoke.MethodHandles.lookup());\n");
+                lookups.put(owner, name);
+            }
+            return name;
+        }
+
+        private void line(String code) {
+            body.append("        ").append(code).append('\n');
+        }
+
+        private static boolean isPublic(Member member) {
+            return Modifier.isPublic(member.getModifiers())
+                    && Modifier.isPublic(member.getDeclaringClass().getModifiers());
+        }
+
+        private static boolean hasPublicNoArgConstructor(Class<?> type) {
+            try {
+                return Modifier.isPublic(type.getModifiers())
+                        && Modifier.isPublic(type.getConstructor().getModifiers());
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+
+        private static boolean hasValueOf(Class<?> type) {
+            try {
+                var valueOf = type.getMethod("valueOf", String.class);
+                return Modifier.isStatic(valueOf.getModifiers()) && type.isAssignableFrom(valueOf.getReturnType());
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+
+        private static String typeName(Class<?> type) throws FxmlTemplate.Unsupported {
+            if (type.isPrimitive()) {
+                return type.getName();
+            }
+            var name = type.getCanonicalName();
+            if (name == null || !Modifier.isPublic(type.getModifiers())) {
+                throw new FxmlTemplate.Unsupported("Class is not accessible: " + type.getName());
+            }
+            return name;
+        }
+
+        private static String unescape(String text) {
+            if (text.startsWith("\\") || text.startsWith("$$") || text.startsWith("@@") || text.startsWith("%%")) {
+                return text.substring(1);
+            }
+            return text;
+        }
+
+        private static String quote(String s) {
+            var sb = new StringBuilder("\"");
+            for (var c : s.toCharArray()) {
+                switch (c) {
+                    case '"' -> sb.append("\\\"");
+                    case '\\' -> sb.append("\\\\");
+                    case '\n' -> sb.append("\\n");
+                    case '\r' -> sb.append("\\r");
+                    case '\t' -> sb.append("\\t");
+                    default -> {
+                        if (c < 0x20 || c > 0x7e) {
+                            sb.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            sb.append(c);
+                        }
+                    }
+                }
+            }
+            return sb.append('"').toString();
+        }
+    }
+}
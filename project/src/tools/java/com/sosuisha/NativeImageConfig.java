@@ -0,0 +1,392 @@
+package com.sosuisha;
+
+import javafx.application.Application;
+import javafx.fxml.FXML;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Build-time generator of the GraalVM native-image configuration, run by the
+ * native profile.
+ * <p>
+ * FXMLLoader, {@link FxmlTemplate} and {@link ControllerFactory} find classes,
+ * constructors, setters and {@code @FXML} members by reflection, which a
+ * native image only supports for what is registered at build time. This
+ * reads the FXML files and registers:
+ * <ul>
+ * <li>the classes of the elements, of the static properties such as
+ * {@code GridPane.columnIndex}, and the enum and value types of their
+ * properties, with their public constructors and methods;</li>
+ * <li>the {@code fx:controller} classes, with all their constructors, since
+ * {@link SceneBuilder#newController(Object...)} may pick any of them, and
+ * the {@code @FXML} or public fields and methods, including
+ * {@code initialize}, of the class and its superclasses;</li>
+ * <li>the compiled views of {@link FxmlViewGenerator}, the
+ * {@link Application} subclasses and the placeholder of parallel includes.</li>
+ * </ul>
+ * It also includes every resource of the classes directory, such as the FXML,
+ * CSS, binary stylesheet and services files, and registers the resource
+ * bundles of the .properties files.
+ * <p>
+ * The files are written to a META-INF/native-image directory of the classes
+ * directory, where native-image finds them on the class path.
+ * <p>
+ * Usage: NativeImageConfig &lt;resources dir&gt; &lt;classes dir&gt; &lt;config dir&gt;
+ */
+public final class NativeImageConfig {
+    /** The locale suffix of a resource bundle file, e.g. _ja or _en_US. */
+    private static final Pattern LOCALE_SUFFIX = Pattern.compile("_[a-z]{2,3}(_[A-Z]{2})?(_\\w+)?$");
+
+    /**
+     * A class registered for reflection.
+     */
+    private static final class Type {
+        private final String name;
+        private boolean publicMembers;
+        private boolean declaredConstructors;
+        private final Set<String> fields = new TreeSet<>();
+        /** Methods as name(parameter types). */
+        private final Set<String> methods = new TreeSet<>();
+
+        private Type(String name) {
+            this.name = name;
+        }
+    }
+
+    private final ClassLoader classLoader = NativeImageConfig.class.getClassLoader();
+    private final Map<String, Type> types = new TreeMap<>();
+    private final Set<String> resources = new TreeSet<>();
+    private final Set<String> bundles = new TreeSet<>();
+
+    private NativeImageConfig() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: NativeImageConfig <resources dir> <classes dir> <config dir>");
+            System.exit(1);
+        }
+        var resourcesDir = Path.of(args[0]);
+        var classesDir = Path.of(args[1]);
+        var configDir = Path.of(args[2]);
+
+        var config = new NativeImageConfig();
+        if (Files.isDirectory(resourcesDir)) {
+            List<Path> fxmlFiles;
+            try (Stream<Path> paths = Files.walk(resourcesDir)) {
+                fxmlFiles = paths.filter(path -> path.toString().endsWith(".fxml")).sorted().toList();
+            }
+            for (var fxml : fxmlFiles) {
+                try (var in = Files.newInputStream(fxml)) {
+                    config.scanFxml(in);
+                } catch (XMLStreamException e) {
+                    throw new IOException("Cannot parse " + fxml, e);
+                }
+            }
+        }
+        if (Files.isDirectory(classesDir)) {
+            config.scanClasses(classesDir, configDir);
+        }
+
+        Files.createDirectories(configDir);
+        Files.writeString(configDir.resolve("reflect-config.json"), config.reflectConfig());
+        Files.writeString(configDir.resolve("resource-config.json"), config.resourceConfig());
+        System.out.println("Registered " + config.types.size() + " classes, " + config.resources.size()
+                + " resources and " + config.bundles.size() + " bundles in " + configDir);
+    }
+
+    /**
+     * Registers the classes referenced by an FXML document.
+     */
+    void scanFxml(InputStream in) throws XMLStreamException {
+        var imports = new ArrayList<String>(List.of("java.lang.*"));
+        var reader = XMLInputFactory.newFactory().createXMLStreamReader(in);
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION -> {
+                        if ("import".equals(reader.getPITarget())) {
+                            imports.add(reader.getPIData().trim());
+                        }
+                    }
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        Class<?> type = null;
+                        if ("fx".equals(reader.getPrefix())) {
+                            switch (reader.getLocalName()) {
+                                case "root" -> {
+                                    type = resolve(reader.getAttributeValue(null, "type"), imports);
+                                    register(type);
+                                }
+                                case "include" -> register(ParallelInclude.class);
+                                default -> {
+                                }
+                            }
+                        } else {
+                            type = resolveElement(reader.getLocalName(), imports);
+                        }
+                        for (int i = 0; i < reader.getAttributeCount(); i++) {
+                            var name = reader.getAttributeLocalName(i);
+                            var prefix = reader.getAttributePrefix(i);
+                            if ("fx".equals(prefix)) {
+                                if (name.equals("controller")) {
+                                    registerController(reader.getAttributeValue(i));
+                                }
+                            } else if (prefix == null || prefix.isEmpty()) {
+                                registerProperty(type, name, imports);
+                            }
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Resolves an element name: a class, or a static property such as GridPane.margin.
+     */
+    private Class<?> resolveElement(String name, List<String> imports) {
+        var dot = name.lastIndexOf('.');
+        if (Character.isLowerCase(name.charAt(dot + 1))) {
+            // An instance property element, or the class part of a static one.
+            if (dot > 0) {
+                register(resolve(name.substring(0, dot), imports));
+            }
+            return null;
+        }
+        var type = resolve(name, imports);
+        register(type);
+        return type;
+    }
+
+    /**
+     * Registers the type of a property set by an attribute, which FXMLLoader
+     * converts from the string by reflection, e.g. an enum through valueOf.
+     */
+    private void registerProperty(Class<?> type, String name, List<String> imports) {
+        var dot = name.lastIndexOf('.');
+        Class<?> owner = type;
+        var property = name;
+        if (dot > 0) {
+            owner = resolve(name.substring(0, dot), imports);
+            register(owner);
+            property = name.substring(dot + 1);
+        }
+        if (owner == null || property.isEmpty()) {
+            return;
+        }
+        var setter = "set" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        try {
+            for (var method : owner.getMethods()) {
+                var parameters = method.getParameterTypes();
+                if (method.getName().equals(setter) && parameters.length > 0) {
+                    // A static setter takes the node first.
+                    var valueType = parameters[parameters.length - 1];
+                    if (!valueType.isPrimitive() && !valueType.getName().startsWith("java.lang.")) {
+                        register(valueType);
+                    }
+                }
+            }
+        } catch (LinkageError e) {
+            System.out.println("Skipped the properties of " + owner.getName() + ": " + e);
+        }
+    }
+
+    /**
+     * Registers a controller class with all its constructors and the members
+     * that FXMLLoader may inject or call.
+     */
+    private void registerController(String className) {
+        var controller = load(className);
+        if (controller == null) {
+            System.out.println("Controller class not found: " + className);
+            return;
+        }
+        type(controller.getName()).declaredConstructors = true;
+        for (Class<?> c = controller; c != null && c != Object.class; c = c.getSuperclass()) {
+            var type = type(c.getName());
+            for (var field : c.getDeclaredFields()) {
+                if (isInjectable(field)) {
+                    type.fields.add(field.getName());
+                }
+            }
+            for (var method : c.getDeclaredMethods()) {
+                if (isInjectable(method) || (method.getName().equals("initialize") && method.getParameterCount() == 0)) {
+                    type.methods.add(signature(method));
+                }
+            }
+        }
+    }
+
+    private static boolean isInjectable(Member member) {
+        return Modifier.isPublic(member.getModifiers())
+                || (member instanceof AnnotatedElement element && element.isAnnotationPresent(FXML.class));
+    }
+
+    /**
+     * Registers the compiled views and Application classes, and the resources
+     * of the classes directory.
+     */
+    void scanClasses(Path classesDir, Path configDir) throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(classesDir)) {
+            files = paths.filter(Files::isRegularFile).filter(path -> !path.startsWith(configDir)).sorted().toList();
+        }
+        for (var file : files) {
+            var path = classesDir.relativize(file).toString().replace('\\', '/');
+            if (path.endsWith(".class")) {
+                var type = load(path.substring(0, path.length() - ".class".length()).replace('/', '.'));
+                if (type != null && Application.class.isAssignableFrom(type)) {
+                    // Application.launch creates it by reflection.
+                    type(type.getName()).declaredConstructors = true;
+                }
+                continue;
+            }
+            resources.add(path);
+            if (path.endsWith(".properties") && !path.startsWith("META-INF/")) {
+                var baseName = path.substring(0, path.length() - ".properties".length());
+                bundles.add(LOCALE_SUFFIX.matcher(baseName).replaceFirst("").replace('/', '.'));
+            }
+        }
+        // The views compiled by FxmlViewGenerator are found by ServiceLoader.
+        var services = classesDir.resolve("META-INF/services/" + CompiledFxmlView.class.getName());
+        if (Files.isRegularFile(services)) {
+            for (var line : Files.readAllLines(services)) {
+                if (!line.isBlank()) {
+                    type(line.trim()).declaredConstructors = true;
+                }
+            }
+        }
+    }
+
+    private Class<?> resolve(String name, List<String> imports) {
+        if (name == null) {
+            return null;
+        }
+        if (name.indexOf('.') > 0) {
+            var type = load(name);
+            return type != null ? type : resolve(name.substring(name.lastIndexOf('.') + 1), imports);
+        }
+        for (var imported : imports) {
+            Class<?> type = null;
+            if (imported.endsWith(".*")) {
+                type = load(imported.substring(0, imported.length() - 1) + name);
+            } else if (imported.endsWith("." + name)) {
+                type = load(imported);
+            }
+            if (type != null) {
+                return type;
+            }
+        }
+        System.out.println("Class not found: " + name);
+        return null;
+    }
+
+    private Class<?> load(String name) {
+        try {
+            return Class.forName(name, false, classLoader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private void register(Class<?> type) {
+        if (type != null && !type.isPrimitive()) {
+            type(type.getName()).publicMembers = true;
+        }
+    }
+
+    private Type type(String name) {
+        return types.computeIfAbsent(name, Type::new);
+    }
+
+    private static String signature(Method method) {
+        return method.getName() + "(" + Arrays.stream(method.getParameterTypes())
+                .map(Class::getName).collect(Collectors.joining(",")) + ")";
+    }
+
+    String reflectConfig() {
+        var json = new StringBuilder("[\n");
+        var first = true;
+        for (var type : types.values()) {
+            json.append(first ? "" : ",\n").append("  {\n    \"name\": \"").append(type.name).append('"');
+            first = false;
+            if (type.publicMembers) {
+                json.append(",\n    \"allPublicConstructors\": true")
+                        .append(",\n    \"allPublicMethods\": true")
+                        .append(",\n    \"allPublicFields\": true");
+            }
+            if (type.declaredConstructors) {
+                json.append(",\n    \"allDeclaredConstructors\": true");
+            }
+            if (!type.fields.isEmpty()) {
+                json.append(",\n    \"fields\": [")
+                        .append(type.fields.stream().map(f -> "{ \"name\": \"" + f + "\" }")
+                                .collect(Collectors.joining(", ")))
+                        .append(']');
+            }
+            if (!type.methods.isEmpty()) {
+                json.append(",\n    \"methods\": [");
+                var firstMethod = true;
+                for (var method : type.methods) {
+                    var open = method.indexOf('(');
+                    var parameters = method.substring(open + 1, method.length() - 1);
+                    json.append(firstMethod ? "\n" : ",\n")
+                            .append("      { \"name\": \"").append(method, 0, open)
+                            .append("\", \"parameterTypes\": [")
+                            .append(parameters.isEmpty() ? ""
+                                    : Arrays.stream(parameters.split(",")).map(p -> '"' + p + '"')
+                                            .collect(Collectors.joining(", ")))
+                            .append("] }");
+                    firstMethod = false;
+                }
+                json.append("\n    ]");
+            }
+            json.append("\n  }");
+        }
+        return json.append("\n]\n").toString();
+    }
+
+    String resourceConfig() {
+        var json = new StringBuilder("{\n  \"resources\": {\n    \"includes\": [");
+        var first = true;
+        for (var resource : resources) {
+            json.append(first ? "\n" : ",\n").append("      { \"pattern\": \"")
+                    .append(jsonString(Pattern.quote(resource))).append("\" }");
+            first = false;
+        }
+        json.append("\n    ]\n  },\n  \"bundles\": [");
+        first = true;
+        for (var bundle : bundles) {
+            json.append(first ? "\n" : ",\n").append("    { \"name\": \"").append(bundle).append("\" }");
+            first = false;
+        }
+        return json.append("\n  ]\n}\n").toString();
+    }
+
+    private static String jsonString(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,55 @@
+package com.sosuisha;
+
+import javafx.css.Stylesheet;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Build-time converter from CSS files to JavaFX binary stylesheets.
+ * <p>
+ * Each .css file under the classes directory gets a .bss file next to it.
+ * When a Scene uses style.css, JavaFX loads style.bss instead if it exists,
+ * which skips parsing the CSS at runtime. Set the system property
+ * binary.css=false to use the .css files, e.g. while editing them.
+ * <p>
+ * Usage: StylesheetCompiler &lt;classes dir&gt;
+ */
+public final class StylesheetCompiler {
+
+    private StylesheetCompiler() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: StylesheetCompiler <classes dir>");
+            System.exit(1);
+        }
+        var classesDir = Path.of(args[0]);
+        if (!Files.isDirectory(classesDir)) {
+            return;
+        }
+        List<Path> cssFiles;
+        try (Stream<Path> paths = Files.walk(classesDir)) {
+            cssFiles = paths.filter(path -> path.toString().endsWith(".css")).sorted().toList();
+        }
+        for (var css : cssFiles) {
+            var bss = css.resolveSibling(binaryName(css.getFileName().toString()));
+            Stylesheet.convertToBinary(css.toFile(), bss.toFile());
+            System.out.println("Converted /" + classesDir.relativize(css).toString().replace('\\', '/')
+                    + " to " + bss.getFileName());
+        }
+    }
+
+    /**
+     * Returns the name of the binary stylesheet, e.g. style.bss for style.css.
+     *
+     * @param cssName the name of the CSS file
+     * @return the name of the binary stylesheet
+     */
+    static String binaryName(String cssName) {
+        return cssName.substring(0, cssName.length() - ".css".length()) + ".bss";
+    }
+}